@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.api;
+
+import java.util.Map;
+
+import org.apache.sling.validation.api.exceptions.SlingValidationException;
+
+/**
+ * A {@code MultiValueValidator} is a {@link Validator} that is able to validate all the values of a multiple-valued property in one call,
+ * allowing it to perform its setup (e.g. parsing its arguments) only once per property instead of once per value.
+ */
+public interface MultiValueValidator extends Validator {
+
+    /**
+     * Validates all the {@code data} values according to the internal constraints of this validator.
+     *
+     * @param data      the values to validate
+     * @param arguments the validator's arguments
+     * @return the indexes of the invalid values, in ascending order; an empty array if all the values are valid
+     * @throws SlingValidationException if the method is called with {@code null} arguments or some expected arguments are missing from the
+     *                                  arguments map
+     */
+    int[] validate(String[] data, Map<String, String> arguments) throws SlingValidationException;
+}
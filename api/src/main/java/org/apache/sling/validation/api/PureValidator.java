@@ -0,0 +1,31 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.api;
+
+/**
+ * Marks a {@link Validator} whose outcome depends only on the validated value and on the validator's arguments (e.g. regular expression,
+ * enumeration or format checks). The {@link ValidationService} implementation is allowed to cache the outcome of such validators and to
+ * skip calling them for values it has already seen.
+ * <p/>
+ * Validators which depend on any other state (e.g. the repository's content, the current time or the current user) must not implement
+ * this interface.
+ */
+public interface PureValidator extends Validator {
+
+}
@@ -20,6 +20,7 @@ package org.apache.sling.validation.api;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
 
 import org.apache.sling.validation.api.exceptions.NonExistingTypeException;
@@ -142,6 +143,64 @@ public enum Type {
         return valid;
     }
 
+    /**
+     * Validates if the provided value is compatible with this {@code Type}. Values that are already stored using a Java type matching
+     * this {@code Type} (e.g. a {@link Long} for {@link #LONG} or a {@link Calendar} for {@link #DATE}) are accepted without any parsing;
+     * {@link String} values are checked using {@link #isValid(String)}.
+     *
+     * @param value the value to check
+     * @return {@code true} if the value conforms to this {@code Type}, {@code false} otherwise
+     */
+    public boolean isValid(Object value) {
+        if (value instanceof String) {
+            return isValid((String) value);
+        }
+        boolean valid = false;
+        switch (this) {
+            case BOOLEAN:
+                valid = value instanceof Boolean;
+                break;
+            case DATE:
+                valid = value instanceof Calendar || value instanceof Date;
+                break;
+            case INT:
+                if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    valid = true;
+                } else if (value instanceof Long) {
+                    // JCR stores all integral values as longs
+                    long l = (Long) value;
+                    valid = l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE;
+                }
+                break;
+            case LONG:
+                valid = value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+                break;
+            case FLOAT:
+                if (value instanceof Float) {
+                    valid = true;
+                } else if (value instanceof Number) {
+                    // JCR stores all floating point values as doubles; the value must not overflow a float
+                    double d = ((Number) value).doubleValue();
+                    valid = Double.isInfinite(d) == Float.isInfinite((float) d);
+                }
+                break;
+            case DOUBLE:
+                if (value instanceof Double || value instanceof Float) {
+                    valid = true;
+                } else if (value instanceof Number) {
+                    // integral values, e.g. JSON numbers without a fraction, and big decimals within the double range
+                    valid = !Double.isInfinite(((Number) value).doubleValue());
+                }
+                break;
+            case CHAR:
+                valid = value instanceof Character;
+                break;
+            case STRING:
+                valid = value != null;
+        }
+        return valid;
+    }
+
     /**
      * Returns the enum constant having its value equal to <code>value</code>.
      *
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.api;
+
+import java.util.Map;
+
+import org.apache.sling.validation.api.exceptions.SlingValidationException;
+
+/**
+ * A {@code TypedValidator} is a {@link Validator} that is able to validate values in their native representation (e.g. {@link Long},
+ * {@link java.util.Calendar}, {@link Boolean}), as they are returned by a {@link org.apache.sling.api.resource.ValueMap}. Validators which
+ * don't implement this interface will receive the {@code String} representation of non-{@code String} values.
+ */
+public interface TypedValidator extends Validator {
+
+    /**
+     * Validates the {@code value} according to the internal constraints of this validator.
+     *
+     * @param value     the value to validate; this can be any single value object returned by a {@link
+     *                  org.apache.sling.api.resource.ValueMap}, including {@code String}s
+     * @param type      the {@link Type} the validated property is expected to have
+     * @param arguments the validator's arguments
+     * @return {@code true} if the value is valid, {@code false} otherwise
+     * @throws SlingValidationException if the method is called with {@code null} arguments or some expected arguments are missing from the
+     *                                  arguments map
+     */
+    boolean validate(Object value, Type type, Map<String, String> arguments) throws SlingValidationException;
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.api;
+
+import java.util.List;
+
+import org.apache.sling.api.resource.ValueMap;
+
+/**
+ * A {@code ValidationListener} is notified of the work done by the {@link ValidationService}, e.g. for tracing or auditing. Listeners are
+ * registered as OSGi services and called synchronously, on the validating thread, in the order they were registered; they therefore have
+ * to be thread-safe and fast. Exceptions thrown by a listener are logged and do not affect the validation.
+ * <p/>
+ * Durations are given in nanoseconds. Resource paths are {@code null} for validations of a {@link ValueMap}.
+ */
+public interface ValidationListener {
+
+    /**
+     * Called after the {@link ValidationService} looked up the model for a resource type and path.
+     *
+     * @param resourceType the validated resource type
+     * @param path         the path of the validated resource
+     * @param model        the model found, or {@code null} if there is none
+     * @param nanos        the duration of the lookup
+     */
+    void modelResolved(String resourceType, String path, ValidationModel model, long nanos);
+
+    /**
+     * Called before a resource or value map is validated.
+     *
+     * @param model the model used for the validation
+     * @param path  the path of the validated resource
+     */
+    void validationStarted(ValidationModel model, String path);
+
+    /**
+     * Called for each property, or child resource, which failed a validation, before {@link #validationCompleted(ValidationModel, String,
+     * ValidationResult, long)}.
+     *
+     * @param model    the model used for the validation
+     * @param path     the path of the validated resource
+     * @param property the property's name, relative to the validated resource
+     * @param messages the failure messages of the property
+     */
+    void propertyFailed(ValidationModel model, String path, String property, List<String> messages);
+
+    /**
+     * Called after a resource or value map was validated.
+     *
+     * @param model  the model used for the validation
+     * @param path   the path of the validated resource
+     * @param result the result of the validation
+     * @param nanos  the duration of the validation
+     */
+    void validationCompleted(ValidationModel model, String path, ValidationResult result, long nanos);
+}
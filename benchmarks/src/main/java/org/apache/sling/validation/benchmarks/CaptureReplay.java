@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.benchmarks.setup.InMemoryResourceResolver;
+import org.apache.sling.validation.impl.Constants;
+import org.apache.sling.validation.impl.ValidationServiceImpl;
+import org.apache.sling.validation.impl.capture.CaptureReader;
+import org.apache.sling.validation.impl.capture.CapturedValidation;
+
+/**
+ * Replays a capture log written by the validation capture of {@link ValidationServiceImpl} against the validation engine of this build, so
+ * that performance changes can be judged on production traffic rather than on synthetic inputs. Usage:
+ * <pre>
+ * CaptureReplay &lt;capture log&gt; &lt;models directory&gt;
+ * </pre>
+ * The models directory contains the validation models of the captured instance as JSON files, in the format of the initial content of
+ * Sling bundles (e.g. an export of {@code /apps/sling/validation/models}); each file becomes the model {@code
+ * /apps/sling/validation/models/<file name>}. Validators are instantiated by class name.
+ * <p/>
+ * All records are prepared before the replay: their models are looked up and captured resources are rebuilt in an in-memory resource
+ * resolver. The records are then validated {@code warmups} times, followed by {@code passes} measured passes (system properties). The tool
+ * reports the throughput, the latency percentiles, the number of invalid results and the number of records without a model.
+ */
+public final class CaptureReplay {
+
+    private static final String REPLAY_ROOT = "/replay";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: CaptureReplay <capture log> <models directory>");
+            System.exit(1);
+        }
+        InMemoryResourceResolver resolver = new InMemoryResourceResolver("/apps/", "/libs/");
+        int models = loadModels(resolver, new File(args[1]));
+        ValidationServiceImpl service = newService(resolver);
+
+        List<Replayed> replayed = new ArrayList<Replayed>();
+        int records = 0;
+        int withoutModel = 0;
+        CaptureReader reader = new CaptureReader(new File(args[0]));
+        try {
+            Resource replayRoot = ResourceUtil.getOrCreateResource(resolver, REPLAY_ROOT, (Map<String, Object>) null, null, false);
+            CapturedValidation validation;
+            while ((validation = reader.next()) != null) {
+                ValidationModel model = service.getValidationModel(validation.getResourceType(), validation.getPath());
+                if (model == null) {
+                    withoutModel++;
+                } else if (validation.isResource()) {
+                    replayed.add(new Replayed(model, createResource(resolver, replayRoot, "r" + records, validation), null));
+                } else {
+                    replayed.add(new Replayed(model, null, new ValueMapDecorator(validation.getProperties())));
+                }
+                records++;
+            }
+        } finally {
+            reader.close();
+        }
+        System.out.printf("%d models, %d records, %d without a model%n", models, records, withoutModel);
+        if (replayed.isEmpty()) {
+            return;
+        }
+
+        int warmups = Integer.getInteger("warmups", 3);
+        int passes = Integer.getInteger("passes", 5);
+        for (int i = 0; i < warmups; i++) {
+            replay(service, replayed, null);
+        }
+        long[] latencies = new long[replayed.size() * passes];
+        int invalid = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            long[] passLatencies = new long[replayed.size()];
+            invalid = replay(service, replayed, passLatencies);
+            System.arraycopy(passLatencies, 0, latencies, i * replayed.size(), passLatencies.length);
+        }
+        long nanos = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("%d validations in %.1f ms: %.0f validations/s, %d invalid per pass%n", latencies.length, nanos / 1e6,
+                latencies.length / (nanos / 1e9), invalid);
+        System.out.printf("latency us: p50=%.1f p99=%.1f p999=%.1f max=%.1f%n", percentile(latencies, 0.5) / 1e3,
+                percentile(latencies, 0.99) / 1e3, percentile(latencies, 0.999) / 1e3, latencies[latencies.length - 1] / 1e3);
+    }
+
+    /**
+     * Validates all records once.
+     *
+     * @param latencies receives the latency of each record, if not {@code null}
+     * @return the number of invalid results
+     */
+    private static int replay(ValidationService service, List<Replayed> replayed, long[] latencies) {
+        int invalid = 0;
+        for (int i = 0; i < replayed.size(); i++) {
+            Replayed record = replayed.get(i);
+            long start = System.nanoTime();
+            ValidationResult result = record.resource != null ? service.validate(record.resource, record.model) : service.validate(record
+                    .valueMap, record.model);
+            if (latencies != null) {
+                latencies[i] = System.nanoTime() - start;
+            }
+            if (!result.isValid()) {
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static Resource createResource(ResourceResolver resolver, Resource parent, String name, CapturedValidation validation) throws
+            PersistenceException {
+        Map<String, Object> properties = new HashMap<String, Object>(validation.getProperties());
+        properties.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, validation.getResourceType());
+        Resource resource = resolver.create(parent, name, properties);
+        for (Map.Entry<String, Map<String, Object>> child : validation.getChildren().entrySet()) {
+            Resource childParent = resource;
+            String[] segments = child.getKey().split("/");
+            for (int i = 0; i < segments.length - 1; i++) {
+                Resource next = childParent.getChild(segments[i]);
+                childParent = next != null ? next : resolver.create(childParent, segments[i], null);
+            }
+            resolver.create(childParent, segments[segments.length - 1], child.getValue());
+        }
+        return resource;
+    }
+
+    private static int loadModels(ResourceResolver resolver, File directory) throws IOException, JSONException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list the models directory " + directory + ".");
+        }
+        String modelsHome = "/apps/" + Constants.MODELS_HOME;
+        Resource modelsFolder = ResourceUtil.getOrCreateResource(resolver, modelsHome.substring(0, modelsHome.length() - 1),
+                (Map<String, Object>) null, null, false);
+        int models = 0;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".json")) {
+                String name = file.getName().substring(0, file.getName().length() - ".json".length());
+                createContent(resolver, modelsFolder, name, new JSONObject(read(file)));
+                models++;
+            }
+        }
+        return models;
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                content.append(buffer, 0, read);
+            }
+            return content.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Creates a resource from an initial content JSON object: nested objects become child resources, arrays become multi-valued
+     * properties.
+     */
+    private static void createContent(ResourceResolver resolver, Resource parent, String name, JSONObject json) throws JSONException,
+            PersistenceException {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        Map<String, JSONObject> children = new HashMap<String, JSONObject>();
+        for (Iterator<String> keys = json.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            Object value = json.get(key);
+            if (value instanceof JSONObject) {
+                children.put(key, (JSONObject) value);
+            } else if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                String[] values = new String[array.length()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = array.getString(i);
+                }
+                properties.put(key, values);
+            } else if (value != JSONObject.NULL) {
+                properties.put(key, value);
+            }
+        }
+        Resource resource = resolver.create(parent, name, properties);
+        for (Map.Entry<String, JSONObject> child : children.entrySet()) {
+            createContent(resolver, resource, child.getKey(), child.getValue());
+        }
+    }
+
+    private static ValidationServiceImpl newService(ResourceResolver resolver) throws Exception {
+        ValidationServiceImpl service = new ValidationServiceImpl();
+        setField(service, "rrf", new ReplayResolverFactory(resolver));
+        setField(service, "validatorLookupService", new ReflectiveValidatorLookupService());
+        return service;
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static final class Replayed {
+
+        private final ValidationModel model;
+        private final Resource resource;
+        private final ValueMap valueMap;
+
+        Replayed(ValidationModel model, Resource resource, ValueMap valueMap) {
+            this.model = model;
+            this.resource = resource;
+            this.valueMap = valueMap;
+        }
+    }
+
+    /**
+     * Instantiates validators by class name, as the validator services of the captured instance are not available.
+     */
+    private static final class ReflectiveValidatorLookupService implements ValidatorLookupService {
+
+        private final Map<String, Validator> validators = new ConcurrentHashMap<String, Validator>();
+
+        @Override
+        public Validator getValidator(String validatorType) {
+            Validator validator = validators.get(validatorType);
+            if (validator == null) {
+                try {
+                    validator = (Validator) Class.forName(validatorType).newInstance();
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Cannot instantiate the validator " + validatorType + ".", e);
+                }
+                validators.put(validatorType, validator);
+            }
+            return validator;
+        }
+    }
+
+    private static final class ReplayResolverFactory implements ResourceResolverFactory {
+
+        private final ResourceResolver resolver;
+
+        ReplayResolverFactory(ResourceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver(Map<String, Object> authenticationInfo) {
+            return resolver;
+        }
+
+        @Override
+        public ResourceResolver getAdministrativeResourceResolver(Map<String, Object> authenticationInfo) {
+            return resolver;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.benchmarks.setup.InMemoryResourceResolver;
+import org.apache.sling.validation.benchmarks.setup.SyntheticModelRepository;
+import org.apache.sling.validation.impl.ValidationServiceImpl;
+import org.apache.sling.validation.impl.setup.ExecutorThreadPool;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+
+/**
+ * Measures how loading the validation models of a resource type scales with the number of models, the number of properties per model,
+ * the depth of the models' child resource trees and the number of search paths. For each combination, a {@link SyntheticModelRepository}
+ * is generated and the models are loaded by a fresh {@link ValidationServiceImpl}, through its first {@link
+ * ValidationService#getValidationModel(String, String)} call. The harness reports, per combination:
+ * <ul>
+ *     <li>the median load time, in total and per model;</li>
+ *     <li>the median number of bytes allocated by the loading thread per model (if the JVM supports measuring thread allocation);</li>
+ *     <li>the heap retained by the loaded models per model, measured as the difference of the used heap after garbage collections.</li>
+ * </ul>
+ * The dimensions are configured through the {@code models}, {@code properties}, {@code childDepth} and {@code searchPaths} system
+ * properties (comma separated values), the number of loads through {@code warmups} and {@code iterations}. Combinations generating more
+ * than {@code maxResources} resources are skipped, as the synthetic content has to fit into the heap. The models are built by {@code
+ * builderThreads} threads (1 by default, i.e. on the loading thread only). If an argument is given, the results are also written to that
+ * file, as CSV.
+ */
+public final class ModelLoadingHarness {
+
+    private static final Validator REGEX_VALIDATOR = new RegexValidator();
+    private static final String HEADER = "models,properties,childDepth,searchPaths,resources,loadMs,loadUsPerModel," +
+            "allocatedBytesPerModel,retainedBytesPerModel";
+
+    private final int warmups;
+    private final int iterations;
+    private final int builderThreads;
+    private final ExecutorService builderPool;
+
+    private ModelLoadingHarness(int warmups, int iterations, int builderThreads) {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.builderThreads = builderThreads;
+        // the loading thread builds models as well
+        this.builderPool = builderThreads > 1 ? Executors.newFixedThreadPool(builderThreads - 1) : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] models = getDimension("models", "100,1000,10000");
+        int[] properties = getDimension("properties", "10,200");
+        int[] childDepths = getDimension("childDepth", "0,3");
+        int[] searchPaths = getDimension("searchPaths", "1,3");
+        long maxResources = Long.getLong("maxResources", 2000000L);
+        ModelLoadingHarness harness = new ModelLoadingHarness(Integer.getInteger("warmups", 3), Integer.getInteger("iterations", 5),
+                Integer.getInteger("builderThreads", 1));
+        PrintWriter csv = args.length > 0 ? new PrintWriter(new FileWriter(args[0])) : null;
+        try {
+            System.out.printf("%8s %10s %10s %11s %10s %10s %14s %16s %16s%n", "models", "properties", "childDepth", "searchPaths",
+                    "resources", "loadMs", "loadUs/model", "allocated/model", "retained/model");
+            if (csv != null) {
+                csv.println(HEADER);
+            }
+            for (int modelCount : models) {
+                for (int propertyCount : properties) {
+                    for (int childDepth : childDepths) {
+                        for (int searchPathCount : searchPaths) {
+                            long resources = SyntheticModelRepository.countResources(modelCount, propertyCount, childDepth);
+                            if (resources > maxResources) {
+                                System.out.printf("%8d %10d %10d %11d %10d skipped: more than %d resources%n", modelCount, propertyCount,
+                                        childDepth, searchPathCount, resources, maxResources);
+                                continue;
+                            }
+                            Result result = harness.run(modelCount, propertyCount, childDepth, searchPathCount);
+                            System.out.printf("%8d %10d %10d %11d %10d %10.1f %14.1f %16d %16d%n", modelCount, propertyCount, childDepth,
+                                    searchPathCount, resources, result.loadNanos / 1e6, result.loadNanos / 1e3 / modelCount,
+                                    result.allocatedBytesPerModel, result.retainedBytesPerModel);
+                            if (csv != null) {
+                                csv.printf("%d,%d,%d,%d,%d,%.3f,%.3f,%d,%d%n", modelCount, propertyCount, childDepth, searchPathCount,
+                                        resources, result.loadNanos / 1e6, result.loadNanos / 1e3 / modelCount,
+                                        result.allocatedBytesPerModel, result.retainedBytesPerModel);
+                                csv.flush();
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+            if (harness.builderPool != null) {
+                harness.builderPool.shutdown();
+            }
+        }
+    }
+
+    private Result run(int models, int properties, int childDepth, int searchPaths) throws Exception {
+        ResourceResolverFactory factory = new SingleResolverFactory(SyntheticModelRepository.create(models, properties, childDepth,
+                searchPaths));
+        ValidatorLookupService validatorLookupService = new ValidatorLookupService() {
+            @Override
+            public Validator getValidator(String validatorType) {
+                return REGEX_VALIDATOR;
+            }
+        };
+        for (int i = 0; i < warmups; i++) {
+            load(newService(factory, validatorLookupService), models);
+        }
+        long[] loadNanos = new long[iterations];
+        long[] allocatedBytes = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            ValidationService service = newService(factory, validatorLookupService);
+            long allocated = getAllocatedBytes();
+            long start = System.nanoTime();
+            load(service, models);
+            loadNanos[i] = System.nanoTime() - start;
+            allocatedBytes[i] = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+        }
+        ValidationService service = newService(factory, validatorLookupService);
+        long usedBefore = getUsedHeap();
+        load(service, models);
+        long retainedBytes = getUsedHeap() - usedBefore;
+        // keeps the loaded models reachable until the heap was measured
+        load(service, models);
+        return new Result(median(loadNanos), allocatedBytes[0] < 0 ? -1 : median(allocatedBytes) / models, retainedBytes / models);
+    }
+
+    private static void load(ValidationService service, int models) {
+        String path = SyntheticModelRepository.getContentPath(models - 1);
+        if (service.getValidationModel(SyntheticModelRepository.RESOURCE_TYPE, path) == null) {
+            throw new IllegalStateException("The synthetic models were not loaded.");
+        }
+    }
+
+    private ValidationService newService(ResourceResolverFactory factory, ValidatorLookupService validatorLookupService) throws Exception {
+        ValidationServiceImpl service = new ValidationServiceImpl();
+        setField(service, "rrf", factory);
+        setField(service, "validatorLookupService", validatorLookupService);
+        if (builderPool != null) {
+            setField(service, "modelBuilderPool", new ExecutorThreadPool(builderPool));
+            setField(service, "modelBuilderThreads", builderThreads);
+        }
+        return service;
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long getUsedHeap() {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static int[] getDimension(String name, String defaultValues) {
+        String[] values = System.getProperty(name, defaultValues).split(",");
+        int[] dimension = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            dimension[i] = Integer.parseInt(values[i].trim());
+        }
+        return dimension;
+    }
+
+    private static final class Result {
+
+        private final long loadNanos;
+        private final long allocatedBytesPerModel;
+        private final long retainedBytesPerModel;
+
+        Result(long loadNanos, long allocatedBytesPerModel, long retainedBytesPerModel) {
+            this.loadNanos = loadNanos;
+            this.allocatedBytesPerModel = allocatedBytesPerModel;
+            this.retainedBytesPerModel = retainedBytesPerModel;
+        }
+    }
+
+    /**
+     * Hands out the same resolver for every login, as the synthetic content only exists in that resolver.
+     */
+    private static final class SingleResolverFactory implements ResourceResolverFactory {
+
+        private final InMemoryResourceResolver resolver;
+
+        SingleResolverFactory(InMemoryResourceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver(Map<String, Object> authenticationInfo) {
+            return resolver;
+        }
+
+        @Override
+        public ResourceResolver getAdministrativeResourceResolver(Map<String, Object> authenticationInfo) {
+            return resolver;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link RegexValidator} for single and multiple values, with values matching the expression and values that do not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexValidatorBenchmark {
+
+    private static final int VALUES = 10;
+
+    @Param({"true", "false"})
+    private boolean valid;
+
+    private final RegexValidator validator = new RegexValidator();
+    private final Map<String, String> arguments = Collections.singletonMap(RegexValidator.REGEX_PARAM,
+            "^[a-z0-9._%+-]+@[a-z0-9.-]+\\.[a-z]{2,}$");
+    private String value;
+    private String[] values;
+
+    @Setup
+    public void setUp() {
+        value = valid ? "john.doe@example.com" : "john.doe@example";
+        values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = valid ? "user" + i + "@example.com" : "user" + i + "@example";
+        }
+    }
+
+    @Benchmark
+    public boolean singleValue() {
+        return validator.validate(value, arguments);
+    }
+
+    @Benchmark
+    public int[] multipleValues() {
+        return validator.validate(values, arguments);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.validation.impl.util.Trie;
+import org.apache.sling.validation.impl.util.TrieNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Trie#getElementForLongestMatchingKey(String)}, which selects the validation model applicable to a resource path, for
+ * tries holding {@code models} applicable paths of {@code depth} path segments. The looked up paths are below the stored paths (the
+ * common case for content resources) or do not match any of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBenchmark {
+
+    @Param({"2", "5", "10"})
+    private int depth;
+
+    @Param({"10", "100", "1000"})
+    private int models;
+
+    private Trie<String> trie;
+    private String[] matchingPaths;
+    private String[] missingPaths;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        trie = new Trie<String>();
+        matchingPaths = new String[models];
+        missingPaths = new String[models];
+        for (int i = 0; i < models; i++) {
+            String path = applicablePath(i);
+            trie.insert(path, path);
+            matchingPaths[i] = path + "/jcr:content/par/text";
+            missingPaths[i] = "/var" + path;
+        }
+    }
+
+    @Benchmark
+    public TrieNode<String> matchingPath() {
+        return trie.getElementForLongestMatchingKey(matchingPaths[next()]);
+    }
+
+    @Benchmark
+    public TrieNode<String> missingPath() {
+        return trie.getElementForLongestMatchingKey(missingPaths[next()]);
+    }
+
+    private int next() {
+        index = index + 1 == models ? 0 : index + 1;
+        return index;
+    }
+
+    /**
+     * Returns a path of {@link #depth} segments, whose last segment is specific to the model; models thus share all but the last level of
+     * the trie, as sites sharing a content root do.
+     */
+    private String applicablePath(int model) {
+        StringBuilder path = new StringBuilder("/content");
+        for (int level = 2; level < depth; level++) {
+            path.append("/section").append(level);
+        }
+        return path.append("/site").append(model).toString();
+    }
+}
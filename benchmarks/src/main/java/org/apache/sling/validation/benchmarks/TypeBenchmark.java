@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.validation.api.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Type#isValid(String)} for each type, with an input that conforms to the type and one that does not. Invalid inputs are
+ * usually the expensive case, as most types report them through a parsing exception ({@link Type#DATE} even through one per supported
+ * format).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeBenchmark {
+
+    @Param({"BOOLEAN", "DATE", "INT", "LONG", "DOUBLE", "FLOAT", "CHAR", "STRING"})
+    private Type type;
+
+    @Param({"true", "false"})
+    private boolean valid;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        switch (type) {
+            case BOOLEAN:
+                input = valid ? "true" : "yes";
+                break;
+            case DATE:
+                input = valid ? "2014-10-17" : "17/10/2014";
+                break;
+            case INT:
+                input = valid ? "42" : "4.2";
+                break;
+            case LONG:
+                input = valid ? "4200000000" : "4200000000L";
+                break;
+            case DOUBLE:
+            case FLOAT:
+                input = valid ? "3.1415" : "3,1415";
+                break;
+            case CHAR:
+                input = valid ? "c" : "chars";
+                break;
+            default:
+                // every string is a valid string
+                input = "value";
+        }
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return type.isValid(input);
+    }
+}
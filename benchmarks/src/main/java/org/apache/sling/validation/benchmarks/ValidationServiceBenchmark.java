@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.ChildResourceImpl;
+import org.apache.sling.validation.impl.JCRValidationModel;
+import org.apache.sling.validation.impl.ResourcePropertyImpl;
+import org.apache.sling.validation.impl.ValidationServiceImpl;
+import org.apache.sling.validation.impl.setup.MockedResourceResolver;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ValidationService#validate(ValueMap, ValidationModel)} and {@link ValidationService#validate(Resource, ValidationModel)}
+ * for models of {@code properties} properties and {@code children} child resources. The properties cycle through regular expression
+ * checked strings, longs, dates and booleans; each child has a regular expression checked string and a long. The validated content
+ * conforms to the model, so every validator runs.
+ * <p/>
+ * The resources are stored in the repository of the mocked resource resolver used by the core tests. The service is not activated, so
+ * validator results are not memoized and every run measures the validators themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationServiceBenchmark {
+
+    private static final String RESOURCE_TYPE = "sling/validation/benchmark";
+    private static final String CONTENT_ROOT = "/content/validation/benchmark";
+    private static final Map<String, String> REGEX = Collections.singletonMap(RegexValidator.REGEX_PARAM, "^[a-z0-9]+$");
+    private static final Type[] TYPES = {Type.STRING, Type.LONG, Type.DATE, Type.BOOLEAN};
+
+    @Param({"5", "50"})
+    private int properties;
+
+    @Param({"0", "20"})
+    private int children;
+
+    private final ValidationService validationService = new ValidationServiceImpl();
+    private ValidationModel model;
+    private ValueMap valueMap;
+    private ResourceResolver resolver;
+    private Resource resource;
+
+    @Setup
+    public void setUp() throws Exception {
+        Set<ResourceProperty> modelProperties = new LinkedHashSet<ResourceProperty>();
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < properties; i++) {
+            addProperty(modelProperties, values, "property" + i, TYPES[i % TYPES.length]);
+        }
+        List<ChildResource> modelChildren = new ArrayList<ChildResource>();
+        Map<String, Map<String, Object>> childValues = new HashMap<String, Map<String, Object>>();
+        for (int i = 0; i < children; i++) {
+            Set<ResourceProperty> childProperties = new LinkedHashSet<ResourceProperty>();
+            Map<String, Object> childValue = new HashMap<String, Object>();
+            addProperty(childProperties, childValue, "title", Type.STRING);
+            addProperty(childProperties, childValue, "count", Type.LONG);
+            modelChildren.add(new ChildResourceImpl("child" + i, childProperties));
+            childValues.put("child" + i, childValue);
+        }
+        model = new JCRValidationModel("/apps/sling/validation/models/benchmark", modelProperties, RESOURCE_TYPE, new
+                String[]{CONTENT_ROOT}, modelChildren);
+        valueMap = new ValueMapDecorator(values);
+
+        resolver = new MockedResourceResolver();
+        String path = CONTENT_ROOT + "/resource" + properties + "x" + children;
+        values.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        resource = ResourceUtil.getOrCreateResource(resolver, path, values, JcrConstants.NT_UNSTRUCTURED, false);
+        for (Map.Entry<String, Map<String, Object>> child : childValues.entrySet()) {
+            child.getValue().put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+            resolver.create(resource, child.getKey(), child.getValue());
+        }
+        resolver.commit();
+        if (!validationService.validate(resource, model).isValid() || !validationService.validate(valueMap, model).isValid()) {
+            throw new IllegalStateException("The benchmark content does not conform to the benchmark model.");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (resolver != null) {
+            resolver.delete(resource);
+            resolver.commit();
+            resolver.close();
+        }
+    }
+
+    @Benchmark
+    public ValidationResult validateValueMap() {
+        return validationService.validate(valueMap, model);
+    }
+
+    @Benchmark
+    public ValidationResult validateResource() {
+        return validationService.validate(resource, model);
+    }
+
+    /**
+     * Adds a property of the given type to the model, and a value conforming to it to the content. The values are strings, as the mocked
+     * resource resolver only stores strings; they are thus parsed by {@link Type#isValid(String)} as request parameters would be.
+     */
+    private static void addProperty(Set<ResourceProperty> modelProperties, Map<String, Object> values, String name, Type type) {
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        String value;
+        switch (type) {
+            case LONG:
+                value = "4200";
+                break;
+            case DATE:
+                value = "2014-10-17";
+                break;
+            case BOOLEAN:
+                value = "true";
+                break;
+            default:
+                validators.put(new RegexValidator(), REGEX);
+                value = name.toLowerCase();
+        }
+        modelProperties.add(new ResourcePropertyImpl(name, type, validators));
+        values.put(name, value);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks.setup;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+
+/**
+ * A resource of an {@link InMemoryResourceResolver}, holding its properties and its children.
+ */
+public class InMemoryResource extends SyntheticResource {
+
+    private static final String RESOURCE_TYPE_PROPERTY = "sling:resourceType";
+
+    private final Map<String, Object> properties;
+    private Map<String, Resource> children;
+
+    InMemoryResource(InMemoryResourceResolver resourceResolver, String path, Map<String, Object> properties) {
+        super(resourceResolver, path, properties.containsKey(RESOURCE_TYPE_PROPERTY) ? (String) properties.get(RESOURCE_TYPE_PROPERTY) :
+                "nt:unstructured");
+        this.properties = properties;
+    }
+
+    @Override
+    public Resource getChild(String relPath) {
+        InMemoryResource resource = this;
+        for (String name : relPath.split("/")) {
+            if (resource.children == null || (resource = (InMemoryResource) resource.children.get(name)) == null) {
+                return null;
+            }
+        }
+        return resource;
+    }
+
+    @Override
+    public Iterator<Resource> listChildren() {
+        return getChildren().iterator();
+    }
+
+    @Override
+    public Iterable<Resource> getChildren() {
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(children.values());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+        if (type == ValueMap.class) {
+            return (AdapterType) new ValueMapDecorator(Collections.unmodifiableMap(properties));
+        }
+        return super.adaptTo(type);
+    }
+
+    InMemoryResource addChild(String name, Map<String, Object> childProperties) {
+        if (children == null) {
+            children = new LinkedHashMap<String, Resource>();
+        }
+        String childPath = "/".equals(getPath()) ? "/" + name : getPath() + "/" + name;
+        InMemoryResource child = new InMemoryResource((InMemoryResourceResolver) getResourceResolver(), childPath, childProperties);
+        children.put(name, child);
+        return child;
+    }
+
+    Object getProperty(String name) {
+        return properties.get(name);
+    }
+}
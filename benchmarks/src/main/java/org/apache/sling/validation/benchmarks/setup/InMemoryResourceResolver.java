@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks.setup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.jcr.query.Query;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * A resource resolver keeping its resources in memory, so that large synthetic content trees can be built and read without the overhead
+ * of a repository. Besides reading and creating resources, it only supports the XPath queries selecting the children of a resource by
+ * property values, e.g. {@code /jcr:root/apps/models/*[@sling:resourceType="type" and @name="value"]}, by iterating over the children.
+ * <p/>
+ * Changes are visible immediately, and closing the resolver does not discard them, so that a single instance can be handed out repeatedly.
+ */
+public class InMemoryResourceResolver implements ResourceResolver {
+
+    private static final Pattern CHILDREN_QUERY = Pattern.compile("/jcr:root(/.*)/\\*\\[(.*)\\]");
+    private static final Pattern PROPERTY_CONDITION = Pattern.compile("@([^=\\s]+)\\s*=\\s*\"([^\"]*)\"");
+
+    private final String[] searchPaths;
+    private final InMemoryResource root;
+
+    public InMemoryResourceResolver(String... searchPaths) {
+        this.searchPaths = searchPaths;
+        this.root = new InMemoryResource(this, "/", new HashMap<String, Object>());
+    }
+
+    @Override
+    public Resource getResource(String path) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Expected an absolute path: " + path);
+        }
+        return "/".equals(path) ? root : root.getChild(path.substring(1));
+    }
+
+    @Override
+    public Resource getResource(Resource base, String path) {
+        if (path.startsWith("/")) {
+            return getResource(path);
+        }
+        return base.getChild(path);
+    }
+
+    @Override
+    public String[] getSearchPath() {
+        return searchPaths.clone();
+    }
+
+    @Override
+    public Iterator<Resource> listChildren(Resource parent) {
+        return parent.listChildren();
+    }
+
+    @Override
+    public Iterable<Resource> getChildren(Resource parent) {
+        return parent.getChildren();
+    }
+
+    @Override
+    public Iterator<Resource> findResources(String query, String language) {
+        Matcher matcher = CHILDREN_QUERY.matcher(query);
+        if (!Query.XPATH.equals(language) || !matcher.matches()) {
+            throw new UnsupportedOperationException("Unsupported query: " + query);
+        }
+        Map<String, String> conditions = new HashMap<String, String>();
+        for (String condition : matcher.group(2).split(" and ")) {
+            Matcher conditionMatcher = PROPERTY_CONDITION.matcher(condition.trim());
+            if (!conditionMatcher.matches()) {
+                throw new UnsupportedOperationException("Unsupported condition " + condition + " in query: " + query);
+            }
+            conditions.put(conditionMatcher.group(1), conditionMatcher.group(2));
+        }
+        // search paths end with a slash, so the queries built from them contain empty path segments
+        Resource parent = getResource(matcher.group(1).replaceAll("/+", "/"));
+        if (parent == null) {
+            return Collections.<Resource>emptyList().iterator();
+        }
+        List<Resource> resources = new ArrayList<Resource>();
+        for (Resource child : parent.getChildren()) {
+            boolean matches = true;
+            for (Map.Entry<String, String> condition : conditions.entrySet()) {
+                if (!condition.getValue().equals(((InMemoryResource) child).getProperty(condition.getKey()))) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                resources.add(child);
+            }
+        }
+        return resources.iterator();
+    }
+
+    @Override
+    public Resource create(Resource parent, String name, Map<String, Object> properties) throws PersistenceException {
+        if (parent.getChild(name) != null) {
+            throw new PersistenceException("Resource " + parent.getPath() + "/" + name + " already exists.");
+        }
+        return ((InMemoryResource) parent).addChild(name, properties != null ? new HashMap<String, Object>(properties) : new
+                HashMap<String, Object>());
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void revert() {
+    }
+
+    @Override
+    public boolean hasChanges() {
+        return false;
+    }
+
+    @Override
+    public void refresh() {
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // the content outlives the resolver
+    }
+
+    @Override
+    public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+        return null;
+    }
+
+    @Override
+    public void delete(Resource resource) throws PersistenceException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public Resource resolve(HttpServletRequest request, String absPath) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public Resource resolve(String absPath) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    @Deprecated
+    public Resource resolve(HttpServletRequest request) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public String map(String resourcePath) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public String map(HttpServletRequest request, String resourcePath) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public Iterator<Map<String, Object>> queryResources(String query, String language) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public ResourceResolver clone(Map<String, Object> authenticationInfo) throws LoginException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public String getUserID() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public Iterator<String> getAttributeNames() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public String getParentResourceType(Resource resource) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public String getParentResourceType(String resourceType) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public boolean isResourceType(Resource resource, String resourceType) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.benchmarks.setup;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.validation.impl.Constants;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+
+/**
+ * Generates synthetic validation models for {@link #RESOURCE_TYPE} in an {@link InMemoryResourceResolver}. Model {@code i} is stored under
+ * search path {@code i % searchPaths}, applies to {@code /content/site<i>} and has:
+ * <ul>
+ *     <li>{@code properties} string properties, each checked by a {@link RegexValidator};</li>
+ *     <li>a tree of child resources {@code childDepth} levels deep, where each child has {@value #CHILD_BREADTH} children of its own and
+ *     {@value #CHILD_PROPERTIES} properties checked by a {@link RegexValidator}.</li>
+ * </ul>
+ */
+public final class SyntheticModelRepository {
+
+    public static final String RESOURCE_TYPE = "sling/validation/synthetic";
+    public static final int CHILD_BREADTH = 2;
+    public static final int CHILD_PROPERTIES = 5;
+
+    private static final String[] REGEX_ARGUMENTS = {RegexValidator.REGEX_PARAM + "=^[a-z0-9]+$"};
+
+    private SyntheticModelRepository() {
+    }
+
+    /**
+     * Returns the search paths used for {@code count} search paths: {@code /apps/}, {@code /libs/}, then {@code /search<n>/}.
+     */
+    public static String[] getSearchPaths(int count) {
+        String[] searchPaths = new String[count];
+        for (int i = 0; i < count; i++) {
+            searchPaths[i] = i == 0 ? "/apps/" : i == 1 ? "/libs/" : "/search" + i + "/";
+        }
+        return searchPaths;
+    }
+
+    /**
+     * Returns the path of a resource validated by model {@code model}.
+     */
+    public static String getContentPath(int model) {
+        return "/content/site" + model + "/page";
+    }
+
+    /**
+     * Returns the number of resources {@link #create(int, int, int, int)} creates for the models, not counting the model folders.
+     */
+    public static long countResources(int models, int properties, int childDepth) {
+        // model, its properties folder and, per property, the property, its validators folder and its validator
+        long perModel = 2 + 3L * properties;
+        long childrenPerModel = 0;
+        long levelChildren = 1;
+        for (int level = 1; level <= childDepth; level++) {
+            levelChildren *= CHILD_BREADTH;
+            childrenPerModel += levelChildren;
+        }
+        if (childDepth > 0) {
+            // the children folders: one for the model and one for each child having children
+            perModel += 1 + childrenPerModel - levelChildren;
+        }
+        // each child, its properties folder and, per property, the property, its validators folder and its validator
+        perModel += childrenPerModel * (2 + 3 * CHILD_PROPERTIES);
+        return models * perModel;
+    }
+
+    /**
+     * Creates a resource resolver holding the models.
+     *
+     * @param models      the number of models
+     * @param properties  the number of properties of each model
+     * @param childDepth  the depth of the child resource tree of each model
+     * @param searchPaths the number of search paths the models are spread over
+     * @return the resource resolver
+     */
+    public static InMemoryResourceResolver create(int models, int properties, int childDepth, int searchPaths) throws
+            PersistenceException {
+        InMemoryResourceResolver resolver = new InMemoryResourceResolver(getSearchPaths(searchPaths));
+        Resource[] modelFolders = new Resource[searchPaths];
+        for (int i = 0; i < searchPaths; i++) {
+            String path = resolver.getSearchPath()[i] + Constants.MODELS_HOME;
+            modelFolders[i] = ResourceUtil.getOrCreateResource(resolver, path.substring(0, path.length() - 1), (Map<String, Object>) null,
+                    null, false);
+        }
+        for (int i = 0; i < models; i++) {
+            Map<String, Object> modelProperties = new HashMap<String, Object>();
+            modelProperties.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, Constants.VALIDATION_MODEL_RESOURCE_TYPE);
+            modelProperties.put(Constants.VALIDATED_RESOURCE_TYPE, RESOURCE_TYPE);
+            modelProperties.put(Constants.APPLICABLE_PATHS, new String[]{"/content/site" + i});
+            Resource model = resolver.create(modelFolders[i % searchPaths], "model" + i, modelProperties);
+            createProperties(resolver, model, "property", properties);
+            createChildren(resolver, model, childDepth);
+        }
+        return resolver;
+    }
+
+    private static void createProperties(ResourceResolver resolver, Resource parent, String prefix, int count) throws
+            PersistenceException {
+        Resource propertiesResource = resolver.create(parent, Constants.PROPERTIES, null);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> propertyProperties = new HashMap<String, Object>();
+            propertyProperties.put(Constants.PROPERTY_TYPE, "string");
+            Resource property = resolver.create(propertiesResource, prefix + i, propertyProperties);
+            Resource validators = resolver.create(property, Constants.VALIDATORS, null);
+            Map<String, Object> validatorProperties = new HashMap<String, Object>();
+            validatorProperties.put(Constants.VALIDATOR_ARGUMENTS, REGEX_ARGUMENTS);
+            resolver.create(validators, RegexValidator.class.getName(), validatorProperties);
+        }
+    }
+
+    private static void createChildren(ResourceResolver resolver, Resource parent, int depth) throws PersistenceException {
+        if (depth > 0) {
+            Resource children = resolver.create(parent, Constants.CHILDREN, null);
+            for (int i = 0; i < CHILD_BREADTH; i++) {
+                Resource child = resolver.create(children, "child" + i, null);
+                createProperties(resolver, child, "childProperty", CHILD_PROPERTIES);
+                createChildren(resolver, child, depth - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.capture;
+
+/**
+ * Redacts the property values recorded by the validation capture of the default {@code ValidationService} implementation, before they
+ * are written to the capture log. A single redactor service is used; properties configured as redacted in the service are masked before
+ * the redactor is called.
+ * <p/>
+ * Redacted values should keep the shape of the original ones (type, length, number of values) where possible, so that replaying the log
+ * exercises the validators as the original traffic did.
+ */
+public interface CaptureRedactor {
+
+    /**
+     * Redacts a property value.
+     *
+     * @param resourceType the validated resource type
+     * @param path         the path of the validated resource, or the applicable path of the model for validations of value maps
+     * @param property     the property's path relative to the validated resource (e.g. {@code child/property})
+     * @param value        the value, a single value or an {@code Object[]}
+     * @return the value to record, or {@code null} to leave the property out of the record
+     */
+    Object redact(String resourceType, String path, String property, Object value);
+}
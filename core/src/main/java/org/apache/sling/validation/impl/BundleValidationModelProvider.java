@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.index.ModelCompiler;
+import org.apache.sling.validation.impl.index.ModelIndex;
+import org.apache.sling.validation.impl.util.JCRBuilder;
+import org.apache.sling.validation.impl.util.JsonModelReader;
+import org.apache.sling.validation.impl.util.JsonResource;
+import org.apache.sling.validation.spi.ValidationModelProvider;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the validation models packaged in bundles, either as JSON files or as compiled model indexes.
+ * <p/>
+ * A bundle lists its JSON files in the {@value #MODELS_HEADER} manifest header, as a comma separated list of bundle entries; an entry is
+ * either a JSON file or a folder whose {@code *.json} files are all read. A file holds a single model, in the format of the Sling JSON
+ * content loader (see {@code ValidationServiceImpl#searchAndStoreValidationModel(String)}), or an array of models. The files are read
+ * when a bundle is installed or updated, see {@link JsonModelReader}. Only the content trees of the models are kept, by validated resource
+ * type; the models themselves are built on request, so that they refer to the validators registered at that time.
+ * <p/>
+ * A bundle lists its model indexes, written at build time by {@link ModelCompiler}, in the {@value #MODEL_INDEX_HEADER} manifest header.
+ * An index is copied to the data area of this bundle when the bundle is installed or updated and then memory-mapped, so that the models
+ * need neither be parsed nor be held on the heap until they are requested. Each version of a bundle gets its own copies, named after the
+ * bundle id and last modification time, since a mapped file cannot be replaced on every platform; the copies of previous versions are
+ * deleted once they are no longer used.
+ * <p/>
+ * The bundle events are received asynchronously, so that reading the models and copying the indexes do not block the installation of
+ * the bundles; the models of a bundle are therefore provided shortly after the bundle is installed or updated. Bundles are added and
+ * removed one at a time, since the event thread and the thread opening the provider may both handle the same bundle, and would otherwise
+ * write the same index copies concurrently.
+ */
+public class BundleValidationModelProvider implements ValidationModelProvider, BundleListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BundleValidationModelProvider.class);
+
+    static final String MODELS_HEADER = "Sling-Validation-Models";
+    static final String MODEL_INDEX_HEADER = "Sling-Validation-Model-Index";
+    static final String PATH_PREFIX = "bundle://";
+    private static final String INDEX_FOLDER = "validation-model-index";
+
+    /**
+     * Resolves no validator; used for checking the structure of the models when they are read, as the validators may not be registered
+     * yet.
+     */
+    private static final ValidatorLookupService NO_VALIDATORS = new ValidatorLookupService() {
+        @Override
+        public Validator getValidator(String validatorType) {
+            return null;
+        }
+    };
+
+    private final Runnable onChange;
+    private BundleContext bundleContext;
+
+    /**
+     * Serializes the addition and removal of bundles, together with their index copies.
+     */
+    private final Object bundleLock = new Object();
+
+    /**
+     * The models by bundle id, in the order of the bundle ids so that the models are merged in a stable order.
+     */
+    private final Map<Long, BundleModels> bundleModels = new TreeMap<Long, BundleModels>();
+
+    /**
+     * The values of {@link #bundleModels}. The array is replaced, never modified, so that it can be read without locking.
+     */
+    private volatile BundleModels[] models = new BundleModels[0];
+
+    /**
+     * @param onChange called whenever the models provided by the bundles change
+     */
+    BundleValidationModelProvider(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    @Override
+    public List<ValidationModel> getValidationModels(String validatedResourceType, ValidatorLookupService validatorLookupService) {
+        List<ValidationModel> validationModels = new ArrayList<ValidationModel>();
+        for (BundleModels bundle : models) {
+            List<JsonResource> modelResources = bundle.modelResources.get(validatedResourceType);
+            if (modelResources != null) {
+                for (JsonResource modelResource : modelResources) {
+                    JCRValidationModel validationModel = JCRBuilder.buildValidationModel(validatorLookupService, validatedResourceType,
+                            modelResource);
+                    if (validationModel != null) {
+                        validationModels.add(validationModel);
+                    }
+                }
+            }
+            for (ModelIndex index : bundle.indexes) {
+                validationModels.addAll(index.getValidationModels(bundle.pathPrefix, validatedResourceType, validatorLookupService));
+            }
+        }
+        return validationModels;
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        switch (event.getType()) {
+            case BundleEvent.INSTALLED:
+            case BundleEvent.UPDATED:
+                // the bundle may have been uninstalled before the event is delivered, its UNINSTALLED event follows
+                if (event.getBundle().getState() != Bundle.UNINSTALLED && addBundle(event.getBundle())) {
+                    onChange.run();
+                }
+                break;
+            case BundleEvent.UNINSTALLED:
+                if (removeBundle(event.getBundle())) {
+                    onChange.run();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Starts tracking the bundles and reads the models of the bundles already installed.
+     */
+    void open(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+        bundleContext.addBundleListener(this);
+        Bundle[] bundles = bundleContext.getBundles();
+        // the bundles installed after the snapshot are added by the event thread, so their copies are kept below as well
+        synchronized (bundleLock) {
+            Set<String> installed = new HashSet<String>();
+            if (bundles != null) {
+                for (Bundle bundle : bundles) {
+                    if (bundle.getState() != Bundle.UNINSTALLED) {
+                        addBundle(bundle);
+                        installed.add(bundle.getBundleId() + "-");
+                    }
+                }
+            }
+            // the copies of the bundles uninstalled while this bundle was stopped
+            File folder = bundleContext.getDataFile(INDEX_FOLDER);
+            File[] files = folder != null ? folder.listFiles() : null;
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (!installed.contains(name.substring(0, name.indexOf('-') + 1)) && !isAdded(name)) {
+                        delete(file);
+                    }
+                }
+            }
+        }
+    }
+
+    void close(BundleContext bundleContext) {
+        bundleContext.removeBundleListener(this);
+        synchronized (bundleModels) {
+            bundleModels.clear();
+            models = new BundleModels[0];
+        }
+    }
+
+    /**
+     * Reads the models of a bundle, replacing the ones read from a previous version of the bundle.
+     *
+     * @return {@code true} if the provided models changed
+     */
+    boolean addBundle(Bundle bundle) {
+        synchronized (bundleLock) {
+            return doAddBundle(bundle);
+        }
+    }
+
+    private boolean doAddBundle(Bundle bundle) {
+        Dictionary<?, ?> headers = bundle.getHeaders();
+        Object modelsHeader = headers.get(MODELS_HEADER);
+        Object indexHeader = headers.get(MODEL_INDEX_HEADER);
+        BundleModels added = null;
+        if (modelsHeader != null || indexHeader != null) {
+            String pathPrefix = PATH_PREFIX + bundle.getSymbolicName();
+            List<JsonResource> modelResources = modelsHeader != null ? readModels(bundle, modelsHeader.toString()) : Collections
+                    .<JsonResource>emptyList();
+            List<ModelIndex> indexes = indexHeader != null ? readIndexes(bundle, indexHeader.toString()) : Collections
+                    .<ModelIndex>emptyList();
+            if (!modelResources.isEmpty() || !indexes.isEmpty()) {
+                added = new BundleModels(pathPrefix, modelResources, indexes);
+            }
+        }
+        BundleModels previous;
+        synchronized (bundleModels) {
+            previous = added != null ? bundleModels.put(bundle.getBundleId(), added) : bundleModels.remove(bundle.getBundleId());
+            if (previous == null && added == null) {
+                return false;
+            }
+            models = bundleModels.values().toArray(new BundleModels[bundleModels.size()]);
+        }
+        if (indexHeader == null && previous != null && !previous.indexes.isEmpty()) {
+            // the previous version of the bundle had an index, which is no longer used
+            deleteIndexes(bundle, Collections.<File>emptySet());
+        }
+        return true;
+    }
+
+    /**
+     * Discards the models of a bundle.
+     *
+     * @return {@code true} if the provided models changed
+     */
+    boolean removeBundle(Bundle bundle) {
+        synchronized (bundleLock) {
+            deleteIndexes(bundle, Collections.<File>emptySet());
+            synchronized (bundleModels) {
+                if (bundleModels.remove(bundle.getBundleId()) == null) {
+                    return false;
+                }
+                models = bundleModels.values().toArray(new BundleModels[bundleModels.size()]);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the copy of an index belongs to a bundle whose models are provided.
+     */
+    private boolean isAdded(String fileName) {
+        int end = fileName.indexOf('-');
+        if (end <= 0) {
+            return false;
+        }
+        long bundleId;
+        try {
+            bundleId = Long.parseLong(fileName.substring(0, end));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        synchronized (bundleModels) {
+            return bundleModels.containsKey(bundleId);
+        }
+    }
+
+    /**
+     * Opens the model indexes of a bundle. Each index is copied to a file of this bundle's data area, which is memory-mapped; the index is
+     * read into the heap if the framework provides no file system support.
+     */
+    private List<ModelIndex> readIndexes(Bundle bundle, String header) {
+        List<ModelIndex> indexes = new ArrayList<ModelIndex>();
+        Set<File> files = new HashSet<File>();
+        for (String location : header.split(",")) {
+            location = location.trim();
+            if ("".equals(location)) {
+                continue;
+            }
+            URL entry = bundle.getEntry(location);
+            if (entry == null) {
+                LOG.warn("Bundle {} does not contain the validation model index {}.", bundle.getSymbolicName(), location);
+                continue;
+            }
+            try {
+                File file = bundleContext != null ? bundleContext.getDataFile(INDEX_FOLDER + "/" + bundle.getBundleId() + "-" +
+                        bundle.getLastModified() + "-" + indexes.size() + ".idx") : null;
+                ModelIndex index;
+                if (file != null) {
+                    files.add(file);
+                    if (!file.isFile()) {
+                        // otherwise the file was copied from the same version of the bundle, before a restart
+                        copy(entry, file);
+                    }
+                    index = ModelIndex.map(file);
+                } else {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    copy(entry, content);
+                    index = new ModelIndex(ByteBuffer.wrap(content.toByteArray()));
+                }
+                indexes.add(index);
+                LOG.info("Opened the validation model index {} of bundle {}, with models for {} resource types.", new Object[]{location,
+                        bundle.getSymbolicName(), index.getResourceTypeCount()});
+            } catch (IOException e) {
+                LOG.error("Cannot read the validation model index " + location + " of bundle " + bundle.getSymbolicName() + ".", e);
+            }
+        }
+        deleteIndexes(bundle, files);
+        return indexes;
+    }
+
+    /**
+     * Deletes the copies of the model indexes of a bundle, except for the given ones.
+     */
+    private void deleteIndexes(Bundle bundle, Set<File> keep) {
+        File folder = bundleContext != null ? bundleContext.getDataFile(INDEX_FOLDER) : null;
+        File[] files = folder != null ? folder.listFiles() : null;
+        if (files != null) {
+            String prefix = bundle.getBundleId() + "-";
+            for (File file : files) {
+                if (file.getName().startsWith(prefix) && !keep.contains(file)) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            // a file which is still mapped cannot be deleted on some platforms; it is deleted the next time the bundle is started
+            LOG.debug("Cannot delete {}.", file);
+        }
+    }
+
+    private static void copy(URL entry, File file) throws IOException {
+        File folder = file.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create " + folder + ".");
+        }
+        // the index is written under a temporary name, so that an interrupted copy is not mistaken for a complete one
+        File copy = new File(folder, file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(copy);
+        try {
+            copy(entry, out);
+        } finally {
+            out.close();
+        }
+        if (!copy.renameTo(file)) {
+            throw new IOException("Cannot rename " + copy + " to " + file + ".");
+        }
+    }
+
+    private static void copy(URL entry, OutputStream out) throws IOException {
+        InputStream in = entry.openStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<JsonResource> readModels(Bundle bundle, String header) {
+        List<JsonResource> modelResources = new ArrayList<JsonResource>();
+        for (String location : header.split(",")) {
+            location = location.trim();
+            if ("".equals(location)) {
+                continue;
+            }
+            if (location.endsWith(".json")) {
+                URL entry = bundle.getEntry(location);
+                if (entry != null) {
+                    readModels(bundle, entry, modelResources);
+                } else {
+                    LOG.warn("Bundle {} does not contain the validation models {}.", bundle.getSymbolicName(), location);
+                }
+            } else {
+                @SuppressWarnings("unchecked")
+                Enumeration<URL> entries = bundle.findEntries(location, "*.json", true);
+                if (entries != null) {
+                    while (entries.hasMoreElements()) {
+                        readModels(bundle, entries.nextElement(), modelResources);
+                    }
+                }
+            }
+        }
+        LOG.info("Read {} validation models from bundle {}.", modelResources.size(), bundle.getSymbolicName());
+        return modelResources;
+    }
+
+    private static void readModels(Bundle bundle, URL entry, List<JsonResource> modelResources) {
+        String path = PATH_PREFIX + bundle.getSymbolicName() + (entry.getPath().startsWith("/") ? "" : "/") + entry.getPath();
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(entry.openStream(), "UTF-8");
+            readModels(path, reader, modelResources);
+        } catch (IOException e) {
+            LOG.error("Cannot read the validation models " + path + ".", e);
+        } catch (JSONException e) {
+            LOG.error("Invalid validation models " + path + ".", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOG.warn("Cannot close " + path + ".", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the models of a JSON file, either a single model or an array of models, ignoring the models without a validated resource type
+     * and the models which cannot be built (e.g. because of an unknown property type).
+     */
+    static void readModels(String path, Reader reader, List<JsonResource> modelResources) throws IOException, JSONException {
+        List<JsonResource> models = new ArrayList<JsonResource>();
+        JsonModelReader.read(path, reader, models);
+        for (JsonResource model : models) {
+            String validatedResourceType = model.adaptTo(ValueMap.class).get(Constants.VALIDATED_RESOURCE_TYPE, String.class);
+            if (validatedResourceType == null || "".equals(validatedResourceType)) {
+                LOG.warn("Ignoring the validation model {}, which does not define a validated resource type.", model.getPath());
+                continue;
+            }
+            try {
+                JCRBuilder.buildValidationModel(NO_VALIDATORS, validatedResourceType, model);
+            } catch (RuntimeException e) {
+                LOG.error("Ignoring the invalid validation model " + model.getPath() + ".", e);
+                continue;
+            }
+            modelResources.add(model);
+        }
+    }
+
+    /**
+     * The models of a bundle.
+     */
+    private static final class BundleModels {
+
+        private final String pathPrefix;
+        private final Map<String, List<JsonResource>> modelResources = new HashMap<String, List<JsonResource>>();
+        private final List<ModelIndex> indexes;
+
+        BundleModels(String pathPrefix, List<JsonResource> modelResources, List<ModelIndex> indexes) {
+            this.pathPrefix = pathPrefix;
+            this.indexes = indexes;
+            for (JsonResource modelResource : modelResources) {
+                String validatedResourceType = modelResource.adaptTo(ValueMap.class).get(Constants.VALIDATED_RESOURCE_TYPE, String.class);
+                List<JsonResource> resourceTypeModels = this.modelResources.get(validatedResourceType);
+                if (resourceTypeModels == null) {
+                    resourceTypeModels = new ArrayList<JsonResource>();
+                    this.modelResources.put(validatedResourceType, resourceTypeModels);
+                }
+                resourceTypeModels.add(modelResource);
+            }
+        }
+    }
+}
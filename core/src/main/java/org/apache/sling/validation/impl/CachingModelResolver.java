@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationService;
+
+/**
+ * Caches the outcome of {@link ValidationService#getValidationModel(String, String)} per resource type and path - including the absence of
+ * a model, which is the expensive case for the service. The cached entries are bounded in number and are discarded as soon as the
+ * {@link ValidationServiceImpl} reloads its models; other service implementations are not cached.
+ */
+class CachingModelResolver {
+
+    private final ValidationService validationService;
+    private final Map<String, CachedModel> cache;
+
+    CachingModelResolver(ValidationService validationService, final int maxSize) {
+        this.validationService = validationService;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, CachedModel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedModel> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Returns the validation model for a resource type and path.
+     *
+     * @param resourceType the resource type
+     * @param resourcePath the resource path
+     * @return the model or {@code null} if there is none
+     */
+    ValidationModel getValidationModel(String resourceType, String resourcePath) {
+        if (!(validationService instanceof ValidationServiceImpl)) {
+            return validationService.getValidationModel(resourceType, resourcePath);
+        }
+        // read the generation before the lookup, so that a model loaded concurrently with an invalidation is considered stale
+        long generation = ((ValidationServiceImpl) validationService).getModelsGeneration();
+        String key = resourceType + '\n' + resourcePath;
+        CachedModel cachedModel = cache.get(key);
+        if (cachedModel == null || cachedModel.generation != generation) {
+            cachedModel = new CachedModel(validationService.getValidationModel(resourceType, resourcePath), generation);
+            cache.put(key, cachedModel);
+        }
+        return cachedModel.model;
+    }
+
+    private static class CachedModel {
+
+        private final ValidationModel model;
+        private final long generation;
+
+        CachedModel(ValidationModel model, long generation) {
+            this.model = model;
+            this.generation = generation;
+        }
+    }
+}
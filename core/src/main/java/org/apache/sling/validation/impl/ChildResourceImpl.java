@@ -1,5 +1,8 @@
 package org.apache.sling.validation.impl;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.sling.api.resource.Resource;
@@ -15,6 +18,7 @@ public class ChildResourceImpl implements ChildResource {
 
     private String name;
     private Set<ResourceProperty> properties;
+    private Map<ResourceProperty, String> propertyPaths;
 
     public ChildResourceImpl(Resource modelResource, Resource childResource, ValidatorLookupService validatorLookupService) {
         String root = modelResource.getPath();
@@ -23,6 +27,13 @@ public class ChildResourceImpl implements ChildResource {
         }
         name = childResource.getPath().replaceFirst(root + "/", "").replaceAll(Constants.CHILDREN + "/", "");
         properties = JCRBuilder.buildProperties(validatorLookupService, childResource.getChild(Constants.PROPERTIES));
+        propertyPaths = buildPropertyPaths(name, properties);
+    }
+
+    public ChildResourceImpl(String name, Set<ResourceProperty> properties) {
+        this.name = name;
+        this.properties = properties;
+        propertyPaths = buildPropertyPaths(name, properties);
     }
 
     @Override
@@ -34,4 +45,23 @@ public class ChildResourceImpl implements ChildResource {
     public Set<ResourceProperty> getProperties() {
         return properties;
     }
+
+    /**
+     * Returns this child resource's properties together with their paths relative to the validated resource (e.g. {@code
+     * child/grandChild/property}). The paths are computed once, when the model is built, so that they can be used as failure message
+     * keys without any string manipulation at validation time.
+     *
+     * @return the properties mapped to their relative paths
+     */
+    public Map<ResourceProperty, String> getPropertyPaths() {
+        return propertyPaths;
+    }
+
+    private static Map<ResourceProperty, String> buildPropertyPaths(String name, Set<ResourceProperty> properties) {
+        Map<ResourceProperty, String> paths = new LinkedHashMap<ResourceProperty, String>();
+        for (ResourceProperty property : properties) {
+            paths.put(property, name + "/" + property.getName());
+        }
+        return Collections.unmodifiableMap(paths);
+    }
 }
@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.models.ModelValidationService;
+import org.apache.sling.validation.models.ValidatedModel;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements the {@link ModelValidationService}. The fields of each {@link ValidatedModel} class are collected once, and bound once to the
+ * properties of each {@link ValidationModel} applied to the class; validating an instance then reads the bound fields. A {@code null} field
+ * is reported as a missing property. Sling Models only leaves a property uninjected if the field is optional, so the resource is only
+ * adapted if an optional field holds a value it may have without injection - the value of its {@code Default} annotation, the default
+ * value of a primitive type, or the value of an initializer - in order to check whether the resource has the property.
+ * <p/>
+ * The bindings reference the model classes, so they are discarded whenever a bundle is updated, unresolved or uninstalled; otherwise they
+ * would keep the class loaders of the replaced bundles reachable.
+ */
+@Component
+@Service(ModelValidationService.class)
+public class ModelValidationServiceImpl implements ModelValidationService, BundleListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelValidationServiceImpl.class);
+
+    static final int MODEL_CACHE_SIZE = 1000;
+
+    /**
+     * The injection annotations carrying a property name, with the annotation member holding the name. They are looked up by name, so
+     * that this bundle does not depend on the Sling Models API.
+     */
+    private static final Map<String, String> NAME_ANNOTATIONS = new HashMap<String, String>();
+
+    static {
+        NAME_ANNOTATIONS.put("javax.inject.Named", "value");
+        NAME_ANNOTATIONS.put("org.apache.sling.models.annotations.injectorspecific.ValueMapValue", "name");
+    }
+
+    private static final String OPTIONAL_ANNOTATION = "org.apache.sling.models.annotations.Optional";
+    private static final String REQUIRED_ANNOTATION = "org.apache.sling.models.annotations.Required";
+    private static final String DEFAULT_ANNOTATION = "org.apache.sling.models.annotations.Default";
+    private static final String MODEL_ANNOTATION = "org.apache.sling.models.annotations.Model";
+    private static final String OPTIONAL_STRATEGY = "OPTIONAL";
+
+    /**
+     * The number of validation models whose bindings are kept per class; the bindings are discarded once it is exceeded, so that the
+     * models replaced by reloads do not accumulate.
+     */
+    static final int MAX_PROPERTY_BINDINGS = 16;
+
+    @Reference
+    private ValidationService validationService = null;
+
+    private CachingModelResolver modelResolver;
+    private final ConcurrentMap<Class<?>, ClassBinding> classBindings = new ConcurrentHashMap<Class<?>, ClassBinding>();
+
+    @Override
+    public ValidationResult validate(Object model, Resource resource) {
+        if (model == null || resource == null) {
+            throw new IllegalArgumentException("ModelValidationService.validate - cannot accept null parameters");
+        }
+        ClassBinding classBinding = getClassBinding(model.getClass());
+        String resourceType = classBinding.resourceType != null ? classBinding.resourceType : resource.getResourceType();
+        ValidationModel validationModel = modelResolver.getValidationModel(resourceType, resource.getPath());
+        if (validationModel == null) {
+            return new ValidationResultImpl();
+        }
+        if (!(validationService instanceof ValidationServiceImpl)) {
+            return validationService.validate(resource, validationModel);
+        }
+        ValidationResultImpl result = new ValidationResultImpl();
+        ((ValidationServiceImpl) validationService).validateResource(classBinding.getValues(validationModel, model, resource), resource,
+                validationModel, result);
+        return result;
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        switch (event.getType()) {
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNRESOLVED:
+            case BundleEvent.UNINSTALLED:
+                // the bindings are rebuilt on demand, so there is no need to find the ones belonging to the bundle
+                classBindings.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // OSGi ################################################################################################################################
+    @SuppressWarnings("unused")
+    protected void activate(ComponentContext componentContext) {
+        modelResolver = new CachingModelResolver(validationService, MODEL_CACHE_SIZE);
+        componentContext.getBundleContext().addBundleListener(this);
+    }
+
+    @SuppressWarnings("unused")
+    protected void deactivate(ComponentContext componentContext) {
+        componentContext.getBundleContext().removeBundleListener(this);
+        modelResolver = null;
+        classBindings.clear();
+    }
+
+    /**
+     * Returns the number of classes whose bindings are cached.
+     */
+    int getClassBindingCount() {
+        return classBindings.size();
+    }
+
+    private ClassBinding getClassBinding(Class<?> type) {
+        ClassBinding classBinding = classBindings.get(type);
+        if (classBinding == null) {
+            ValidatedModel annotation = type.getAnnotation(ValidatedModel.class);
+            if (annotation == null) {
+                throw new IllegalArgumentException("Class " + type.getName() + " is not annotated with @" + ValidatedModel.class
+                        .getSimpleName());
+            }
+            classBinding = new ClassBinding(annotation, type);
+            ClassBinding existing = classBindings.putIfAbsent(type, classBinding);
+            if (existing != null) {
+                classBinding = existing;
+            }
+        }
+        return classBinding;
+    }
+
+    /**
+     * Returns the property name a field is injected from: the name given by its injection annotation, if any, otherwise the field name.
+     */
+    static String getPropertyName(Field field) {
+        for (Annotation annotation : field.getAnnotations()) {
+            String member = NAME_ANNOTATIONS.get(annotation.annotationType().getName());
+            if (member != null) {
+                try {
+                    Method method = annotation.annotationType().getMethod(member);
+                    Object name = method.invoke(annotation);
+                    if (name instanceof String && !"".equals(name)) {
+                        return (String) name;
+                    }
+                } catch (Exception e) {
+                    LOG.warn("Cannot read the property name from " + annotation + " on field " + field, e);
+                }
+            }
+        }
+        return field.getName();
+    }
+
+    /**
+     * Converts a field value to the representation used by {@link ValueMap}s: primitive arrays and collections become {@code Object[]}.
+     */
+    static Object toPropertyValue(Object value) {
+        if (value instanceof Object[] || value == null) {
+            return value;
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).toArray();
+        }
+        if (value.getClass().isArray()) {
+            Object[] values = new Object[Array.getLength(value)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Array.get(value, i);
+            }
+            return values;
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether Sling Models may leave a field uninjected: the field is annotated as optional, has a default value, or belongs to a
+     * class whose fields are optional by default and is not annotated as required.
+     */
+    static boolean isOptional(Field field, boolean optionalByDefault) {
+        boolean required = false;
+        for (Annotation annotation : field.getAnnotations()) {
+            String name = annotation.annotationType().getName();
+            if (OPTIONAL_ANNOTATION.equals(name) || DEFAULT_ANNOTATION.equals(name)) {
+                return true;
+            }
+            if (REQUIRED_ANNOTATION.equals(name)) {
+                required = true;
+            }
+            // the injector specific annotations declare optional injection through one of these members, depending on the API version
+            if (Boolean.TRUE.equals(getAnnotationMember(annotation, "optional")) || isOptionalStrategy(getAnnotationMember(annotation,
+                    "injectionStrategy"))) {
+                return true;
+            }
+        }
+        return optionalByDefault && !required;
+    }
+
+    /**
+     * Returns whether the fields of a class are optional unless annotated as required.
+     */
+    static boolean isOptionalByDefault(Class<?> type) {
+        for (Annotation annotation : type.getAnnotations()) {
+            if (MODEL_ANNOTATION.equals(annotation.annotationType().getName())) {
+                return isOptionalStrategy(getAnnotationMember(annotation, "defaultInjectionStrategy"));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value an optional field has if it is not injected, as a property value: the value of its {@code Default} annotation, the
+     * default value of a primitive type, or {@code null}.
+     */
+    static Object getDefaultValue(Field field) {
+        for (Annotation annotation : field.getAnnotations()) {
+            if (DEFAULT_ANNOTATION.equals(annotation.annotationType().getName())) {
+                // only the member matching the field type is set, all others are empty arrays
+                for (Method method : annotation.annotationType().getDeclaredMethods()) {
+                    Object value = getAnnotationMember(annotation, method.getName());
+                    if (value != null && value.getClass().isArray() && Array.getLength(value) > 0) {
+                        Object[] values = (Object[]) toPropertyValue(value);
+                        Class<?> type = field.getType();
+                        return type.isArray() || Collection.class.isAssignableFrom(type) ? values : values[0];
+                    }
+                }
+            }
+        }
+        if (field.getType().isPrimitive()) {
+            return Array.get(Array.newInstance(field.getType(), 1), 0);
+        }
+        return null;
+    }
+
+    private static boolean isOptionalStrategy(Object strategy) {
+        return strategy instanceof Enum && OPTIONAL_STRATEGY.equals(((Enum<?>) strategy).name());
+    }
+
+    private static Object getAnnotationMember(Annotation annotation, String member) {
+        try {
+            return annotation.annotationType().getMethod(member).invoke(annotation);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            LOG.warn("Cannot read " + member + " from " + annotation, e);
+            return null;
+        }
+    }
+
+    /**
+     * The fields of a {@link ValidatedModel} class, by property name, and their binding to the properties of each validation model applied
+     * to the class.
+     */
+    private static final class ClassBinding {
+
+        private final String resourceType;
+        private final Map<String, FieldBinding> fields = new HashMap<String, FieldBinding>();
+        private final ConcurrentMap<ValidationModel, PropertyBinding[]> propertyBindings =
+                new ConcurrentHashMap<ValidationModel, PropertyBinding[]>();
+
+        ClassBinding(ValidatedModel annotation, Class<?> type) {
+            resourceType = "".equals(annotation.resourceType()) ? null : annotation.resourceType();
+            boolean optionalByDefault = isOptionalByDefault(type);
+            // fields of subclasses hide the fields of their superclasses
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+                    String name = getPropertyName(field);
+                    if (!fields.containsKey(name)) {
+                        field.setAccessible(true);
+                        fields.put(name, new FieldBinding(field, isOptional(field, optionalByDefault)));
+                    }
+                }
+            }
+        }
+
+        ValueMap getValues(ValidationModel validationModel, Object model, Resource resource) {
+            PropertyBinding[] bindings = getPropertyBindings(validationModel);
+            Map<String, Object> values = new HashMap<String, Object>(bindings.length * 2);
+            ValueMap resourceValues = null;
+            for (PropertyBinding binding : bindings) {
+                Object value = binding.field != null ? binding.field.getValue(model) : null;
+                if (binding.field == null || value != null && binding.field.mayBeUninjected(value)) {
+                    if (resourceValues == null) {
+                        resourceValues = resource.adaptTo(ValueMap.class);
+                        if (resourceValues == null) {
+                            resourceValues = ValueMap.EMPTY;
+                        }
+                    }
+                    if (binding.field == null) {
+                        value = resourceValues.get(binding.name);
+                    } else if (!resourceValues.containsKey(binding.name)) {
+                        value = null;
+                    }
+                }
+                if (value != null) {
+                    values.put(binding.name, value);
+                }
+            }
+            return new ValueMapDecorator(values);
+        }
+
+        private PropertyBinding[] getPropertyBindings(ValidationModel validationModel) {
+            PropertyBinding[] bindings = propertyBindings.get(validationModel);
+            if (bindings == null) {
+                List<PropertyBinding> list = new ArrayList<PropertyBinding>();
+                for (ResourceProperty property : validationModel.getResourceProperties()) {
+                    list.add(new PropertyBinding(property.getName(), fields.get(property.getName())));
+                }
+                bindings = list.toArray(new PropertyBinding[list.size()]);
+                if (propertyBindings.size() >= MAX_PROPERTY_BINDINGS) {
+                    propertyBindings.clear();
+                }
+                propertyBindings.put(validationModel, bindings);
+            }
+            return bindings;
+        }
+    }
+
+    /**
+     * A field bound to a property, with the value it has if Sling Models does not inject it.
+     */
+    private static final class FieldBinding {
+
+        private final Field field;
+        private final boolean optional;
+        private final Object defaultValue;
+
+        FieldBinding(Field field, boolean optional) {
+            this.field = field;
+            this.optional = optional;
+            this.defaultValue = optional ? getDefaultValue(field) : null;
+        }
+
+        /**
+         * Returns the field value as a property value.
+         */
+        Object getValue(Object model) {
+            try {
+                return toPropertyValue(field.get(model));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read field " + field, e);
+            }
+        }
+
+        /**
+         * Returns whether the field may hold a value without the property having been injected: the field is optional and the value is its
+         * default value or, if the field has no default value, may come from an initializer.
+         */
+        boolean mayBeUninjected(Object value) {
+            if (!optional) {
+                return false;
+            }
+            if (defaultValue == null) {
+                return true;
+            }
+            if (value instanceof Object[] && defaultValue instanceof Object[]) {
+                return Arrays.equals((Object[]) value, (Object[]) defaultValue);
+            }
+            return defaultValue.equals(value);
+        }
+    }
+
+    private static final class PropertyBinding {
+
+        private final String name;
+        private final FieldBinding field;
+
+        PropertyBinding(String name, FieldBinding field) {
+            this.name = name;
+            this.field = field;
+        }
+    }
+}
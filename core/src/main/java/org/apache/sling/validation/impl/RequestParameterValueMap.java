@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.lang.reflect.Array;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.apache.sling.api.resource.ValueMap;
+
+/**
+ * Read-only {@link ValueMap} view over a request's parameters. The parameter map is obtained from the request only when the first value is
+ * read and is never copied; typed {@link #get(String, Class)} calls convert the raw {@code String[]} parameter values directly.
+ * <p/>
+ * Single-value conversions use the first value of a parameter, while array conversions convert all its values. Values that cannot be
+ * converted to the requested type are returned as {@code null}.
+ */
+public class RequestParameterValueMap implements ValueMap {
+
+    private final ServletRequest request;
+    private Map<String, Object> parameters;
+
+    public RequestParameterValueMap(ServletRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Checks whether this map reflects the parameters of {@code request}. A request forwarded or included through a {@code
+     * RequestDispatcher} shares the attributes of the original request but may be a different wrapper with other parameters.
+     *
+     * @param request the request to check
+     * @return {@code true} if this map was created for {@code request} and its parameters did not change since they were read
+     */
+    boolean isFor(ServletRequest request) {
+        return this.request == request && (parameters == null || parameters == request.getParameterMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getParameters() {
+        if (parameters == null) {
+            parameters = (Map<String, Object>) request.getParameterMap();
+        }
+        return parameters;
+    }
+
+    // ValueMap ############################################################################################################################
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, Class<T> type) {
+        Object value = getParameters().get(name);
+        if (value == null || type == null) {
+            return null;
+        }
+        if (type.isInstance(value)) {
+            return (T) value;
+        }
+        String[] values = value instanceof String[] ? (String[]) value : new String[]{value.toString()};
+        if (type.isArray()) {
+            Class<?> componentType = type.getComponentType();
+            Object array = Array.newInstance(componentType, values.length);
+            for (int i = 0; i < values.length; i++) {
+                Object converted = convert(values[i], componentType);
+                if (converted == null) {
+                    return null;
+                }
+                Array.set(array, i, converted);
+            }
+            return (T) array;
+        }
+        return values.length > 0 ? (T) convert(values[0], type) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, T defaultValue) {
+        if (defaultValue == null) {
+            return (T) get(name);
+        }
+        T value = get(name, (Class<T>) defaultValue.getClass());
+        return value != null ? value : defaultValue;
+    }
+
+    private static Object convert(String value, Class<?> type) {
+        try {
+            if (type == String.class || type == Object.class) {
+                return value;
+            } else if (type == Integer.class || type == int.class) {
+                return Integer.valueOf(value);
+            } else if (type == Long.class || type == long.class) {
+                return Long.valueOf(value);
+            } else if (type == Double.class || type == double.class) {
+                return Double.valueOf(value);
+            } else if (type == Float.class || type == float.class) {
+                return Float.valueOf(value);
+            } else if (type == Short.class || type == short.class) {
+                return Short.valueOf(value);
+            } else if (type == Byte.class || type == byte.class) {
+                return Byte.valueOf(value);
+            } else if (type == Boolean.class || type == boolean.class) {
+                return Boolean.valueOf(value);
+            } else if (type == Calendar.class) {
+                return ISO8601.parse(value);
+            } else if (type == Date.class) {
+                Calendar calendar = ISO8601.parse(value);
+                return calendar != null ? calendar.getTime() : null;
+            }
+        } catch (NumberFormatException e) {
+            // not convertible
+        } catch (IllegalArgumentException e) {
+            // not convertible
+        }
+        return null;
+    }
+
+    // Map #################################################################################################################################
+    @Override
+    public int size() {
+        return getParameters().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getParameters().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getParameters().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return getParameters().containsValue(value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return getParameters().get(key);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return getParameters().keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return getParameters().values();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return getParameters().entrySet();
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        throw new UnsupportedOperationException("Request parameters cannot be modified.");
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw new UnsupportedOperationException("Request parameters cannot be modified.");
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        throw new UnsupportedOperationException("Request parameters cannot be modified.");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Request parameters cannot be modified.");
+    }
+}
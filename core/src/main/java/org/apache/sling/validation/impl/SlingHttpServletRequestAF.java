@@ -25,7 +25,6 @@ import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.adapter.AdapterFactory;
 import org.apache.sling.api.resource.ValueMap;
-import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +40,13 @@ public class SlingHttpServletRequestAF implements AdapterFactory {
     private static final Class<ValueMap> VALUE_MAP_CLASS = ValueMap.class;
     private static final Class<SlingHttpServletRequest> SLING_HTTP_SERVLET_REQUEST_CLASS = SlingHttpServletRequest.class;
 
+    /**
+     * The request attribute under which the request's parameters {@link ValueMap} is stored, so that all the adaptations of the same
+     * request share it. Since the attributes outlive forwards and includes, the stored map is only reused for the request it was created
+     * for.
+     */
+    static final String VALUE_MAP_ATTRIBUTE = RequestParameterValueMap.class.getName();
+
     @Property(name = ADAPTABLE_CLASSES)
     static final String[] ADAPTABLES = { SLING_HTTP_SERVLET_REQUEST_CLASS.getName() };
 
@@ -53,7 +59,12 @@ public class SlingHttpServletRequestAF implements AdapterFactory {
         if (adaptable instanceof SlingHttpServletRequest) {
             final SlingHttpServletRequest request = (SlingHttpServletRequest) adaptable;
             if (type == VALUE_MAP_CLASS) {
-                adapter = (AdapterType) new ValueMapDecorator(request.getParameterMap());
+                Object valueMap = request.getAttribute(VALUE_MAP_ATTRIBUTE);
+                if (!(valueMap instanceof RequestParameterValueMap) || !((RequestParameterValueMap) valueMap).isFor(request)) {
+                    valueMap = new RequestParameterValueMap(request);
+                    request.setAttribute(VALUE_MAP_ATTRIBUTE, valueMap);
+                }
+                adapter = (AdapterType) valueMap;
             } else {
                 LOG.warn("Cannot handle adapter {}", type.getName());
             }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.validation.api.ValidationModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the validations which take longer than a threshold, with the timings collected by a {@link ValidationTrace}. Only a percentage of
+ * the validations is traced, and at most a given number of records is logged per minute; the records suppressed by the rate limit are
+ * counted in the next logged record.
+ * <p/>
+ * The records are logged at {@code WARN} level by the {@code org.apache.sling.validation.impl.SlowValidationLog} logger.
+ * <p/>
+ * A trace is only bound to its thread while the validation runs. The last model lookup of a thread is kept until the next validation, as a
+ * weak reference and a duration, so that a lookup which is not followed by a validation neither keeps the model nor, through a class of
+ * this bundle, its class loader reachable from a pooled thread.
+ */
+class SlowValidationLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowValidationLog.class);
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final ThreadLocal<ValidationTrace> traces = new ThreadLocal<ValidationTrace>();
+    private final ThreadLocal<Object[]> lookups = new ThreadLocal<Object[]>();
+
+    final Random random = new Random();
+
+    private volatile boolean enabled;
+    private volatile long thresholdNanos;
+    private volatile int samplePercent;
+    private volatile int maxRecordsPerMinute;
+
+    private long windowStart;
+    private int windowRecords;
+    private long suppressed;
+
+    /**
+     * Configures the log.
+     *
+     * @param thresholdMillis     the duration above which validations are logged; a negative value disables the log
+     * @param samplePercent       the percentage of validations which are traced
+     * @param maxRecordsPerMinute the maximum number of records logged per minute
+     */
+    void configure(long thresholdMillis, int samplePercent, int maxRecordsPerMinute) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.samplePercent = samplePercent;
+        this.maxRecordsPerMinute = maxRecordsPerMinute;
+        this.enabled = thresholdMillis >= 0 && samplePercent > 0 && maxRecordsPerMinute > 0;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Remembers the duration of a model lookup, to be reported by the following validation of the same model on the current thread.
+     */
+    void lookedUp(ValidationModel model, long nanos) {
+        if (model == null) {
+            // no validation follows
+            lookups.remove();
+        } else {
+            lookups.set(new Object[]{new WeakReference<ValidationModel>(model), nanos});
+        }
+    }
+
+    /**
+     * Starts tracing a validation on the current thread, if it is sampled.
+     *
+     * @return the trace, or {@code null} if the validation is not traced, including nested validations of a traced one
+     */
+    ValidationTrace start(String resourceType, String path, ValidationModel model) {
+        // the remembered lookup belongs to this validation or to none
+        Object[] lookup = lookups.get();
+        if (lookup != null) {
+            lookups.remove();
+        }
+        if (!enabled || traces.get() != null) {
+            return null;
+        }
+        if (samplePercent < 100 && random.nextInt(100) >= samplePercent) {
+            return null;
+        }
+        long lookupNanos = lookup != null && ((WeakReference<?>) lookup[0]).get() == model ? (Long) lookup[1] : 0;
+        ValidationTrace trace = new ValidationTrace(resourceType, path, lookupNanos);
+        traces.set(trace);
+        return trace;
+    }
+
+    /**
+     * Returns the trace of the validation running on the current thread, or {@code null} if it is not traced.
+     */
+    ValidationTrace current() {
+        if (!enabled) {
+            return null;
+        }
+        return traces.get();
+    }
+
+    /**
+     * Ends a trace started by {@link #start(String, String, ValidationModel)} and logs it if the validation was slow. The trace is then
+     * detached from the current thread, so that pooled threads do not keep it.
+     *
+     * @return the logged record, or {@code null} if nothing was logged
+     */
+    String stop(ValidationTrace trace) {
+        try {
+            long nanos = trace.stop();
+            if (nanos > thresholdNanos) {
+                long suppressedRecords = acquire();
+                if (suppressedRecords >= 0) {
+                    String record = trace.format(nanos, suppressedRecords);
+                    LOG.warn(record);
+                    return record;
+                }
+            }
+            return null;
+        } finally {
+            traces.remove();
+        }
+    }
+
+    /**
+     * Takes a permit from the rate limit.
+     *
+     * @return the number of records suppressed since the last logged one, or {@code -1} if this record has to be suppressed as well
+     */
+    private synchronized long acquire() {
+        long now = System.nanoTime();
+        if (now - windowStart >= MINUTE) {
+            windowStart = now;
+            windowRecords = 0;
+        }
+        if (windowRecords >= maxRecordsPerMinute) {
+            suppressed++;
+            return -1;
+        }
+        windowRecords++;
+        long suppressedRecords = suppressed;
+        suppressed = 0;
+        return suppressedRecords;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.sling.api.request.RequestParameter;
+
+/**
+ * A file upload read by a {@link StreamingRequestValidator}. Small files are kept in memory, bigger ones are spooled to a temporary file
+ * which is deleted by {@link #dispose()} once the request was handled.
+ */
+class SpooledFileParameter implements RequestParameter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final String fileName;
+    private final String contentType;
+    private final byte[] content;
+    private final File file;
+    private final long size;
+
+    /**
+     * @param content the file's content, if it is kept in memory
+     * @param file    the file holding the content, if it was spooled
+     */
+    SpooledFileParameter(String fileName, String contentType, byte[] content, File file, long size) {
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.content = content;
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * Deletes the temporary file holding the content, if any.
+     */
+    void dispose() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public boolean isFormField() {
+        return false;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] get() {
+        if (content != null) {
+            return content;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) size);
+        byte[] buffer = new byte[4096];
+        try {
+            InputStream in = getInputStream();
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the uploaded file " + fileName + ".", e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : new FileInputStream(file);
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public String getString() {
+        try {
+            return getString(ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String getString(String encoding) throws UnsupportedEncodingException {
+        return new String(get(), encoding);
+    }
+
+    @Override
+    public String toString() {
+        return fileName;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.RequestParameterMap;
+import org.apache.sling.api.wrappers.SlingHttpServletRequestWrapper;
+
+/**
+ * A request whose body was already consumed by a {@link StreamingRequestValidator}. The parameters are served from the query string and
+ * from the fields collected during the validation, instead of being parsed again from the request body. The uploaded files are only
+ * available as {@link RequestParameter}s.
+ */
+class StreamedParametersRequest extends SlingHttpServletRequestWrapper {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Map<String, String[]> parameters;
+    private final Map<String, RequestParameter[]> uploads;
+    private RequestParameterMap requestParameters;
+
+    StreamedParametersRequest(SlingHttpServletRequest request, Map<String, String[]> fields, Map<String, RequestParameter[]> uploads) {
+        super(request);
+        Map<String, String[]> parameters = parseQueryString(request.getQueryString());
+        for (Map.Entry<String, String[]> field : fields.entrySet()) {
+            parameters.put(field.getKey(), concat(parameters.get(field.getKey()), field.getValue()));
+        }
+        this.parameters = Collections.unmodifiableMap(parameters);
+        this.uploads = uploads;
+        setAttribute(SlingHttpServletRequestAF.VALUE_MAP_ATTRIBUTE, new RequestParameterValueMap(this));
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return values != null ? values[0] : null;
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = parameters.get(name);
+        return values != null ? values.clone() : null;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return parameters;
+    }
+
+    @Override
+    public RequestParameter getRequestParameter(String name) {
+        return getRequestParameterMap().getValue(name);
+    }
+
+    @Override
+    public RequestParameter[] getRequestParameters(String name) {
+        return getRequestParameterMap().getValues(name);
+    }
+
+    @Override
+    public RequestParameterMap getRequestParameterMap() {
+        if (requestParameters == null) {
+            requestParameters = new FieldParameterMap(parameters, uploads);
+        }
+        return requestParameters;
+    }
+
+    /**
+     * Parses the parameters of a query string, which are encoded in UTF-8.
+     */
+    static Map<String, String[]> parseQueryString(String queryString) {
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        if (queryString != null) {
+            for (String pair : queryString.split("&")) {
+                if (pair.length() == 0) {
+                    continue;
+                }
+                int separator = pair.indexOf('=');
+                try {
+                    String name = URLDecoder.decode(separator == -1 ? pair : pair.substring(0, separator), ENCODING);
+                    String value = separator == -1 ? "" : URLDecoder.decode(pair.substring(separator + 1), ENCODING);
+                    parameters.put(name, concat(parameters.get(name), new String[]{value}));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                } catch (IllegalArgumentException e) {
+                    // malformed pair - ignored, like the servlet containers do
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        if (first == null) {
+            return second;
+        }
+        String[] values = new String[first.length + second.length];
+        System.arraycopy(first, 0, values, 0, first.length);
+        System.arraycopy(second, 0, values, first.length, second.length);
+        return values;
+    }
+
+    private static class FieldParameterMap extends LinkedHashMap<String, RequestParameter[]> implements RequestParameterMap {
+
+        private static final long serialVersionUID = 1L;
+
+        FieldParameterMap(Map<String, String[]> parameters, Map<String, RequestParameter[]> uploads) {
+            for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+                String[] values = entry.getValue();
+                RequestParameter[] requestParameters = new RequestParameter[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    requestParameters[i] = new FieldParameter(values[i]);
+                }
+                put(entry.getKey(), requestParameters);
+            }
+            for (Map.Entry<String, RequestParameter[]> entry : uploads.entrySet()) {
+                RequestParameter[] values = get(entry.getKey());
+                if (values == null) {
+                    put(entry.getKey(), entry.getValue());
+                } else {
+                    RequestParameter[] requestParameters = new RequestParameter[values.length + entry.getValue().length];
+                    System.arraycopy(values, 0, requestParameters, 0, values.length);
+                    System.arraycopy(entry.getValue(), 0, requestParameters, values.length, entry.getValue().length);
+                    put(entry.getKey(), requestParameters);
+                }
+            }
+        }
+
+        @Override
+        public RequestParameter[] getValues(String name) {
+            return get(name);
+        }
+
+        @Override
+        public RequestParameter getValue(String name) {
+            RequestParameter[] values = get(name);
+            return values != null && values.length > 0 ? values[0] : null;
+        }
+    }
+
+    private static class FieldParameter implements RequestParameter {
+
+        private final String value;
+
+        FieldParameter(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isFormField() {
+            return true;
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public long getSize() {
+            return get().length;
+        }
+
+        @Override
+        public byte[] get() {
+            try {
+                return value.getBytes(ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(get());
+        }
+
+        @Override
+        public String getFileName() {
+            return null;
+        }
+
+        @Override
+        public String getString() {
+            return value;
+        }
+
+        @Override
+        public String getString(String encoding) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.ValidationModel;
+
+/**
+ * Validates the fields of a {@code multipart/form-data} or {@code application/x-www-form-urlencoded} request body while the body is being
+ * read, instead of letting the servlet container parse and buffer the whole body first.
+ * <p/>
+ * Each single-valued field described by the {@link ValidationModel} is validated as soon as it has been received; the values of a
+ * multiple-valued field are validated together once the whole body was read. Reading stops at the first failure or as soon as a field or
+ * the whole body exceeds the configured size limits or the number of values, so invalid or oversized requests are rejected before the rest
+ * of their body is read. Since the body cannot be read again, the text fields which were read are made available through {@link
+ * StreamingValidationResult#getFields()} and the uploaded files through {@link StreamingValidationResult#getUploads()}. Files bigger than
+ * {@value #SPOOL_THRESHOLD} bytes are spooled to temporary files, which are deleted by {@link StreamingValidationResult#dispose()}.
+ * <p/>
+ * Only the request body is inspected: parameters from the query string are not validated. Since validation models have no file type,
+ * a file upload for a property of the model is rejected rather than accepted without validating its content.
+ */
+public class StreamingRequestValidator {
+
+    /**
+     * The failure message key used for failures which concern the request as a whole, rather than a single field.
+     */
+    public static final String REQUEST_KEY = ":request";
+
+    /**
+     * Name of the field which can be used for specifying the character encoding of the following fields, as supported by Sling.
+     */
+    static final String CHARSET_FIELD = "_charset_";
+
+    private static final String FORM_URLENCODED = "application/x-www-form-urlencoded";
+    private static final String DEFAULT_CHARSET = "UTF-8";
+    private static final String RAW_CHARSET = "ISO-8859-1";
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The maximum size in bytes of an encoded field name in a {@code application/x-www-form-urlencoded} body, which is enforced
+     * regardless of the configured limits. Multipart field names are bounded by the header size limit of Commons FileUpload.
+     */
+    static final int MAX_FIELD_NAME_SIZE = 1024;
+
+    /**
+     * The size in bytes up to which uploaded files are kept in memory.
+     */
+    static final int SPOOL_THRESHOLD = 64 * 1024;
+
+    private final ValidationServiceImpl validationService;
+    private final long maxFieldSize;
+    private final long maxRequestSize;
+    private final int maxFieldValues;
+    private final int maxRequestValues;
+
+    /**
+     * @param validationService the service used for validating the fields' values
+     * @param maxFieldSize      the maximum size of a field's value in bytes, as sent by the client; a negative value disables the check
+     * @param maxRequestSize    the maximum size of the request body in bytes; a negative value disables the check
+     * @param maxFieldValues    the maximum number of values of a field, including file uploads; a negative value disables the check
+     * @param maxRequestValues  the maximum number of field values and file uploads in the request body; a negative value disables the
+     *                          check
+     */
+    public StreamingRequestValidator(ValidationServiceImpl validationService, long maxFieldSize, long maxRequestSize, int maxFieldValues,
+                                     int maxRequestValues) {
+        this.validationService = validationService;
+        this.maxFieldSize = maxFieldSize;
+        this.maxRequestSize = maxRequestSize;
+        this.maxFieldValues = maxFieldValues;
+        this.maxRequestValues = maxRequestValues;
+    }
+
+    /**
+     * Checks if the {@code request}'s body can be validated by this validator.
+     *
+     * @param request the request
+     * @return {@code true} if the request has a form or multipart body, {@code false} otherwise
+     */
+    public static boolean canValidate(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return "POST".equals(request.getMethod()) && contentType != null && (ServletFileUpload.isMultipartContent(request) ||
+                contentType.toLowerCase().startsWith(FORM_URLENCODED));
+    }
+
+    /**
+     * Reads and validates the {@code request}'s body.
+     *
+     * @param request the request; its body must not have been read yet
+     * @param model   the model with which to validate the body's fields
+     * @return the validation result, which has to be {@linkplain StreamingValidationResult#dispose() disposed} once the request was handled
+     * @throws IOException if the request body cannot be read
+     */
+    public StreamingValidationResult validate(HttpServletRequest request, ValidationModel model) throws IOException {
+        if (request == null || model == null) {
+            throw new IllegalArgumentException("StreamingRequestValidator.validate - cannot accept null parameters");
+        }
+        StreamingValidationResult result = new StreamingValidationResult();
+        if (maxRequestSize >= 0 && request.getContentLength() > maxRequestSize) {
+            result.addFailureMessage(REQUEST_KEY, "Request body exceeds the maximum size of " + maxRequestSize + " bytes.");
+            return result;
+        }
+        Map<String, ResourceProperty> properties = new HashMap<String, ResourceProperty>();
+        for (ResourceProperty property : model.getResourceProperties()) {
+            properties.put(property.getName(), property);
+        }
+        // the encoding is declared by the client, which may send one the JVM does not support
+        String charset = getSupportedCharset(request.getCharacterEncoding(), DEFAULT_CHARSET);
+        boolean complete = false;
+        boolean read = false;
+        try {
+            if (ServletFileUpload.isMultipartContent(request)) {
+                complete = readMultipart(request, charset, properties, result);
+            } else {
+                complete = readFormUrlEncoded(request, charset, properties, result);
+            }
+            read = true;
+        } finally {
+            if (!read) {
+                result.dispose();
+            }
+        }
+        if (complete) {
+            for (ResourceProperty property : properties.values()) {
+                List<String> values = result.getFieldValues(property.getName());
+                if (values == null) {
+                    result.addFailureMessage(property.getName(), "Missing required property.");
+                } else if (property.isMultiple()) {
+                    validationService.validatePropertyValues(result, property.getName(), values.toArray(new String[values.size()]),
+                            property.getType(), property.getValidators());
+                }
+            }
+        }
+        result.setComplete(complete);
+        return result;
+    }
+
+    private boolean readMultipart(HttpServletRequest request, String charset, Map<String, ResourceProperty> properties,
+                                  StreamingValidationResult result) throws IOException {
+        ServletFileUpload upload = new ServletFileUpload();
+        // the part headers would otherwise be decoded with the encoding declared by the request
+        upload.setHeaderEncoding(charset);
+        if (maxRequestSize >= 0) {
+            upload.setSizeMax(maxRequestSize);
+        }
+        try {
+            FileItemIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                String name = item.getFieldName();
+                InputStream in = item.openStream();
+                try {
+                    if (item.isFormField()) {
+                        ByteArrayOutputStream value = new ByteArrayOutputStream();
+                        if (!copy(in, value, name, result)) {
+                            return false;
+                        }
+                        String fieldCharset = getCharset(item.getContentType(), charset);
+                        String fieldValue = value.toString(fieldCharset);
+                        if (!onField(name, fieldValue, properties, result)) {
+                            return false;
+                        }
+                        if (CHARSET_FIELD.equals(name)) {
+                            charset = getSupportedCharset(fieldValue, charset);
+                        }
+                    } else if (properties.containsKey(name)) {
+                        result.addFailureMessage(name, "Property was expected as a form field, not as a file upload.");
+                        return false;
+                    } else if (!spool(item, in, result)) {
+                        return false;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (FileUploadBase.SizeLimitExceededException e) {
+            result.addFailureMessage(REQUEST_KEY, "Request body exceeds the maximum size of " + maxRequestSize + " bytes.");
+            return false;
+        } catch (FileUploadBase.FileUploadIOException e) {
+            if (e.getCause() instanceof FileUploadBase.SizeLimitExceededException) {
+                result.addFailureMessage(REQUEST_KEY, "Request body exceeds the maximum size of " + maxRequestSize + " bytes.");
+                return false;
+            }
+            throw e;
+        } catch (FileUploadException e) {
+            throw new IOException(e);
+        }
+        return true;
+    }
+
+    private boolean readFormUrlEncoded(HttpServletRequest request, String charset, Map<String, ResourceProperty> properties,
+                                       StreamingValidationResult result) throws IOException {
+        InputStream in = new BufferedInputStream(request.getInputStream(), BUFFER_SIZE);
+        ByteArrayOutputStream name = new ByteArrayOutputStream();
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        ByteArrayOutputStream current = name;
+        long read = 0;
+        int b;
+        while (true) {
+            b = in.read();
+            if (b == -1 || b == '&') {
+                if (name.size() > 0 || value.size() > 0) {
+                    String fieldName;
+                    String fieldValue;
+                    try {
+                        fieldName = URLDecoder.decode(name.toString(RAW_CHARSET), charset);
+                        fieldValue = URLDecoder.decode(value.toString(RAW_CHARSET), charset);
+                    } catch (IllegalArgumentException e) {
+                        result.addFailureMessage(REQUEST_KEY, "Request body contains a malformed field.");
+                        return false;
+                    }
+                    if (!onField(fieldName, fieldValue, properties, result)) {
+                        return false;
+                    }
+                    if (CHARSET_FIELD.equals(fieldName)) {
+                        charset = getSupportedCharset(fieldValue, charset);
+                    }
+                }
+                if (b == -1) {
+                    return true;
+                }
+                name.reset();
+                value.reset();
+                current = name;
+            } else if (b == '=' && current == name) {
+                current = value;
+            } else {
+                current.write(b);
+                if (current == name && name.size() > MAX_FIELD_NAME_SIZE) {
+                    result.addFailureMessage(REQUEST_KEY, "Request body contains a field name exceeding the maximum size of " +
+                            MAX_FIELD_NAME_SIZE + " bytes.");
+                    return false;
+                }
+                if (maxFieldSize >= 0 && current == value && value.size() > maxFieldSize) {
+                    String fieldName;
+                    try {
+                        fieldName = URLDecoder.decode(name.toString(RAW_CHARSET), charset);
+                    } catch (IllegalArgumentException e) {
+                        result.addFailureMessage(REQUEST_KEY, "Request body contains a malformed field.");
+                        return false;
+                    }
+                    result.addFailureMessage(fieldName, "Property value exceeds the maximum size of " + maxFieldSize + " bytes.");
+                    return false;
+                }
+            }
+            if (maxRequestSize >= 0 && ++read > maxRequestSize) {
+                result.addFailureMessage(REQUEST_KEY, "Request body exceeds the maximum size of " + maxRequestSize + " bytes.");
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Handles a field which was read completely.
+     *
+     * @return {@code true} if reading the request body should continue, {@code false} if the validation failed
+     */
+    private boolean onField(String name, String value, Map<String, ResourceProperty> properties, StreamingValidationResult result) {
+        int count = result.addField(name, value);
+        if (!checkValueCount(name, count, result)) {
+            return false;
+        }
+        ResourceProperty property = properties.get(name);
+        if (property != null && !property.isMultiple()) {
+            if (count > 1) {
+                result.addFailureMessage(name, "Expected single-valued property.");
+            } else {
+                validationService.validatePropertyValue(result, name, value, property.getType(), property.getValidators());
+            }
+        }
+        return result.isValid();
+    }
+
+    /**
+     * Enforces the maximum number of values of a field and of the whole request body.
+     *
+     * @param count the number of values of the field
+     * @return {@code true} if reading the request body should continue, {@code false} if there are too many values
+     */
+    private boolean checkValueCount(String name, int count, StreamingValidationResult result) {
+        if (maxFieldValues >= 0 && count > maxFieldValues) {
+            result.addFailureMessage(name, "Property exceeds the maximum number of " + maxFieldValues + " values.");
+            return false;
+        }
+        if (maxRequestValues >= 0 && result.getValueCount() > maxRequestValues) {
+            result.addFailureMessage(REQUEST_KEY, "Request body exceeds the maximum number of " + maxRequestValues + " values.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies a field's content while enforcing the maximum field size.
+     *
+     * @param out the stream to copy to
+     * @return {@code true} if the content was copied, {@code false} if the field is too big
+     */
+    private boolean copy(InputStream in, ByteArrayOutputStream out, String name, StreamingValidationResult result) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            size += read;
+            if (maxFieldSize >= 0 && size > maxFieldSize) {
+                result.addFailureMessage(name, "Property value exceeds the maximum size of " + maxFieldSize + " bytes.");
+                return false;
+            }
+            out.write(buffer, 0, read);
+        }
+        return true;
+    }
+
+    /**
+     * Reads an uploaded file while enforcing the maximum field size, keeping it in memory or spooling it to a temporary file.
+     *
+     * @return {@code true} if the file was read, {@code false} if it is too big or there are too many values
+     */
+    private boolean spool(FileItemStream item, InputStream in, StreamingValidationResult result) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        OutputStream out = content;
+        File file = null;
+        boolean spooled = false;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (maxFieldSize >= 0 && size > maxFieldSize) {
+                    result.addFailureMessage(item.getFieldName(), "Property value exceeds the maximum size of " + maxFieldSize + " bytes.");
+                    return false;
+                }
+                if (file == null && size > SPOOL_THRESHOLD) {
+                    file = File.createTempFile("validation-upload", ".tmp");
+                    out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+                    content.writeTo(out);
+                    content = null;
+                }
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            int count = result.addUpload(item.getFieldName(), new SpooledFileParameter(item.getName(), item.getContentType(),
+                    content != null ? content.toByteArray() : null, file, size));
+            spooled = true;
+            return checkValueCount(item.getFieldName(), count, result);
+        } finally {
+            if (!spooled && file != null) {
+                out.close();
+                file.delete();
+            }
+        }
+    }
+
+    private static String getCharset(String contentType, String defaultCharset) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.toLowerCase().startsWith("charset=")) {
+                    return getSupportedCharset(parameter.substring("charset=".length()).replace("\"", ""), defaultCharset);
+                }
+            }
+        }
+        return defaultCharset;
+    }
+
+    private static String getSupportedCharset(String charset, String defaultCharset) {
+        try {
+            if (charset != null && Charset.isSupported(charset)) {
+                return charset;
+            }
+        } catch (IllegalArgumentException e) {
+            // illegal charset name
+        }
+        return defaultCharset;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.request.RequestParameter;
+
+/**
+ * The {@link org.apache.sling.validation.api.ValidationResult} of a {@link StreamingRequestValidator}. Besides the failure messages it
+ * tells if the request body was read completely and provides the fields and files read until the validation finished, since the request
+ * body cannot be read again. The files may be spooled to disk and have to be released through {@link #dispose()}.
+ */
+public class StreamingValidationResult extends ValidationResultImpl {
+
+    private final Map<String, List<String>> fieldValues = new LinkedHashMap<String, List<String>>();
+    private final Map<String, List<RequestParameter>> uploadValues = new LinkedHashMap<String, List<RequestParameter>>();
+    private Map<String, String[]> fields;
+    private Map<String, RequestParameter[]> uploads;
+    private int valueCount;
+    private boolean complete;
+
+    /**
+     * Returns {@code true} if the whole request body was read, {@code false} if the validation was aborted before reaching its end.
+     *
+     * @return {@code true} if the request body was read completely, {@code false} otherwise
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the text fields read from the request body, in the order in which they were received. File uploads are provided by {@link
+     * #getUploads()}.
+     *
+     * @return the fields read from the request body
+     */
+    public Map<String, String[]> getFields() {
+        if (fields == null) {
+            fields = new LinkedHashMap<String, String[]>();
+            for (Map.Entry<String, List<String>> entry : fieldValues.entrySet()) {
+                fields.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Stores a field read from the request body.
+     *
+     * @return the number of values of the field, including the new one
+     */
+    int addField(String name, String value) {
+        List<String> values = fieldValues.get(name);
+        if (values == null) {
+            values = new ArrayList<String>(1);
+            fieldValues.put(name, values);
+        }
+        values.add(value);
+        valueCount++;
+        fields = null;
+        return values.size();
+    }
+
+    /**
+     * Returns the values of a field read from the request body, or {@code null} if the field was not read.
+     */
+    List<String> getFieldValues(String name) {
+        return fieldValues.get(name);
+    }
+
+    /**
+     * Returns the number of field values and files read from the request body.
+     */
+    int getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the files uploaded through the request body, in the order in which they were received. Their content is only available
+     * until {@link #dispose()} is called.
+     *
+     * @return the files read from the request body
+     */
+    public Map<String, RequestParameter[]> getUploads() {
+        if (uploads == null) {
+            uploads = new LinkedHashMap<String, RequestParameter[]>();
+            for (Map.Entry<String, List<RequestParameter>> entry : uploadValues.entrySet()) {
+                uploads.put(entry.getKey(), entry.getValue().toArray(new RequestParameter[entry.getValue().size()]));
+            }
+        }
+        return uploads;
+    }
+
+    /**
+     * Stores a file read from the request body.
+     *
+     * @return the number of files uploaded for the field, including the new one
+     */
+    int addUpload(String name, SpooledFileParameter upload) {
+        List<RequestParameter> values = uploadValues.get(name);
+        if (values == null) {
+            values = new ArrayList<RequestParameter>(1);
+            uploadValues.put(name, values);
+        }
+        values.add(upload);
+        valueCount++;
+        uploads = null;
+        return values.size();
+    }
+
+    /**
+     * Deletes the temporary files holding the content of the uploaded files.
+     */
+    public void dispose() {
+        for (List<RequestParameter> values : uploadValues.values()) {
+            for (RequestParameter value : values) {
+                ((SpooledFileParameter) value).dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.impl.util.JsonArrayReader;
+import org.apache.sling.validation.json.ValidationResultSerializer;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates a batch of property sets in a single request. The request body is a JSON array of entries:
+ * <pre>
+ * [{"resourceType":"...","path":"...","properties":{"name":"value","multi":["value1","value2"],...}},...]
+ * </pre>
+ * The response is a JSON array with one result per entry, in the order of the entries:
+ * <pre>
+ * [{"valid":true,"messages":{}},{"valid":false,"messages":{"property":["message",...]}},...]
+ * </pre>
+ * The entries are read, validated and answered one at a time, so neither the request nor the response is held in memory. The validation
+ * models are looked up once per resource type and path for the whole batch. If the body becomes malformed or the batch is too large after
+ * some results were already sent, the array is closed with an additional result reporting the problem under the {@value
+ * StreamingRequestValidator#REQUEST_KEY} key.
+ * <p/>
+ * The servlet is disabled by default and requires an authenticated user, since each entry may trigger a validation model lookup.
+ */
+@SlingServlet(paths = ValidationBatchServlet.PATH, methods = "POST", metatype = true, label = "%validationbatchservlet.label",
+        description = "%validationbatchservlet.description")
+public class ValidationBatchServlet extends SlingAllMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationBatchServlet.class);
+
+    static final String PATH = "/bin/sling/validation/batch";
+
+    @Property(value = "+" + PATH, propertyPrivate = true)
+    static final String PROP_AUTH_REQUIREMENTS = "sling.auth.requirements";
+
+    @Property(boolValue = false)
+    static final String PROP_ENABLED = "validation.batch.enabled";
+
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+    @Property(intValue = DEFAULT_MAX_ENTRIES)
+    static final String PROP_MAX_ENTRIES = "validation.batch.max.entries";
+
+    static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+    @Property(intValue = DEFAULT_MAX_ENTRY_SIZE)
+    static final String PROP_MAX_ENTRY_SIZE = "validation.batch.max.entry.size";
+
+    static final String RESOURCE_TYPE = "resourceType";
+    static final String PATH_KEY = "path";
+    static final String PROPERTIES = "properties";
+
+    private static final ValidationResultSerializer SERIALIZER = new ValidationResultSerializer("valid", "messages");
+
+    @Reference
+    private ValidationService validationService = null;
+
+    private boolean enabled;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+    @Override
+    protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+        if (!enabled) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        JsonArrayReader entries = new JsonArrayReader(request.getReader(), maxEntrySize);
+        try {
+            entries.start();
+        } catch (JSONException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        Writer writer = response.getWriter();
+        Map<String, ValidationModel> models = new HashMap<String, ValidationModel>();
+        writer.write('[');
+        int count = 0;
+        try {
+            JSONObject entry;
+            while ((entry = entries.next()) != null) {
+                if (count > 0) {
+                    writer.write(',');
+                }
+                if (count == maxEntries) {
+                    String message = "The batch exceeds the maximum number of " + maxEntries + " entries.";
+                    SERIALIZER.write(failure(StreamingRequestValidator.REQUEST_KEY, message), writer);
+                    break;
+                }
+                SERIALIZER.write(validate(entry, models), writer);
+                count++;
+            }
+        } catch (JSONException e) {
+            LOG.debug("Malformed batch validation request.", e);
+            if (count > 0) {
+                writer.write(',');
+            }
+            SERIALIZER.write(failure(StreamingRequestValidator.REQUEST_KEY, "Malformed request: " + e.getMessage()), writer);
+        }
+        writer.write(']');
+        writer.flush();
+    }
+
+    // OSGi ################################################################################################################################
+    @SuppressWarnings("unused")
+    protected void activate(ComponentContext componentContext) {
+        enabled = PropertiesUtil.toBoolean(componentContext.getProperties().get(PROP_ENABLED), false);
+        maxEntries = PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_MAX_ENTRIES), DEFAULT_MAX_ENTRIES);
+        maxEntrySize = PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_MAX_ENTRY_SIZE), DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    private ValidationResult validate(JSONObject entry, Map<String, ValidationModel> models) throws JSONException {
+        String resourceType = entry.optString(RESOURCE_TYPE, null);
+        if (resourceType == null || "".equals(resourceType)) {
+            return failure(RESOURCE_TYPE, "Missing resource type.");
+        }
+        String path = entry.optString(PATH_KEY, "");
+        String key = resourceType + '\n' + path;
+        ValidationModel model;
+        if (models.containsKey(key)) {
+            model = models.get(key);
+        } else {
+            model = validationService.getValidationModel(resourceType, path);
+            models.put(key, model);
+        }
+        if (model == null) {
+            return failure(RESOURCE_TYPE, "No validation model found for resource type " + resourceType + " and path " + path + ".");
+        }
+        return validationService.validate(toValueMap(entry.optJSONObject(PROPERTIES)), model);
+    }
+
+    /**
+     * Converts the properties of an entry to a {@link ValueMap}. Arrays become multi-valued properties; {@code null} values and nested
+     * objects are ignored.
+     */
+    private static ValueMap toValueMap(JSONObject properties) throws JSONException {
+        Map<String, Object> map = new HashMap<String, Object>();
+        if (properties != null) {
+            for (Iterator<String> keys = properties.keys(); keys.hasNext(); ) {
+                String name = keys.next();
+                Object value = properties.get(name);
+                if (value instanceof JSONArray) {
+                    JSONArray array = (JSONArray) value;
+                    Object[] values = new Object[array.length()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = array.get(i);
+                    }
+                    map.put(name, values);
+                } else if (value != null && value != JSONObject.NULL && !(value instanceof JSONObject)) {
+                    map.put(name, value);
+                }
+            }
+        }
+        return new ValueMapDecorator(map);
+    }
+
+    private static ValidationResult failure(String key, String message) {
+        ValidationResultImpl result = new ValidationResultImpl();
+        result.addFailureMessage(key, message);
+        return result;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingFilter;
+import org.apache.felix.scr.annotations.sling.SlingFilterScope;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.json.ValidationResultSerializer;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates {@code POST} requests against the validation model of the targeted resource type before any servlet is resolved, so that
+ * servlets don't have to look up the model and validate the request parameters themselves. Invalid requests are answered with a JSON
+ * error response:
+ * <pre>
+ * {"success":false,"messages":{"property":["message",...],...}}
+ * </pre>
+ * The resource type is read from the {@code sling:resourceType} request parameter and falls back to the type of the addressed resource.
+ * In streaming mode the request body is validated while it is read, using a {@link StreamingRequestValidator}; since the body is not read
+ * before the model is resolved, the {@code sling:resourceType} parameter is only read from the query string in this mode. Requests
+ * creating a resource, whose addressed resource does not exist yet, usually send its type in the body only: unless the query string has
+ * the type, they are validated as in the non-streaming mode, with their body parsed by the servlet container.
+ * <p/>
+ * The filter is disabled by default.
+ */
+@SlingFilter(scope = SlingFilterScope.REQUEST, order = 0, metatype = true, label = "%validationfilter.label",
+        description = "%validationfilter.description")
+public class ValidationFilter implements Filter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationFilter.class);
+
+    @Property(boolValue = false)
+    static final String PROP_ENABLED = "validation.filter.enabled";
+
+    @Property(unbounded = PropertyUnbounded.ARRAY)
+    static final String PROP_RESOURCE_TYPES = "validation.filter.resource.types";
+
+    @Property(unbounded = PropertyUnbounded.ARRAY)
+    static final String PROP_PATHS = "validation.filter.paths";
+
+    static final int DEFAULT_STATUS = HttpServletResponse.SC_BAD_REQUEST;
+    @Property(intValue = DEFAULT_STATUS)
+    static final String PROP_STATUS = "validation.filter.status";
+
+    @Property(boolValue = false)
+    static final String PROP_STREAMING = "validation.filter.streaming";
+
+    static final long DEFAULT_MAX_FIELD_SIZE = 1024 * 1024;
+    @Property(longValue = DEFAULT_MAX_FIELD_SIZE)
+    static final String PROP_MAX_FIELD_SIZE = "validation.filter.max.field.size";
+
+    static final long DEFAULT_MAX_REQUEST_SIZE = -1;
+    @Property(longValue = DEFAULT_MAX_REQUEST_SIZE)
+    static final String PROP_MAX_REQUEST_SIZE = "validation.filter.max.request.size";
+
+    static final int DEFAULT_MAX_FIELD_VALUES = 1000;
+    @Property(intValue = DEFAULT_MAX_FIELD_VALUES)
+    static final String PROP_MAX_FIELD_VALUES = "validation.filter.max.field.values";
+
+    static final int DEFAULT_MAX_REQUEST_VALUES = 10000;
+    @Property(intValue = DEFAULT_MAX_REQUEST_VALUES)
+    static final String PROP_MAX_REQUEST_VALUES = "validation.filter.max.request.values";
+
+    static final int DEFAULT_MODEL_CACHE_SIZE = 1000;
+    @Property(intValue = DEFAULT_MODEL_CACHE_SIZE)
+    static final String PROP_MODEL_CACHE_SIZE = "validation.filter.model.cache.size";
+
+    static final String RESOURCE_TYPE_PARAMETER = "sling:resourceType";
+    static final String CONTENT_TYPE = "application/json";
+    static final String ENCODING = "UTF-8";
+    private static final ValidationResultSerializer SERIALIZER = new ValidationResultSerializer("success", "messages");
+
+    @Reference
+    private ValidationService validationService = null;
+
+    private boolean enabled;
+    private Pattern[] resourceTypePatterns;
+    private Pattern[] pathPatterns;
+    private int status;
+    private StreamingRequestValidator streamingValidator;
+    private CachingModelResolver modelResolver;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // configured through OSGi
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!enabled || !(request instanceof SlingHttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        String resourcePath = slingRequest.getRequestPathInfo().getResourcePath();
+        if (!"POST".equals(slingRequest.getMethod()) || !matches(pathPatterns, resourcePath)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String streamedResourceType = streamingValidator != null && StreamingRequestValidator.canValidate(slingRequest) ?
+                getStreamedResourceType(slingRequest) : null;
+        if (streamedResourceType != null) {
+            ValidationModel model = getValidationModel(streamedResourceType, resourcePath);
+            if (model != null) {
+                StreamingValidationResult result = streamingValidator.validate(slingRequest, model);
+                try {
+                    if (result.isValid()) {
+                        chain.doFilter(new StreamedParametersRequest(slingRequest, result.getFields(), result.getUploads()), response);
+                    } else {
+                        reject((HttpServletResponse) response, result);
+                    }
+                } finally {
+                    result.dispose();
+                }
+                return;
+            }
+        } else {
+            ValueMap parameters = slingRequest.adaptTo(ValueMap.class);
+            String resourceType = parameters != null ? parameters.get(RESOURCE_TYPE_PARAMETER, String.class) : null;
+            if (resourceType == null || "".equals(resourceType)) {
+                resourceType = getResourceType(slingRequest.getResource());
+            }
+            ValidationModel model = getValidationModel(resourceType, resourcePath);
+            if (model != null) {
+                ValidationResult result = validationService.validate(parameters, model);
+                if (!result.isValid()) {
+                    reject((HttpServletResponse) response, result);
+                    return;
+                }
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+        // configured through OSGi
+    }
+
+    // OSGi ################################################################################################################################
+    @SuppressWarnings("unused")
+    protected void activate(ComponentContext componentContext) {
+        Dictionary<?, ?> properties = componentContext.getProperties();
+        enabled = PropertiesUtil.toBoolean(properties.get(PROP_ENABLED), false);
+        resourceTypePatterns = compile(PropertiesUtil.toStringArray(properties.get(PROP_RESOURCE_TYPES), new String[0]));
+        pathPatterns = compile(PropertiesUtil.toStringArray(properties.get(PROP_PATHS), new String[0]));
+        status = PropertiesUtil.toInteger(properties.get(PROP_STATUS), DEFAULT_STATUS);
+        if (PropertiesUtil.toBoolean(properties.get(PROP_STREAMING), false)) {
+            long maxFieldSize = PropertiesUtil.toLong(properties.get(PROP_MAX_FIELD_SIZE), DEFAULT_MAX_FIELD_SIZE);
+            long maxRequestSize = PropertiesUtil.toLong(properties.get(PROP_MAX_REQUEST_SIZE), DEFAULT_MAX_REQUEST_SIZE);
+            int maxFieldValues = PropertiesUtil.toInteger(properties.get(PROP_MAX_FIELD_VALUES), DEFAULT_MAX_FIELD_VALUES);
+            int maxRequestValues = PropertiesUtil.toInteger(properties.get(PROP_MAX_REQUEST_VALUES), DEFAULT_MAX_REQUEST_VALUES);
+            if (validationService instanceof ValidationServiceImpl) {
+                streamingValidator = new StreamingRequestValidator((ValidationServiceImpl) validationService, maxFieldSize, maxRequestSize,
+                        maxFieldValues, maxRequestValues);
+            } else {
+                LOG.warn("Streaming validation is only supported by the default validation service implementation.");
+            }
+        }
+        int modelCacheSize = PropertiesUtil.toInteger(properties.get(PROP_MODEL_CACHE_SIZE), DEFAULT_MODEL_CACHE_SIZE);
+        modelResolver = new CachingModelResolver(validationService, modelCacheSize);
+    }
+
+    @SuppressWarnings("unused")
+    protected void deactivate(ComponentContext componentContext) {
+        enabled = false;
+        streamingValidator = null;
+        modelResolver = null;
+    }
+
+    /**
+     * Resolves the validation model for a resource type and path, caching the outcome - including the absence of a model - until the
+     * validation service discards its own models.
+     *
+     * @return the model or {@code null} if there is none, or the resource type is not handled by this filter
+     */
+    ValidationModel getValidationModel(String resourceType, String resourcePath) {
+        if (resourceType == null || "".equals(resourceType) || !matches(resourceTypePatterns, resourceType)) {
+            return null;
+        }
+        return modelResolver.getValidationModel(resourceType, resourcePath);
+    }
+
+    private void reject(HttpServletResponse response, ValidationResult result) throws IOException {
+        response.setStatus(status);
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding(ENCODING);
+        SERIALIZER.write(result, response.getOutputStream());
+    }
+
+    private static String getResourceType(Resource resource) {
+        return resource != null ? resource.getResourceType() : null;
+    }
+
+    /**
+     * Returns the resource type of a request which is validated while its body is read: the {@code sling:resourceType} parameter of the
+     * query string or the type of the addressed resource.
+     *
+     * @return the resource type, or {@code null} if the addressed resource does not exist and the query string does not have the type
+     */
+    private static String getStreamedResourceType(SlingHttpServletRequest request) {
+        String[] resourceTypes = StreamedParametersRequest.parseQueryString(request.getQueryString()).get(RESOURCE_TYPE_PARAMETER);
+        if (resourceTypes != null && !"".equals(resourceTypes[0])) {
+            return resourceTypes[0];
+        }
+        Resource resource = request.getResource();
+        return resource != null && !ResourceUtil.isNonExistingResource(resource) ? resource.getResourceType() : null;
+    }
+
+    private static boolean matches(Pattern[] patterns, String value) {
+        if (patterns.length == 0) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern[] compile(String[] expressions) {
+        List<Pattern> patterns = new ArrayList<Pattern>(expressions.length);
+        for (String expression : expressions) {
+            if (expression != null && !"".equals(expression.trim())) {
+                try {
+                    patterns.add(Pattern.compile(expression.trim()));
+                } catch (PatternSyntaxException e) {
+                    LOG.error("Ignoring invalid pattern {}.", expression, e);
+                }
+            }
+        }
+        return patterns.toArray(new Pattern[patterns.size()]);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.util.Trie;
+
+/**
+ * Gives access to the validation model cache of a {@link ValidationServiceImpl}, for JMX and the web console.
+ * <p/>
+ * The heap estimate assumes a 64-bit JVM with compressed references and counts the cached models, their strings and collections and the
+ * nodes of the tries indexing them by applicable path; the validators are shared services and are not counted.
+ */
+public class ValidationModelCache implements ValidationModelCacheMBean {
+
+    /**
+     * The JMX object name under which the cache is registered.
+     */
+    public static final String OBJECT_NAME = "org.apache.sling.validation:type=ValidationModelCache";
+
+    static final String[] ITEMS = {"resourceType", "applicablePath", "modelPath", "properties", "children", "estimatedHeapSize"};
+
+    private static final OpenType<?>[] ITEM_TYPES = {SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER,
+            SimpleType.INTEGER, SimpleType.LONG};
+
+    private static final int OBJECT = 16;
+    private static final int REFERENCE = 4;
+    private static final int MAP = 48 + 16 * REFERENCE + 16;
+    private static final int MAP_ENTRY = 32;
+    private static final int TRIE_NODE = 32 + 16 + MAP + MAP_ENTRY;
+
+    private final ValidationServiceImpl validationService;
+
+    ValidationModelCache(ValidationServiceImpl validationService) {
+        this.validationService = validationService;
+    }
+
+    @Override
+    public long getHits() {
+        return validationService.getModelCacheHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return validationService.getModelCacheMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    @Override
+    public long getLoads() {
+        return validationService.getModelLoads();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return validationService.getModelInvalidations();
+    }
+
+    @Override
+    public int getResourceTypeCount() {
+        return validationService.getValidationModelsCache().size();
+    }
+
+    @Override
+    public int getModelCount() {
+        Set<JCRValidationModel> models = Collections.newSetFromMap(new IdentityHashMap<JCRValidationModel, Boolean>());
+        for (Entry entry : getEntries()) {
+            models.add(entry.getModel());
+        }
+        return models.size();
+    }
+
+    @Override
+    public long getEstimatedHeapSize() {
+        long size = MAP;
+        Set<JCRValidationModel> models = Collections.newSetFromMap(new IdentityHashMap<JCRValidationModel, Boolean>());
+        for (Map.Entry<String, Trie<JCRValidationModel>> resourceType : validationService.getValidationModelsCache().entrySet()) {
+            size += MAP_ENTRY + estimate(resourceType.getKey()) + (long) resourceType.getValue().getNodeCount() * TRIE_NODE;
+            for (JCRValidationModel model : resourceType.getValue().getElements().values()) {
+                if (models.add(model)) {
+                    size += estimate(model);
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean evict(String resourceType) {
+        return validationService.evictValidationModels(resourceType);
+    }
+
+    @Override
+    public void evictAll() {
+        validationService.evictValidationModels();
+    }
+
+    @Override
+    public int preload(String resourceType) {
+        return validationService.preloadValidationModels(resourceType);
+    }
+
+    @Override
+    public TabularData dump() throws OpenDataException {
+        CompositeType rowType = new CompositeType("ValidationModel", "Cached validation model", ITEMS, ITEMS, ITEM_TYPES);
+        TabularDataSupport data = new TabularDataSupport(new TabularType("ValidationModels", "Cached validation models", rowType, new
+                String[]{"resourceType", "applicablePath"}));
+        for (Entry entry : getEntries()) {
+            data.put(new CompositeDataSupport(rowType, ITEMS, new Object[]{entry.getResourceType(), entry.getApplicablePath(), entry
+                    .getModel().getJcrPath(), entry.getModel().getResourceProperties().size(), entry.getModel().getChildren().size(),
+                    estimate(entry.getModel())}));
+        }
+        return data;
+    }
+
+    /**
+     * Returns the cached models, sorted by resource type and applicable path.
+     */
+    List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>();
+        Map<String, Trie<JCRValidationModel>> cache = new TreeMap<String, Trie<JCRValidationModel>>(validationService
+                .getValidationModelsCache());
+        for (Map.Entry<String, Trie<JCRValidationModel>> resourceType : cache.entrySet()) {
+            for (Map.Entry<String, JCRValidationModel> model : resourceType.getValue().getElements().entrySet()) {
+                entries.add(new Entry(resourceType.getKey(), model.getKey(), model.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    static long estimate(JCRValidationModel model) {
+        long size = OBJECT + 5 * REFERENCE + estimate(model.getJcrPath()) + estimate(model.getValidatedResourceType());
+        String[] applicablePaths = model.getApplicablePaths();
+        if (applicablePaths != null) {
+            size += OBJECT + applicablePaths.length * REFERENCE;
+            for (String applicablePath : applicablePaths) {
+                size += estimate(applicablePath);
+            }
+        }
+        size += estimate(model.getResourceProperties());
+        if (model.getChildren() != null) {
+            size += OBJECT + 16 * REFERENCE;
+            for (ChildResource child : model.getChildren()) {
+                size += OBJECT + 2 * REFERENCE + estimate(child.getName()) + estimate(child.getProperties());
+            }
+        }
+        return size;
+    }
+
+    private static long estimate(Collection<ResourceProperty> properties) {
+        if (properties == null) {
+            return 0;
+        }
+        long size = MAP;
+        for (ResourceProperty property : properties) {
+            size += MAP_ENTRY + OBJECT + 4 * REFERENCE + estimate(property.getName()) + MAP;
+            for (Map.Entry<Validator, Map<String, String>> validator : property.getValidators().entrySet()) {
+                size += MAP_ENTRY;
+                if (validator.getValue() != null) {
+                    size += MAP;
+                    for (Map.Entry<String, String> argument : validator.getValue().entrySet()) {
+                        size += MAP_ENTRY + estimate(argument.getKey()) + estimate(argument.getValue());
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long estimate(String string) {
+        return string != null ? OBJECT + 8 + OBJECT + 2 * string.length() : 0;
+    }
+
+    /**
+     * A cached model with the resource type and applicable path under which it is cached.
+     */
+    static final class Entry {
+
+        private final String resourceType;
+        private final String applicablePath;
+        private final JCRValidationModel model;
+
+        Entry(String resourceType, String applicablePath, JCRValidationModel model) {
+            this.resourceType = resourceType;
+            this.applicablePath = applicablePath;
+            this.model = model;
+        }
+
+        String getResourceType() {
+            return resourceType;
+        }
+
+        String getApplicablePath() {
+            return applicablePath;
+        }
+
+        JCRValidationModel getModel() {
+            return model;
+        }
+    }
+}
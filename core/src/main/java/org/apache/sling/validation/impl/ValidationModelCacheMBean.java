@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Exposes the statistics of the validation model cache over JMX and allows evicting and preloading the models of a resource type.
+ */
+public interface ValidationModelCacheMBean {
+
+    /**
+     * The number of model lookups answered from the cache.
+     */
+    long getHits();
+
+    /**
+     * The number of model lookups which had to query the repository, including the lookups for which no model exists.
+     */
+    long getMisses();
+
+    /**
+     * The ratio of hits to lookups, or {@code 0} if there were no lookups.
+     */
+    double getHitRatio();
+
+    /**
+     * The number of repository queries for the models of a resource type.
+     */
+    long getLoads();
+
+    /**
+     * The number of times cached models were discarded, either because models changed in the repository or by an eviction.
+     */
+    long getInvalidations();
+
+    /**
+     * The number of resource types with cached models.
+     */
+    int getResourceTypeCount();
+
+    /**
+     * The number of distinct cached models.
+     */
+    int getModelCount();
+
+    /**
+     * A rough estimate of the heap used by the cached models, in bytes.
+     */
+    long getEstimatedHeapSize();
+
+    /**
+     * Discards the cached models of a resource type.
+     *
+     * @return {@code true} if models were cached for the resource type
+     */
+    boolean evict(String resourceType);
+
+    /**
+     * Discards all cached models.
+     */
+    void evictAll();
+
+    /**
+     * Loads the models of a resource type, replacing the cached ones.
+     *
+     * @return the number of models found
+     */
+    int preload(String resourceType);
+
+    /**
+     * Lists the cached models: one row per resource type and applicable path, with the model's path, number of properties, number of
+     * children and estimated heap size.
+     */
+    TabularData dump() throws OpenDataException;
+}
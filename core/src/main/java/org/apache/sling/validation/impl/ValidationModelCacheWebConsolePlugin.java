@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.validation.api.ValidationService;
+
+/**
+ * Felix web console plugin showing the statistics and content of the validation model cache, with forms for evicting and preloading the
+ * models of a resource type.
+ */
+@Component
+@Service(Servlet.class)
+@Properties({
+    @Property(name = "felix.webconsole.label", value = ValidationModelCacheWebConsolePlugin.LABEL),
+    @Property(name = "felix.webconsole.title", value = "Validation Models"),
+    @Property(name = "felix.webconsole.category", value = "Sling"),
+    @Property(name = "service.description", value = "Sling Validation Model Cache Web Console Plugin")
+})
+public class ValidationModelCacheWebConsolePlugin extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String LABEL = "validationmodels";
+    static final String ACTION_PARAMETER = "action";
+    static final String RESOURCE_TYPE_PARAMETER = "resourceType";
+
+    @Reference
+    private ValidationService validationService = null;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("text/html");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter out = response.getWriter();
+        ValidationModelCache cache = getModelCache();
+        if (cache == null) {
+            out.println("<p class=\"statline\">The validation model cache is only available with the default validation service.</p>");
+            return;
+        }
+        NumberFormat percent = NumberFormat.getPercentInstance(Locale.ENGLISH);
+        percent.setMaximumFractionDigits(1);
+        out.println("<table class=\"nicetable\">");
+        out.println("<thead><tr><th colspan=\"2\">Validation Model Cache</th></tr></thead><tbody>");
+        row(out, "Hits", String.valueOf(cache.getHits()));
+        row(out, "Misses", String.valueOf(cache.getMisses()));
+        row(out, "Hit ratio", percent.format(cache.getHitRatio()));
+        row(out, "Loads", String.valueOf(cache.getLoads()));
+        row(out, "Invalidations", String.valueOf(cache.getInvalidations()));
+        row(out, "Resource types", String.valueOf(cache.getResourceTypeCount()));
+        row(out, "Models", String.valueOf(cache.getModelCount()));
+        row(out, "Estimated heap size", cache.getEstimatedHeapSize() / 1024 + " KB");
+        out.println("</tbody></table>");
+
+        out.println("<form method=\"post\" action=\"" + LABEL + "\"><p>");
+        out.println("<input type=\"text\" name=\"" + RESOURCE_TYPE_PARAMETER + "\" size=\"60\" placeholder=\"Resource type\"/>");
+        out.println("<button type=\"submit\" name=\"" + ACTION_PARAMETER + "\" value=\"preload\">Preload</button>");
+        out.println("<button type=\"submit\" name=\"" + ACTION_PARAMETER + "\" value=\"evict\">Evict</button>");
+        out.println("<button type=\"submit\" name=\"" + ACTION_PARAMETER + "\" value=\"evictAll\">Evict all</button>");
+        out.println("</p></form>");
+
+        out.println("<table class=\"nicetable\">");
+        out.println("<thead><tr><th>Resource type</th><th>Applicable path</th><th>Model</th><th>Properties</th><th>Children</th>" +
+                "<th>Estimated size</th></tr></thead><tbody>");
+        for (ValidationModelCache.Entry entry : cache.getEntries()) {
+            out.println("<tr><td>" + escape(entry.getResourceType()) + "</td><td>" + escape(entry.getApplicablePath()) + "</td><td>" +
+                    escape(entry.getModel().getJcrPath()) + "</td><td>" + entry.getModel().getResourceProperties().size() + "</td><td>" +
+                    entry.getModel().getChildren().size() + "</td><td>" + ValidationModelCache.estimate(entry.getModel()) + " B</td></tr>");
+        }
+        out.println("</tbody></table>");
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        ValidationModelCache cache = getModelCache();
+        if (cache == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        String action = request.getParameter(ACTION_PARAMETER);
+        String resourceType = request.getParameter(RESOURCE_TYPE_PARAMETER);
+        if ("evictAll".equals(action)) {
+            cache.evictAll();
+        } else if (resourceType == null || "".equals(resourceType.trim())) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing resource type.");
+            return;
+        } else if ("evict".equals(action)) {
+            cache.evict(resourceType.trim());
+        } else if ("preload".equals(action)) {
+            cache.preload(resourceType.trim());
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown action.");
+            return;
+        }
+        response.sendRedirect(request.getRequestURI());
+    }
+
+    private ValidationModelCache getModelCache() {
+        if (validationService instanceof ValidationServiceImpl) {
+            return ((ValidationServiceImpl) validationService).getModelCache();
+        }
+        return null;
+    }
+
+    private static void row(PrintWriter out, String name, String value) {
+        out.println("<tr><td>" + name + "</td><td>" + value + "</td></tr>");
+    }
+
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\'':
+                    escaped.append("&#39;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.osgi.service.component.ComponentContext;
+
+/**
+ * Exports the validation model for a resource type and path, so that clients can apply the rules locally before submitting data. The model
+ * is selected through the {@code resourceType} and {@code path} request parameters and exported in a compact JSON format:
+ * <pre>
+ * {"resourceType":"...","portable":true,"properties":[{"name":"...","type":"string","multiple":false,"validators":[{"id":
+ * "org.apache.sling.validation.impl.validators.RegexValidator","portable":true,"args":{"regex":"..."}}]}],"children":[{"name":"...",
+ * "properties":[...]}]}
+ * </pre>
+ * A validator is {@code portable} if clients are expected to be able to run it from its arguments alone (e.g. regular expressions); the
+ * model is {@code portable} if all its validators are. Properties and validators are sorted by name, so that equal models produce equal
+ * documents.
+ * <p/>
+ * Each response carries a strong {@code ETag} computed from the exported document, which is cached for as long as the model instance is
+ * used by the {@link ValidationService}. Conditional requests with a matching {@code If-None-Match} header are answered with {@code 304 Not
+ * Modified}.
+ * <p/>
+ * The servlet is disabled by default and requires an authenticated user, since the models may reveal the structure of the content they
+ * validate. For the same reason the exports are {@code private} by default, so that only the user's own cache stores them. If the models
+ * are not sensitive, a {@code Cache-Control} header such as {@code public, max-age=300} can be configured, which allows shared caches and
+ * CDNs to store the exports despite the authentication.
+ */
+@SlingServlet(paths = ValidationModelExportServlet.PATH, methods = "GET", metatype = true, label = "%validationmodelexportservlet.label",
+        description = "%validationmodelexportservlet.description")
+public class ValidationModelExportServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String PATH = "/bin/sling/validation/model";
+    static final String RESOURCE_TYPE_PARAMETER = "resourceType";
+    static final String PATH_PARAMETER = "path";
+
+    @Property(value = "+" + PATH, propertyPrivate = true)
+    static final String PROP_AUTH_REQUIREMENTS = "sling.auth.requirements";
+
+    @Property(boolValue = false)
+    static final String PROP_ENABLED = "validation.export.enabled";
+
+    static final String DEFAULT_CACHE_CONTROL = "private, max-age=300";
+    @Property(value = DEFAULT_CACHE_CONTROL)
+    static final String PROP_CACHE_CONTROL = "validation.export.cache.control";
+
+    private static final String ENCODING = "UTF-8";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Comparator<ResourceProperty> PROPERTY_ORDER = new Comparator<ResourceProperty>() {
+        @Override
+        public int compare(ResourceProperty p1, ResourceProperty p2) {
+            return p1.getName().compareTo(p2.getName());
+        }
+    };
+
+    @Reference
+    private ValidationService validationService = null;
+
+    private boolean enabled;
+    private String cacheControl = DEFAULT_CACHE_CONTROL;
+    private final Map<ValidationModel, ExportedModel> exports = new WeakHashMap<ValidationModel, ExportedModel>();
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+        if (!enabled) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String resourceType = request.getParameter(RESOURCE_TYPE_PARAMETER);
+        String path = request.getParameter(PATH_PARAMETER);
+        if (resourceType == null || "".equals(resourceType)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing resource type.");
+            return;
+        }
+        ValidationModel model = validationService.getValidationModel(resourceType, path != null ? path : "");
+        if (model == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No validation model found.");
+            return;
+        }
+        ExportedModel export = getExport(model);
+        response.setHeader("ETag", export.etag);
+        if (cacheControl != null && !"".equals(cacheControl)) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        if (matches(request.getHeader("If-None-Match"), export.etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding(ENCODING);
+        response.setContentLength(export.body.length);
+        response.getOutputStream().write(export.body);
+    }
+
+    // OSGi ################################################################################################################################
+    @SuppressWarnings("unused")
+    protected void activate(ComponentContext componentContext) {
+        enabled = PropertiesUtil.toBoolean(componentContext.getProperties().get(PROP_ENABLED), false);
+        cacheControl = PropertiesUtil.toString(componentContext.getProperties().get(PROP_CACHE_CONTROL), DEFAULT_CACHE_CONTROL);
+        synchronized (exports) {
+            exports.clear();
+        }
+    }
+
+    ExportedModel getExport(ValidationModel model) throws ServletException {
+        synchronized (exports) {
+            ExportedModel export = exports.get(model);
+            if (export == null) {
+                export = new ExportedModel(export(model));
+                exports.put(model, export);
+            }
+            return export;
+        }
+    }
+
+    private static byte[] export(ValidationModel model) throws ServletException {
+        StringWriter out = new StringWriter();
+        JSONWriter writer = new JSONWriter(out);
+        try {
+            writer.object();
+            writer.key("resourceType").value(model.getValidatedResourceType());
+            writer.key("portable").value(isPortable(model.getResourceProperties()) && areChildrenPortable(model.getChildren()));
+            writeProperties(writer, model.getResourceProperties());
+            writer.key("children").array();
+            for (ChildResource child : model.getChildren()) {
+                writer.object();
+                writer.key("name").value(child.getName());
+                writeProperties(writer, child.getProperties());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+            return out.toString().getBytes(ENCODING);
+        } catch (JSONException e) {
+            throw new ServletException("Cannot export the validation model for " + model.getValidatedResourceType(), e);
+        } catch (UnsupportedEncodingException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    private static void writeProperties(JSONWriter writer, Collection<ResourceProperty> properties) throws JSONException {
+        List<ResourceProperty> sortedProperties = new ArrayList<ResourceProperty>(properties);
+        Collections.sort(sortedProperties, PROPERTY_ORDER);
+        writer.key("properties").array();
+        for (ResourceProperty property : sortedProperties) {
+            writer.object();
+            writer.key("name").value(property.getName());
+            writer.key("type").value(property.getType().getName());
+            writer.key("multiple").value(property.isMultiple());
+            writer.key("validators").array();
+            for (Map.Entry<String, Map<String, String>> validator : sortValidators(property.getValidators()).entrySet()) {
+                writer.object();
+                writer.key("id").value(validator.getKey());
+                writer.key("portable").value(isPortable(validator.getKey()));
+                writer.key("args").object();
+                for (Map.Entry<String, String> argument : new TreeMap<String, String>(validator.getValue()).entrySet()) {
+                    writer.key(argument.getKey()).value(argument.getValue());
+                }
+                writer.endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    private static Map<String, Map<String, String>> sortValidators(Map<Validator, Map<String, String>> validators) {
+        Map<String, Map<String, String>> sortedValidators = new TreeMap<String, Map<String, String>>();
+        for (Map.Entry<Validator, Map<String, String>> entry : validators.entrySet()) {
+            Map<String, String> arguments = entry.getValue() != null ? entry.getValue() : Collections.<String, String>emptyMap();
+            sortedValidators.put(entry.getKey().getClass().getName(), arguments);
+        }
+        return sortedValidators;
+    }
+
+    private static boolean isPortable(String validatorId) {
+        return RegexValidator.class.getName().equals(validatorId);
+    }
+
+    private static boolean isPortable(Collection<ResourceProperty> properties) {
+        for (ResourceProperty property : properties) {
+            for (Validator validator : property.getValidators().keySet()) {
+                if (!isPortable(validator.getClass().getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean areChildrenPortable(List<ChildResource> children) {
+        for (ChildResource child : children) {
+            if (!isPortable(child.getProperties())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks an {@code If-None-Match} header against the {@code etag}, using the weak comparison required by RFC 7232 for this header.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class ExportedModel {
+
+        final byte[] body;
+        final String etag;
+
+        ExportedModel(byte[] body) {
+            this.body = body;
+            this.etag = computeETag(body);
+        }
+
+        private static String computeETag(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+                char[] etag = new char[digest.length * 2 + 2];
+                etag[0] = '"';
+                for (int i = 0; i < digest.length; i++) {
+                    etag[2 * i + 1] = HEX[(digest[i] >> 4) & 0xf];
+                    etag[2 * i + 2] = HEX[digest[i] & 0xf];
+                }
+                etag[etag.length - 1] = '"';
+                return new String(etag);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
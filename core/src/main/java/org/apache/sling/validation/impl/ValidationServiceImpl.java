@@ -19,28 +19,49 @@
 package org.apache.sling.validation.impl;
 
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.References;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.jackrabbit.util.ISO8601;
 import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingException;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.MultiValueValidator;
+import org.apache.sling.validation.api.PureValidator;
 import org.apache.sling.validation.api.ResourceProperty;
 import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.TypedValidator;
+import org.apache.sling.validation.api.ValidationListener;
 import org.apache.sling.validation.api.ValidationModel;
 import org.apache.sling.validation.api.ValidationResult;
 import org.apache.sling.validation.api.ValidationService;
 import org.apache.sling.validation.api.Validator;
 import org.apache.sling.validation.api.ValidatorLookupService;
 import org.apache.sling.validation.api.exceptions.SlingValidationException;
+import org.apache.sling.validation.capture.CaptureRedactor;
+import org.apache.sling.validation.impl.capture.CaptureWriter;
+import org.apache.sling.validation.impl.capture.CapturedValidation;
+import org.apache.sling.validation.impl.metrics.ValidationMetrics;
+import org.apache.sling.validation.impl.metrics.ValidationMetricsMBean;
 import org.apache.sling.validation.impl.util.JCRBuilder;
+import org.apache.sling.validation.impl.util.ModelFragmentCache;
+import org.apache.sling.validation.impl.util.StripedCounter;
 import org.apache.sling.validation.impl.util.Trie;
+import org.apache.sling.validation.impl.util.ValidatorResultCache;
+import org.apache.sling.validation.spi.ValidationModelProvider;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.event.Event;
@@ -50,27 +71,189 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.query.Query;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
-@Component()
+@Component(metatype = true, label = "%validationservice.label", description = "%validationservice.description")
 @Service(ValidationService.class)
+@References({
+        @Reference(
+                name = "validationListener",
+                referenceInterface = ValidationListener.class,
+                policy = ReferencePolicy.DYNAMIC,
+                cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE
+        ),
+        @Reference(
+                name = "captureRedactor",
+                referenceInterface = CaptureRedactor.class,
+                policy = ReferencePolicy.DYNAMIC,
+                cardinality = ReferenceCardinality.OPTIONAL_UNARY
+        ),
+        @Reference(
+                name = "validationModelProvider",
+                referenceInterface = ValidationModelProvider.class,
+                policy = ReferencePolicy.DYNAMIC,
+                cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE
+        ),
+        @Reference(
+                name = "validator",
+                referenceInterface = Validator.class,
+                policy = ReferencePolicy.DYNAMIC,
+                cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE
+        )
+})
 public class ValidationServiceImpl implements ValidationService, EventHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ValidationServiceImpl.class);
 
+    static final int DEFAULT_MEMO_CACHE_SIZE = 10000;
+    @Property(intValue = DEFAULT_MEMO_CACHE_SIZE)
+    static final String PROP_MEMO_CACHE_SIZE = "validation.memo.cache.size";
+
+    static final boolean DEFAULT_METRICS_ENABLED = true;
+    @Property(boolValue = DEFAULT_METRICS_ENABLED)
+    static final String PROP_METRICS_ENABLED = "validation.metrics.enabled";
+
+    static final long DEFAULT_SLOW_THRESHOLD = -1;
+    @Property(longValue = DEFAULT_SLOW_THRESHOLD)
+    static final String PROP_SLOW_THRESHOLD = "validation.slow.threshold";
+
+    static final int DEFAULT_SLOW_SAMPLE_PERCENT = 100;
+    @Property(intValue = DEFAULT_SLOW_SAMPLE_PERCENT)
+    static final String PROP_SLOW_SAMPLE_PERCENT = "validation.slow.sample.percent";
+
+    static final int DEFAULT_SLOW_MAX_RECORDS = 10;
+    @Property(intValue = DEFAULT_SLOW_MAX_RECORDS)
+    static final String PROP_SLOW_MAX_RECORDS = "validation.slow.max.records";
+
+    static final String DEFAULT_CAPTURE_FILE = "";
+    @Property(value = DEFAULT_CAPTURE_FILE)
+    static final String PROP_CAPTURE_FILE = "validation.capture.file";
+
+    static final int DEFAULT_CAPTURE_SAMPLE_PERCENT = 1;
+    @Property(intValue = DEFAULT_CAPTURE_SAMPLE_PERCENT)
+    static final String PROP_CAPTURE_SAMPLE_PERCENT = "validation.capture.sample.percent";
+
+    static final int DEFAULT_CAPTURE_MAX_MEGABYTES = 100;
+    @Property(intValue = DEFAULT_CAPTURE_MAX_MEGABYTES)
+    static final String PROP_CAPTURE_MAX_MEGABYTES = "validation.capture.max.megabytes";
+
+    @Property(unbounded = PropertyUnbounded.ARRAY)
+    static final String PROP_CAPTURE_REDACTED_PROPERTIES = "validation.capture.redacted.properties";
+
+    static final int DEFAULT_MODEL_BUILDER_THREADS = 1;
+    @Property(intValue = DEFAULT_MODEL_BUILDER_THREADS)
+    static final String PROP_MODEL_BUILDER_THREADS = "validation.model.builder.threads";
+
+    /**
+     * The minimum number of models built by each worker, below which additional workers cost more than they save.
+     */
+    static final int MIN_MODELS_PER_WORKER = 8;
+
+    /**
+     * {@code String} values longer than this, and {@code BigDecimal}s with more digits, are never memoized, so that the memo cache's
+     * footprint stays bounded.
+     */
+    static final int MAX_MEMOIZED_VALUE_LENGTH = 256;
+
+    /**
+     * The exact types of the values which are memoized. They are immutable, so their hash codes and equality do not change once the value
+     * is cached; mutable values such as {@code Calendar}s and identity-hashed ones such as {@code InputStream}s are not memoized.
+     */
+    private static final Set<Class<?>> MEMOIZABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(String.class, Boolean.class,
+            Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigDecimal.class));
+
+    /**
+     * The maximum number of resource types remembered as having no validation model, so that looking them up again - e.g. for resource
+     * types sent by clients - does not query the repository each time.
+     */
+    static final int MAX_MISSING_MODELS = 1000;
+
     static final String MODEL_XPATH_QUERY = "/jcr:root/%s/" + Constants.MODELS_HOME + "*[@sling:resourceType=\"%s\" and @%s=\"%s\"]";
+    private static final ValidationListener[] NO_LISTENERS = new ValidationListener[0];
+    private static final ValidationModelProvider[] NO_PROVIDERS = new ValidationModelProvider[0];
+
     static final String[] TOPICS = {SlingConstants.TOPIC_RESOURCE_REMOVED, SlingConstants.TOPIC_RESOURCE_CHANGED,
             SlingConstants.TOPIC_RESOURCE_ADDED};
 
-    private Map<String, Trie<JCRValidationModel>> validationModelsCache = new ConcurrentHashMap<String, Trie<JCRValidationModel>>();
+    /**
+     * The validation models by validated resource type. A {@link Trie} is only published once it is complete and is never modified
+     * afterwards, so that it can be read without locking.
+     */
+    private ConcurrentMap<String, Trie<JCRValidationModel>> validationModelsCache = new ConcurrentHashMap<String,
+            Trie<JCRValidationModel>>();
+
+    /**
+     * The resource types for which no validation model was found, in least recently added order. The set is discarded together with the
+     * cached models.
+     */
+    private final Set<String> missingModels = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_MISSING_MODELS;
+        }
+    }));
     private ThreadPool threadPool;
+    private volatile ThreadPool modelBuilderPool;
+    private int modelBuilderThreads = 1;
     private ServiceRegistration eventHandlerRegistration;
+    private ServiceRegistration metricsRegistration;
+    private ServiceRegistration modelCacheRegistration;
+    private volatile ValidatorResultCache memoCache;
+    private final AtomicLong modelsGeneration = new AtomicLong();
+    private final ValidationMetrics metrics = new ValidationMetrics();
+    private final StripedCounter modelCacheHits = new StripedCounter();
+    private final StripedCounter modelCacheMisses = new StripedCounter();
+    private final AtomicLong modelLoads = new AtomicLong();
+    private final AtomicLong modelInvalidations = new AtomicLong();
+    private final ValidationModelCache modelCache = new ValidationModelCache(this);
+    private final ModelFragmentCache modelFragments = new ModelFragmentCache();
+    private final SlowValidationLog slowLog = new SlowValidationLog();
+
+    /**
+     * The registered listeners. The array is replaced, never modified, so that it can be read without locking.
+     */
+    private volatile ValidationListener[] listeners = NO_LISTENERS;
+
+    /**
+     * The capture log of sampled validations, or {@code null} if capturing is disabled.
+     */
+    private volatile CaptureWriter capture;
+    private volatile CaptureRedactor captureRedactor;
+
+    /**
+     * The registered model providers, by descending service ranking. The array is replaced, never modified, so that it can be read without
+     * locking.
+     */
+    private volatile ValidationModelProvider[] modelProviders = NO_PROVIDERS;
+    private final Map<ValidationModelProvider, Integer> modelProviderRankings = new LinkedHashMap<ValidationModelProvider, Integer>();
+
+    /**
+     * The provider of the models packaged in bundles, or {@code null} if the service is not active.
+     */
+    private volatile BundleValidationModelProvider bundleModelProvider;
 
     @Reference
     private ResourceResolverFactory rrf = null;
@@ -84,17 +267,35 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
     // ValidationService ###################################################################################################################
     @Override
     public ValidationModel getValidationModel(String validatedResourceType, String resourcePath) {
+        ValidationListener[] listeners = this.listeners;
+        long start = slowLog.isEnabled() || listeners.length > 0 ? System.nanoTime() : 0;
         ValidationModel model = null;
         Trie<JCRValidationModel> modelsForResourceType = validationModelsCache.get(validatedResourceType);
         if (modelsForResourceType != null) {
             model = modelsForResourceType.getElementForLongestMatchingKey(resourcePath).getValue();
         }
-        if (model == null) {
+        if (model != null || modelsForResourceType == null && missingModels.contains(validatedResourceType)) {
+            modelCacheHits.increment();
+        } else {
+            modelCacheMisses.increment();
             modelsForResourceType = searchAndStoreValidationModel(validatedResourceType);
             if (modelsForResourceType != null) {
                 model = modelsForResourceType.getElementForLongestMatchingKey(resourcePath).getValue();
             }
         }
+        if (slowLog.isEnabled()) {
+            slowLog.lookedUp(model, System.nanoTime() - start);
+        }
+        if (listeners.length > 0) {
+            long nanos = System.nanoTime() - start;
+            for (ValidationListener listener : listeners) {
+                try {
+                    listener.modelResolved(validatedResourceType, resourcePath, model, nanos);
+                } catch (RuntimeException e) {
+                    LOG.warn("Validation listener " + listener + " failed.", e);
+                }
+            }
+        }
         return model;
     }
 
@@ -109,20 +310,74 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
             throw new IllegalArgumentException("ValidationResult.validate - cannot accept null parameters");
         }
         ValidationResultImpl result = new ValidationResultImpl();
+        validateResource(getValueMap(resource), resource, model, result);
+        return result;
+    }
 
-        // validate direct properties of the resource
-        validateResourceProperties(resource, resource, model.getResourceProperties(), result);
+    /**
+     * Validates a resource whose own properties are given by {@code valueMap}, which need not be obtained by adapting the resource. The
+     * children required by the model are read from the resource.
+     */
+    void validateResource(ValueMap valueMap, Resource resource, ValidationModel model, ValidationResultImpl result) {
+        ValidationListener[] listeners = this.listeners;
+        long start = metrics.isEnabled() || listeners.length > 0 ? System.nanoTime() : 0;
+        if (listeners.length > 0) {
+            fireValidationStarted(listeners, model, resource.getPath());
+        }
+        ValidationTrace trace = slowLog.start(model.getValidatedResourceType(), resource.getPath(), model);
+        try {
+            // validate direct properties of the resource
+            for (ResourceProperty resourceProperty : model.getResourceProperties()) {
+                validateResourceProperty(valueMap, resourceProperty, resourceProperty.getName(), result, trace);
+            }
 
-        // validate children resources, if any
-        for (ChildResource childResource : model.getChildren()) {
-            Resource expectedResource = resource.getChild(childResource.getName());
-            if (expectedResource != null) {
-                validateResourceProperties(resource, expectedResource, childResource.getProperties(), result);
-            } else {
-                result.addFailureMessage(childResource.getName(), "Missing required child resource.");
+            // validate children resources, if any
+            for (ChildResource childResource : model.getChildren()) {
+                long childStart = trace != null ? System.nanoTime() : 0;
+                Resource expectedResource = resource.getChild(childResource.getName());
+                if (expectedResource != null) {
+                    ValueMap childValueMap = getValueMap(expectedResource);
+                    if (trace != null) {
+                        trace.addChild(childResource.getName(), System.nanoTime() - childStart);
+                    }
+                    if (childResource instanceof ChildResourceImpl) {
+                        for (Map.Entry<ResourceProperty, String> entry : ((ChildResourceImpl) childResource).getPropertyPaths()
+                                .entrySet()) {
+                            validateResourceProperty(childValueMap, entry.getKey(), entry.getValue(), result, trace);
+                        }
+                    } else {
+                        String prefix = childResource.getName() + "/";
+                        for (ResourceProperty resourceProperty : childResource.getProperties()) {
+                            validateResourceProperty(childValueMap, resourceProperty, prefix + resourceProperty.getName(), result, trace);
+                        }
+                    }
+                } else {
+                    result.addFailureMessage(childResource.getName(), "Missing required child resource.");
+                }
+            }
+        } finally {
+            if (trace != null) {
+                slowLog.stop(trace);
             }
         }
-        return result;
+        if (metrics.isEnabled()) {
+            metrics.recordValidation(model.getValidatedResourceType(), System.nanoTime() - start, result.isValid());
+        }
+        if (listeners.length > 0) {
+            fireValidationCompleted(listeners, model, resource.getPath(), result, System.nanoTime() - start);
+        }
+        CaptureWriter capture = this.capture;
+        if (capture != null && capture.isSampled()) {
+            Map<String, Map<String, Object>> children = new LinkedHashMap<String, Map<String, Object>>();
+            for (ChildResource childResource : model.getChildren()) {
+                Resource child = resource.getChild(childResource.getName());
+                if (child != null) {
+                    children.put(childResource.getName(), getCapturedProperties(getValueMap(child), childResource.getProperties()));
+                }
+            }
+            capture(capture, new CapturedValidation(System.currentTimeMillis(), true, model.getValidatedResourceType(), resource.getPath(),
+                    getCapturedProperties(valueMap, model.getResourceProperties()), children));
+        }
     }
 
     @Override
@@ -130,36 +385,64 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
         if (valueMap == null || model == null) {
             throw new IllegalArgumentException("ValidationResult.validate - cannot accept null parameters");
         }
+        ValidationListener[] listeners = this.listeners;
+        long start = metrics.isEnabled() || listeners.length > 0 ? System.nanoTime() : 0;
+        if (listeners.length > 0) {
+            fireValidationStarted(listeners, model, null);
+        }
         ValidationResultImpl result = new ValidationResultImpl();
-        for (ResourceProperty resourceProperty : model.getResourceProperties()) {
-            String property = resourceProperty.getName();
-            Object valuesObject = valueMap.get(property);
-            if (valuesObject == null) {
-                result.addFailureMessage(property, "Missing required property.");
-            }
-            Type propertyType = resourceProperty.getType();
-            Map<Validator, Map<String, String>> validators = resourceProperty.getValidators();
-            if (resourceProperty.isMultiple()) {
-                if (valuesObject instanceof String[]) {
-                    for (String fieldValue : (String[]) valuesObject) {
-                        validatePropertyValue(result, property, fieldValue, propertyType, validators);
-                    }
-                } else {
-                    result.addFailureMessage(property, "Expected multiple-valued property.");
+        ValidationTrace trace = slowLog.start(model.getValidatedResourceType(), "", model);
+        try {
+            for (ResourceProperty resourceProperty : model.getResourceProperties()) {
+                String property = resourceProperty.getName();
+                long propertyStart = trace != null ? System.nanoTime() : 0;
+                Object valuesObject = valueMap.get(property);
+                if (valuesObject == null) {
+                    result.addFailureMessage(property, "Missing required property.");
                 }
-            } else {
-                if (valuesObject instanceof String[]) {
-                    // treat request attributes which are arrays
-                    String[] fieldValues = (String[]) valuesObject;
-                    if (fieldValues.length == 1) {
-                        validatePropertyValue(result, property, fieldValues[0], propertyType, validators);
+                Type propertyType = resourceProperty.getType();
+                Map<Validator, Map<String, String>> validators = resourceProperty.getValidators();
+                if (resourceProperty.isMultiple()) {
+                    if (valuesObject instanceof Object[]) {
+                        validatePropertyValues(result, property, (Object[]) valuesObject, propertyType, validators);
                     } else {
-                        result.addFailureMessage(property, "Expected single-valued property.");
+                        result.addFailureMessage(property, "Expected multiple-valued property.");
+                    }
+                } else {
+                    if (valuesObject instanceof Object[]) {
+                        // treat request attributes which are arrays
+                        Object[] fieldValues = (Object[]) valuesObject;
+                        if (fieldValues.length == 1) {
+                            validatePropertyValue(result, property, fieldValues[0], propertyType, validators);
+                        } else {
+                            result.addFailureMessage(property, "Expected single-valued property.");
+                        }
+                    } else if (valuesObject != null) {
+                        validatePropertyValue(result, property, valuesObject, propertyType, validators);
                     }
-                } else if (valuesObject instanceof String) {
-                    validatePropertyValue(result, property, (String) valuesObject, propertyType, validators);
+                }
+                if (trace != null) {
+                    trace.addProperty(property, System.nanoTime() - propertyStart);
                 }
             }
+        } finally {
+            if (trace != null) {
+                slowLog.stop(trace);
+            }
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordValidation(model.getValidatedResourceType(), System.nanoTime() - start, result.isValid());
+        }
+        if (listeners.length > 0) {
+            fireValidationCompleted(listeners, model, null, result, System.nanoTime() - start);
+        }
+        CaptureWriter capture = this.capture;
+        if (capture != null && capture.isSampled()) {
+            String[] applicablePaths = model.getApplicablePaths();
+            capture(capture, new CapturedValidation(System.currentTimeMillis(), false, model.getValidatedResourceType(),
+                    applicablePaths != null && applicablePaths.length > 0 ? applicablePaths[0] : "",
+                    getCapturedProperties(valueMap, model.getResourceProperties()),
+                    Collections.<String, Map<String, Object>>emptyMap()));
         }
         return result;
     }
@@ -167,10 +450,17 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
     // EventHandler ########################################################################################################################
     @Override
     public void handleEvent(Event event) {
+        final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
         Runnable task = new Runnable() {
             @Override
             public void run() {
-                validationModelsCache.clear();
+                // the flattened models are discarded first, so that the models loaded again do not refer to outdated ones
+                if (path instanceof String) {
+                    modelFragments.invalidate((String) path);
+                } else {
+                    modelFragments.clear();
+                }
+                evictValidationModels();
             }
         };
         threadPool.execute(task);
@@ -180,6 +470,56 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
     @SuppressWarnings("unused")
     protected void activate(ComponentContext componentContext) {
         threadPool = tpm.get("Validation Service Thread Pool");
+        modelBuilderThreads = PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_MODEL_BUILDER_THREADS),
+                DEFAULT_MODEL_BUILDER_THREADS);
+        if (modelBuilderThreads <= 0) {
+            modelBuilderThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (modelBuilderThreads > 1) {
+            // the requesting thread builds models as well, so the pool needs one thread less than the number of workers
+            ModifiableThreadPoolConfig modelBuilderConfig = new ModifiableThreadPoolConfig();
+            modelBuilderConfig.setMinPoolSize(modelBuilderThreads - 1);
+            modelBuilderConfig.setMaxPoolSize(modelBuilderThreads - 1);
+            modelBuilderPool = tpm.create(modelBuilderConfig, "Validation Model Builder");
+        }
+        int memoCacheSize = PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_MEMO_CACHE_SIZE), DEFAULT_MEMO_CACHE_SIZE);
+        memoCache = memoCacheSize > 0 ? new ValidatorResultCache(memoCacheSize) : null;
+        metrics.setMemoCache(memoCache);
+        metrics.setEnabled(PropertiesUtil.toBoolean(componentContext.getProperties().get(PROP_METRICS_ENABLED), DEFAULT_METRICS_ENABLED));
+        slowLog.configure(PropertiesUtil.toLong(componentContext.getProperties().get(PROP_SLOW_THRESHOLD), DEFAULT_SLOW_THRESHOLD),
+                PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_SLOW_SAMPLE_PERCENT), DEFAULT_SLOW_SAMPLE_PERCENT),
+                PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_SLOW_MAX_RECORDS), DEFAULT_SLOW_MAX_RECORDS));
+        String captureFile = PropertiesUtil.toString(componentContext.getProperties().get(PROP_CAPTURE_FILE), DEFAULT_CAPTURE_FILE);
+        if (!"".equals(captureFile.trim())) {
+            int samplePercent = PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_CAPTURE_SAMPLE_PERCENT),
+                    DEFAULT_CAPTURE_SAMPLE_PERCENT);
+            long maxBytes = PropertiesUtil.toInteger(componentContext.getProperties().get(PROP_CAPTURE_MAX_MEGABYTES),
+                    DEFAULT_CAPTURE_MAX_MEGABYTES) * 1024L * 1024L;
+            String[] redactedProperties = PropertiesUtil.toStringArray(componentContext.getProperties().get(
+                    PROP_CAPTURE_REDACTED_PROPERTIES), new String[0]);
+            try {
+                capture = new CaptureWriter(new File(captureFile.trim()), samplePercent, maxBytes, Arrays.asList(redactedProperties));
+                LOG.info("Capturing {}% of the validations to {}.", samplePercent, captureFile);
+            } catch (IOException e) {
+                LOG.error("Cannot open the capture log " + captureFile + ".", e);
+            }
+        }
+        BundleValidationModelProvider bundleModelProvider = new BundleValidationModelProvider(new Runnable() {
+            @Override
+            public void run() {
+                evictValidationModels();
+            }
+        });
+        bundleModelProvider.open(componentContext.getBundleContext());
+        this.bundleModelProvider = bundleModelProvider;
+        Dictionary<String, Object> metricsProperties = new Hashtable<String, Object>();
+        metricsProperties.put("jmx.objectname", ValidationMetrics.OBJECT_NAME);
+        metricsRegistration = componentContext.getBundleContext().registerService(ValidationMetricsMBean.class.getName(), metrics,
+                metricsProperties);
+        Dictionary<String, Object> modelCacheProperties = new Hashtable<String, Object>();
+        modelCacheProperties.put("jmx.objectname", ValidationModelCache.OBJECT_NAME);
+        modelCacheRegistration = componentContext.getBundleContext().registerService(ValidationModelCacheMBean.class.getName(),
+                modelCache, modelCacheProperties);
         ResourceResolver rr = null;
         try {
             rr = rrf.getAdministrativeResourceResolver(null);
@@ -217,40 +557,298 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
         if (threadPool != null) {
             tpm.release(threadPool);
         }
+        if (modelBuilderPool != null) {
+            tpm.release(modelBuilderPool);
+            modelBuilderPool = null;
+        }
+        BundleValidationModelProvider bundleModelProvider = this.bundleModelProvider;
+        this.bundleModelProvider = null;
+        if (bundleModelProvider != null) {
+            bundleModelProvider.close(componentContext.getBundleContext());
+        }
         if (eventHandlerRegistration != null) {
             eventHandlerRegistration.unregister();
             eventHandlerRegistration = null;
         }
+        if (metricsRegistration != null) {
+            metricsRegistration.unregister();
+            metricsRegistration = null;
+        }
+        if (modelCacheRegistration != null) {
+            modelCacheRegistration.unregister();
+            modelCacheRegistration = null;
+        }
+        metrics.setMemoCache(null);
+        memoCache = null;
+        modelFragments.clear();
+        CaptureWriter capture = this.capture;
+        this.capture = null;
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                LOG.warn("Cannot close the capture log.", e);
+            }
+        }
     }
 
-    private void validateResourceProperties(Resource rootResource, Resource resource, Set<ResourceProperty> resourceProperties,
-                                            ValidationResultImpl result) {
-        for (ResourceProperty resourceProperty : resourceProperties) {
-            String property = resourceProperty.getName();
-            ValueMap valueMap = resource.adaptTo(ValueMap.class);
-            Object fieldValues = valueMap.get(property);
-            String relativePath = resource.getPath().replace(rootResource.getPath(), "");
-            if (relativePath.length() > 0) {
-                if (relativePath.startsWith("/")) {
-                    relativePath = relativePath.substring(1);
-                }
-                property = relativePath + "/" + property;
+    /**
+     * Returns the cache storing the outcome of {@link PureValidator}s.
+     *
+     * @return the cache or {@code null} if memoization is disabled
+     */
+    ValidatorResultCache getMemoCache() {
+        return memoCache;
+    }
+
+    /**
+     * Returns a counter which is incremented every time the cached validation models are discarded. Callers which keep the models returned
+     * by {@link #getValidationModel(String, String)} can read the counter before looking up a model and consider their copy stale as soon
+     * as the counter has changed.
+     *
+     * @return the current generation of the validation models
+     */
+    long getModelsGeneration() {
+        return modelsGeneration.get();
+    }
+
+    protected synchronized void bindValidationListener(ValidationListener listener) {
+        ValidationListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    protected synchronized void unbindValidationListener(ValidationListener listener) {
+        List<ValidationListener> updated = new ArrayList<ValidationListener>(Arrays.asList(listeners));
+        if (updated.remove(listener)) {
+            listeners = updated.isEmpty() ? NO_LISTENERS : updated.toArray(new ValidationListener[updated.size()]);
+        }
+    }
+
+    protected void bindValidationModelProvider(ValidationModelProvider provider, Map<String, Object> properties) {
+        synchronized (modelProviderRankings) {
+            modelProviderRankings.put(provider, PropertiesUtil.toInteger(properties.get(org.osgi.framework.Constants.SERVICE_RANKING), 0));
+            sortModelProviders();
+        }
+        evictValidationModels();
+    }
+
+    protected void unbindValidationModelProvider(ValidationModelProvider provider, Map<String, Object> properties) {
+        synchronized (modelProviderRankings) {
+            if (modelProviderRankings.remove(provider) == null) {
+                return;
             }
-            if (fieldValues == null) {
-                result.addFailureMessage(property, "Missing required property.");
+            sortModelProviders();
+        }
+        evictValidationModels();
+    }
+
+    /**
+     * Orders the providers by descending ranking; providers with equal rankings keep the order in which they were bound.
+     */
+    private void sortModelProviders() {
+        List<Map.Entry<ValidationModelProvider, Integer>> entries = new ArrayList<Map.Entry<ValidationModelProvider, Integer>>(
+                modelProviderRankings.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<ValidationModelProvider, Integer>>() {
+            @Override
+            public int compare(Map.Entry<ValidationModelProvider, Integer> e1, Map.Entry<ValidationModelProvider, Integer> e2) {
+                return e2.getValue().compareTo(e1.getValue());
             }
-            Type propertyType = resourceProperty.getType();
-            Map<Validator, Map<String, String>> validators = resourceProperty.getValidators();
-            if (fieldValues instanceof String[]) {
-                for (String fieldValue : (String[]) fieldValues) {
-                    validatePropertyValue(result, property, fieldValue, propertyType, validators);
+        });
+        ValidationModelProvider[] sorted = new ValidationModelProvider[entries.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = entries.get(i).getKey();
+        }
+        modelProviders = sorted.length > 0 ? sorted : NO_PROVIDERS;
+    }
+
+    protected void bindValidator(Validator validator) {
+        // validators are looked up through the ValidatorLookupService; the reference only tracks their unregistration
+    }
+
+    /**
+     * Discards the models and memoized outcomes which reference a validator that is going away, so that neither keeps the validator (and
+     * its bundle's class loader) reachable.
+     */
+    protected void unbindValidator(Validator validator) {
+        evictValidationModels();
+    }
+
+    protected void bindCaptureRedactor(CaptureRedactor redactor) {
+        captureRedactor = redactor;
+    }
+
+    protected void unbindCaptureRedactor(CaptureRedactor redactor) {
+        if (captureRedactor == redactor) {
+            captureRedactor = null;
+        }
+    }
+
+    /**
+     * Collects the values of the properties described by a model, which are the only ones needed to replay a validation.
+     */
+    private static Map<String, Object> getCapturedProperties(ValueMap valueMap, Collection<ResourceProperty> properties) {
+        Map<String, Object> captured = new LinkedHashMap<String, Object>();
+        for (ResourceProperty property : properties) {
+            Object value = valueMap.get(property.getName());
+            if (value != null) {
+                captured.put(property.getName(), value);
+            }
+        }
+        return captured;
+    }
+
+    private void capture(CaptureWriter capture, CapturedValidation validation) {
+        try {
+            capture.write(validation, captureRedactor);
+        } catch (IOException e) {
+            LOG.warn("Cannot write to the capture log.", e);
+        } catch (RuntimeException e) {
+            LOG.warn("Cannot capture the validation of " + validation.getPath() + ".", e);
+        }
+    }
+
+    private static void fireValidationStarted(ValidationListener[] listeners, ValidationModel model, String path) {
+        for (ValidationListener listener : listeners) {
+            try {
+                listener.validationStarted(model, path);
+            } catch (RuntimeException e) {
+                LOG.warn("Validation listener " + listener + " failed.", e);
+            }
+        }
+    }
+
+    private static void fireValidationCompleted(ValidationListener[] listeners, ValidationModel model, String path, ValidationResult
+            result, long nanos) {
+        for (ValidationListener listener : listeners) {
+            try {
+                if (!result.isValid()) {
+                    for (Map.Entry<String, List<String>> failure : result.getFailureMessages().entrySet()) {
+                        listener.propertyFailed(model, path, failure.getKey(), failure.getValue());
+                    }
                 }
-            } else if (fieldValues instanceof String) {
-                validatePropertyValue(result, property, (String) fieldValues, propertyType, validators);
+                listener.validationCompleted(model, path, result, nanos);
+            } catch (RuntimeException e) {
+                LOG.warn("Validation listener " + listener + " failed.", e);
             }
         }
     }
 
+    ValidationMetrics getMetrics() {
+        return metrics;
+    }
+
+    ValidationModelCache getModelCache() {
+        return modelCache;
+    }
+
+    /**
+     * Returns the cached validation models, by validated resource type. The returned map is the live cache and must not be modified.
+     */
+    Map<String, Trie<JCRValidationModel>> getValidationModelsCache() {
+        return validationModelsCache;
+    }
+
+    long getModelCacheHits() {
+        return modelCacheHits.sum();
+    }
+
+    long getModelCacheMisses() {
+        return modelCacheMisses.sum();
+    }
+
+    long getModelLoads() {
+        return modelLoads.get();
+    }
+
+    long getModelInvalidations() {
+        return modelInvalidations.get();
+    }
+
+    /**
+     * Discards the cached validation models of a resource type; they are loaded again on their next lookup.
+     *
+     * @return {@code true} if models were cached for the resource type
+     */
+    boolean evictValidationModels(String validatedResourceType) {
+        modelsGeneration.incrementAndGet();
+        boolean evicted = validationModelsCache.remove(validatedResourceType) != null;
+        missingModels.remove(validatedResourceType);
+        clearMemoCache();
+        modelsGeneration.incrementAndGet();
+        modelInvalidations.incrementAndGet();
+        return evicted;
+    }
+
+    /**
+     * Discards all the cached validation models.
+     * <p/>
+     * The generation is incremented both before and after the models are discarded: loads which started before the first increment
+     * withdraw the models they publish afterwards (see {@link #publishValidationModels(String, Trie, long)}), while callers reading the
+     * generation before looking up a model which is about to be discarded see the second increment.
+     */
+    void evictValidationModels() {
+        modelsGeneration.incrementAndGet();
+        validationModelsCache.clear();
+        missingModels.clear();
+        clearMemoCache();
+        modelsGeneration.incrementAndGet();
+        modelInvalidations.incrementAndGet();
+    }
+
+    /**
+     * Discards the memoized validator outcomes, which reference the validators and arguments of the discarded models.
+     */
+    private void clearMemoCache() {
+        ValidatorResultCache memoCache = this.memoCache;
+        if (memoCache != null) {
+            memoCache.clear();
+        }
+    }
+
+    /**
+     * Loads the validation models of a resource type into the cache, replacing the ones already cached.
+     *
+     * @return the number of distinct models loaded
+     */
+    int preloadValidationModels(String validatedResourceType) {
+        evictValidationModels(validatedResourceType);
+        Trie<JCRValidationModel> modelsForResourceType = searchAndStoreValidationModel(validatedResourceType);
+        return modelsForResourceType != null ? new HashSet<JCRValidationModel>(modelsForResourceType.getElements().values()).size() : 0;
+    }
+
+    private ValueMap getValueMap(Resource resource) {
+        ValueMap valueMap = resource.adaptTo(ValueMap.class);
+        return valueMap != null ? valueMap : ValueMap.EMPTY;
+    }
+
+    /**
+     * Validates a resource's property.
+     *
+     * @param valueMap         the resource's properties
+     * @param resourceProperty the property's validation rules
+     * @param property         the property's path relative to the validated resource, used as the failure message key
+     * @param result           the result to which failures are reported
+     */
+    private void validateResourceProperty(ValueMap valueMap, ResourceProperty resourceProperty, String property,
+                                          ValidationResultImpl result, ValidationTrace trace) {
+        long start = trace != null ? System.nanoTime() : 0;
+        Object fieldValues = valueMap.get(resourceProperty.getName());
+        if (fieldValues == null) {
+            result.addFailureMessage(property, "Missing required property.");
+        }
+        Type propertyType = resourceProperty.getType();
+        Map<Validator, Map<String, String>> validators = resourceProperty.getValidators();
+        if (fieldValues instanceof Object[]) {
+            validatePropertyValues(result, property, (Object[]) fieldValues, propertyType, validators);
+        } else if (fieldValues != null) {
+            validatePropertyValue(result, property, fieldValues, propertyType, validators);
+        }
+        if (trace != null) {
+            trace.addProperty(property, System.nanoTime() - start);
+        }
+    }
+
     /**
      * Searches for valid validation models in the JCR repository for a certain resource type. All validation models will be returned in a
      * {@link Trie} data structure for easy retrieval of the models using their {@code applicable paths} as trie keys.
@@ -276,64 +874,238 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
      *                  &#064;validatorArguments = [key=value,key=value...] (optional)
      * </pre>
      *
+     * The models of the registered {@link ValidationModelProvider}s and of the bundles are merged into the ones found in the repository,
+     * for the applicable paths not covered by the repository.
+     *
      * @param validatedResourceType the type of resource for which to scan the JCR repository for validation models
-     * @return a {@link Trie} with the validation models; an empty trie if no model is found
+     * @return a {@link Trie} with the validation models; {@code null} if no model is found
      */
     private Trie<JCRValidationModel> searchAndStoreValidationModel(String validatedResourceType) {
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        long generation = modelsGeneration.get();
+        modelLoads.incrementAndGet();
         Trie<JCRValidationModel> modelsForResourceType = null;
-        ResourceResolver rr = null;
-        JCRValidationModel vm;
+        // models loaded without all their sources are used for the current lookup only, so that the next lookup tries again
+        boolean complete = true;
+        try {
+            modelsForResourceType = searchValidationModels(validatedResourceType);
+        } catch (LoginException e) {
+            LOG.error("Unable to obtain a resource resolver.", e);
+            complete = false;
+        } catch (SlingException e) {
+            LOG.error("Cannot query the validation models of " + validatedResourceType + "; using the provided models only.", e);
+            complete = false;
+        }
+        BundleValidationModelProvider bundleModelProvider = this.bundleModelProvider;
+        for (ValidationModelProvider provider : modelProviders) {
+            try {
+                modelsForResourceType = mergeProvidedModels(provider, validatedResourceType, modelsForResourceType);
+            } catch (RuntimeException e) {
+                LOG.error("Validation model provider " + provider + " failed.", e);
+                complete = false;
+            }
+        }
+        if (bundleModelProvider != null) {
+            try {
+                modelsForResourceType = mergeProvidedModels(bundleModelProvider, validatedResourceType, modelsForResourceType);
+            } catch (RuntimeException e) {
+                LOG.error("Cannot read the validation models of " + validatedResourceType + " provided by bundles.", e);
+                complete = false;
+            }
+        }
+        if (modelsForResourceType != null && complete) {
+            publishValidationModels(validatedResourceType, modelsForResourceType, generation);
+        } else if (complete) {
+            missingModels.add(validatedResourceType);
+            if (modelsGeneration.get() != generation) {
+                missingModels.remove(validatedResourceType);
+            }
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordModelLoad(validatedResourceType, System.nanoTime() - start, modelsForResourceType != null);
+        }
+        return modelsForResourceType;
+    }
+
+    /**
+     * Queries the repository for the validation models of a resource type.
+     *
+     * @return a {@link Trie} with the validation models; {@code null} if no model is found
+     */
+    private Trie<JCRValidationModel> searchValidationModels(String validatedResourceType) throws LoginException {
+        Trie<JCRValidationModel> modelsForResourceType = null;
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
         try {
-            rr = rrf.getAdministrativeResourceResolver(null);
             String[] searchPaths = rr.getSearchPath();
+            List<Resource> modelResources = new ArrayList<Resource>();
+            List<String> modelSearchPaths = new ArrayList<String>();
             for (String searchPath : searchPaths) {
                 if (searchPath.endsWith("/")) {
                     searchPath = searchPath.substring(0, searchPath.length() - 1);
                 }
                 final String queryString = String.format(MODEL_XPATH_QUERY, searchPath, Constants.VALIDATION_MODEL_RESOURCE_TYPE,
-                        Constants.VALIDATED_RESOURCE_TYPE, validatedResourceType);
+                        Constants.VALIDATED_RESOURCE_TYPE, escapeXPathLiteral(validatedResourceType));
                 Iterator<Resource> models = rr.findResources(queryString, Query.XPATH);
                 while (models.hasNext()) {
                     Resource model = models.next();
                     LOG.info("Found validation model resource {}.", model.getPath());
-                    String jcrPath = model.getPath();
-                    ValueMap validationModelProperties = model.adaptTo(ValueMap.class);
-                    String[] applicablePaths = PropertiesUtil.toStringArray(validationModelProperties.get(Constants.APPLICABLE_PATHS,
-                            String[].class));
-                    if (validatedResourceType != null && !"".equals(validatedResourceType)) {
-                        Resource r = model.getChild(Constants.PROPERTIES);
-                        if (r != null) {
-                            Set<ResourceProperty> resourceProperties = JCRBuilder.buildProperties(validatorLookupService, r);
-                            if (!resourceProperties.isEmpty()) {
-                                List<ChildResource> children = JCRBuilder.buildChildren(model, model, validatorLookupService);
-                                vm = new JCRValidationModel(jcrPath, resourceProperties, validatedResourceType, applicablePaths, children);
-                                modelsForResourceType = validationModelsCache.get(validatedResourceType);
-                                /**
-                                 * if the modelsForResourceType is null the canAcceptModel will return true: performance optimisation so that
-                                 * the Trie is created only if the model is accepted
-                                 */
-
-                                if (canAcceptModel(vm, searchPath, searchPaths, modelsForResourceType)) {
-                                    if (modelsForResourceType == null) {
-                                        modelsForResourceType = new Trie<JCRValidationModel>();
-                                        validationModelsCache.put(validatedResourceType, modelsForResourceType);
-                                    }
-                                    for (String applicablePath : vm.getApplicablePaths()) {
-                                        modelsForResourceType.insert(applicablePath, vm);
-                                    }
-                                }
+                    modelResources.add(model);
+                    modelSearchPaths.add(searchPath);
+                }
+            }
+            JCRValidationModel[] models = buildValidationModels(rr, validatedResourceType, modelResources);
+            // merge the models in search path and query order, so that the outcome does not depend on the order they were built in
+            for (int i = 0; i < models.length; i++) {
+                JCRValidationModel vm = models[i];
+                /**
+                 * if the modelsForResourceType is null the canAcceptModel will return true: performance optimisation so that
+                 * the Trie is created only if the model is accepted
+                 */
+                if (vm != null && canAcceptModel(vm, modelSearchPaths.get(i), searchPaths, modelsForResourceType)) {
+                    if (modelsForResourceType == null) {
+                        modelsForResourceType = new Trie<JCRValidationModel>();
+                    }
+                    for (String applicablePath : vm.getApplicablePaths()) {
+                        modelsForResourceType.insert(applicablePath, vm);
+                    }
+                }
+            }
+        } finally {
+            rr.close();
+        }
+        return modelsForResourceType;
+    }
+
+    /**
+     * Escapes a value for use within a double-quoted XPath string literal, where quotes are escaped by doubling them. The resource types
+     * may come from requests, so they must not be able to alter the query.
+     */
+    static String escapeXPathLiteral(String value) {
+        return value.replace("\"", "\"\"");
+    }
+
+    /**
+     * Adds the models of a provider to the models already loaded for a resource type. A provided model is only used for the applicable
+     * paths which have no model yet.
+     *
+     * @return the merged models; {@code null} if there are neither loaded nor provided models
+     */
+    private Trie<JCRValidationModel> mergeProvidedModels(ValidationModelProvider provider, String validatedResourceType,
+                                                         Trie<JCRValidationModel> modelsForResourceType) {
+        List<ValidationModel> providedModels = provider.getValidationModels(validatedResourceType, validatorLookupService);
+        if (providedModels == null) {
+            return modelsForResourceType;
+        }
+        for (ValidationModel providedModel : providedModels) {
+            if (providedModel == null || providedModel.getApplicablePaths() == null) {
+                continue;
+            }
+            JCRValidationModel vm = providedModel instanceof JCRValidationModel ? (JCRValidationModel) providedModel : new
+                    JCRValidationModel(provider.getClass().getName(), providedModel.getResourceProperties(), providedModel
+                    .getValidatedResourceType(), providedModel.getApplicablePaths(), providedModel.getChildren());
+            for (String applicablePath : vm.getApplicablePaths()) {
+                if (applicablePath == null || "".equals(applicablePath)) {
+                    continue;
+                }
+                if (modelsForResourceType == null) {
+                    modelsForResourceType = new Trie<JCRValidationModel>();
+                }
+                if (modelsForResourceType.getElement(applicablePath).getValue() == null) {
+                    modelsForResourceType.insert(applicablePath, vm);
+                }
+            }
+        }
+        return modelsForResourceType;
+    }
+
+    /**
+     * Builds the validation models stored in {@code modelResources}. If a model builder pool is configured and there are enough models,
+     * they are spread over several workers, each reading the models through its own resource resolver; the requesting thread is one of
+     * the workers, using {@code rr}.
+     *
+     * @return the models, in the order of {@code modelResources}; {@code null} for the resources which do not describe a valid model
+     */
+    private JCRValidationModel[] buildValidationModels(ResourceResolver rr, final String validatedResourceType,
+                                                       final List<Resource> modelResources) throws LoginException {
+        final JCRValidationModel[] models = new JCRValidationModel[modelResources.size()];
+        ThreadPool pool = modelBuilderPool;
+        final int workers = pool == null ? 1 : Math.min(modelBuilderThreads, (models.length + MIN_MODELS_PER_WORKER - 1) /
+                MIN_MODELS_PER_WORKER);
+        if (workers <= 1) {
+            for (int i = 0; i < models.length; i++) {
+                models[i] = buildValidationModel(validatedResourceType, modelResources.get(i));
+            }
+            return models;
+        }
+        // the workers build every n-th model, so that large and small models are spread evenly
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+        for (int w = 1; w < workers; w++) {
+            final int worker = w;
+            FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws LoginException {
+                    ResourceResolver workerRr = rrf.getAdministrativeResourceResolver(null);
+                    try {
+                        for (int i = worker; i < models.length; i += workers) {
+                            Resource model = workerRr.getResource(modelResources.get(i).getPath());
+                            if (model != null) {
+                                models[i] = buildValidationModel(validatedResourceType, model);
                             }
                         }
+                    } finally {
+                        workerRr.close();
                     }
+                    return null;
                 }
+            });
+            tasks.add(task);
+            pool.execute(task);
+        }
+        try {
+            for (int i = 0; i < models.length; i += workers) {
+                models[i] = buildValidationModel(validatedResourceType, modelResources.get(i));
+            }
+            for (FutureTask<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SlingValidationException("Interrupted while building the validation models of " + validatedResourceType + ".");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LoginException) {
+                throw (LoginException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (FutureTask<Void> task : tasks) {
+                task.cancel(false);
             }
-        } catch (LoginException e) {
-            LOG.error("Unable to obtain a resource resolver.", e);
         }
-        if (rr != null) {
-            rr.close();
+        return models;
+    }
+
+    /**
+     * Builds the validation model stored in a resource.
+     *
+     * @return the model, or {@code null} if the resource does not describe a valid model
+     */
+    private JCRValidationModel buildValidationModel(String validatedResourceType, Resource model) {
+        return JCRBuilder.buildValidationModel(validatorLookupService, validatedResourceType, model, modelFragments);
+    }
+
+    /**
+     * Publishes the models loaded for a resource type, replacing the ones loaded concurrently by other threads. If the models were
+     * invalidated since the load started at {@code generation}, they may have been built from outdated content and are withdrawn again;
+     * the caller still uses them for the lookup which triggered the load.
+     */
+    private void publishValidationModels(String validatedResourceType, Trie<JCRValidationModel> modelsForResourceType, long generation) {
+        validationModelsCache.put(validatedResourceType, modelsForResourceType);
+        if (modelsGeneration.get() != generation) {
+            validationModelsCache.remove(validatedResourceType, modelsForResourceType);
         }
-        return modelsForResourceType;
     }
 
     /**
@@ -368,16 +1140,31 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
         return true;
     }
 
-    private void validatePropertyValue(ValidationResultImpl result, String property, String value, Type propertyType, Map<Validator,
+    /**
+     * Validates a single property value. Values which are already stored using a Java type matching the {@code propertyType} are not
+     * parsed; {@link TypedValidator}s receive the value as is, while all the other {@link Validator}s receive its {@code String}
+     * representation.
+     */
+    void validatePropertyValue(ValidationResultImpl result, String property, Object value, Type propertyType, Map<Validator,
             Map<String, String>> validators) {
         if (!propertyType.isValid(value)) {
             result.addFailureMessage(property, "Property was expected to be of type " + propertyType.getName());
         }
+        String stringValue = null;
         for (Map.Entry<Validator, Map<String, String>> validatorEntry : validators.entrySet()) {
             Validator validator = validatorEntry.getKey();
             Map<String, String> arguments = validatorEntry.getValue();
             try {
-                if (!validator.validate(value, arguments)) {
+                boolean valid;
+                if (validator instanceof TypedValidator) {
+                    valid = invokeValidator(validator, arguments, propertyType, value);
+                } else {
+                    if (stringValue == null) {
+                        stringValue = toString(value);
+                    }
+                    valid = invokeValidator(validator, arguments, propertyType, stringValue);
+                }
+                if (!valid) {
                     result.addFailureMessage(property, "Property does not contain a valid value for the " + validator
                             .getClass().getName() + " validator");
                 }
@@ -387,4 +1174,258 @@ public class ValidationServiceImpl implements ValidationService, EventHandler {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Validates all the values of a multiple-valued property. Each validator is applied to the whole array at once - {@link
+     * MultiValueValidator}s with a single call - and its failures are reported in a single failure message listing the indexes of the
+     * invalid values.
+     */
+    void validatePropertyValues(ValidationResultImpl result, String property, Object[] values, Type propertyType,
+                                Map<Validator, Map<String, String>> validators) {
+        int[] invalid = new int[values.length];
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (!propertyType.isValid(values[i])) {
+                invalid[count++] = i;
+            }
+        }
+        if (count > 0) {
+            result.addFailureMessage(property, "Property was expected to be of type " + propertyType.getName() + " (invalid values at " +
+                    "indexes " + Arrays.toString(Arrays.copyOf(invalid, count)) + ")");
+        }
+        String[] stringValues = null;
+        for (Map.Entry<Validator, Map<String, String>> validatorEntry : validators.entrySet()) {
+            Validator validator = validatorEntry.getKey();
+            Map<String, String> arguments = validatorEntry.getValue();
+            try {
+                int[] invalidIndexes;
+                if (validator instanceof MultiValueValidator) {
+                    if (stringValues == null) {
+                        stringValues = toStrings(values);
+                    }
+                    invalidIndexes = invokeMultiValueValidator((MultiValueValidator) validator, arguments, stringValues);
+                } else if (validator instanceof TypedValidator) {
+                    count = 0;
+                    for (int i = 0; i < values.length; i++) {
+                        if (!invokeValidator(validator, arguments, propertyType, values[i])) {
+                            invalid[count++] = i;
+                        }
+                    }
+                    invalidIndexes = Arrays.copyOf(invalid, count);
+                } else {
+                    if (stringValues == null) {
+                        stringValues = toStrings(values);
+                    }
+                    count = 0;
+                    for (int i = 0; i < stringValues.length; i++) {
+                        if (!invokeValidator(validator, arguments, propertyType, stringValues[i])) {
+                            invalid[count++] = i;
+                        }
+                    }
+                    invalidIndexes = Arrays.copyOf(invalid, count);
+                }
+                if (invalidIndexes.length > 0) {
+                    result.addFailureMessage(property, "Property does not contain a valid value for the " + validator.getClass().getName()
+                            + " validator (invalid values at indexes " + Arrays.toString(invalidIndexes) + ")");
+                }
+            } catch (SlingValidationException e) {
+                LOG.error("SlingValidationException for resourceProperty " + property, e);
+                result.addFailureMessage(property, "Validator " + validator.getClass() + "encountered a problem: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String[] toStrings(Object[] values) {
+        if (values instanceof String[]) {
+            return (String[]) values;
+        }
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = toString(values[i]);
+        }
+        return strings;
+    }
+
+    /**
+     * Applies a validator to a single value, using the memo cache for {@link PureValidator}s.
+     *
+     * @param value the value to validate; this has to be a {@code String} unless the {@code validator} is a {@link TypedValidator}
+     */
+    private boolean invokeValidator(Validator validator, Map<String, String> arguments, Type propertyType, Object value) {
+        boolean typed = validator instanceof TypedValidator;
+        ValidatorResultCache memoCache = this.memoCache;
+        boolean memoize = memoCache != null && validator instanceof PureValidator && isMemoizable(value);
+        Type keyType = typed ? propertyType : null;
+        if (memoize) {
+            Boolean cached = memoCache.get(validator, arguments, keyType, value);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        boolean valid;
+        ValidationTrace trace = slowLog.current();
+        if (metrics.isEnabled() || trace != null) {
+            long start = System.nanoTime();
+            valid = false;
+            try {
+                valid = callValidator(validator, arguments, propertyType, value);
+            } finally {
+                recordValidator(validator, System.nanoTime() - start, valid, trace);
+            }
+        } else {
+            valid = callValidator(validator, arguments, propertyType, value);
+        }
+        if (memoize) {
+            memoCache.put(validator, arguments, keyType, value, valid);
+        }
+        return valid;
+    }
+
+    private static boolean callValidator(Validator validator, Map<String, String> arguments, Type propertyType, Object value) {
+        if (validator instanceof TypedValidator) {
+            return ((TypedValidator) validator).validate(value, propertyType, arguments);
+        }
+        return validator.validate((String) value, arguments);
+    }
+
+    private int[] callMultiValueValidator(MultiValueValidator validator, Map<String, String> arguments, String[] values) {
+        ValidationTrace trace = slowLog.current();
+        if (!metrics.isEnabled() && trace == null) {
+            return checkIndexes(validator.validate(values, arguments), values.length);
+        }
+        long start = System.nanoTime();
+        boolean valid = false;
+        try {
+            int[] invalidIndexes = checkIndexes(validator.validate(values, arguments), values.length);
+            valid = invalidIndexes.length == 0;
+            return invalidIndexes;
+        } finally {
+            recordValidator(validator, System.nanoTime() - start, valid, trace);
+        }
+    }
+
+    /**
+     * Returns the indexes reported by a {@link MultiValueValidator} in ascending order, without duplicates and without the indexes which
+     * do not refer to one of the {@code length} values; {@code null} stands for no invalid values.
+     */
+    private static int[] checkIndexes(int[] indexes, int length) {
+        if (indexes == null) {
+            return new int[0];
+        }
+        boolean ordered = true;
+        for (int i = 0; i < indexes.length && ordered; i++) {
+            ordered = indexes[i] >= 0 && indexes[i] < length && (i == 0 || indexes[i] > indexes[i - 1]);
+        }
+        if (ordered) {
+            return indexes;
+        }
+        int[] sorted = indexes.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int index : sorted) {
+            if (index >= 0 && index < length && (count == 0 || index != sorted[count - 1])) {
+                sorted[count++] = index;
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private void recordValidator(Validator validator, long nanos, boolean valid, ValidationTrace trace) {
+        if (metrics.isEnabled()) {
+            metrics.recordValidator(validator.getClass(), nanos, valid);
+        }
+        if (trace != null) {
+            trace.addValidator(validator.getClass(), nanos);
+        }
+    }
+
+    /**
+     * Applies a {@link MultiValueValidator} to all the {@code values}. For {@link PureValidator}s only the values whose outcome is not
+     * memoized are passed to the validator.
+     *
+     * @return the indexes of the invalid values
+     */
+    private int[] invokeMultiValueValidator(MultiValueValidator validator, Map<String, String> arguments, String[] values) {
+        ValidatorResultCache memoCache = this.memoCache;
+        if (memoCache == null || !(validator instanceof PureValidator)) {
+            return callMultiValueValidator(validator, arguments, values);
+        }
+        boolean[] invalid = new boolean[values.length];
+        int[] misses = new int[values.length];
+        int missCount = 0;
+        for (int i = 0; i < values.length; i++) {
+            Boolean cached = isMemoizable(values[i]) ? memoCache.get(validator, arguments, null, values[i]) : null;
+            if (cached == null) {
+                misses[missCount++] = i;
+            } else {
+                invalid[i] = !cached;
+            }
+        }
+        if (missCount > 0) {
+            String[] toValidate;
+            if (missCount == values.length) {
+                toValidate = values;
+            } else {
+                toValidate = new String[missCount];
+                for (int i = 0; i < missCount; i++) {
+                    toValidate[i] = values[misses[i]];
+                }
+            }
+            int[] failed = callMultiValueValidator(validator, arguments, toValidate);
+            int f = 0;
+            for (int i = 0; i < missCount; i++) {
+                boolean valid = f >= failed.length || failed[f] != i;
+                if (!valid) {
+                    f++;
+                }
+                invalid[misses[i]] = !valid;
+                if (isMemoizable(toValidate[i])) {
+                    memoCache.put(validator, arguments, null, toValidate[i], valid);
+                }
+            }
+        }
+        int count = 0;
+        for (boolean b : invalid) {
+            if (b) {
+                count++;
+            }
+        }
+        int[] invalidIndexes = new int[count];
+        count = 0;
+        for (int i = 0; i < invalid.length; i++) {
+            if (invalid[i]) {
+                invalidIndexes[count++] = i;
+            }
+        }
+        return invalidIndexes;
+    }
+
+    private static boolean isMemoizable(Object value) {
+        if (value == null || !MEMOIZABLE_TYPES.contains(value.getClass())) {
+            return false;
+        }
+        if (value instanceof String) {
+            return ((String) value).length() <= MAX_MEMOIZED_VALUE_LENGTH;
+        }
+        return !(value instanceof BigDecimal) || ((BigDecimal) value).precision() <= MAX_MEMOIZED_VALUE_LENGTH;
+    }
+
+    /**
+     * Returns the {@code String} representation of a value obtained from a {@link ValueMap}. Dates are represented in the ISO8601 format
+     * used by the JCR.
+     */
+    private static String toString(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Calendar) {
+            return ISO8601.format((Calendar) value);
+        }
+        if (value instanceof Date) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime((Date) value);
+            return ISO8601.format(calendar);
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects the timings of the steps of one validation: the model lookup, each property, each validator class and each child resource
+ * fetch.
+ */
+class ValidationTrace {
+
+    /**
+     * The maximum number of properties and children listed in a log record; the slowest ones are listed.
+     */
+    static final int MAX_LISTED_STEPS = 10;
+
+    private static final Comparator<Step> SLOWEST_FIRST = new Comparator<Step>() {
+        @Override
+        public int compare(Step s1, Step s2) {
+            return s1.nanos < s2.nanos ? 1 : (s1.nanos == s2.nanos ? 0 : -1);
+        }
+    };
+
+    private final String resourceType;
+    private final String path;
+    private final long start;
+    private final long lookupNanos;
+    private final List<Step> properties = new ArrayList<Step>();
+    private final List<Step> children = new ArrayList<Step>();
+    private final Map<String, Step> validators = new HashMap<String, Step>();
+
+    /**
+     * Starts the trace of a validation.
+     *
+     * @param lookupNanos the duration of the model lookup preceding the validation, if any
+     */
+    ValidationTrace(String resourceType, String path, long lookupNanos) {
+        this.resourceType = resourceType;
+        this.path = path;
+        this.lookupNanos = lookupNanos;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Ends the validation.
+     *
+     * @return the duration of the validation, including the model lookup
+     */
+    long stop() {
+        return System.nanoTime() - start + lookupNanos;
+    }
+
+    void addProperty(String name, long nanos) {
+        properties.add(new Step(name, nanos));
+    }
+
+    void addChild(String name, long nanos) {
+        children.add(new Step(name, nanos));
+    }
+
+    void addValidator(Class<?> validatorClass, long nanos) {
+        Step step = validators.get(validatorClass.getName());
+        if (step == null) {
+            step = new Step(validatorClass.getName(), 0);
+            validators.put(step.name, step);
+        }
+        step.nanos += nanos;
+        step.count++;
+    }
+
+    /**
+     * Formats the trace as a single line of {@code key=value} pairs.
+     */
+    String format(long totalNanos, long suppressed) {
+        StringBuilder sb = new StringBuilder("Slow validation: resourceType=").append(resourceType).append(" path=").append(path);
+        sb.append(" totalMs=").append(millis(totalNanos)).append(" lookupMs=").append(millis(lookupNanos));
+        append(sb, "properties", properties, false);
+        append(sb, "validators", new ArrayList<Step>(validators.values()), true);
+        append(sb, "children", children, false);
+        if (suppressed > 0) {
+            sb.append(" suppressed=").append(suppressed);
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String key, List<Step> steps, boolean counts) {
+        List<Step> sorted = new ArrayList<Step>(steps);
+        Collections.sort(sorted, SLOWEST_FIRST);
+        sb.append(' ').append(key).append("=[");
+        int listed = Math.min(sorted.size(), MAX_LISTED_STEPS);
+        for (int i = 0; i < listed; i++) {
+            Step step = sorted.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(step.name).append(':').append(millis(step.nanos)).append("ms");
+            if (counts) {
+                sb.append('/').append(step.count);
+            }
+        }
+        if (sorted.size() > listed) {
+            sb.append(", ...").append(sorted.size() - listed).append(" more");
+        }
+        sb.append(']');
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0);
+    }
+
+    private static final class Step {
+
+        private final String name;
+        private long nanos;
+        private int count;
+
+        Step(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+}
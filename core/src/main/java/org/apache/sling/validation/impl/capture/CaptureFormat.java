@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.capture;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * The binary format of capture logs. A log starts with the {@link #MAGIC} number and the format {@link #VERSION}, followed by records:
+ * <pre>
+ * record     := kind(byte) timestamp(varlong) resourceType(string) path(string) properties(map) childCount(varint) (name(string) map)*
+ * map        := count(varint) (name(string) value)*
+ * value      := tag(byte) payload
+ * string     := length(varint) UTF-8 bytes
+ * </pre>
+ * Values are tagged with their Java type, so that replayed validations see the same types as the captured ones; types without a tag are
+ * recorded as strings.
+ */
+final class CaptureFormat {
+
+    static final int MAGIC = 0x53564341;
+    static final int VERSION = 1;
+
+    static final byte VALUE_MAP = 1;
+    static final byte RESOURCE = 2;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte CALENDAR = 7;
+    private static final byte DATE = 8;
+    private static final byte ARRAY = 9;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private CaptureFormat() {
+    }
+
+    static void writeRecord(DataOutput out, CapturedValidation validation) throws IOException {
+        out.writeByte(validation.isResource() ? RESOURCE : VALUE_MAP);
+        writeVarLong(out, validation.getTimestamp());
+        writeString(out, validation.getResourceType());
+        writeString(out, validation.getPath());
+        writeMap(out, validation.getProperties());
+        writeVarLong(out, validation.getChildren().size());
+        for (Map.Entry<String, Map<String, Object>> child : validation.getChildren().entrySet()) {
+            writeString(out, child.getKey());
+            writeMap(out, child.getValue());
+        }
+    }
+
+    static CapturedValidation readRecord(DataInput in, byte kind) throws IOException {
+        if (kind != VALUE_MAP && kind != RESOURCE) {
+            throw new IOException("Unknown record kind " + kind + ".");
+        }
+        long timestamp = readVarLong(in);
+        String resourceType = readString(in);
+        String path = readString(in);
+        Map<String, Object> properties = readMap(in);
+        int childCount = (int) readVarLong(in);
+        Map<String, Map<String, Object>> children = new LinkedHashMap<String, Map<String, Object>>();
+        for (int i = 0; i < childCount; i++) {
+            String name = readString(in);
+            children.put(name, readMap(in));
+        }
+        return new CapturedValidation(timestamp, kind == RESOURCE, resourceType, path, properties, children);
+    }
+
+    private static void writeMap(DataOutput out, Map<String, Object> map) throws IOException {
+        writeVarLong(out, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readMap(DataInput in) throws IOException {
+        int count = (int) readVarLong(in);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            map.put(name, readValue(in));
+        }
+        return map;
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Object[]) {
+            Object[] values = (Object[]) value;
+            out.writeByte(ARRAY);
+            writeVarLong(out, values.length);
+            for (Object element : values) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            out.writeByte(CALENDAR);
+            out.writeLong(calendar.getTimeInMillis());
+            writeString(out, calendar.getTimeZone().getID());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BOOLEAN:
+                return in.readBoolean();
+            case CALENDAR:
+                long millis = in.readLong();
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(readString(in)));
+                calendar.setTimeInMillis(millis);
+                return calendar;
+            case DATE:
+                return new Date(in.readLong());
+            case ARRAY:
+                Object[] values = new Object[(int) readVarLong(in)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readValue(in);
+                }
+                return values;
+            default:
+                throw new IOException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number.");
+    }
+}
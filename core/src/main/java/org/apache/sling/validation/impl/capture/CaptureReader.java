@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.capture;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the records of a capture log written by a {@link CaptureWriter}. A record truncated at the end of the log, e.g. because the
+ * instance stopped while writing it, is treated as the end of the log.
+ */
+public class CaptureReader implements Closeable {
+
+    private final DataInputStream in;
+
+    public CaptureReader(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public CaptureReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (this.in.readInt() != CaptureFormat.MAGIC) {
+                throw new IOException("Not a validation capture log.");
+            }
+            int version = this.in.readInt();
+            if (version != CaptureFormat.VERSION) {
+                throw new IOException("Unsupported capture log version " + version + ".");
+            }
+        } catch (IOException e) {
+            this.in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the record, or {@code null} at the end of the log
+     * @throws IOException if the log cannot be read or is malformed
+     */
+    public CapturedValidation next() throws IOException {
+        int kind = in.read();
+        if (kind < 0) {
+            return null;
+        }
+        try {
+            return CaptureFormat.readRecord(in, (byte) kind);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.capture;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.sling.validation.capture.CaptureRedactor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends sampled validations to a capture log, to be replayed later against a build of the validation engine. Only a percentage of the
+ * validations is captured, and capturing stops once the log reaches its maximum size.
+ * <p/>
+ * Before a validation is recorded, the values of the redacted properties are masked with a string of {@code x}s of the same length, and
+ * the remaining values are passed to the {@link CaptureRedactor}, if any. Records are encoded outside of the lock on the log, so that
+ * concurrent validations only contend for the append. Each record is flushed as soon as it is appended, so that the log can be read while
+ * the instance is running and a crash loses at most the record being written.
+ */
+public class CaptureWriter implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptureWriter.class);
+
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final File file;
+    private final int samplePercent;
+    private final long maxBytes;
+    private final Set<String> redactedProperties;
+    private final OutputStream out;
+    private long bytesWritten;
+    private volatile boolean full;
+
+    /**
+     * Opens a capture log, appending to it if it already exists.
+     *
+     * @param file               the log file
+     * @param samplePercent      the percentage of validations which are captured
+     * @param maxBytes           the size of the log above which no more validations are captured
+     * @param redactedProperties the names of the properties whose values are masked
+     * @throws IOException if the log cannot be opened
+     */
+    public CaptureWriter(File file, int samplePercent, long maxBytes, Collection<String> redactedProperties) throws IOException {
+        this.file = file;
+        this.samplePercent = samplePercent;
+        this.maxBytes = maxBytes;
+        this.redactedProperties = new HashSet<String>(redactedProperties);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create the directory " + parent + ".");
+        }
+        bytesWritten = file.length();
+        out = new BufferedOutputStream(new FileOutputStream(file, true));
+        if (bytesWritten == 0) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(CaptureFormat.MAGIC);
+            header.writeInt(CaptureFormat.VERSION);
+            bytesWritten = header.size();
+            out.flush();
+        }
+        full = bytesWritten >= maxBytes;
+    }
+
+    /**
+     * Decides whether the current validation is captured.
+     */
+    public boolean isSampled() {
+        return !full && samplePercent > 0 && (samplePercent >= 100 || random.get().nextInt(100) < samplePercent);
+    }
+
+    /**
+     * Redacts and appends a validation to the log. Nothing is written once the log is full or closed.
+     *
+     * @param validation the validation
+     * @param redactor   the redactor to apply after the redacted properties are masked, or {@code null}
+     * @throws IOException if the record cannot be written
+     */
+    public void write(CapturedValidation validation, CaptureRedactor redactor) throws IOException {
+        if (full) {
+            return;
+        }
+        Map<String, Map<String, Object>> children = new LinkedHashMap<String, Map<String, Object>>();
+        for (Map.Entry<String, Map<String, Object>> child : validation.getChildren().entrySet()) {
+            children.put(child.getKey(), redact(validation, child.getKey() + "/", child.getValue(), redactor));
+        }
+        CapturedValidation redacted = new CapturedValidation(validation.getTimestamp(), validation.isResource(),
+                validation.getResourceType(), validation.getPath(), redact(validation, "", validation.getProperties(), redactor), children);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        CaptureFormat.writeRecord(new DataOutputStream(record), redacted);
+        synchronized (this) {
+            if (full) {
+                return;
+            }
+            if (bytesWritten + record.size() > maxBytes) {
+                full = true;
+                out.flush();
+                LOG.info("The capture log {} reached its maximum size of {} bytes, no more validations are captured.", file, maxBytes);
+                return;
+            }
+            record.writeTo(out);
+            out.flush();
+            bytesWritten += record.size();
+        }
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Flushes the buffered records to the log.
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        full = true;
+        out.close();
+    }
+
+    private Map<String, Object> redact(CapturedValidation validation, String prefix, Map<String, Object> properties,
+                                       CaptureRedactor redactor) {
+        Map<String, Object> redacted = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            Object value = entry.getValue();
+            if (redactedProperties.contains(entry.getKey())) {
+                value = mask(value);
+            }
+            if (redactor != null) {
+                value = redactor.redact(validation.getResourceType(), validation.getPath(), prefix + entry.getKey(), value);
+            }
+            if (value != null) {
+                redacted.put(entry.getKey(), value);
+            }
+        }
+        return redacted;
+    }
+
+    private static Object mask(Object value) {
+        if (value instanceof Object[]) {
+            Object[] values = (Object[]) value;
+            Object[] masked = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                masked[i] = mask(values[i]);
+            }
+            return masked;
+        }
+        if (value == null) {
+            return null;
+        }
+        char[] mask = new char[value.toString().length()];
+        Arrays.fill(mask, 'x');
+        return new String(mask);
+    }
+}
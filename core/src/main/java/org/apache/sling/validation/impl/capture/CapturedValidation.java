@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.capture;
+
+import java.util.Map;
+
+/**
+ * A validation recorded in a capture log: the validated resource type and path, and the values of the properties described by the
+ * validation model, for the resource and for each of the child resources described by the model.
+ */
+public class CapturedValidation {
+
+    private final long timestamp;
+    private final boolean resource;
+    private final String resourceType;
+    private final String path;
+    private final Map<String, Object> properties;
+    private final Map<String, Map<String, Object>> children;
+
+    /**
+     * @param timestamp    the time of the validation, in milliseconds since the epoch
+     * @param resource     {@code true} if a resource was validated, {@code false} for a value map
+     * @param resourceType the validated resource type
+     * @param path         the path of the resource, or the applicable path of the model for a value map
+     * @param properties   the property values, by property name
+     * @param children     the property values of the child resources, by child name
+     */
+    public CapturedValidation(long timestamp, boolean resource, String resourceType, String path, Map<String, Object> properties,
+                              Map<String, Map<String, Object>> children) {
+        this.timestamp = timestamp;
+        this.resource = resource;
+        this.resourceType = resourceType;
+        this.path = path;
+        this.properties = properties;
+        this.children = children;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isResource() {
+        return resource;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public Map<String, Map<String, Object>> getChildren() {
+        return children;
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.exceptions.NonExistingTypeException;
+import org.apache.sling.validation.impl.Constants;
+import org.apache.sling.validation.impl.util.JsonModelReader;
+import org.apache.sling.validation.impl.util.JsonResource;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Compiles validation model definitions into a {@link ModelIndex} at build time. The definitions are read from a folder laid out like a
+ * repository (e.g. the {@code jcr_root} of a content package), in any mix of
+ * <ul>
+ * <li>JSON files in the format of the Sling JSON content loader, holding a content tree, a model or an array of models;</li>
+ * <li>FileVault {@code .content.xml} files, in which case the sub-folders of a folder with a {@code .content.xml} file describe its child
+ * nodes.</li>
+ * </ul>
+ * A node is a model if its {@code sling:resourceType} is {@value Constants#VALIDATION_MODEL_RESOURCE_TYPE} or if it defines a {@value
+ * Constants#VALIDATED_RESOURCE_TYPE}.
+ * <p/>
+ * The models are checked more strictly than at runtime, where invalid definitions are skipped or fail validations: every problem is
+ * reported through {@link #getErrors()}, including unknown property types and validator arguments which are not of the form {@code
+ * key=value}.
+ */
+public class ModelCompiler {
+
+    private static final String CONTENT_XML = ".content.xml";
+    private static final String JSON_EXTENSION = ".json";
+    private static final String RESOURCE_TYPE_PROPERTY = "sling:resourceType";
+
+    private final ModelIndexWriter writer = new ModelIndexWriter();
+    private final List<String> errors = new ArrayList<String>();
+
+    /**
+     * Compiles the model definitions stored in a folder and its sub-folders. The paths of the models are relative to the folder.
+     *
+     * @param root the folder
+     * @throws IOException if a file cannot be read
+     */
+    public void addDirectory(File root) throws IOException {
+        addDirectory(root, "");
+    }
+
+    private void addDirectory(File directory, String path) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        boolean contentXml = new File(directory, CONTENT_XML).isFile();
+        if (contentXml) {
+            // the .content.xml file and the sub-folders describe the whole tree under this folder
+            try {
+                addModels(new JsonResource(path, readNode(directory, path)));
+            } catch (JSONException e) {
+                errors.add(path + ": " + e.getMessage());
+            }
+        }
+        for (File file : files) {
+            String childPath = path + "/" + decodeFileName(file.getName());
+            if (file.isDirectory()) {
+                if (contentXml) {
+                    addJsonFiles(file, childPath);
+                } else {
+                    addDirectory(file, childPath);
+                }
+            } else if (file.getName().endsWith(JSON_EXTENSION)) {
+                addJsonFile(file, childPath.substring(0, childPath.length() - JSON_EXTENSION.length()));
+            }
+        }
+    }
+
+    private void addJsonFiles(File directory, String path) throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String childPath = path + "/" + decodeFileName(file.getName());
+                if (file.isDirectory()) {
+                    addJsonFiles(file, childPath);
+                } else if (file.getName().endsWith(JSON_EXTENSION)) {
+                    addJsonFile(file, childPath.substring(0, childPath.length() - JSON_EXTENSION.length()));
+                }
+            }
+        }
+    }
+
+    private void addJsonFile(File file, String path) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            addJson(path, reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Compiles the model definitions of a JSON file: a content tree, a model or an array of models.
+     *
+     * @param path   the path of the file's root node
+     * @param reader the reader providing the file
+     * @throws IOException if the file cannot be read
+     */
+    public void addJson(String path, Reader reader) throws IOException {
+        List<JsonResource> resources = new ArrayList<JsonResource>();
+        try {
+            JsonModelReader.read(path, reader, resources);
+        } catch (JSONException e) {
+            errors.add(path + JSON_EXTENSION + ": " + e.getMessage());
+            return;
+        }
+        for (JsonResource resource : resources) {
+            addModels(resource);
+        }
+    }
+
+    /**
+     * Compiles the model definitions of a FileVault {@code .content.xml} file.
+     *
+     * @param path the path of the file's root node
+     * @param in   the stream providing the file
+     * @throws IOException if the file cannot be read
+     */
+    public void addContentXml(String path, InputStream in) throws IOException {
+        try {
+            addModels(new JsonResource(path, toJson(parse(in).getDocumentElement())));
+        } catch (JSONException e) {
+            errors.add(path + "/" + CONTENT_XML + ": " + e.getMessage());
+        } catch (SAXException e) {
+            errors.add(path + "/" + CONTENT_XML + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the problems found in the model definitions. The index must not be written unless there are none.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public int getModelCount() {
+        return writer.getModelCount();
+    }
+
+    /**
+     * Writes the index of the compiled models.
+     *
+     * @param out the stream to write to; it is not closed
+     * @throws IOException           if the index cannot be written
+     * @throws IllegalStateException if problems were found in the model definitions
+     */
+    public void write(OutputStream out) throws IOException {
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException(errors.size() + " problems were found in the validation models.");
+        }
+        writer.write(out);
+    }
+
+    private void addModels(Resource resource) {
+        ValueMap properties = resource.adaptTo(ValueMap.class);
+        if (Constants.VALIDATION_MODEL_RESOURCE_TYPE.equals(properties.get(RESOURCE_TYPE_PROPERTY, String.class)) || properties.containsKey(
+                Constants.VALIDATED_RESOURCE_TYPE)) {
+            addModel(resource, properties);
+        } else {
+            for (Resource child : resource.getChildren()) {
+                addModels(child);
+            }
+        }
+    }
+
+    /**
+     * Checks and adds a model, following the structure expected by {@code JCRBuilder}.
+     */
+    private void addModel(Resource model, ValueMap properties) {
+        int errorCount = errors.size();
+        String path = model.getPath();
+        String validatedResourceType = properties.get(Constants.VALIDATED_RESOURCE_TYPE, String.class);
+        if (validatedResourceType == null || "".equals(validatedResourceType)) {
+            errors.add(path + ": missing " + Constants.VALIDATED_RESOURCE_TYPE + ".");
+        }
+        String[] applicablePaths = toStrings(properties.get(Constants.APPLICABLE_PATHS));
+        if (applicablePaths.length == 0) {
+            errors.add(path + ": missing " + Constants.APPLICABLE_PATHS + ".");
+        }
+        if (properties.containsKey(Constants.EXTENDS) || properties.containsKey(Constants.INCLUDES)) {
+            // the references are resolved against the repository, which is not available at build time
+            errors.add(path + ": " + Constants.EXTENDS + " and " + Constants.INCLUDES + " are only supported by the models stored in the " +
+                    "repository.");
+        }
+        List<ModelIndexWriter.Property> modelProperties = compileProperties(path, model.getChild(Constants.PROPERTIES));
+        if (modelProperties.isEmpty()) {
+            errors.add(path + ": the model defines no " + Constants.PROPERTIES + " and would be ignored.");
+        }
+        Map<String, List<ModelIndexWriter.Property>> children = new LinkedHashMap<String, List<ModelIndexWriter.Property>>();
+        compileChildren(path, model, "", children);
+        if (errors.size() == errorCount) {
+            writer.add(new ModelIndexWriter.Model(path, validatedResourceType, applicablePaths, modelProperties, children));
+        }
+    }
+
+    private void compileChildren(String path, Resource parent, String prefix, Map<String, List<ModelIndexWriter.Property>> children) {
+        Resource childrenResource = parent.getChild(Constants.CHILDREN);
+        if (childrenResource != null) {
+            for (Resource child : childrenResource.getChildren()) {
+                String name = prefix + child.getName();
+                children.put(name, compileProperties(path, child.getChild(Constants.PROPERTIES)));
+                compileChildren(path, child, name + "/", children);
+            }
+        }
+    }
+
+    private List<ModelIndexWriter.Property> compileProperties(String path, Resource propertiesResource) {
+        List<ModelIndexWriter.Property> properties = new ArrayList<ModelIndexWriter.Property>();
+        if (propertiesResource == null) {
+            return properties;
+        }
+        for (Resource property : propertiesResource.getChildren()) {
+            String propertyPath = path + ": property " + property.getPath().substring(path.length() + 1);
+            ValueMap propertyValueMap = property.adaptTo(ValueMap.class);
+            String type = propertyValueMap.get(Constants.PROPERTY_TYPE, String.class);
+            try {
+                Type.getType(type);
+            } catch (NonExistingTypeException e) {
+                errors.add(propertyPath + ": " + (type == null ? "missing " + Constants.PROPERTY_TYPE : "unknown " + Constants.PROPERTY_TYPE
+                        + " '" + type + "'") + ", expected one of " + getTypeNames() + ".");
+            }
+            Object multiple = propertyValueMap.get(Constants.PROPERTY_MULTIPLE);
+            if (multiple != null && !(multiple instanceof Boolean) && !"true".equals(multiple) && !"false".equals(multiple)) {
+                errors.add(propertyPath + ": " + Constants.PROPERTY_MULTIPLE + " '" + multiple + "' is not a boolean.");
+            }
+            Map<String, Map<String, String>> validators = new LinkedHashMap<String, Map<String, String>>();
+            Resource validatorsResource = property.getChild(Constants.VALIDATORS);
+            if (validatorsResource != null) {
+                for (Resource validator : validatorsResource.getChildren()) {
+                    Map<String, String> arguments = new LinkedHashMap<String, String>();
+                    for (String argument : toStrings(validator.adaptTo(ValueMap.class).get(Constants.VALIDATOR_ARGUMENTS))) {
+                        String[] keyValuePair = argument.split("=");
+                        if (keyValuePair.length != 2) {
+                            // JCRBuilder silently drops such arguments
+                            errors.add(propertyPath + ": argument '" + argument + "' of validator " + validator.getName() +
+                                    " is not of the form key=value, with a single '='.");
+                        } else {
+                            arguments.put(keyValuePair[0], keyValuePair[1]);
+                        }
+                    }
+                    validators.put(validator.getName(), arguments);
+                }
+            }
+            properties.add(new ModelIndexWriter.Property(property.getName(), type, multiple != null && Boolean.valueOf(multiple
+                    .toString()), validators));
+        }
+        return properties;
+    }
+
+    private static String getTypeNames() {
+        List<String> names = new ArrayList<String>();
+        for (Type type : Type.values()) {
+            names.add(type.getName());
+        }
+        return names.toString();
+    }
+
+    private static String[] toStrings(Object value) {
+        if (value == null) {
+            return new String[0];
+        }
+        if (value instanceof Object[]) {
+            Object[] values = (Object[]) value;
+            String[] strings = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                strings[i] = String.valueOf(values[i]);
+            }
+            return strings;
+        }
+        return new String[]{value.toString()};
+    }
+
+    // FileVault document view #############################################################################################################
+
+    /**
+     * Reads the node described by the {@code .content.xml} file of a folder, merged with the nodes described by its sub-folders.
+     */
+    private JSONObject readNode(File directory, String path) throws IOException, JSONException {
+        JSONObject node;
+        File contentXml = new File(directory, CONTENT_XML);
+        if (contentXml.isFile()) {
+            InputStream in = new FileInputStream(contentXml);
+            try {
+                node = toJson(parse(in).getDocumentElement());
+            } catch (SAXException e) {
+                errors.add(path + "/" + CONTENT_XML + ": " + e.getMessage());
+                node = new JSONObject();
+            } finally {
+                in.close();
+            }
+        } else {
+            node = new JSONObject();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    String name = decodeFileName(file.getName());
+                    JSONObject child = readNode(file, path + "/" + name);
+                    JSONObject existing = node.optJSONObject(name);
+                    if (existing != null) {
+                        merge(existing, child);
+                    } else {
+                        node.put(name, child);
+                    }
+                }
+            }
+        }
+        return node;
+    }
+
+    private static void merge(JSONObject target, JSONObject source) throws JSONException {
+        for (Iterator<String> keys = source.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            Object value = source.get(key);
+            JSONObject existing = target.optJSONObject(key);
+            if (existing != null && value instanceof JSONObject) {
+                merge(existing, (JSONObject) value);
+            } else {
+                target.put(key, value);
+            }
+        }
+    }
+
+    private static Document parse(InputStream in) throws IOException, SAXException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(in);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts an element of a document view to a node: attributes are properties, child elements are child nodes.
+     */
+    private static JSONObject toJson(Element element) throws JSONException {
+        JSONObject node = new JSONObject();
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String name = attribute.getName();
+            if (!"xmlns".equals(name) && !name.startsWith("xmlns:")) {
+                Object value = parseValue(attribute.getValue());
+                node.put(decodeName(name), value instanceof List ? new JSONArray((List<?>) value) : value);
+            }
+        }
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child instanceof Element) {
+                node.put(decodeName(child.getNodeName()), toJson((Element) child));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Parses a document view property value: an optional {@code {Type}} prefix, followed by a value or by a {@code [value1,value2]} list
+     * in which commas and backslashes are escaped with a backslash.
+     */
+    static Object parseValue(String value) {
+        if (value.startsWith("{")) {
+            int end = value.indexOf('}');
+            if (end > 0) {
+                value = value.substring(end + 1);
+            }
+        }
+        if (!value.startsWith("[") || !value.endsWith("]")) {
+            return unescape(value);
+        }
+        List<String> values = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 1; i < value.length() - 1; i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length() - 1) {
+                current.append(value.charAt(++i));
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0 || !values.isEmpty()) {
+            values.add(current.toString());
+        }
+        return values;
+    }
+
+    private static String unescape(String value) {
+        return value.startsWith("\\{") || value.startsWith("\\[") ? value.substring(1) : value;
+    }
+
+    /**
+     * Decodes the name of a FileVault file: namespace prefixes are stored as {@code _prefix_name} instead of {@code prefix:name}.
+     */
+    static String decodeFileName(String name) {
+        int end = name.indexOf('_', 1);
+        if (name.startsWith("_") && end > 1 && end < name.length() - 1 && name.substring(1, end).matches("[A-Za-z0-9]+") && !name.matches(
+                "_x\\p{XDigit}{4}_.*")) {
+            name = name.substring(1, end) + ":" + name.substring(end + 1);
+        }
+        return decodeName(name);
+    }
+
+    /**
+     * Decodes the {@code _xHHHH_} escapes of the names of FileVault files and elements.
+     */
+    static String decodeName(String name) {
+        if (name.indexOf("_x") < 0) {
+            return name;
+        }
+        StringBuilder decoded = new StringBuilder();
+        int i = 0;
+        while (i < name.length()) {
+            if (name.startsWith("_x", i) && i + 7 <= name.length() && name.charAt(i + 6) == '_') {
+                try {
+                    decoded.append((char) Integer.parseInt(name.substring(i + 2, i + 6), 16));
+                    i += 7;
+                    continue;
+                } catch (NumberFormatException e) {
+                    // not an escape
+                }
+            }
+            decoded.append(name.charAt(i++));
+        }
+        return decoded.toString();
+    }
+}
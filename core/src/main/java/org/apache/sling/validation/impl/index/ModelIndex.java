@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.ChildResourceImpl;
+import org.apache.sling.validation.impl.JCRValidationModel;
+import org.apache.sling.validation.impl.ResourcePropertyImpl;
+
+/**
+ * A binary index of validation models, as written by {@link ModelIndexWriter} at build time. The index is read in place, usually from a
+ * memory-mapped file: opening it only checks its header and the offsets it holds, and a lookup decodes nothing but the models of the
+ * requested resource type.
+ * <p/>
+ * All the integers are big-endian. The index starts with its header, followed by the string table and the models:
+ * <pre>
+ * int magic, int version
+ * int stringCount, int[stringCount] stringOffsets
+ * int resourceTypeCount, (int resourceType, int modelsOffset)[resourceTypeCount]    sorted by resource type
+ * strings: (int length, byte[length] utf8)[stringCount]
+ * models:  int modelCount, model[modelCount]                                          for each resource type
+ *
+ * model:      int path, int applicablePathCount, int[applicablePathCount] applicablePaths, properties, int childCount,
+ *             (int name, properties)[childCount]
+ * properties: int propertyCount, (int name, int type, byte multiple, int validatorCount, (int validator, int argumentCount,
+ *             (int key, int value)[argumentCount])[validatorCount])[propertyCount]
+ * </pre>
+ * Strings are referred to by their index in the string table, offsets are absolute. Reads never move the position of the shared buffer,
+ * so an index can be used by several threads. Counts and offsets read from the models are checked against the size of the index, so that
+ * a corrupt index fails with an {@link IllegalStateException} rather than with an oversized allocation.
+ */
+public class ModelIndex {
+
+    static final int MAGIC = 0x53564D49;
+    static final int VERSION = 1;
+
+    private static final String UTF_8 = "UTF-8";
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int resourceTypeCount;
+    private final int resourceTypesOffset;
+
+    /**
+     * The decoded strings. Strings are immutable, so a string decoded concurrently by two threads is merely decoded twice.
+     */
+    private final String[] strings;
+
+    /**
+     * @param buffer the index; its content must not change while the index is used
+     * @throws IOException if the buffer does not hold a model index of a supported version
+     */
+    public ModelIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate();
+        int limit = this.buffer.limit();
+        if (limit < 12 || this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a validation model index.");
+        }
+        int version = this.buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported validation model index version " + version + ".");
+        }
+        stringCount = this.buffer.getInt(8);
+        if (stringCount < 0 || 16 + 4L * stringCount > limit) {
+            throw new IOException("Corrupt validation model index: invalid string count " + stringCount + ".");
+        }
+        resourceTypesOffset = 12 + 4 * stringCount;
+        resourceTypeCount = this.buffer.getInt(resourceTypesOffset);
+        if (resourceTypeCount < 0 || resourceTypesOffset + 4 + 8L * resourceTypeCount > limit) {
+            throw new IOException("Corrupt validation model index: invalid resource type count " + resourceTypeCount + ".");
+        }
+        for (int i = 0; i < stringCount; i++) {
+            checkOffset(this.buffer.getInt(12 + 4 * i), limit);
+        }
+        for (int i = 0; i < resourceTypeCount; i++) {
+            int entry = resourceTypesOffset + 4 + 8 * i;
+            int resourceType = this.buffer.getInt(entry);
+            if (resourceType < 0 || resourceType >= stringCount) {
+                throw new IOException("Corrupt validation model index: no string " + resourceType + ".");
+            }
+            checkOffset(this.buffer.getInt(entry + 4), limit);
+        }
+        strings = new String[stringCount];
+    }
+
+    /**
+     * Checks that an offset leaves room for at least the count or length stored there.
+     */
+    private static void checkOffset(int offset, int limit) throws IOException {
+        if (offset < 0 || offset > limit - 4) {
+            throw new IOException("Corrupt validation model index: offset " + offset + " is out of bounds.");
+        }
+    }
+
+    /**
+     * Maps an index file into memory. The file must not be modified while the index is used.
+     *
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file cannot be mapped or does not hold a model index of a supported version
+     */
+    public static ModelIndex map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid once the file is closed
+            FileChannel channel = in.getChannel();
+            return new ModelIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the number of resource types having models in this index.
+     */
+    public int getResourceTypeCount() {
+        return resourceTypeCount;
+    }
+
+    /**
+     * Builds the validation models of a resource type.
+     *
+     * @param pathPrefix             the prefix of the paths of the models, identifying the index
+     * @param validatedResourceType  the validated resource type
+     * @param validatorLookupService the service resolving the validators referenced by the models
+     * @return the models; an empty list if the index has no model for the resource type
+     */
+    public List<JCRValidationModel> getValidationModels(String pathPrefix, String validatedResourceType,
+                                                        ValidatorLookupService validatorLookupService) {
+        int modelsOffset = findModels(validatedResourceType);
+        if (modelsOffset < 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.position(modelsOffset);
+        int modelCount = readCount(in, 16);
+        List<JCRValidationModel> models = new ArrayList<JCRValidationModel>(modelCount);
+        Map<String, Validator> validators = new HashMap<String, Validator>();
+        for (int i = 0; i < modelCount; i++) {
+            String path = getString(in.getInt());
+            String[] applicablePaths = new String[readCount(in, 4)];
+            for (int j = 0; j < applicablePaths.length; j++) {
+                applicablePaths[j] = getString(in.getInt());
+            }
+            Set<ResourceProperty> properties = readProperties(in, validatorLookupService, validators);
+            int childCount = readCount(in, 8);
+            List<ChildResource> children = new ArrayList<ChildResource>(childCount);
+            for (int j = 0; j < childCount; j++) {
+                String name = getString(in.getInt());
+                children.add(new ChildResourceImpl(name, readProperties(in, validatorLookupService, validators)));
+            }
+            models.add(new JCRValidationModel(pathPrefix + path, properties, validatedResourceType, applicablePaths, children));
+        }
+        return models;
+    }
+
+    /**
+     * Searches the resource types, which are sorted, for the given one.
+     *
+     * @return the offset of the resource type's models, or {@code -1} if there are none
+     */
+    private int findModels(String validatedResourceType) {
+        int low = 0;
+        int high = resourceTypeCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = resourceTypesOffset + 4 + 8 * middle;
+            int comparison = getString(buffer.getInt(entry)).compareTo(validatedResourceType);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(entry + 4);
+            }
+        }
+        return -1;
+    }
+
+    private Set<ResourceProperty> readProperties(ByteBuffer in, ValidatorLookupService validatorLookupService,
+                                                 Map<String, Validator> validators) {
+        int propertyCount = readCount(in, 13);
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        for (int i = 0; i < propertyCount; i++) {
+            String name = getString(in.getInt());
+            Type type = Type.getType(getString(in.getInt()));
+            boolean multiple = in.get() != 0;
+            int validatorCount = readCount(in, 8);
+            Map<Validator, Map<String, String>> validatorsMap = new HashMap<Validator, Map<String, String>>();
+            for (int j = 0; j < validatorCount; j++) {
+                String validatorName = getString(in.getInt());
+                Validator validator = validators.get(validatorName);
+                if (validator == null && !validators.containsKey(validatorName)) {
+                    validator = validatorLookupService.getValidator(validatorName);
+                    validators.put(validatorName, validator);
+                }
+                int argumentCount = readCount(in, 8);
+                Map<String, String> arguments = new HashMap<String, String>();
+                for (int k = 0; k < argumentCount; k++) {
+                    arguments.put(getString(in.getInt()), getString(in.getInt()));
+                }
+                validatorsMap.put(validator, arguments);
+            }
+            properties.add(new ResourcePropertyImpl(name, type, multiple, validatorsMap));
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the number of the following elements.
+     *
+     * @param minSize the minimum size in bytes of an element
+     */
+    private static int readCount(ByteBuffer in, int minSize) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / minSize) {
+            throw new IllegalStateException("Corrupt validation model index: invalid count " + count + " at offset " + (in.position() -
+                    4) + ".");
+        }
+        return count;
+    }
+
+    private String getString(int index) {
+        if (index < 0 || index >= stringCount) {
+            throw new IllegalStateException("Corrupt validation model index: no string " + index + ".");
+        }
+        String string = strings[index];
+        if (string == null) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(buffer.getInt(12 + 4 * index));
+            byte[] bytes = new byte[readCount(in, 1)];
+            in.get(bytes);
+            try {
+                string = new String(bytes, UTF_8);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            strings[index] = string;
+        }
+        return string;
+    }
+}
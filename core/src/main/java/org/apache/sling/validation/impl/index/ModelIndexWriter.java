@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link ModelIndex}. Every distinct string is stored once, so models repeating the same properties and validators stay small.
+ */
+public class ModelIndexWriter {
+
+    private final Map<String, List<Model>> models = new TreeMap<String, List<Model>>();
+    private int modelCount;
+
+    /**
+     * Adds a model to the index. The models of a resource type are written in the order in which they are added.
+     */
+    public void add(Model model) {
+        List<Model> resourceTypeModels = models.get(model.validatedResourceType);
+        if (resourceTypeModels == null) {
+            resourceTypeModels = new ArrayList<Model>();
+            models.put(model.validatedResourceType, resourceTypeModels);
+        }
+        resourceTypeModels.add(model);
+        modelCount++;
+    }
+
+    public int getModelCount() {
+        return modelCount;
+    }
+
+    /**
+     * Writes the index.
+     *
+     * @param out the stream to write to; it is not closed
+     * @throws IOException if the index cannot be written
+     */
+    public void write(OutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream modelBytes = new ByteArrayOutputStream();
+        DataOutputStream modelData = new DataOutputStream(modelBytes);
+        int[] resourceTypes = new int[models.size()];
+        int[] modelOffsets = new int[models.size()];
+        int i = 0;
+        for (Map.Entry<String, List<Model>> entry : models.entrySet()) {
+            resourceTypes[i] = getStringIndex(strings, entry.getKey());
+            modelOffsets[i] = modelData.size();
+            modelData.writeInt(entry.getValue().size());
+            for (Model model : entry.getValue()) {
+                modelData.writeInt(getStringIndex(strings, model.path));
+                modelData.writeInt(model.applicablePaths.length);
+                for (String applicablePath : model.applicablePaths) {
+                    modelData.writeInt(getStringIndex(strings, applicablePath));
+                }
+                writeProperties(modelData, strings, model.properties);
+                modelData.writeInt(model.children.size());
+                for (Map.Entry<String, List<Property>> child : model.children.entrySet()) {
+                    modelData.writeInt(getStringIndex(strings, child.getKey()));
+                    writeProperties(modelData, strings, child.getValue());
+                }
+            }
+            i++;
+        }
+        modelData.flush();
+
+        List<byte[]> encodedStrings = new ArrayList<byte[]>(strings.size());
+        for (String string : strings.keySet()) {
+            encodedStrings.add(string.getBytes("UTF-8"));
+        }
+        int stringsOffset = 12 + 4 * strings.size() + 4 + 8 * resourceTypes.length;
+        int modelsOffset = stringsOffset;
+        for (byte[] encodedString : encodedStrings) {
+            modelsOffset += 4 + encodedString.length;
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(ModelIndex.MAGIC);
+        data.writeInt(ModelIndex.VERSION);
+        data.writeInt(encodedStrings.size());
+        int offset = stringsOffset;
+        for (byte[] encodedString : encodedStrings) {
+            data.writeInt(offset);
+            offset += 4 + encodedString.length;
+        }
+        data.writeInt(resourceTypes.length);
+        for (int j = 0; j < resourceTypes.length; j++) {
+            data.writeInt(resourceTypes[j]);
+            data.writeInt(modelsOffset + modelOffsets[j]);
+        }
+        for (byte[] encodedString : encodedStrings) {
+            data.writeInt(encodedString.length);
+            data.write(encodedString);
+        }
+        modelBytes.writeTo(data);
+        data.flush();
+    }
+
+    private static void writeProperties(DataOutputStream data, Map<String, Integer> strings, List<Property> properties) throws
+            IOException {
+        data.writeInt(properties.size());
+        for (Property property : properties) {
+            data.writeInt(getStringIndex(strings, property.name));
+            data.writeInt(getStringIndex(strings, property.type));
+            data.writeByte(property.multiple ? 1 : 0);
+            data.writeInt(property.validators.size());
+            for (Map.Entry<String, Map<String, String>> validator : property.validators.entrySet()) {
+                data.writeInt(getStringIndex(strings, validator.getKey()));
+                data.writeInt(validator.getValue().size());
+                for (Map.Entry<String, String> argument : validator.getValue().entrySet()) {
+                    data.writeInt(getStringIndex(strings, argument.getKey()));
+                    data.writeInt(getStringIndex(strings, argument.getValue()));
+                }
+            }
+        }
+    }
+
+    private static int getStringIndex(Map<String, Integer> strings, String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * A validation model, as stored in the index.
+     */
+    public static final class Model {
+
+        private final String path;
+        private final String validatedResourceType;
+        private final String[] applicablePaths;
+        private final List<Property> properties;
+        private final Map<String, List<Property>> children;
+
+        /**
+         * @param path                  the path identifying the model's definition
+         * @param validatedResourceType the validated resource type
+         * @param applicablePaths       the applicable paths
+         * @param properties            the properties of the validated resource
+         * @param children              the properties of the children, by child name (e.g. {@code child/grandChild})
+         */
+        public Model(String path, String validatedResourceType, String[] applicablePaths, List<Property> properties,
+                     Map<String, List<Property>> children) {
+            this.path = path;
+            this.validatedResourceType = validatedResourceType;
+            this.applicablePaths = applicablePaths;
+            this.properties = properties;
+            this.children = children;
+        }
+    }
+
+    /**
+     * A property of a validation model, as stored in the index.
+     */
+    public static final class Property {
+
+        private final String name;
+        private final String type;
+        private final boolean multiple;
+        private final Map<String, Map<String, String>> validators;
+
+        /**
+         * @param name       the property name
+         * @param type       the name of the property's {@link org.apache.sling.validation.api.Type}
+         * @param multiple   whether the property is multi-valued
+         * @param validators the arguments of the property's validators, by validator name
+         */
+        public Property(String name, String type, boolean multiple, Map<String, Map<String, String>> validators) {
+            this.name = name;
+            this.type = type;
+            this.multiple = multiple;
+            this.validators = validators;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.metrics;
+
+import org.apache.sling.validation.impl.util.LatencyHistogram;
+import org.apache.sling.validation.impl.util.StripedCounter;
+
+/**
+ * The latency histogram and failure count of one kind of operation.
+ */
+public class OperationStatistics {
+
+    private final LatencyHistogram latencies;
+    private final StripedCounter failures;
+    private final boolean striped;
+
+    /**
+     * @param striped whether the counters are striped for concurrent recordings, at the cost of a footprint growing with the number of
+     *                processors
+     */
+    public OperationStatistics(boolean striped) {
+        latencies = new LatencyHistogram(striped);
+        failures = new StripedCounter(striped);
+        this.striped = striped;
+    }
+
+    public void record(long nanos, boolean failed) {
+        latencies.record(nanos);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    public LatencyHistogram.Snapshot getLatencies() {
+        return latencies.snapshot();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    boolean isStriped() {
+        return striped;
+    }
+
+    void reset() {
+        latencies.reset();
+        failures.reset();
+    }
+}
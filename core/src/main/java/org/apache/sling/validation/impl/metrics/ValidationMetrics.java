@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.sling.validation.impl.util.LatencyHistogram;
+import org.apache.sling.validation.impl.util.ValidatorResultCache;
+
+/**
+ * Records the latency and failures of validations, validator invocations and validation model loads. Recording is lock-free and only
+ * touches per-thread stripes of the counters, so that it can stay enabled in production; callers should check {@link #isEnabled()} before
+ * measuring.
+ * <p/>
+ * Resource types come from requests, so each table holds at most {@value #MAX_ENTRIES} rows; recordings for further names are added to
+ * the {@value #OTHER} row. The validator table only holds a few validator classes, so all its rows are striped per processor. In the
+ * resource type and model load tables only the first {@value #MAX_STRIPED_ENTRIES} rows are striped, the others take a single row of
+ * counters, so that a table stays within a few hundred kilobytes.
+ */
+public class ValidationMetrics implements ValidationMetricsMBean {
+
+    /**
+     * The JMX object name under which the metrics are registered.
+     */
+    public static final String OBJECT_NAME = "org.apache.sling.validation:type=ValidationMetrics";
+
+    /**
+     * The maximum number of names tracked per table.
+     */
+    static final int MAX_ENTRIES = 1000;
+
+    /**
+     * The number of rows of the resource type and model load tables whose counters are striped.
+     */
+    static final int MAX_STRIPED_ENTRIES = 16;
+
+    /**
+     * The name of the row collecting the recordings of the names exceeding {@link #MAX_ENTRIES}.
+     */
+    static final String OTHER = "(other)";
+
+    static final String[] ITEMS = {"name", "count", "failures", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "maxNanos"};
+
+    private static final OpenType<?>[] ITEM_TYPES = {SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType
+            .LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG};
+
+    private final ConcurrentMap<String, OperationStatistics> resourceTypes = new ConcurrentHashMap<String, OperationStatistics>();
+    private final ConcurrentMap<String, OperationStatistics> validators = new ConcurrentHashMap<String, OperationStatistics>();
+    private final ConcurrentMap<String, OperationStatistics> modelLoads = new ConcurrentHashMap<String, OperationStatistics>();
+    private volatile boolean enabled = true;
+    private volatile ValidatorResultCache memoCache;
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the memo cache whose counters are exposed, or {@code null} if memoization is disabled.
+     */
+    public void setMemoCache(ValidatorResultCache memoCache) {
+        this.memoCache = memoCache;
+    }
+
+    public void recordValidation(String resourceType, long nanos, boolean valid) {
+        get(resourceTypes, resourceType, MAX_STRIPED_ENTRIES).record(nanos, !valid);
+    }
+
+    public void recordValidator(Class<?> validatorClass, long nanos, boolean valid) {
+        get(validators, validatorClass.getName(), MAX_ENTRIES).record(nanos, !valid);
+    }
+
+    /**
+     * Records a model load. Loads which found no model are not recorded, since any resource type can be looked up.
+     */
+    public void recordModelLoad(String resourceType, long nanos, boolean found) {
+        if (found) {
+            get(modelLoads, resourceType, MAX_STRIPED_ENTRIES).record(nanos, false);
+        }
+    }
+
+    /**
+     * Returns the statistics of the validations of a resource type, or {@code null} if none were recorded.
+     */
+    public OperationStatistics getResourceTypeStatistics(String resourceType) {
+        return resourceTypes.get(resourceType);
+    }
+
+    /**
+     * Returns the statistics of the invocations of a validator class, or {@code null} if none were recorded.
+     */
+    public OperationStatistics getValidatorStatistics(Class<?> validatorClass) {
+        return validators.get(validatorClass.getName());
+    }
+
+    /**
+     * Returns the statistics of the model loads for a resource type, or {@code null} if none were recorded.
+     */
+    public OperationStatistics getModelLoadStatistics(String resourceType) {
+        return modelLoads.get(resourceType);
+    }
+
+    @Override
+    public TabularData getResourceTypeStatistics() throws OpenDataException {
+        return toTabularData("ResourceTypeStatistics", resourceTypes);
+    }
+
+    @Override
+    public TabularData getValidatorStatistics() throws OpenDataException {
+        return toTabularData("ValidatorStatistics", validators);
+    }
+
+    @Override
+    public TabularData getModelLoadStatistics() throws OpenDataException {
+        return toTabularData("ModelLoadStatistics", modelLoads);
+    }
+
+    @Override
+    public int getMemoCacheSize() {
+        ValidatorResultCache memoCache = this.memoCache;
+        return memoCache != null ? memoCache.size() : 0;
+    }
+
+    @Override
+    public long getMemoCacheHits() {
+        ValidatorResultCache memoCache = this.memoCache;
+        return memoCache != null ? memoCache.getHitCount() : 0;
+    }
+
+    @Override
+    public long getMemoCacheMisses() {
+        ValidatorResultCache memoCache = this.memoCache;
+        return memoCache != null ? memoCache.getMissCount() : 0;
+    }
+
+    @Override
+    public long getMemoCacheEvictions() {
+        ValidatorResultCache memoCache = this.memoCache;
+        return memoCache != null ? memoCache.getEvictionCount() : 0;
+    }
+
+    @Override
+    public double getMemoCacheHitRate() {
+        ValidatorResultCache memoCache = this.memoCache;
+        return memoCache != null ? memoCache.getHitRate() : 0;
+    }
+
+    @Override
+    public void reset() {
+        // entries are reset rather than removed, so that concurrent recordings are not lost in a detached entry
+        for (OperationStatistics statistics : resourceTypes.values()) {
+            statistics.reset();
+        }
+        for (OperationStatistics statistics : validators.values()) {
+            statistics.reset();
+        }
+        for (OperationStatistics statistics : modelLoads.values()) {
+            statistics.reset();
+        }
+    }
+
+    /**
+     * Returns the row of a table, adding it if needed.
+     *
+     * @param maxStriped the number of rows of the table whose counters are striped
+     */
+    private static OperationStatistics get(ConcurrentMap<String, OperationStatistics> map, String key, int maxStriped) {
+        if (key == null) {
+            // models are not required to declare their resource type
+            key = "";
+        }
+        OperationStatistics statistics = map.get(key);
+        if (statistics == null) {
+            if (map.size() >= MAX_ENTRIES) {
+                // the size check races with concurrent insertions, which may exceed the limit by the number of recording threads
+                key = OTHER;
+                statistics = map.get(key);
+                if (statistics != null) {
+                    return statistics;
+                }
+            }
+            // the catch-all row is shared by many names, so it is striped as well
+            statistics = new OperationStatistics(map.size() < maxStriped || OTHER.equals(key));
+            OperationStatistics existing = map.putIfAbsent(key, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    private static TabularData toTabularData(String name, Map<String, OperationStatistics> map) throws OpenDataException {
+        CompositeType rowType = new CompositeType(name + "Row", name, ITEMS, ITEMS, ITEM_TYPES);
+        TabularDataSupport data = new TabularDataSupport(new TabularType(name, name, rowType, new String[]{"name"}));
+        for (Map.Entry<String, OperationStatistics> entry : map.entrySet()) {
+            LatencyHistogram.Snapshot latencies = entry.getValue().getLatencies();
+            data.put(new CompositeDataSupport(rowType, ITEMS, new Object[]{entry.getKey(), latencies.getCount(), entry.getValue()
+                    .getFailures(), latencies.getMean(), latencies.getPercentile(0.5), latencies.getPercentile(0.9), latencies
+                    .getPercentile(0.99), latencies.getMax()}));
+        }
+        return data;
+    }
+}
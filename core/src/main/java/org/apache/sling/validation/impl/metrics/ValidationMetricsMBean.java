@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.metrics;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Exposes the validation metrics over JMX. Each table has one row per resource type or validator class, with the number of calls, the
+ * number of failed calls and the mean, 50th, 90th, 99th percentile and maximum latency in nanoseconds. Percentiles are upper bounds,
+ * accurate to within a factor of two. Names beyond the first thousand of a table are recorded in a single {@code (other)} row.
+ */
+public interface ValidationMetricsMBean {
+
+    /**
+     * Whether metrics are recorded.
+     */
+    boolean isEnabled();
+
+    /**
+     * The validations per validated resource type. A validation fails if its result is not valid.
+     */
+    TabularData getResourceTypeStatistics() throws OpenDataException;
+
+    /**
+     * The validator invocations per {@link org.apache.sling.validation.api.Validator} class. Invocations answered by the memo cache are not
+     * counted. An invocation fails if a value is invalid or the validator throws an exception.
+     */
+    TabularData getValidatorStatistics() throws OpenDataException;
+
+    /**
+     * The validation model loads per validated resource type. Only the loads which found a model are recorded.
+     */
+    TabularData getModelLoadStatistics() throws OpenDataException;
+
+    /**
+     * The number of outcomes held by the memo cache of {@link org.apache.sling.validation.api.PureValidator}s, or 0 if memoization is
+     * disabled.
+     */
+    int getMemoCacheSize();
+
+    /**
+     * The number of validator invocations answered by the memo cache.
+     */
+    long getMemoCacheHits();
+
+    /**
+     * The number of memo cache lookups which did not find an outcome.
+     */
+    long getMemoCacheMisses();
+
+    /**
+     * The number of outcomes evicted from the memo cache because it was full.
+     */
+    long getMemoCacheEvictions();
+
+    /**
+     * The ratio of memo cache hits to lookups, or 0 if there were no lookups.
+     */
+    double getMemoCacheHitRate();
+
+    /**
+     * Discards all recorded metrics.
+     */
+    void reset();
+}
@@ -36,6 +36,7 @@ import org.apache.sling.validation.api.Validator;
 import org.apache.sling.validation.api.ValidatorLookupService;
 import org.apache.sling.validation.impl.ChildResourceImpl;
 import org.apache.sling.validation.impl.Constants;
+import org.apache.sling.validation.impl.JCRValidationModel;
 import org.apache.sling.validation.impl.ResourcePropertyImpl;
 
 /**
@@ -43,6 +44,56 @@ import org.apache.sling.validation.impl.ResourcePropertyImpl;
  */
 public class JCRBuilder {
 
+    /**
+     * Builds the validation model described by a content tree.
+     *
+     * @param vls                   the {@link ValidatorLookupService}
+     * @param validatedResourceType the type of resource validated by the model
+     * @param modelResource         the resource describing the model
+     * @return the model, or {@code null} if the resource does not describe a valid model
+     */
+    public static JCRValidationModel buildValidationModel(ValidatorLookupService vls, String validatedResourceType,
+                                                          Resource modelResource) {
+        return buildValidationModel(vls, validatedResourceType, modelResource, null);
+    }
+
+    /**
+     * Builds the validation model described by a content tree, flattened with the models it extends or includes.
+     *
+     * @param vls                   the {@link ValidatorLookupService}
+     * @param validatedResourceType the type of resource validated by the model
+     * @param modelResource         the resource describing the model
+     * @param fragments             the cache of the models referred to by other models; if {@code null}, the references are ignored
+     * @return the model, or {@code null} if the resource does not describe a valid model
+     */
+    public static JCRValidationModel buildValidationModel(ValidatorLookupService vls, String validatedResourceType,
+                                                          Resource modelResource, ModelFragmentCache fragments) {
+        if (validatedResourceType == null || "".equals(validatedResourceType)) {
+            return null;
+        }
+        ValueMap validationModelProperties = modelResource.adaptTo(ValueMap.class);
+        String[] applicablePaths = PropertiesUtil.toStringArray(validationModelProperties.get(Constants.APPLICABLE_PATHS, String[].class));
+        if (fragments != null && ModelFragmentCache.hasReferences(modelResource)) {
+            ModelFragmentCache.Fragment model = fragments.flatten(vls, modelResource);
+            Set<ResourceProperty> resourceProperties = model.getProperties();
+            if (!resourceProperties.isEmpty()) {
+                return new JCRValidationModel(modelResource.getPath(), resourceProperties, validatedResourceType, applicablePaths,
+                        model.getChildren());
+            }
+            return null;
+        }
+        Resource r = modelResource.getChild(Constants.PROPERTIES);
+        if (r != null) {
+            Set<ResourceProperty> resourceProperties = buildProperties(vls, r);
+            if (!resourceProperties.isEmpty()) {
+                List<ChildResource> children = buildChildren(modelResource, modelResource, vls);
+                return new JCRValidationModel(modelResource.getPath(), resourceProperties, validatedResourceType, applicablePaths,
+                        children);
+            }
+        }
+        return null;
+    }
+
     /**
      * Creates a set of the properties that a resource is expected to have, together with the associated validators.
      *
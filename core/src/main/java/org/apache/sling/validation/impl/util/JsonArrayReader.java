@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+
+/**
+ * Reads a JSON array of objects one element at a time, so that only the element being processed has to be kept in memory. Each element
+ * is located by scanning the input for its closing brace and then parsed with {@link JSONObject}.
+ */
+public class JsonArrayReader {
+
+    private final Reader reader;
+    private final int maxElementSize;
+    private final StringBuilder element = new StringBuilder();
+    private boolean started;
+    private boolean finished;
+    private boolean first = true;
+
+    /**
+     * @param reader         the reader providing the JSON array
+     * @param maxElementSize the maximum number of characters of an element; a negative value disables the check
+     */
+    public JsonArrayReader(Reader reader, int maxElementSize) {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        this.maxElementSize = maxElementSize;
+    }
+
+    /**
+     * Reads the beginning of the array.
+     *
+     * @throws JSONException if the input doesn't start with an array
+     * @throws IOException   if the input cannot be read
+     */
+    public void start() throws JSONException, IOException {
+        if (!started) {
+            if (nextClean() != '[') {
+                throw new JSONException("Expected a JSON array.");
+            }
+            started = true;
+        }
+    }
+
+    /**
+     * Reads the next element of the array.
+     *
+     * @return the element or {@code null} if the end of the array was reached
+     * @throws JSONException if the input is not an array of objects or an element exceeds the maximum size
+     * @throws IOException   if the input cannot be read
+     */
+    public JSONObject next() throws JSONException, IOException {
+        start();
+        if (finished) {
+            return null;
+        }
+        int c = nextClean();
+        if (c == ']') {
+            finished = true;
+            return null;
+        }
+        if (!first) {
+            if (c != ',') {
+                throw new JSONException("Expected ',' or ']' between array elements.");
+            }
+            c = nextClean();
+        }
+        first = false;
+        if (c != '{') {
+            throw new JSONException("Expected a JSON object as array element.");
+        }
+        element.setLength(0);
+        element.append('{');
+        int depth = 1;
+        // JSONObject accepts both double- and single-quoted strings, so the element ends at the brace which is outside of either
+        int quote = 0;
+        boolean escaped = false;
+        while (depth > 0) {
+            c = reader.read();
+            if (c == -1) {
+                throw new JSONException("Unterminated JSON object.");
+            }
+            element.append((char) c);
+            if (maxElementSize >= 0 && element.length() > maxElementSize) {
+                throw new JSONException("Array element exceeds the maximum size of " + maxElementSize + " characters.");
+            }
+            if (quote != 0) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        }
+        return new JSONObject(element.toString());
+    }
+
+    private int nextClean() throws JSONException, IOException {
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        if (c == -1) {
+            throw new JSONException("Unexpected end of the JSON array.");
+        }
+        return c;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+
+/**
+ * Reads validation model files in the format of the Sling JSON content loader. A file holds either a single model or an array of models;
+ * arrays are read one model at a time, so that large files need not be held in memory.
+ */
+public class JsonModelReader {
+
+    private JsonModelReader() {
+    }
+
+    /**
+     * Reads the content trees of the models of a file. The models of an array are identified by their index in the array, appended to the
+     * path of the file.
+     *
+     * @param path           the path identifying the file
+     * @param reader         the reader providing the file's content
+     * @param modelResources the list to which the content trees are added
+     * @throws JSONException if the file is not valid JSON
+     * @throws IOException   if the file cannot be read
+     */
+    public static void read(String path, Reader reader, List<JsonResource> modelResources) throws IOException, JSONException {
+        Reader in = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        int c;
+        do {
+            in.mark(1);
+            c = in.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        in.reset();
+        if (c == '[') {
+            JsonArrayReader models = new JsonArrayReader(in, -1);
+            JSONObject model;
+            for (int i = 0; (model = models.next()) != null; i++) {
+                modelResources.add(new JsonResource(path + "/" + i, model));
+            }
+        } else {
+            StringBuilder model = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                model.append(buffer, 0, read);
+            }
+            modelResources.add(new JsonResource(path, new JSONObject(model.toString())));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.AbstractResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+
+/**
+ * A detached {@link Resource} tree built from a JSON object in the format of the Sling JSON content loader: nested objects are child
+ * resources, all the other values are properties and arrays are multi-valued properties. It allows building validation models with
+ * {@link JCRBuilder} from JSON files, without a repository.
+ */
+public class JsonResource extends AbstractResource {
+
+    private static final String RESOURCE_TYPE_PROPERTY = "sling:resourceType";
+
+    private final String path;
+    private final ValueMap properties;
+    private final Map<String, Resource> children;
+    private final ResourceMetadata metadata = new ResourceMetadata();
+
+    /**
+     * @param path   the path of the resource
+     * @param object the JSON object describing the resource and its children
+     * @throws JSONException if the object cannot be read
+     */
+    public JsonResource(String path, JSONObject object) throws JSONException {
+        this.path = path;
+        Map<String, Object> values = new HashMap<String, Object>();
+        Map<String, Resource> children = null;
+        for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+            String name = keys.next();
+            Object value = object.get(name);
+            if (value instanceof JSONObject) {
+                if (children == null) {
+                    children = new LinkedHashMap<String, Resource>();
+                }
+                children.put(name, new JsonResource(path + "/" + name, (JSONObject) value));
+            } else if (value instanceof JSONArray) {
+                values.put(name, toArray((JSONArray) value));
+            } else if (value != null && value != JSONObject.NULL) {
+                values.put(name, value);
+            }
+        }
+        this.properties = new ValueMapDecorator(values);
+        this.children = children != null ? children : Collections.<String, Resource>emptyMap();
+        metadata.setResolutionPath(path);
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String getResourceType() {
+        String resourceType = properties.get(RESOURCE_TYPE_PROPERTY, String.class);
+        return resourceType != null ? resourceType : Resource.RESOURCE_TYPE_NON_EXISTING;
+    }
+
+    @Override
+    public String getResourceSuperType() {
+        return null;
+    }
+
+    @Override
+    public ResourceMetadata getResourceMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public ResourceResolver getResourceResolver() {
+        return null;
+    }
+
+    @Override
+    public Resource getParent() {
+        return null;
+    }
+
+    @Override
+    public Resource getChild(String relPath) {
+        Resource resource = this;
+        for (String name : relPath.split("/")) {
+            if (!(resource instanceof JsonResource)) {
+                return null;
+            }
+            resource = ((JsonResource) resource).children.get(name);
+        }
+        return resource;
+    }
+
+    @Override
+    public Iterator<Resource> listChildren() {
+        return children.values().iterator();
+    }
+
+    @Override
+    public Iterable<Resource> getChildren() {
+        return children.values();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+        if (type == ValueMap.class || type == Map.class) {
+            return (AdapterType) properties;
+        }
+        return super.adaptTo(type);
+    }
+
+    /**
+     * Converts an array to a {@code String[]} if all its values are strings, otherwise to an {@code Object[]}.
+     */
+    private static Object[] toArray(JSONArray array) throws JSONException {
+        List<Object> values = new ArrayList<Object>(array.length());
+        boolean strings = true;
+        for (int i = 0; i < array.length(); i++) {
+            Object value = array.get(i);
+            if (value != null && value != JSONObject.NULL) {
+                strings &= value instanceof String;
+                values.add(value);
+            }
+        }
+        return strings ? values.toArray(new String[values.size()]) : values.toArray();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of durations in nanoseconds with logarithmic buckets: bucket {@code i} counts the durations in {@code [2^(i-1),
+ * 2^i)}, the last bucket also counting all longer durations. Percentiles are therefore approximated to within a factor of two, which is
+ * enough to tell apart microseconds from milliseconds while keeping recording down to a few atomic additions.
+ * <p/>
+ * Like {@link StripedCounter}, the histogram keeps one row of buckets per stripe, so that concurrent recordings rarely contend. A row
+ * takes {@value #BUCKETS} counters, so histograms which are numerous but rarely recorded concurrently can be created with a single row.
+ */
+public class LatencyHistogram {
+
+    static final int BUCKETS = 40;
+
+    private static final int SUM = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+    // rows are padded to a multiple of a cache line
+    private static final int ROW = (MAX + StripedCounter.PADDING) / StripedCounter.PADDING * StripedCounter.PADDING;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public LatencyHistogram() {
+        this(true);
+    }
+
+    /**
+     * @param striped {@code false} for a single row of buckets
+     */
+    public LatencyHistogram(boolean striped) {
+        int stripes = striped ? StripedCounter.STRIPES : 1;
+        cells = new AtomicLongArray(stripes * ROW);
+        mask = stripes - 1;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds; negative durations are recorded as {@code 0}
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int row = (StripedCounter.stripe() & mask) * ROW;
+        cells.incrementAndGet(row + bucket(nanos));
+        cells.addAndGet(row + SUM, nanos);
+        long max;
+        while (nanos > (max = cells.get(row + MAX)) && !cells.compareAndSet(row + MAX, max, nanos)) {
+            // retry
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            int row = stripe * ROW;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += cells.get(row + i);
+            }
+            sum += cells.get(row + SUM);
+            max = Math.max(max, cells.get(row + MAX));
+        }
+        return new Snapshot(counts, sum, max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+    }
+
+    static int bucket(long nanos) {
+        return Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+    }
+
+    /**
+     * A point-in-time view of a {@link LatencyHistogram}. Since recordings are not synchronized with snapshots, the values of a snapshot
+     * taken during recordings may be off by the recordings in progress.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMean() {
+            return count > 0 ? sum / count : 0;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile, i.e. the upper limit of the bucket containing it, capped by the maximum.
+         *
+         * @param percentile the percentile, between {@code 0} and {@code 1}
+         * @return the percentile's upper bound in nanoseconds, or {@code 0} if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i == counts.length - 1 ? max : Math.min(max, (1L << i) - 1);
+                }
+            }
+            return max;
+        }
+    }
+}
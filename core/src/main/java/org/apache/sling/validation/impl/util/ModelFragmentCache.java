@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.ChildResourceImpl;
+import org.apache.sling.validation.impl.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flattens the validation models which extend or include other models. A model refers to a base model through its {@value
+ * Constants#EXTENDS} property and to further models through its {@value Constants#INCLUDES} property; a reference is a resource path,
+ * which is resolved against the search paths if it is relative. Only the models stored below the {@value Constants#MODELS_HOME} folder
+ * of a search path can be referred to, since changes are only tracked there; other references are ignored like missing ones. The
+ * referred models are merged in the order base model, included models, referring model: properties and children replace the ones with
+ * the same name merged before them. A referred model only needs {@value Constants#PROPERTIES} and {@value Constants#CHILDREN} nodes, so
+ * common properties can be kept in fragments which validate no resource type.
+ * <p/>
+ * The referred models are flattened once and cached by reference, so that their properties are built once and shared by all the models
+ * referring to them. A cached model is discarded through {@link #invalidate(String)} when its content or the content of a model it
+ * refers to changes.
+ */
+public class ModelFragmentCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelFragmentCache.class);
+
+    private final ConcurrentMap<String, Fragment> fragments = new ConcurrentHashMap<String, Fragment>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Checks if a model refers to other models.
+     */
+    public static boolean hasReferences(Resource modelResource) {
+        return !getReferences(modelResource).isEmpty();
+    }
+
+    /**
+     * Flattens a model with the models it refers to. The model itself is not cached.
+     *
+     * @param vls           the {@link ValidatorLookupService}
+     * @param modelResource the resource describing the model
+     * @return the flattened model
+     */
+    public Fragment flatten(ValidatorLookupService vls, Resource modelResource) {
+        Set<String> referrers = new LinkedHashSet<String>();
+        referrers.add(modelResource.getPath());
+        return build(vls, modelResource, referrers);
+    }
+
+    /**
+     * Discards the cached models affected by a change of the resource at {@code path}: the models stored at, above or below the path and
+     * the models referring to them, directly or not.
+     *
+     * @param path the path of the changed resource
+     * @return {@code true} if cached models were discarded
+     */
+    public boolean invalidate(String path) {
+        boolean invalidated = false;
+        // see publish(String, Fragment) for the generation
+        generation.incrementAndGet();
+        for (Map.Entry<String, Fragment> entry : fragments.entrySet()) {
+            if (entry.getValue().dependsOn(path) && fragments.remove(entry.getKey(), entry.getValue())) {
+                invalidated = true;
+            }
+        }
+        generation.incrementAndGet();
+        return invalidated;
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        fragments.clear();
+        generation.incrementAndGet();
+    }
+
+    public int size() {
+        return fragments.size();
+    }
+
+    private Fragment build(ValidatorLookupService vls, Resource resource, Set<String> referrers) {
+        Map<String, ResourceProperty> properties = new LinkedHashMap<String, ResourceProperty>();
+        Map<String, ChildResource> children = new LinkedHashMap<String, ChildResource>();
+        Set<String> dependencies = new HashSet<String>();
+        for (String reference : getReferences(resource)) {
+            Set<String> candidates = getCandidatePaths(resource.getResourceResolver(), reference);
+            // the reference depends on the paths it may resolve to, whether it currently resolves or not
+            dependencies.addAll(candidates);
+            Fragment fragment = getFragment(vls, resource, reference, candidates, referrers);
+            if (fragment != null) {
+                dependencies.addAll(fragment.dependencies);
+                properties.putAll(fragment.properties);
+                mergeChildren(children, fragment.children.values());
+            }
+        }
+        for (ResourceProperty property : JCRBuilder.buildProperties(vls, resource.getChild(Constants.PROPERTIES))) {
+            properties.put(property.getName(), property);
+        }
+        mergeChildren(children, JCRBuilder.buildChildren(resource, resource, vls));
+        return new Fragment(properties, children, dependencies);
+    }
+
+    private Fragment getFragment(ValidatorLookupService vls, Resource referrer, String reference, Set<String> candidates,
+                                 Set<String> referrers) {
+        ResourceResolver resolver = referrer.getResourceResolver();
+        if (resolver == null) {
+            LOG.warn("Cannot resolve the reference {} of validation model {}: only the models stored in the repository can refer to " +
+                    "other models.", reference, referrer.getPath());
+            return null;
+        }
+        Fragment fragment = fragments.get(reference);
+        if (fragment != null) {
+            return fragment;
+        }
+        long start = generation.get();
+        Resource resource = resolver.getResource(reference);
+        if (resource == null) {
+            LOG.error("Validation model {} refers to {}, which does not exist.", referrer.getPath(), reference);
+            return null;
+        }
+        if (!isModelPath(resolver, resource.getPath())) {
+            LOG.error("Validation model {} refers to {}, which is not stored below the {} folder of a search path.", new Object[]{
+                    referrer.getPath(), reference, Constants.MODELS_HOME});
+            return null;
+        }
+        if (!referrers.add(resource.getPath())) {
+            LOG.error("Validation model {} refers to {}, which refers back to it through {}.", new Object[]{referrer.getPath(), reference,
+                    referrers});
+            return null;
+        }
+        try {
+            fragment = build(vls, resource, referrers);
+            fragment.dependencies.addAll(candidates);
+        } finally {
+            referrers.remove(resource.getPath());
+        }
+        return publish(reference, fragment, start);
+    }
+
+    /**
+     * Caches a model flattened since {@code start}, unless a model was cached concurrently for the same reference. If the cache was
+     * invalidated in the meantime, the model may have been built from outdated content and is withdrawn again; the caller still uses it.
+     */
+    private Fragment publish(String reference, Fragment fragment, long start) {
+        Fragment existing = fragments.putIfAbsent(reference, fragment);
+        if (existing != null) {
+            return existing;
+        }
+        if (generation.get() != start) {
+            fragments.remove(reference, fragment);
+        }
+        return fragment;
+    }
+
+    /**
+     * Merges children into the children merged so far; the properties of children with the same name are merged as well.
+     */
+    private static void mergeChildren(Map<String, ChildResource> children, Collection<ChildResource> added) {
+        for (ChildResource child : added) {
+            ChildResource existing = children.get(child.getName());
+            if (existing == null) {
+                children.put(child.getName(), child);
+            } else {
+                Map<String, ResourceProperty> properties = new LinkedHashMap<String, ResourceProperty>();
+                for (ResourceProperty property : existing.getProperties()) {
+                    properties.put(property.getName(), property);
+                }
+                for (ResourceProperty property : child.getProperties()) {
+                    properties.put(property.getName(), property);
+                }
+                children.put(child.getName(), new ChildResourceImpl(child.getName(), new HashSet<ResourceProperty>(properties.values())));
+            }
+        }
+    }
+
+    private static List<String> getReferences(Resource modelResource) {
+        ValueMap properties = modelResource.adaptTo(ValueMap.class);
+        if (properties == null) {
+            return Collections.emptyList();
+        }
+        List<String> references = new ArrayList<String>();
+        String base = properties.get(Constants.EXTENDS, String.class);
+        if (base != null && !"".equals(base)) {
+            references.add(base);
+        }
+        for (String include : PropertiesUtil.toStringArray(properties.get(Constants.INCLUDES, String[].class), new String[0])) {
+            if (!"".equals(include)) {
+                references.add(include);
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Checks whether a path lies below the models folder of a search path, where the changes to the models are tracked.
+     */
+    private static boolean isModelPath(ResourceResolver resolver, String path) {
+        for (String searchPath : resolver.getSearchPath()) {
+            if (path.startsWith(searchPath + (searchPath.endsWith("/") ? "" : "/") + Constants.MODELS_HOME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the absolute paths a reference may resolve to.
+     */
+    private static Set<String> getCandidatePaths(ResourceResolver resolver, String reference) {
+        Set<String> paths = new HashSet<String>();
+        if (reference.startsWith("/") || resolver == null) {
+            paths.add(reference);
+        } else {
+            for (String searchPath : resolver.getSearchPath()) {
+                paths.add(searchPath + (searchPath.endsWith("/") ? "" : "/") + reference);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * A flattened model: its properties and children, including the ones of the models it refers to.
+     */
+    public static final class Fragment {
+
+        private final Map<String, ResourceProperty> properties;
+        private final Map<String, ChildResource> children;
+        private final Set<String> dependencies;
+
+        Fragment(Map<String, ResourceProperty> properties, Map<String, ChildResource> children, Set<String> dependencies) {
+            this.properties = properties;
+            this.children = children;
+            this.dependencies = dependencies;
+        }
+
+        public Set<ResourceProperty> getProperties() {
+            return new HashSet<ResourceProperty>(properties.values());
+        }
+
+        public List<ChildResource> getChildren() {
+            return new ArrayList<ChildResource>(children.values());
+        }
+
+        /**
+         * Checks if the model is affected by a change of the resource at {@code path}.
+         */
+        boolean dependsOn(String path) {
+            for (String dependency : dependencies) {
+                if (isSameOrAncestor(dependency, path) || isSameOrAncestor(path, dependency)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isSameOrAncestor(String ancestor, String path) {
+            return path.startsWith(ancestor) && (path.length() == ancestor.length() || path.charAt(ancestor.length()) == '/' || ancestor
+                    .endsWith("/"));
+        }
+    }
+}
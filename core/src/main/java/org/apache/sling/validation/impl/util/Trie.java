@@ -19,10 +19,12 @@
 package org.apache.sling.validation.impl.util;
 
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Trie data structure used for storing objects using {@link String} keys that allows object retrieval using a longest matching key
- * mechanism.
+ * mechanism. The Trie can be read while it is modified, and insertions may run concurrently.
  */
 public class Trie<T> {
 
@@ -42,16 +44,11 @@ public class Trie<T> {
             int length = key.length();
             TrieNode<T> node = ROOT;
             for (int index = 0; index < length; index++) {
-                Map<Character, TrieNode<T>> children = node.getChildren();
-                char character = key.charAt(index);
-                node = children.get(character);
-                if (node == null) {
-                    node = new TrieNode<T>(character);
-                    children.put(character, node);
-                }
+                node = node.getOrAddChild(key.charAt(index));
             }
-            node.setLeaf(true);
+            // set the value first, so that concurrent readers never find a leaf without a value
             node.setValue(value);
+            node.setLeaf(true);
         }
     }
 
@@ -112,4 +109,43 @@ public class Trie<T> {
         }
         return result;
     }
+
+    /**
+     * Returns all the objects stored in this Trie.
+     *
+     * @return a map of the stored objects by key, sorted by key
+     */
+    public SortedMap<String, T> getElements() {
+        SortedMap<String, T> elements = new TreeMap<String, T>();
+        collectElements(ROOT, new StringBuilder(), elements);
+        return elements;
+    }
+
+    /**
+     * Returns the number of nodes of this Trie, including the {@link Trie#ROOT} node.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return countNodes(ROOT);
+    }
+
+    private void collectElements(TrieNode<T> node, StringBuilder key, Map<String, T> elements) {
+        if (node.isLeaf()) {
+            elements.put(key.toString(), node.getValue());
+        }
+        for (TrieNode<T> child : node.getChildren().values()) {
+            key.append(child.getCharacter());
+            collectElements(child, key, elements);
+            key.setLength(key.length() - 1);
+        }
+    }
+
+    private int countNodes(TrieNode<T> node) {
+        int count = 1;
+        for (TrieNode<T> child : node.getChildren().values()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
 }
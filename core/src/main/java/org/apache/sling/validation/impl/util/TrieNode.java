@@ -20,16 +20,18 @@ package org.apache.sling.validation.impl.util;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Implements a Trie node.
+ * Implements a Trie node. The value and the leaf flag are volatile, so that a node made a leaf by one thread is seen with its value by
+ * the threads reading the Trie concurrently.
  */
 public class TrieNode<T> {
 
-    private char character;
-    private T value;
-    private Map<Character, TrieNode<T>> children;
-    private boolean isLeaf;
+    private final char character;
+    private volatile T value;
+    private final ConcurrentMap<Character, TrieNode<T>> children;
+    private volatile boolean isLeaf;
 
     TrieNode(char ch) {
         character = ch;
@@ -53,6 +55,21 @@ public class TrieNode<T> {
         return children;
     }
 
+    /**
+     * Returns the child for a character, adding it if it does not exist yet. Concurrent callers adding the same child get the same node.
+     */
+    TrieNode<T> getOrAddChild(char ch) {
+        TrieNode<T> child = children.get(ch);
+        if (child == null) {
+            TrieNode<T> added = new TrieNode<T>(ch);
+            child = children.putIfAbsent(ch, added);
+            if (child == null) {
+                child = added;
+            }
+        }
+        return child;
+    }
+
     public boolean isLeaf() {
         return isLeaf;
     }
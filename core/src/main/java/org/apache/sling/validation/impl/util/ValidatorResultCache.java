@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.Validator;
+
+/**
+ * Bounded, concurrent cache storing the outcome of {@link org.apache.sling.validation.api.PureValidator}s, keyed by validator, validator
+ * arguments, validated value and, for {@link org.apache.sling.validation.api.TypedValidator}s, the property's type.
+ * <p/>
+ * The cache is split in segments, each of them being a small LRU map guarded by its own lock, so that concurrent validations rarely
+ * contend on the same lock. When a segment is full its least recently used entry is evicted.
+ */
+public class ValidatorResultCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most {@code maxSize} entries.
+     *
+     * @param maxSize the maximum number of cached results; has to be positive
+     */
+    public ValidatorResultCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The cache size has to be positive.");
+        }
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns the cached outcome of applying {@code validator} with {@code arguments} to {@code value}.
+     *
+     * @param validator the validator
+     * @param arguments the validator's arguments
+     * @param type      the validated property's type, if the validator's outcome depends on it; {@code null} otherwise
+     * @param value     the validated value
+     * @return the cached outcome or {@code null} if the outcome is not cached
+     */
+    public Boolean get(Validator validator, Map<String, String> arguments, Type type, Object value) {
+        Key key = new Key(validator, arguments, type, value);
+        Boolean result = segmentFor(key).get(key);
+        if (result != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Stores the outcome of applying {@code validator} with {@code arguments} to {@code value}.
+     *
+     * @see #get(Validator, Map, Type, Object)
+     */
+    public void put(Validator validator, Map<String, String> arguments, Type type, Object value, boolean valid) {
+        Key key = new Key(validator, arguments, type, value);
+        segmentFor(key).put(key, valid);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the ratio of lookups which found a cached outcome.
+     *
+     * @return the hit rate, between {@code 0} and {@code 1}
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private final class Segment {
+
+        private final LinkedHashMap<Key, Boolean> map;
+
+        Segment(final int maxSize) {
+            map = new LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                    if (size() > maxSize) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Boolean get(Key key) {
+            return map.get(key);
+        }
+
+        synchronized void put(Key key, Boolean value) {
+            map.put(key, value);
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+    private static final class Key {
+
+        private final Validator validator;
+        private final Map<String, String> arguments;
+        private final Type type;
+        private final Object value;
+        private final int hash;
+
+        Key(Validator validator, Map<String, String> arguments, Type type, Object value) {
+            this.validator = validator;
+            this.arguments = arguments;
+            this.type = type;
+            this.value = value;
+            int h = System.identityHashCode(validator);
+            h = 31 * h + (arguments != null ? arguments.hashCode() : 0);
+            h = 31 * h + (type != null ? type.ordinal() : -1);
+            h = 31 * h + (value != null ? value.hashCode() : 0);
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && validator == other.validator && type == other.type
+                    && (arguments == other.arguments || (arguments != null && arguments.equals(other.arguments)))
+                    && (value == other.value || (value != null && value.equals(other.value)));
+        }
+    }
+}
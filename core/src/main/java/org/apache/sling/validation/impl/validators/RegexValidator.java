@@ -20,10 +20,14 @@ package org.apache.sling.validation.impl.validators;
 
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.validation.api.MultiValueValidator;
+import org.apache.sling.validation.api.PureValidator;
 import org.apache.sling.validation.api.Validator;
 import org.apache.sling.validation.api.exceptions.SlingValidationException;
 
+import java.util.Arrays;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -32,7 +36,7 @@ import java.util.regex.Pattern;
  */
 @Component()
 @Service(Validator.class)
-public class RegexValidator implements Validator {
+public class RegexValidator implements MultiValueValidator, PureValidator {
 
     public static final String REGEX_PARAM = "regex";
 
@@ -41,11 +45,33 @@ public class RegexValidator implements Validator {
         if (data == null || arguments == null) {
             throw new SlingValidationException("Cannot perform data validation with null parameters");
         }
+        return getPattern(arguments).matcher(data).matches();
+    }
+
+    @Override
+    public int[] validate(String[] data, Map<String, String> arguments) {
+        if (data == null || arguments == null) {
+            throw new SlingValidationException("Cannot perform data validation with null parameters");
+        }
+        Matcher matcher = getPattern(arguments).matcher("");
+        int[] invalid = new int[data.length];
+        int count = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == null) {
+                throw new SlingValidationException("Cannot perform data validation with null parameters");
+            }
+            if (!matcher.reset(data[i]).matches()) {
+                invalid[count++] = i;
+            }
+        }
+        return Arrays.copyOf(invalid, count);
+    }
+
+    private Pattern getPattern(Map<String, String> arguments) {
         String regex = arguments.get(REGEX_PARAM);
         if (regex == null) {
             throw new SlingValidationException("Mandatory " + REGEX_PARAM + " is missing from the arguments map.");
         }
-        Pattern pattern = Pattern.compile(regex);
-        return pattern.matcher(data).matches();
+        return Pattern.compile(regex);
     }
 }
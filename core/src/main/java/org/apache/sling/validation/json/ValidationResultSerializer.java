@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.json;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.validation.api.ValidationResult;
+
+/**
+ * Serializes {@link ValidationResult}s as JSON, writing directly to a {@link Writer} or to an {@link OutputStream} (as UTF-8) without
+ * building an intermediate JSON object tree. The constant parts of the output are encoded once, when the serializer is created; instances
+ * are immutable and can be shared between threads.
+ * <p/>
+ * The failure messages are either nested in an object:
+ * <pre>
+ * {"valid":false,"messages":{"property":["message",...],...}}
+ * </pre>
+ * or, if no messages key is given, written next to the validity flag:
+ * <pre>
+ * {"valid":false,"property":["message",...],...}
+ * </pre>
+ */
+public class ValidationResultSerializer {
+
+    private static final String ENCODING = "UTF-8";
+    private static final int BUFFER_SIZE = 8192;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final byte[] TRUE = getBytes("true");
+    private static final byte[] FALSE = getBytes("false");
+
+    private final String prefix;
+    private final String messagesStart;
+    private final String suffix;
+    private final byte[] prefixBytes;
+    private final byte[] messagesStartBytes;
+    private final byte[] suffixBytes;
+
+    /**
+     * @param validKey    the key of the flag telling if the result is valid
+     * @param messagesKey the key of the object holding the failure messages; if {@code null}, the failure messages are written as
+     *                    members of the top level object
+     */
+    public ValidationResultSerializer(String validKey, String messagesKey) {
+        if (validKey == null) {
+            throw new IllegalArgumentException("ValidationResultSerializer - the valid key cannot be null");
+        }
+        prefix = "{" + quote(validKey) + ":";
+        messagesStart = messagesKey != null ? "," + quote(messagesKey) + ":{" : null;
+        suffix = messagesKey != null ? "}}" : "}";
+        prefixBytes = getBytes(prefix);
+        messagesStartBytes = messagesStart != null ? getBytes(messagesStart) : null;
+        suffixBytes = getBytes(suffix);
+    }
+
+    /**
+     * Writes the {@code result} to the {@code writer}. The writer is neither flushed nor closed.
+     *
+     * @param result the result to serialize
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    public void write(ValidationResult result, Writer writer) throws IOException {
+        writer.write(prefix);
+        writer.write(result.isValid() ? "true" : "false");
+        boolean first = true;
+        if (messagesStart != null) {
+            writer.write(messagesStart);
+        }
+        for (Map.Entry<String, List<String>> entry : result.getFailureMessages().entrySet()) {
+            if (!first || messagesStart == null) {
+                writer.write(',');
+            }
+            first = false;
+            writeString(entry.getKey(), writer);
+            writer.write(":[");
+            List<String> messages = entry.getValue();
+            for (int i = 0; i < messages.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeString(messages.get(i), writer);
+            }
+            writer.write(']');
+        }
+        writer.write(suffix);
+    }
+
+    /**
+     * Writes the {@code result} to the {@code out} stream, encoded as UTF-8. The output is buffered and flushed before returning; the
+     * stream is not closed.
+     *
+     * @param result the result to serialize
+     * @param out    the stream
+     * @throws IOException if writing fails
+     */
+    public void write(ValidationResult result, OutputStream out) throws IOException {
+        OutputStream buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+        buffer.write(prefixBytes);
+        buffer.write(result.isValid() ? TRUE : FALSE);
+        boolean first = true;
+        if (messagesStartBytes != null) {
+            buffer.write(messagesStartBytes);
+        }
+        for (Map.Entry<String, List<String>> entry : result.getFailureMessages().entrySet()) {
+            if (!first || messagesStartBytes == null) {
+                buffer.write(',');
+            }
+            first = false;
+            writeString(entry.getKey(), buffer);
+            buffer.write(':');
+            buffer.write('[');
+            List<String> messages = entry.getValue();
+            for (int i = 0; i < messages.size(); i++) {
+                if (i > 0) {
+                    buffer.write(',');
+                }
+                writeString(messages.get(i), buffer);
+            }
+            buffer.write(']');
+        }
+        buffer.write(suffixBytes);
+        buffer.flush();
+    }
+
+    private static void writeString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (needsEscaping(value, i, c)) {
+                writer.write(value, start, i - start);
+                writer.write(escape(c));
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+
+    private static void writeString(String value, OutputStream out) throws IOException {
+        out.write('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (needsEscaping(value, i, c)) {
+                String escaped = escape(c);
+                for (int j = 0; j < escaped.length(); j++) {
+                    out.write(escaped.charAt(j));
+                }
+            } else if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.write(0xf0 | (codePoint >> 18));
+                out.write(0x80 | ((codePoint >> 12) & 0x3f));
+                out.write(0x80 | ((codePoint >> 6) & 0x3f));
+                out.write(0x80 | (codePoint & 0x3f));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // unpaired surrogate, replaced like the JDK encoders do
+                out.write('?');
+            } else {
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * Besides the characters which must be escaped in JSON strings, {@code </} and the line and paragraph separators are escaped, so that
+     * the output can be embedded in HTML {@code script} elements.
+     */
+    private static boolean needsEscaping(String value, int index, char c) {
+        return c < 0x20 || c == '"' || c == '\\' || c == '\u2028' || c == '\u2029' || (c == '/' && index > 0 &&
+                value.charAt(index - 1) == '<');
+    }
+
+    private static String escape(char c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '/':
+                return "\\/";
+            case '\b':
+                return "\\b";
+            case '\f':
+                return "\\f";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            default:
+                return new String(new char[]{'\\', 'u', HEX[(c >> 12) & 0xf], HEX[(c >> 8) & 0xf], HEX[(c >> 4) & 0xf], HEX[c & 0xf]});
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            builder.append(needsEscaping(value, i, c) ? escape(c) : String.valueOf(c));
+        }
+        return builder.append('"').toString();
+    }
+
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes(ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
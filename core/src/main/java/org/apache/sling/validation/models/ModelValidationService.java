@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.models;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+
+/**
+ * The {@code ModelValidationService} validates Sling Models annotated with {@link ValidatedModel}, typically from their {@code
+ * PostConstruct} method:
+ * <pre>
+ * &#64;PostConstruct
+ * protected void validate() {
+ *     ValidationResult result = modelValidationService.validate(this, resource);
+ *     ...
+ * }
+ * </pre>
+ * The values of the model properties are read from the fields injected into the Sling Model instead of adapting the resource again; the
+ * {@link ValidationModel} and the field bindings of each annotated class are resolved once and reused for all its instances.
+ */
+public interface ModelValidationService {
+
+    /**
+     * Validates an instance of a class annotated with {@link ValidatedModel}. Properties of the {@link ValidationModel} without a
+     * matching field are read from the {@code resource}, as are the children described by the model.
+     *
+     * @param model    the Sling Model instance, after injection
+     * @param resource the resource the Sling Model was adapted from
+     * @return a {@link ValidationResult}; the result is valid if there is no {@code ValidationModel} for the resource
+     * @throws IllegalArgumentException if the {@code model}'s class is not annotated with {@link ValidatedModel}
+     */
+    ValidationResult validate(Object model, Resource resource);
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.spi;
+
+import java.util.List;
+
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidatorLookupService;
+
+/**
+ * Provides validation models to the default {@code ValidationService} implementation, in addition to the models it reads from the
+ * repository. The models of all the providers are merged by applicable path: models stored in the repository take precedence, followed by
+ * the models of the providers in the order of their {@code service.ranking} (highest first).
+ * <p/>
+ * The models returned for a resource type are cached by the service until any model changes in the repository or a provider is registered
+ * or unregistered; a provider whose models change should therefore be registered again.
+ */
+public interface ValidationModelProvider {
+
+    /**
+     * Returns the validation models this provider defines for a resource type.
+     *
+     * @param validatedResourceType  the validated resource type
+     * @param validatorLookupService the service resolving the validators referenced by the models
+     * @return the models; an empty list if the provider has no model for the resource type
+     */
+    List<ValidationModel> getValidationModels(String validatedResourceType, ValidatorLookupService validatorLookupService);
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.util.Trie;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when the bytes allocated by a validation path exceed the budget checked in for it in {@code allocation-budgets.properties}. The
+ * allocation is measured with the per-thread allocation counters of the JVM, averaged over many calls once the code is warmed up; the
+ * tests are skipped on JVMs without such counters.
+ * <p/>
+ * When a change legitimately allocates more, raise the budget in the same change, so that the increase is reviewed.
+ */
+public class AllocationBudgetTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/allocation";
+    private static final String PATH = "/content/allocation/resource";
+    private static final int WARMUP_CALLS = 20000;
+    private static final int MEASURED_CALLS = 10000;
+
+    private static Properties budgets;
+    private ValidationServiceImpl validationService;
+    private ValidationModel model;
+
+    @BeforeClass
+    public static void loadBudgets() throws IOException {
+        budgets = new Properties();
+        InputStream in = AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties");
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadMXBean)
+                .isThreadAllocatedMemorySupported());
+        ((com.sun.management.ThreadMXBean) threadMXBean).setThreadAllocatedMemoryEnabled(true);
+
+        Map<Validator, Map<String, String>> regex = new HashMap<Validator, Map<String, String>>();
+        regex.put(new RegexValidator(), Collections.singletonMap(RegexValidator.REGEX_PARAM, "^[a-z]+$"));
+        Map<Validator, Map<String, String>> none = Collections.emptyMap();
+        Set<ResourceProperty> properties = new LinkedHashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, regex));
+        properties.add(new ResourcePropertyImpl("tags", Type.STRING, true, regex));
+        properties.add(new ResourcePropertyImpl("age", Type.INT, none));
+        properties.add(new ResourcePropertyImpl("created", Type.DATE, none));
+        properties.add(new ResourcePropertyImpl("active", Type.BOOLEAN, none));
+        JCRValidationModel jcrModel = new JCRValidationModel("/apps/validation/allocation", properties, RESOURCE_TYPE, new
+                String[]{"/content/allocation"}, new ArrayList<ChildResource>());
+        model = jcrModel;
+
+        validationService = new ValidationServiceImpl();
+        Trie<JCRValidationModel> trie = new Trie<JCRValidationModel>();
+        trie.insert("/content/allocation", jcrModel);
+        Map<String, Trie<JCRValidationModel>> cache = Whitebox.getInternalState(validationService, "validationModelsCache");
+        cache.put(RESOURCE_TYPE, trie);
+    }
+
+    @Test
+    public void testValidateValidValueMap() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "john");
+        values.put("tags", new Object[]{"one", "two", "three"});
+        values.put("age", 42L);
+        values.put("created", Calendar.getInstance());
+        values.put("active", Boolean.TRUE);
+        final ValueMap valueMap = new ValueMapDecorator(values);
+        assertWithinBudget("validate.valueMap.valid", new Runnable() {
+            @Override
+            public void run() {
+                validationService.validate(valueMap, model);
+            }
+        });
+    }
+
+    @Test
+    public void testValidateInvalidValueMap() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "John Doe");
+        values.put("tags", new Object[]{"one", "Two"});
+        values.put("age", "forty-two");
+        values.put("created", "yesterday");
+        final ValueMap valueMap = new ValueMapDecorator(values);
+        assertWithinBudget("validate.valueMap.invalid", new Runnable() {
+            @Override
+            public void run() {
+                validationService.validate(valueMap, model);
+            }
+        });
+    }
+
+    @Test
+    public void testGetCachedValidationModel() {
+        assertWithinBudget("getValidationModel.cached", new Runnable() {
+            @Override
+            public void run() {
+                validationService.getValidationModel(RESOURCE_TYPE, PATH);
+            }
+        });
+    }
+
+    private static void assertWithinBudget(String key, Runnable call) {
+        long budget = Long.parseLong(budgets.getProperty(key));
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        long bytesPerCall = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / MEASURED_CALLS;
+        assertTrue(key + " allocated " + bytesPerCall + " bytes per call, over its budget of " + budget + " bytes.", bytesPerCall <= budget);
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.SlingException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.api.exceptions.NonExistingTypeException;
+import org.apache.sling.validation.impl.index.ModelCompiler;
+import org.apache.sling.validation.impl.util.JCRBuilder;
+import org.apache.sling.validation.impl.util.JsonResource;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.apache.sling.validation.spi.ValidationModelProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BundleValidationModelProviderTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/bundled";
+    private static final String MODELS_FOLDER = "/SLING-INF/validation";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger changes = new AtomicInteger();
+    private BundleValidationModelProvider provider;
+    private ValidatorLookupService validatorLookupService;
+
+    @Before
+    public void setUp() {
+        provider = new BundleValidationModelProvider(new Runnable() {
+            @Override
+            public void run() {
+                changes.incrementAndGet();
+            }
+        });
+        final Validator regexValidator = new RegexValidator();
+        validatorLookupService = new ValidatorLookupService() {
+            @Override
+            public Validator getValidator(String validatorType) {
+                return regexValidator;
+            }
+        };
+    }
+
+    @Test
+    public void testReadModels() throws Exception {
+        List<JsonResource> modelResources = new ArrayList<JsonResource>();
+        String models = "  [" + getModel("/content/a", true) + ",\n" + getModel("/content/b", false) + "]";
+        BundleValidationModelProvider.readModels("bundle://test/models.json", new StringReader(models), modelResources);
+        BundleValidationModelProvider.readModels("bundle://test/model.json", new StringReader(getModel("/content/c", false)),
+                modelResources);
+        // a model without validated resource type is ignored
+        BundleValidationModelProvider.readModels("bundle://test/invalid.json", new StringReader("{\"applicablePaths\":[\"/content\"]}"),
+                modelResources);
+        // so is a model with an unknown property type
+        BundleValidationModelProvider.readModels("bundle://test/unknown.json", new StringReader(getModel("/content/d", false).replace(
+                "\"propertyType\":\"string\"", "\"propertyType\":\"unknown\"")), modelResources);
+        assertEquals(3, modelResources.size());
+        assertEquals("bundle://test/models.json/0", modelResources.get(0).getPath());
+        assertEquals("bundle://test/models.json/1", modelResources.get(1).getPath());
+        assertEquals("bundle://test/model.json", modelResources.get(2).getPath());
+
+        JCRValidationModel model = JCRBuilder.buildValidationModel(validatorLookupService,
+                RESOURCE_TYPE, modelResources.get(0));
+        assertEquals(Arrays.asList("/content/a"), Arrays.asList(model.getApplicablePaths()));
+        assertEquals(1, model.getResourceProperties().size());
+        assertEquals("^[a-z]+$", model.getResourceProperties().iterator().next().getValidators().values().iterator().next().get(
+                RegexValidator.REGEX_PARAM));
+        assertEquals(1, model.getChildren().size());
+        assertEquals("child", model.getChildren().get(0).getName());
+    }
+
+    @Test
+    public void testBundleLifecycle() throws Exception {
+        Bundle bundle = mockBundle(1, MODELS_FOLDER + "/models.json", "[" + getModel("/content/a", false) + "," + getModel("/content/b",
+                false) + "]");
+        provider.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle));
+        assertEquals(1, changes.get());
+        List<ValidationModel> models = provider.getValidationModels(RESOURCE_TYPE, validatorLookupService);
+        assertEquals(2, models.size());
+        assertEquals("bundle://test.bundle1" + MODELS_FOLDER + "/models.json/0", ((JCRValidationModel) models.get(0)).getJcrPath());
+        assertTrue(provider.getValidationModels("validation/test/other", validatorLookupService).isEmpty());
+
+        // bundles without models do not change the provided models
+        Bundle otherBundle = mock(Bundle.class);
+        when(otherBundle.getHeaders()).thenReturn(new Hashtable<String, String>());
+        provider.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, otherBundle));
+        assertEquals(1, changes.get());
+
+        provider.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, bundle));
+        assertEquals(2, changes.get());
+        assertTrue(provider.getValidationModels(RESOURCE_TYPE, validatorLookupService).isEmpty());
+    }
+
+    @Test
+    public void testEventsOfUninstalledBundlesAreIgnored() throws Exception {
+        // the events are delivered asynchronously, so as not to block the installation of the bundles
+        assertFalse(provider instanceof SynchronousBundleListener);
+        Bundle bundle = mockBundle(1, MODELS_FOLDER + "/models.json", getModel("/content/a", false));
+        when(bundle.getState()).thenReturn(Bundle.UNINSTALLED);
+        provider.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle));
+        provider.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, bundle));
+        assertEquals(0, changes.get());
+        assertTrue(provider.getValidationModels(RESOURCE_TYPE, validatorLookupService).isEmpty());
+    }
+
+    @Test
+    public void testMergeWithRepositoryAndProviders() throws Exception {
+        provider.addBundle(mockBundle(1, MODELS_FOLDER + "/models.json", "[" + getModel("/content/a", false) + "," + getModel(
+                "/content/b", false) + "]"));
+        Set<ResourceProperty> properties = Collections.<ResourceProperty>singleton(new ResourcePropertyImpl("name", Type.STRING,
+                Collections.<Validator, Map<String, String>>emptyMap()));
+        final ValidationModel providedModel = new JCRValidationModel("/provided", properties, RESOURCE_TYPE, new String[]{"/content/b",
+                "/content/c"}, Collections.<ChildResource>emptyList());
+        ValidationModelProvider customProvider = new ValidationModelProvider() {
+            @Override
+            public List<ValidationModel> getValidationModels(String validatedResourceType, ValidatorLookupService vls) {
+                return RESOURCE_TYPE.equals(validatedResourceType) ? Collections.singletonList(providedModel) : Collections
+                        .<ValidationModel>emptyList();
+            }
+        };
+        Resource repositoryModel = new JsonResource("/apps/" + Constants.MODELS_HOME + "model", new JSONObject(getModel("/content/a",
+                false)));
+        ResourceResolver rr = mock(ResourceResolver.class);
+        when(rr.getSearchPath()).thenReturn(new String[]{"/apps/"});
+        when(rr.findResources(anyString(), eq("xpath"))).thenReturn(Collections.singletonList(repositoryModel).iterator());
+        ValidationServiceImpl validationService = newService(rr);
+        validationService.bindValidationModelProvider(customProvider, new Hashtable<String, Object>());
+
+        // the repository takes precedence over the providers, which take precedence over the bundles
+        assertEquals(repositoryModel.getPath(), getJcrPath(validationService, "/content/a/page"));
+        assertEquals("/provided", getJcrPath(validationService, "/content/b/page"));
+        assertEquals("/provided", getJcrPath(validationService, "/content/c/page"));
+        assertTrue(validationService.getValidationModelsCache().containsKey(RESOURCE_TYPE));
+
+        validationService.unbindValidationModelProvider(customProvider, new Hashtable<String, Object>());
+        assertFalse(validationService.getValidationModelsCache().containsKey(RESOURCE_TYPE));
+        when(rr.findResources(anyString(), eq("xpath"))).thenReturn(Collections.singletonList(repositoryModel).iterator());
+        assertEquals("bundle://test.bundle1" + MODELS_FOLDER + "/models.json/1", getJcrPath(validationService, "/content/b/page"));
+        assertNull(validationService.getValidationModel(RESOURCE_TYPE, "/content/c/page"));
+    }
+
+    @Test
+    public void testBundleModelsAreUsedWhenTheQueryFails() throws Exception {
+        provider.addBundle(mockBundle(1, MODELS_FOLDER + "/model.json", getModel("/content/a", false)));
+        ResourceResolver rr = mock(ResourceResolver.class);
+        when(rr.getSearchPath()).thenReturn(new String[]{"/apps/"});
+        when(rr.findResources(contains(RESOURCE_TYPE), eq("xpath"))).thenThrow(new SlingException("Index unavailable", new
+                IllegalStateException()));
+        ValidationServiceImpl validationService = newService(rr);
+        assertEquals("bundle://test.bundle1" + MODELS_FOLDER + "/model.json", getJcrPath(validationService, "/content/a/page"));
+        // the models are not cached, so that the repository is queried again on the next lookup
+        assertFalse(validationService.getValidationModelsCache().containsKey(RESOURCE_TYPE));
+    }
+
+    @Test
+    public void testFailingBundleModelsDoNotHideTheRepositoryModels() throws Exception {
+        Resource repositoryModel = new JsonResource("/apps/" + Constants.MODELS_HOME + "model", new JSONObject(getModel("/content/a",
+                false)));
+        ResourceResolver rr = mock(ResourceResolver.class);
+        when(rr.getSearchPath()).thenReturn(new String[]{"/apps/"});
+        when(rr.findResources(anyString(), eq("xpath"))).thenReturn(Collections.singletonList(repositoryModel).iterator());
+        ValidationServiceImpl validationService = newService(rr);
+        BundleValidationModelProvider failingProvider = mock(BundleValidationModelProvider.class);
+        when(failingProvider.getValidationModels(eq(RESOURCE_TYPE), any(ValidatorLookupService.class))).thenThrow(
+                new NonExistingTypeException("Type unknown is not defined."));
+        Whitebox.setInternalState(validationService, "bundleModelProvider", failingProvider);
+        assertEquals(repositoryModel.getPath(), getJcrPath(validationService, "/content/a/page"));
+        // the load is incomplete, so it is not cached
+        assertFalse(validationService.getValidationModelsCache().containsKey(RESOURCE_TYPE));
+    }
+
+    @Test
+    public void testModelIndex() throws Exception {
+        ModelCompiler compiler = new ModelCompiler();
+        compiler.addJson("/apps/validation/model", new StringReader(getModel("/content/a", true)));
+        final File index = folder.newFile("models.idx");
+        OutputStream out = new FileOutputStream(index);
+        try {
+            compiler.write(out);
+        } finally {
+            out.close();
+        }
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(2L);
+        when(bundle.getSymbolicName()).thenReturn("test.bundle2");
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        when(bundle.getLastModified()).thenReturn(100L);
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(BundleValidationModelProvider.MODEL_INDEX_HEADER, "SLING-INF/validation/models.idx");
+        when(bundle.getHeaders()).thenReturn(headers);
+        when(bundle.getEntry("SLING-INF/validation/models.idx")).thenReturn(index.toURI().toURL());
+        final File dataFolder = folder.newFolder("data");
+        // a copy left by a bundle uninstalled while the provider was closed
+        File indexFolder = new File(dataFolder, "validation-model-index");
+        assertTrue(indexFolder.mkdirs());
+        assertTrue(new File(indexFolder, "7-50-0.idx").createNewFile());
+        BundleContext bundleContext = mock(BundleContext.class);
+        when(bundleContext.getBundles()).thenReturn(new Bundle[]{bundle});
+        when(bundleContext.getDataFile(anyString())).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) throws Throwable {
+                return new File(dataFolder, (String) invocation.getArguments()[0]);
+            }
+        });
+
+        provider.open(bundleContext);
+        List<ValidationModel> models = provider.getValidationModels(RESOURCE_TYPE, validatorLookupService);
+        assertEquals(1, models.size());
+        assertEquals("bundle://test.bundle2/apps/validation/model", ((JCRValidationModel) models.get(0)).getJcrPath());
+        assertEquals(1, models.get(0).getChildren().size());
+        assertEquals(Arrays.asList("2-100-0.idx"), Arrays.asList(indexFolder.list()));
+
+        // an update is copied to a new file, as the previous one may still be mapped; the previous copy is deleted
+        when(bundle.getLastModified()).thenReturn(200L);
+        provider.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundle));
+        assertEquals(1, changes.get());
+        assertEquals(1, provider.getValidationModels(RESOURCE_TYPE, validatorLookupService).size());
+        assertEquals(Arrays.asList("2-200-0.idx"), Arrays.asList(indexFolder.list()));
+
+        provider.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, bundle));
+        assertEquals(2, changes.get());
+        assertEquals(0, indexFolder.list().length);
+        provider.close(bundleContext);
+        assertTrue(provider.getValidationModels(RESOURCE_TYPE, validatorLookupService).isEmpty());
+    }
+
+    @Test
+    public void testIndexOfBundleAddedByTheEventThreadIsKept() throws Exception {
+        ModelCompiler compiler = new ModelCompiler();
+        compiler.addJson("/apps/validation/model", new StringReader(getModel("/content/a", false)));
+        File index = folder.newFile("models.idx");
+        OutputStream out = new FileOutputStream(index);
+        try {
+            compiler.write(out);
+        } finally {
+            out.close();
+        }
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(3L);
+        when(bundle.getSymbolicName()).thenReturn("test.bundle3");
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        when(bundle.getLastModified()).thenReturn(100L);
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(BundleValidationModelProvider.MODEL_INDEX_HEADER, "SLING-INF/validation/models.idx");
+        when(bundle.getHeaders()).thenReturn(headers);
+        when(bundle.getEntry("SLING-INF/validation/models.idx")).thenReturn(index.toURI().toURL());
+        final File dataFolder = folder.newFolder("data");
+        BundleContext bundleContext = mock(BundleContext.class);
+        // the bundle is installed after the listener was registered, but before the installed bundles are listed
+        when(bundleContext.getBundles()).thenAnswer(new Answer<Bundle[]>() {
+            @Override
+            public Bundle[] answer(InvocationOnMock invocation) throws Throwable {
+                provider.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle));
+                return new Bundle[0];
+            }
+        });
+        when(bundleContext.getDataFile(anyString())).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) throws Throwable {
+                return new File(dataFolder, (String) invocation.getArguments()[0]);
+            }
+        });
+
+        provider.open(bundleContext);
+        assertEquals(1, provider.getValidationModels(RESOURCE_TYPE, validatorLookupService).size());
+        assertEquals(Arrays.asList("3-100-0.idx"), Arrays.asList(new File(dataFolder, "validation-model-index").list()));
+        provider.close(bundleContext);
+    }
+
+    private ValidationServiceImpl newService(ResourceResolver rr) throws Exception {
+        ResourceResolverFactory rrf = mock(ResourceResolverFactory.class);
+        when(rrf.getAdministrativeResourceResolver(null)).thenReturn(rr);
+        ValidationServiceImpl validationService = new ValidationServiceImpl();
+        Whitebox.setInternalState(validationService, "rrf", rrf);
+        Whitebox.setInternalState(validationService, "validatorLookupService", validatorLookupService);
+        Whitebox.setInternalState(validationService, "bundleModelProvider", provider);
+        return validationService;
+    }
+
+    private static String getJcrPath(ValidationServiceImpl validationService, String path) {
+        return ((JCRValidationModel) validationService.getValidationModel(RESOURCE_TYPE, path)).getJcrPath();
+    }
+
+    /**
+     * Mocks a bundle whose models folder contains a single entry, served from a temporary file through a {@code bundleentry} URL as the
+     * framework would.
+     */
+    private Bundle mockBundle(long id, String entry, String content) throws Exception {
+        final File file = folder.newFile("bundle" + id + "-" + new File(entry).getName());
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(id);
+        when(bundle.getSymbolicName()).thenReturn("test.bundle" + id);
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(BundleValidationModelProvider.MODELS_HEADER, MODELS_FOLDER);
+        when(bundle.getHeaders()).thenReturn(headers);
+        URL url = new URL("bundleentry", id + ".0", -1, entry, new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) throws IOException {
+                return file.toURI().toURL().openConnection();
+            }
+        });
+        when(bundle.findEntries(MODELS_FOLDER, "*.json", true)).thenReturn(Collections.enumeration(Collections.singletonList(url)));
+        return bundle;
+    }
+
+    private static String getModel(String applicablePath, boolean withChild) {
+        String properties = "\"properties\":{\"jcr:primaryType\":\"nt:unstructured\",\"field\":{\"propertyType\":\"string\"," +
+                "\"validators\":{\"" + RegexValidator.class.getName() + "\":{\"validatorArguments\":[\"regex=^[a-z]+$\"]}}}}";
+        return "{\"validatedResourceType\":\"" + RESOURCE_TYPE + "\",\"applicablePaths\":[\"" + applicablePath + "\"]," +
+                "\"sling:resourceType\":\"sling/validation/model\"," + properties + (withChild ? ",\"children\":{\"child\":{" +
+                properties + "}}" : "") + "}";
+    }
+}
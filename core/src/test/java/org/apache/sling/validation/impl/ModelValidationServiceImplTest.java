@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.models.annotations.Default;
+import org.apache.sling.models.annotations.Optional;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.apache.sling.validation.models.ValidatedModel;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.service.component.ComponentContext;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ModelValidationServiceImplTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+    private static final String RESOURCE_PATH = "/content/validation/resource";
+
+    private ModelValidationServiceImpl modelValidationService;
+    private ValidationServiceImpl validationService;
+    private Resource resource;
+    private Resource child;
+
+    @Before
+    public void setUp() {
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(new RegexValidator(), Collections.singletonMap(RegexValidator.REGEX_PARAM, "^[a-z]+$"));
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, validators));
+        properties.add(new ResourcePropertyImpl("tags", Type.STRING, true, validators));
+        properties.add(new ResourcePropertyImpl("scores", Type.INT, true, new HashMap<Validator, Map<String, String>>()));
+        Set<ResourceProperty> childProperties = new HashSet<ResourceProperty>();
+        childProperties.add(new ResourcePropertyImpl("id", Type.STRING, new HashMap<Validator, Map<String, String>>()));
+        List<ChildResource> children = new ArrayList<ChildResource>();
+        children.add(new ChildResourceImpl("token", childProperties));
+        ValidationModel model = new JCRValidationModel("/apps/validation/model", properties, RESOURCE_TYPE, new String[]{"/content"},
+                children);
+
+        validationService = spy(new ValidationServiceImpl());
+        doReturn(model).when(validationService).getValidationModel(RESOURCE_TYPE, RESOURCE_PATH);
+        modelValidationService = new ModelValidationServiceImpl();
+        Whitebox.setInternalState(modelValidationService, "validationService", validationService);
+        ComponentContext componentContext = mock(ComponentContext.class);
+        when(componentContext.getBundleContext()).thenReturn(mock(BundleContext.class));
+        modelValidationService.activate(componentContext);
+
+        resource = mock(Resource.class);
+        when(resource.getResourceType()).thenReturn(RESOURCE_TYPE);
+        when(resource.getPath()).thenReturn(RESOURCE_PATH);
+        child = mock(Resource.class);
+        when(child.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(Collections.<String, Object>singletonMap("id", "1")));
+        when(resource.getChild("token")).thenReturn(child);
+    }
+
+    @Test
+    public void testFieldValuesAreValidated() {
+        // the resource's own values are invalid, the values injected into the fields are validated instead
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "JOHN");
+        values.put("tags", new String[]{"A"});
+        values.put("scores", new String[]{"x"});
+        when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(values));
+        InjectedModel injectedModel = new InjectedModel();
+        injectedModel.userName = "john";
+        injectedModel.tags = Arrays.asList("a", "b");
+        injectedModel.scores = new int[]{1, 2};
+        assertTrue(modelValidationService.validate(injectedModel, resource).isValid());
+
+        injectedModel.tags = Arrays.asList("a", "B");
+        ValidationResult result = modelValidationService.validate(injectedModel, resource);
+        assertFalse(result.isValid());
+        assertEquals(Collections.singleton("tags"), result.getFailureMessages().keySet());
+        verify(validationService, times(1)).getValidationModel(RESOURCE_TYPE, RESOURCE_PATH);
+        // all properties are bound to required fields, so the resource is not adapted
+        verify(resource, never()).adaptTo(ValueMap.class);
+    }
+
+    @Test
+    public void testFieldDefaultsDoNotHideMissingProperties() {
+        when(resource.adaptTo(ValueMap.class)).thenReturn(ValueMap.EMPTY);
+        DefaultsModel defaultsModel = new DefaultsModel();
+        ValidationResult result = modelValidationService.validate(defaultsModel, resource);
+        assertFalse(result.isValid());
+        assertEquals(Collections.singletonList("Missing required property."), result.getFailureMessages().get("name"));
+        assertEquals(Collections.singletonList("Missing required property."), result.getFailureMessages().get("scores"));
+        assertEquals(Collections.singletonList("Missing required property."), result.getFailureMessages().get("tags"));
+    }
+
+    @Test
+    public void testStoredValuesEqualToFieldDefaultsAreValid() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "john");
+        values.put("tags", new String[]{"a"});
+        values.put("scores", 0L);
+        when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(values));
+        assertTrue(modelValidationService.validate(new DefaultsModel(), resource).isValid());
+    }
+
+    @Test
+    public void testUnboundPropertiesAndChildrenAreReadFromTheResource() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "john");
+        values.put("tags", new String[]{"A"});
+        values.put("scores", new String[]{"1"});
+        when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(values));
+        when(child.adaptTo(ValueMap.class)).thenReturn(ValueMap.EMPTY);
+        PartialModel partialModel = new PartialModel();
+        partialModel.name = "john";
+        ValidationResult result = modelValidationService.validate(partialModel, resource);
+        assertEquals(2, result.getFailureMessages().size());
+        assertEquals(1, result.getFailureMessages().get("tags").size());
+        assertEquals(Collections.singletonList("Missing required property."), result.getFailureMessages().get("token/id"));
+    }
+
+    @Test
+    public void testClassBindingsAreDiscardedWhenBundlesChange() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "john");
+        values.put("tags", new String[]{"a", "b"});
+        values.put("scores", new String[]{"1", "2"});
+        when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(values));
+        InjectedModel injectedModel = new InjectedModel();
+        injectedModel.userName = "john";
+        injectedModel.tags = Arrays.asList("a", "b");
+        injectedModel.scores = new int[]{1, 2};
+        assertTrue(modelValidationService.validate(injectedModel, resource).isValid());
+        assertEquals(1, modelValidationService.getClassBindingCount());
+
+        modelValidationService.bundleChanged(new BundleEvent(BundleEvent.STARTED, mock(Bundle.class)));
+        assertEquals(1, modelValidationService.getClassBindingCount());
+        modelValidationService.bundleChanged(new BundleEvent(BundleEvent.UPDATED, mock(Bundle.class)));
+        assertEquals(0, modelValidationService.getClassBindingCount());
+        assertTrue(modelValidationService.validate(injectedModel, resource).isValid());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClassWithoutAnnotation() {
+        modelValidationService.validate(new Object(), resource);
+    }
+
+    @ValidatedModel
+    private static class InjectedModel {
+
+        @Inject
+        @Named("name")
+        private String userName;
+
+        @Inject
+        private List<String> tags;
+
+        @Inject
+        private int[] scores;
+    }
+
+    @ValidatedModel
+    private static class DefaultsModel {
+
+        @Inject
+        @Default(values = "john")
+        private String name = "john";
+
+        @Inject
+        @Optional
+        private List<String> tags = Arrays.asList("a");
+
+        @Inject
+        @Optional
+        private int scores;
+    }
+
+    @ValidatedModel(resourceType = RESOURCE_TYPE)
+    private static class PartialModel {
+
+        @Inject
+        private String name;
+    }
+}
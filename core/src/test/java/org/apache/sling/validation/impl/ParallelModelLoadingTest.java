@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.jcr.resource.JcrResourceConstants;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.setup.ExecutorThreadPool;
+import org.apache.sling.validation.impl.setup.MockedResourceResolver;
+import org.apache.sling.validation.impl.util.Trie;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelModelLoadingTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/parallel";
+    private static final String[] SEARCH_PATHS = {"/apps", "/libs"};
+    private static final int APPS_MODELS = 30;
+    private static final int LIBS_MODELS = 20;
+    private static final int WORKERS = 4;
+
+    private final AtomicInteger resolvers = new AtomicInteger();
+    private ResourceResolverFactory rrf;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        rrf = new ResourceResolverFactory() {
+            @Override
+            public ResourceResolver getResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+                return getAdministrativeResourceResolver(authenticationInfo);
+            }
+
+            @Override
+            public ResourceResolver getAdministrativeResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+                resolvers.incrementAndGet();
+                try {
+                    return new MockedResourceResolver();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        // the last models of /apps overlay the first models of /libs
+        for (int i = 0; i < APPS_MODELS; i++) {
+            createModel(rr, SEARCH_PATHS[0], i);
+        }
+        for (int i = APPS_MODELS - 10; i < APPS_MODELS - 10 + LIBS_MODELS; i++) {
+            createModel(rr, SEARCH_PATHS[1], i);
+        }
+        // a model without properties is ignored
+        Map<String, Object> modelProperties = getModelProperties(APPS_MODELS + LIBS_MODELS);
+        ResourceUtil.getOrCreateResource(rr, getModelPath(SEARCH_PATHS[0], APPS_MODELS + LIBS_MODELS), modelProperties,
+                JcrResourceConstants.NT_SLING_FOLDER, false);
+        rr.commit();
+        rr.close();
+        executor = Executors.newFixedThreadPool(WORKERS - 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        for (String searchPath : SEARCH_PATHS) {
+            for (int i = 0; i <= APPS_MODELS + LIBS_MODELS; i++) {
+                Resource model = rr.getResource(getModelPath(searchPath, i));
+                if (model != null) {
+                    rr.delete(model);
+                }
+            }
+        }
+        rr.commit();
+        rr.close();
+    }
+
+    @Test
+    public void testParallelLoadingMatchesSequentialLoading() throws Exception {
+        ValidationServiceImpl sequentialService = newService();
+        resolvers.set(0);
+        assertEquals(APPS_MODELS + LIBS_MODELS - 10, sequentialService.preloadValidationModels(RESOURCE_TYPE));
+        assertEquals(1, resolvers.get());
+        SortedMap<String, String> sequentialModels = getModelPaths(sequentialService);
+
+        ValidationServiceImpl parallelService = newService();
+        Whitebox.setInternalState(parallelService, "modelBuilderPool", new ExecutorThreadPool(executor));
+        Whitebox.setInternalState(parallelService, "modelBuilderThreads", WORKERS);
+        resolvers.set(0);
+        assertEquals(APPS_MODELS + LIBS_MODELS - 10, parallelService.preloadValidationModels(RESOURCE_TYPE));
+        // one resolver for the queries and the requesting thread's models, one per additional worker
+        assertEquals(WORKERS, resolvers.get());
+        assertEquals(sequentialModels, getModelPaths(parallelService));
+
+        assertEquals(APPS_MODELS + LIBS_MODELS - 10, sequentialModels.size());
+        assertEquals(getModelPath(SEARCH_PATHS[0], APPS_MODELS - 1), sequentialModels.get(getContentPath(APPS_MODELS - 1)));
+        assertEquals(getModelPath(SEARCH_PATHS[1], APPS_MODELS), sequentialModels.get(getContentPath(APPS_MODELS)));
+    }
+
+    @Test
+    public void testFewModelsAreBuiltByTheRequestingThread() throws Exception {
+        ValidationServiceImpl parallelService = newService();
+        Whitebox.setInternalState(parallelService, "modelBuilderPool", new ExecutorThreadPool(executor));
+        Whitebox.setInternalState(parallelService, "modelBuilderThreads", 100);
+        resolvers.set(0);
+        parallelService.preloadValidationModels(RESOURCE_TYPE);
+        // 51 model resources allow for 7 workers
+        assertEquals((APPS_MODELS + LIBS_MODELS + ValidationServiceImpl.MIN_MODELS_PER_WORKER) / ValidationServiceImpl
+                .MIN_MODELS_PER_WORKER, resolvers.get());
+    }
+
+    private ValidationServiceImpl newService() {
+        ValidationServiceImpl validationService = new ValidationServiceImpl();
+        Whitebox.setInternalState(validationService, "rrf", rrf);
+        final Validator regexValidator = new RegexValidator();
+        Whitebox.setInternalState(validationService, "validatorLookupService", new ValidatorLookupService() {
+            @Override
+            public Validator getValidator(String validatorType) {
+                return regexValidator;
+            }
+        });
+        return validationService;
+    }
+
+    private static SortedMap<String, String> getModelPaths(ValidationServiceImpl validationService) {
+        Trie<JCRValidationModel> trie = validationService.getValidationModelsCache().get(RESOURCE_TYPE);
+        SortedMap<String, String> modelPaths = new TreeMap<String, String>();
+        for (Map.Entry<String, JCRValidationModel> entry : trie.getElements().entrySet()) {
+            modelPaths.put(entry.getKey(), entry.getValue().getJcrPath());
+        }
+        return modelPaths;
+    }
+
+    private static void createModel(ResourceResolver rr, String searchPath, int index) throws Exception {
+        Resource model = ResourceUtil.getOrCreateResource(rr, getModelPath(searchPath, index), getModelProperties(index),
+                JcrResourceConstants.NT_SLING_FOLDER, false);
+        Map<String, Object> propertyProperties = new HashMap<String, Object>();
+        propertyProperties.put(Constants.PROPERTY_TYPE, "string");
+        propertyProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        ResourceUtil.getOrCreateResource(rr, model.getPath() + "/" + Constants.PROPERTIES + "/field", propertyProperties,
+                JcrConstants.NT_UNSTRUCTURED, false);
+        Map<String, Object> validatorProperties = new HashMap<String, Object>();
+        validatorProperties.put(Constants.VALIDATOR_ARGUMENTS, new String[]{RegexValidator.REGEX_PARAM + "=^[a-z]+$"});
+        validatorProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        ResourceUtil.getOrCreateResource(rr, model.getPath() + "/" + Constants.PROPERTIES + "/field/" + Constants.VALIDATORS + "/" +
+                RegexValidator.class.getName(), validatorProperties, JcrConstants.NT_UNSTRUCTURED, false);
+    }
+
+    private static Map<String, Object> getModelProperties(int index) {
+        Map<String, Object> modelProperties = new HashMap<String, Object>();
+        modelProperties.put(Constants.VALIDATED_RESOURCE_TYPE, RESOURCE_TYPE);
+        modelProperties.put(Constants.APPLICABLE_PATHS, new String[]{getContentPath(index)});
+        modelProperties.put(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, Constants.VALIDATION_MODEL_RESOURCE_TYPE);
+        modelProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        return modelProperties;
+    }
+
+    private static String getModelPath(String searchPath, int index) {
+        return searchPath + "/" + Constants.MODELS_HOME + "parallelModel" + index;
+    }
+
+    private static String getContentPath(int index) {
+        return "/content/parallel/page" + index;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.SlingHttpServletRequestWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SlingHttpServletRequestAFTest {
+
+    private SlingHttpServletRequestAF adapterFactory;
+    private SlingHttpServletRequest request;
+
+    @Before
+    public void setUp() {
+        adapterFactory = new SlingHttpServletRequestAF();
+        request = mock(SlingHttpServletRequest.class);
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        when(request.getAttribute(anyString())).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                attributes.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(request).setAttribute(anyString(), anyObject());
+        Map<String, String[]> parameters = new HashMap<String, String[]>();
+        parameters.put("name", new String[]{"John"});
+        parameters.put("age", new String[]{"42"});
+        parameters.put("scores", new String[]{"1", "2", "3"});
+        parameters.put("birthday", new String[]{"1988-01-30T10:00:00.000+01:00"});
+        when(request.getParameterMap()).thenReturn(parameters);
+    }
+
+    @Test
+    public void testValueMapIsCachedOnTheRequest() {
+        ValueMap valueMap = adapterFactory.getAdapter(request, ValueMap.class);
+        verify(request, never()).getParameterMap();
+        assertSame(valueMap, adapterFactory.getAdapter(request, ValueMap.class));
+        assertArrayEquals(new String[]{"John"}, (String[]) valueMap.get("name"));
+        assertEquals("John", valueMap.get("name", String.class));
+        verify(request, times(1)).getParameterMap();
+    }
+
+    @Test
+    public void testValueMapIsNotSharedWithDispatchedRequests() {
+        ValueMap valueMap = adapterFactory.getAdapter(request, ValueMap.class);
+        assertEquals("John", valueMap.get("name", String.class));
+        // a forwarded request sharing the attributes of the original request, but with other parameters
+        SlingHttpServletRequest forwarded = new SlingHttpServletRequestWrapper(request) {
+            @Override
+            public Map getParameterMap() {
+                return Collections.singletonMap("name", new String[]{"Jane"});
+            }
+        };
+        ValueMap forwardedValueMap = adapterFactory.getAdapter(forwarded, ValueMap.class);
+        assertNotSame(valueMap, forwardedValueMap);
+        assertEquals("Jane", forwardedValueMap.get("name", String.class));
+
+        // the parameters of the same request changed
+        when(request.getParameterMap()).thenReturn(Collections.singletonMap("name", new String[]{"Jim"}));
+        assertEquals("Jim", adapterFactory.getAdapter(request, ValueMap.class).get("name", String.class));
+    }
+
+    @Test
+    public void testTypedConversions() {
+        ValueMap valueMap = adapterFactory.getAdapter(request, ValueMap.class);
+        assertEquals(Integer.valueOf(42), valueMap.get("age", Integer.class));
+        assertEquals(Long.valueOf(42), valueMap.get("age", 0L));
+        assertNull(valueMap.get("name", Integer.class));
+        assertEquals("default", valueMap.get("missing", "default"));
+        assertArrayEquals(new Long[]{1L, 2L, 3L}, valueMap.get("scores", Long[].class));
+        assertArrayEquals(new int[]{1, 2, 3}, valueMap.get("scores", int[].class));
+        assertEquals(1988, valueMap.get("birthday", Calendar.class).get(Calendar.YEAR));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SlowValidationLogTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+
+    private SlowValidationLog slowLog;
+    private ValidationModel model;
+
+    @Before
+    public void setUp() {
+        slowLog = new SlowValidationLog();
+        slowLog.configure(0, 100, 2);
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(new RegexValidator(), Collections.singletonMap(RegexValidator.REGEX_PARAM, "^[a-z]+$"));
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, validators));
+        properties.add(new ResourcePropertyImpl("tags", Type.STRING, true, validators));
+        model = new JCRValidationModel("/apps/validation/model", properties, RESOURCE_TYPE, new String[]{"/content"},
+                new ArrayList<ChildResource>());
+    }
+
+    @Test
+    public void testValidationIsTraced() {
+        ValidationServiceImpl validationService = new ValidationServiceImpl();
+        final List<String> records = new ArrayList<String>();
+        slowLog = new SlowValidationLog() {
+            @Override
+            String stop(ValidationTrace trace) {
+                String record = super.stop(trace);
+                records.add(record);
+                return record;
+            }
+        };
+        slowLog.configure(0, 100, 2);
+        Whitebox.setInternalState(validationService, "slowLog", slowLog);
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "john");
+        values.put("tags", new String[]{"a", "b", "c"});
+        validationService.validate(new ValueMapDecorator(values), model);
+
+        assertEquals(1, records.size());
+        String record = records.get(0);
+        assertTrue(record, record.startsWith("Slow validation: resourceType=" + RESOURCE_TYPE + " path= totalMs="));
+        assertTrue(record, record.contains(" lookupMs=0.000 "));
+        assertTrue(record, record.matches(".* properties=\\[(name|tags):[0-9.]+ms, (name|tags):[0-9.]+ms\\] .*"));
+        // the multi-valued property is checked by a single invocation of the validator
+        assertTrue(record, record.matches(".* validators=\\[" + RegexValidator.class.getName() + ":[0-9.]+ms/2\\] children=\\[\\]"));
+    }
+
+    @Test
+    public void testNestedValidationsAreNotTraced() {
+        ValidationTrace trace = slowLog.start(RESOURCE_TYPE, "/content/a", model);
+        assertNotNull(trace);
+        assertNull(slowLog.start(RESOURCE_TYPE, "/content/b", model));
+        assertTrue(slowLog.current() == trace);
+        slowLog.stop(trace);
+        assertNull(slowLog.current());
+    }
+
+    @Test
+    public void testLookupIsReportedWithItsValidation() {
+        slowLog.lookedUp(model, 2000000);
+        ValidationTrace trace = slowLog.start(RESOURCE_TYPE, "/content/a", model);
+        assertTrue(slowLog.stop(trace).contains(" lookupMs=2.000 "));
+        ValidationTrace next = slowLog.start(RESOURCE_TYPE, "/content/a", model);
+        assertTrue(slowLog.stop(next).contains(" lookupMs=0.000 "));
+        // the finished traces are detached from the thread
+        assertNull(getThreadLocal("traces").get());
+
+        // so is the lookup of a validation which is not sampled
+        slowLog.configure(0, 1, 2);
+        Whitebox.setInternalState(slowLog, "random", new Random() {
+            @Override
+            public int nextInt(int n) {
+                return n - 1;
+            }
+        });
+        slowLog.lookedUp(model, 2000000);
+        assertNull(slowLog.start(RESOURCE_TYPE, "/content/a", model));
+        assertNull(getThreadLocal("lookups").get());
+        assertNull(getThreadLocal("traces").get());
+
+        // and a lookup finding no model, which is not followed by a validation
+        slowLog.lookedUp(model, 2000000);
+        slowLog.lookedUp(null, 2000000);
+        assertNull(getThreadLocal("lookups").get());
+    }
+
+    @Test
+    public void testPendingLookupDoesNotKeepTheModel() {
+        slowLog.lookedUp(model, 2000000);
+        Object[] lookup = (Object[]) getThreadLocal("lookups").get();
+        assertTrue(lookup[0] instanceof WeakReference);
+        assertSame(model, ((WeakReference<?>) lookup[0]).get());
+        assertEquals(2000000L, lookup[1]);
+    }
+
+    @Test
+    public void testRateLimitAndSampling() {
+        assertNotNull(slowLog.stop(slowLog.start(RESOURCE_TYPE, "/content", model)));
+        assertNotNull(slowLog.stop(slowLog.start(RESOURCE_TYPE, "/content", model)));
+        assertNull(slowLog.stop(slowLog.start(RESOURCE_TYPE, "/content", model)));
+        assertNull(slowLog.stop(slowLog.start(RESOURCE_TYPE, "/content", model)));
+
+        slowLog.configure(0, 0, 2);
+        assertNull(slowLog.start(RESOURCE_TYPE, "/content", model));
+        slowLog.configure(60000, 100, 2);
+        assertNull(slowLog.stop(slowLog.start(RESOURCE_TYPE, "/content", model)));
+        slowLog.configure(-1, 100, 2);
+        assertNull(slowLog.start(RESOURCE_TYPE, "/content", model));
+        assertEquals(false, slowLog.isEnabled());
+    }
+
+    private ThreadLocal<?> getThreadLocal(String name) {
+        return (ThreadLocal<?>) Whitebox.getInternalState(slowLog, name);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StreamingRequestValidatorTest {
+
+    private static final String BOUNDARY = "----validationboundary";
+
+    private StreamingRequestValidator validator;
+    private ValidationModel model;
+
+    @Before
+    public void setUp() {
+        validator = new StreamingRequestValidator(new ValidationServiceImpl(), 64, 1024, 1000, 10000);
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        Map<String, String> arguments = new HashMap<String, String>();
+        arguments.put(RegexValidator.REGEX_PARAM, "^[a-z]+$");
+        validators.put(new RegexValidator(), arguments);
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, validators));
+        properties.add(new ResourcePropertyImpl("age", Type.INT, new HashMap<Validator, Map<String, String>>()));
+        properties.add(new ResourcePropertyImpl("tags", Type.STRING, true, validators));
+        model = mock(ValidationModel.class);
+        when(model.getResourceProperties()).thenReturn(properties);
+    }
+
+    @Test
+    public void testValidFormUrlEncodedBody() throws Exception {
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded",
+                "name=john&age=42&tags=a&tags=b&title=Dr%2E+J%C3%B6rg");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertTrue(result.isValid());
+        assertTrue(result.isComplete());
+        assertArrayEquals(new String[]{"a", "b"}, result.getFields().get("tags"));
+        assertArrayEquals(new String[]{"Dr. Jörg"}, result.getFields().get("title"));
+    }
+
+    @Test
+    public void testFormUrlEncodedBodyStopsAtFirstFailure() throws Exception {
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded", "name=John&age=42");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertFalse(result.isValid());
+        assertFalse(result.isComplete());
+        assertEquals(1, result.getFailureMessages().size());
+        assertTrue(result.getFailureMessages().containsKey("name"));
+        assertNull(result.getFields().get("age"));
+    }
+
+    @Test
+    public void testRepeatedSingleValuedField() throws Exception {
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded", "name=john&name=jane&age=42");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertFalse(result.isComplete());
+        assertEquals("Expected single-valued property.", result.getFailureMessages().get("name").get(0));
+    }
+
+    @Test
+    public void testMissingProperties() throws Exception {
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded", "name=john");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertTrue(result.isComplete());
+        assertEquals(2, result.getFailureMessages().size());
+        assertEquals("Missing required property.", result.getFailureMessages().get("age").get(0));
+        assertEquals("Missing required property.", result.getFailureMessages().get("tags").get(0));
+    }
+
+    @Test
+    public void testSizeLimits() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 65; i++) {
+            value.append('a');
+        }
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded", "name=" + value + "&age=42");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailureMessages().containsKey("name"));
+
+        StringBuilder body = new StringBuilder("age=42");
+        for (int i = 0; i < 200; i++) {
+            body.append("&tags=abc");
+        }
+        request = mockRequest("application/x-www-form-urlencoded", body.toString());
+        result = validator.validate(request, model);
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailureMessages().containsKey(StreamingRequestValidator.REQUEST_KEY));
+    }
+
+    @Test
+    public void testFieldNamesAreCappedWithoutRequestSizeLimit() throws Exception {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i <= StreamingRequestValidator.MAX_FIELD_NAME_SIZE; i++) {
+            name.append('n');
+        }
+        StreamingRequestValidator unlimited = new StreamingRequestValidator(new ValidationServiceImpl(), -1, -1, -1, -1);
+        StreamingValidationResult result = unlimited.validate(mockRequest("application/x-www-form-urlencoded", name + "=x&age=42"), model);
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailureMessages().containsKey(StreamingRequestValidator.REQUEST_KEY));
+    }
+
+    @Test
+    public void testValueCountsAreCappedWithoutRequestSizeLimit() throws Exception {
+        StreamingRequestValidator unlimited = new StreamingRequestValidator(new ValidationServiceImpl(), -1, -1, 10, 100);
+        StringBuilder body = new StringBuilder("age=42");
+        for (int i = 0; i <= 10; i++) {
+            body.append("&a");
+        }
+        StreamingValidationResult result = unlimited.validate(mockRequest("application/x-www-form-urlencoded", body.toString()), model);
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailureMessages().containsKey("a"));
+        assertEquals(10, result.getFields().get("a").length);
+
+        body = new StringBuilder("age=42");
+        for (int i = 0; i < 100; i++) {
+            body.append("&f").append(i % 10);
+        }
+        result = unlimited.validate(mockRequest("application/x-www-form-urlencoded", body.toString()), model);
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailureMessages().containsKey(StreamingRequestValidator.REQUEST_KEY));
+
+        // the counts can be unlimited as well
+        unlimited = new StreamingRequestValidator(new ValidationServiceImpl(), -1, -1, -1, -1);
+        result = unlimited.validate(mockRequest("application/x-www-form-urlencoded", "name=john&tags=a&" + body), model);
+        assertTrue(result.isValid());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void testMultipleValuedFieldIsValidatedAsAWhole() throws Exception {
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded", "name=john&tags=a&tags=B&age=42&tags=c&tags=D");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertTrue(result.isComplete());
+        assertFalse(result.isValid());
+        assertEquals(1, result.getFailureMessages().get("tags").size());
+        assertTrue(result.getFailureMessages().get("tags").get(0).endsWith("(invalid values at indexes [1, 3])"));
+    }
+
+    @Test
+    public void testMalformedNameOfOversizedField() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 65; i++) {
+            value.append('a');
+        }
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded", "na%zme=" + value);
+        StreamingValidationResult result = validator.validate(request, model);
+        assertFalse(result.isComplete());
+        assertEquals("Request body contains a malformed field.", result.getFailureMessages().get(StreamingRequestValidator.REQUEST_KEY)
+                .get(0));
+    }
+
+    @Test
+    public void testFileUploadForModelPropertyIsRejected() throws Exception {
+        // the content of a file upload is not validated, so it must not stand in for a model property
+        String body = field("name", "john") + field("age", "42") + file("tags", "BINARY") + "--" + BOUNDARY + "--\r\n";
+        StreamingValidationResult result = validator.validate(mockRequest("multipart/form-data; boundary=" + BOUNDARY, body), model);
+        assertFalse(result.isComplete());
+        assertFalse(result.isValid());
+        assertEquals("Property was expected as a form field, not as a file upload.", result.getFailureMessages().get("tags").get(0));
+    }
+
+    @Test
+    public void testValidMultipartBody() throws Exception {
+        String body = field("name", "john") + file("upload", "binary content") + field("age", "42") + field("tags", "x") + "--" +
+                BOUNDARY + "--\r\n";
+        HttpServletRequest request = mockRequest("multipart/form-data; boundary=" + BOUNDARY, body);
+        StreamingValidationResult result = validator.validate(request, model);
+        assertTrue(result.isValid());
+        assertTrue(result.isComplete());
+        assertArrayEquals(new String[]{"42"}, result.getFields().get("age"));
+        assertFalse(result.getFields().containsKey("upload"));
+        RequestParameter upload = result.getUploads().get("upload")[0];
+        assertFalse(upload.isFormField());
+        assertEquals("upload.bin", upload.getFileName());
+        assertEquals("binary content", upload.getString());
+        result.dispose();
+    }
+
+    @Test
+    public void testMultipartBodyStopsAtFirstFailure() throws Exception {
+        String body = field("age", "forty-two") + field("name", "john") + "--" + BOUNDARY + "--\r\n";
+        HttpServletRequest request = mockRequest("multipart/form-data; boundary=" + BOUNDARY, body);
+        StreamingValidationResult result = validator.validate(request, model);
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailureMessages().containsKey("age"));
+        assertFalse(result.getFields().containsKey("name"));
+    }
+
+    @Test
+    public void testUnsupportedRequestCharsetFallsBackToUtf8() throws Exception {
+        HttpServletRequest request = mockRequest("application/x-www-form-urlencoded; charset=x-unknown",
+                "name=john&age=42&tags=a&title=J%C3%B6rg");
+        when(request.getCharacterEncoding()).thenReturn("x-unknown");
+        StreamingValidationResult result = validator.validate(request, model);
+        assertTrue(result.isValid());
+        assertTrue(result.isComplete());
+        assertArrayEquals(new String[]{"Jörg"}, result.getFields().get("title"));
+
+        String body = field("name", "john") + field("age", "42") + field("tags", "a") + "--" + BOUNDARY + "--\r\n";
+        request = mockRequest("multipart/form-data; boundary=" + BOUNDARY, body);
+        when(request.getCharacterEncoding()).thenReturn("x-unknown");
+        result = validator.validate(request, model);
+        assertTrue(result.isValid());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void testCanValidate() throws Exception {
+        assertTrue(StreamingRequestValidator.canValidate(mockRequest("application/x-www-form-urlencoded; charset=UTF-8", "")));
+        assertTrue(StreamingRequestValidator.canValidate(mockRequest("multipart/form-data; boundary=" + BOUNDARY, "")));
+        assertFalse(StreamingRequestValidator.canValidate(mockRequest("application/json", "{}")));
+    }
+
+    private static String field(String name, String value) {
+        return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n";
+    }
+
+    private static String file(String name, String content) {
+        return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\"" + name + ".bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n" + content + "\r\n";
+    }
+
+    private static HttpServletRequest mockRequest(String contentType, String body) throws IOException {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes("UTF-8"));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getContentType()).thenReturn(contentType);
+        when(request.getContentLength()).thenReturn(-1);
+        when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+        });
+        return request;
+    }
+}
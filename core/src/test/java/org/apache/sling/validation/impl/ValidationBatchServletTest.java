@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.component.ComponentContext;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ValidationBatchServletTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+
+    private ValidationBatchServlet servlet;
+    private ValidationServiceImpl validationService;
+    private SlingHttpServletResponse response;
+    private StringWriter body;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        Map<String, String> arguments = new HashMap<String, String>();
+        arguments.put(RegexValidator.REGEX_PARAM, "^[a-z]+$");
+        validators.put(new RegexValidator(), arguments);
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, validators));
+        properties.add(new ResourcePropertyImpl("age", Type.INT, new HashMap<Validator, Map<String, String>>()));
+        ValidationModel model = mock(ValidationModel.class);
+        when(model.getResourceProperties()).thenReturn(properties);
+
+        validationService = spy(new ValidationServiceImpl());
+        doReturn(model).when(validationService).getValidationModel(RESOURCE_TYPE, "/content/users");
+        doReturn(null).when(validationService).getValidationModel("validation/test/unknown", "/content/users");
+        servlet = new ValidationBatchServlet();
+        Whitebox.setInternalState(servlet, "validationService", validationService);
+        Dictionary<String, Object> configuration = new Hashtable<String, Object>();
+        configuration.put(ValidationBatchServlet.PROP_ENABLED, true);
+        servlet.activate(mockComponentContext(configuration));
+
+        response = mock(SlingHttpServletResponse.class);
+        body = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+    }
+
+    @Test
+    public void testBatchIsValidatedWithOneModelLookup() throws Exception {
+        String prefix = "{\"resourceType\":\"" + RESOURCE_TYPE + "\",\"path\":\"/content/users\",\"properties\":";
+        String request = "[" +
+                prefix + "{\"name\":\"john\",\"age\":42}}," +
+                prefix + "{\"name\":\"John {1}\",\"age\":\"1\"}}," +
+                prefix + "{\"name\":\"jane\"}}," +
+                "{\"resourceType\":\"validation/test/unknown\",\"path\":\"/content/users\"}," +
+                "{\"path\":\"/content/users\"}" +
+                "]";
+        servlet.doPost(mockRequest(request), response);
+        assertEquals("[" +
+                "{\"valid\":true,\"messages\":{}}," +
+                "{\"valid\":false,\"messages\":{\"name\":[\"Property does not contain a valid value for the " +
+                RegexValidator.class.getName() + " validator\"]}}," +
+                "{\"valid\":false,\"messages\":{\"age\":[\"Missing required property.\"]}}," +
+                "{\"valid\":false,\"messages\":{\"resourceType\":[\"No validation model found for resource type validation/test/unknown " +
+                "and path /content/users.\"]}}," +
+                "{\"valid\":false,\"messages\":{\"resourceType\":[\"Missing resource type.\"]}}" +
+                "]", body.toString());
+        verify(validationService, times(1)).getValidationModel(RESOURCE_TYPE, "/content/users");
+    }
+
+    @Test
+    public void testMalformedBatch() throws Exception {
+        servlet.doPost(mockRequest("{\"resourceType\":\"" + RESOURCE_TYPE + "\"}"), response);
+        verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+        verify(response, never()).getWriter();
+
+        servlet.doPost(mockRequest("[{\"resourceType\":\"" + RESOURCE_TYPE + "\",\"path\":\"/content/users\",\"properties\":{\"name\":" +
+                "\"john\",\"age\":42}} {}]"), response);
+        assertEquals("[{\"valid\":true,\"messages\":{}},{\"valid\":false,\"messages\":{\":request\":[\"Malformed request: Expected " +
+                "',' or ']' between array elements.\"]}}]", body.toString());
+    }
+
+    @Test
+    public void testMaximumEntries() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationBatchServlet.PROP_ENABLED, true);
+        properties.put(ValidationBatchServlet.PROP_MAX_ENTRIES, 1);
+        servlet.activate(mockComponentContext(properties));
+        String entry = "{\"resourceType\":\"" + RESOURCE_TYPE + "\",\"path\":\"/content/users\",\"properties\":{\"name\":\"john\"," +
+                "\"age\":42}}";
+        servlet.doPost(mockRequest("[" + entry + "," + entry + "," + entry + "]"), response);
+        assertEquals("[{\"valid\":true,\"messages\":{}},{\"valid\":false,\"messages\":{\":request\":[\"The batch exceeds the maximum " +
+                "number of 1 entries.\"]}}]", body.toString());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        servlet.activate(mockComponentContext(new Hashtable<String, Object>()));
+        servlet.doPost(mockRequest("[{\"resourceType\":\"" + RESOURCE_TYPE + "\"}]"), response);
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND);
+        verify(validationService, never()).getValidationModel(anyString(), anyString());
+    }
+
+    @Test
+    public void testSingleQuotedStringsDoNotEndEntries() throws Exception {
+        servlet.doPost(mockRequest("[{'resourceType':'" + RESOURCE_TYPE + "','path':'/content/users','properties':{'name':'j}o\\'hn'," +
+                "'age':42}}]"), response);
+        assertEquals("[{\"valid\":false,\"messages\":{\"name\":[\"Property does not contain a valid value for the " +
+                RegexValidator.class.getName() + " validator\"]}}]", body.toString());
+    }
+
+    private static ComponentContext mockComponentContext(Dictionary<String, Object> properties) {
+        ComponentContext componentContext = mock(ComponentContext.class);
+        when(componentContext.getProperties()).thenReturn(properties);
+        return componentContext;
+    }
+
+    private static SlingHttpServletRequest mockRequest(String body) throws Exception {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader(body)));
+        return request;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
+import org.osgi.service.component.ComponentContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ValidationFilterTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+    private static final String RESOURCE_PATH = "/content/validation/resource";
+    private static final String BOUNDARY = "----validationboundary";
+
+    private ValidationFilter filter;
+    private ValidationServiceImpl validationService;
+    private ValidationModel model;
+    private ValueMap parameters;
+    private SlingHttpServletRequest request;
+    private SlingHttpServletResponse response;
+    private ByteArrayOutputStream body;
+    private FilterChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        validationService = mock(ValidationServiceImpl.class);
+        model = mock(ValidationModel.class);
+        when(validationService.getValidationModel(RESOURCE_TYPE, RESOURCE_PATH)).thenReturn(model);
+        filter = new ValidationFilter();
+        Whitebox.setInternalState(filter, "validationService", validationService);
+
+        parameters = mock(ValueMap.class);
+        when(parameters.get(ValidationFilter.RESOURCE_TYPE_PARAMETER, String.class)).thenReturn(RESOURCE_TYPE);
+        request = mock(SlingHttpServletRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.adaptTo(ValueMap.class)).thenReturn(parameters);
+        RequestPathInfo requestPathInfo = mock(RequestPathInfo.class);
+        when(requestPathInfo.getResourcePath()).thenReturn(RESOURCE_PATH);
+        when(request.getRequestPathInfo()).thenReturn(requestPathInfo);
+        response = mock(SlingHttpServletResponse.class);
+        body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                body.write(b);
+            }
+        });
+        chain = mock(FilterChain.class);
+    }
+
+    @Test
+    public void testValidRequestIsDispatched() throws Exception {
+        activate(true);
+        when(validationService.validate(parameters, model)).thenReturn(new ValidationResultImpl());
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(response, never()).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void testInvalidRequestIsRejected() throws Exception {
+        activate(true);
+        ValidationResultImpl result = new ValidationResultImpl();
+        result.addFailureMessage("name", "Property \"name\" is invalid.");
+        when(validationService.validate(parameters, model)).thenReturn(result);
+        filter.doFilter(request, response, chain);
+        verify(chain, never()).doFilter(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        assertEquals("{\"success\":false,\"messages\":{\"name\":[\"Property \\\"name\\\" is invalid.\"]}}", body.toString("UTF-8"));
+    }
+
+    @Test
+    public void testDisabledFilterDoesNotValidate() throws Exception {
+        activate(false);
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(validationService, never()).validate(any(ValueMap.class), any(ValidationModel.class));
+    }
+
+    @Test
+    public void testResourceTypeFallsBackToTheAddressedResource() throws Exception {
+        activate(true);
+        when(parameters.get(ValidationFilter.RESOURCE_TYPE_PARAMETER, String.class)).thenReturn(null);
+        Resource resource = mock(Resource.class);
+        when(resource.getResourceType()).thenReturn(RESOURCE_TYPE);
+        when(request.getResource()).thenReturn(resource);
+        when(validationService.validate(parameters, model)).thenReturn(new ValidationResultImpl());
+        filter.doFilter(request, response, chain);
+        verify(validationService).validate(parameters, model);
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void testModelResolutionIsCachedPerGeneration() throws Exception {
+        activate(true);
+        when(validationService.getValidationModel("validation/test/noModel", RESOURCE_PATH)).thenReturn(null);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(model, filter.getValidationModel(RESOURCE_TYPE, RESOURCE_PATH));
+            assertEquals(null, filter.getValidationModel("validation/test/noModel", RESOURCE_PATH));
+        }
+        verify(validationService, times(1)).getValidationModel(RESOURCE_TYPE, RESOURCE_PATH);
+        verify(validationService, times(1)).getValidationModel("validation/test/noModel", RESOURCE_PATH);
+
+        when(validationService.getModelsGeneration()).thenReturn(1L);
+        filter.getValidationModel(RESOURCE_TYPE, RESOURCE_PATH);
+        verify(validationService, times(2)).getValidationModel(RESOURCE_TYPE, RESOURCE_PATH);
+    }
+
+    @Test
+    public void testResourceTypePatterns() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationFilter.PROP_ENABLED, true);
+        properties.put(ValidationFilter.PROP_RESOURCE_TYPES, new String[]{"validation/other/.*"});
+        activate(properties);
+        filter.doFilter(request, response, chain);
+        verify(validationService, never()).getValidationModel(RESOURCE_TYPE, RESOURCE_PATH);
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void testStreamedRequestKeepsTheUploadedFiles() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationFilter.PROP_ENABLED, true);
+        properties.put(ValidationFilter.PROP_STREAMING, true);
+        activate(properties);
+        when(model.getResourceProperties()).thenReturn(Collections.<ResourceProperty>singleton(new ResourcePropertyImpl("name",
+                Type.STRING, new HashMap<Validator, Map<String, String>>())));
+        Resource resource = mock(Resource.class);
+        when(resource.getResourceType()).thenReturn(RESOURCE_TYPE);
+        when(request.getResource()).thenReturn(resource);
+        when(request.getQueryString()).thenReturn("mode=edit");
+        // the second file is bigger than the spool threshold and is spooled to disk
+        final char[] big = new char[StreamingRequestValidator.SPOOL_THRESHOLD + 1];
+        Arrays.fill(big, 'x');
+        String content = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"name\"\r\n\r\njohn\r\n" + file("small", "small") +
+                file("big", new String(big)) + "--" + BOUNDARY + "--\r\n";
+        mockBody(request, "multipart/form-data; boundary=" + BOUNDARY, content);
+        final List<RequestParameter> uploads = new ArrayList<RequestParameter>();
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                SlingHttpServletRequest dispatched = (SlingHttpServletRequest) invocation.getArguments()[0];
+                assertEquals("john", dispatched.getParameter("name"));
+                assertEquals("edit", dispatched.getParameter("mode"));
+                assertEquals("john", dispatched.getRequestParameter("name").getString());
+                uploads.add(dispatched.getRequestParameter("small"));
+                uploads.add(dispatched.getRequestParameter("big"));
+                for (RequestParameter upload : uploads) {
+                    assertFalse(upload.isFormField());
+                    assertEquals(upload == uploads.get(0) ? "small" : new String(big), upload.getString());
+                }
+                return null;
+            }
+        }).when(chain).doFilter(any(SlingHttpServletRequest.class), any(SlingHttpServletResponse.class));
+
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(any(SlingHttpServletRequest.class), any(SlingHttpServletResponse.class));
+        assertEquals(2, uploads.size());
+        // the spooled file is deleted once the request was handled
+        File spooled = (File) Whitebox.getInternalState(uploads.get(1), "file");
+        assertNotNull(spooled);
+        assertFalse(spooled.exists());
+    }
+
+    @Test
+    public void testInvalidStreamedRequestIsRejected() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationFilter.PROP_ENABLED, true);
+        properties.put(ValidationFilter.PROP_STREAMING, true);
+        activate(properties);
+        when(model.getResourceProperties()).thenReturn(Collections.<ResourceProperty>singleton(new ResourcePropertyImpl("name",
+                Type.STRING, new HashMap<Validator, Map<String, String>>())));
+        Resource resource = mock(Resource.class);
+        when(resource.getResourceType()).thenReturn(RESOURCE_TYPE);
+        when(request.getResource()).thenReturn(resource);
+        mockBody(request, "multipart/form-data; boundary=" + BOUNDARY, file("name", "john") + "--" + BOUNDARY + "--\r\n");
+        filter.doFilter(request, response, chain);
+        verify(chain, never()).doFilter(any(SlingHttpServletRequest.class), any(SlingHttpServletResponse.class));
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void testStreamedRequestCreatingAResourceIsValidatedFromItsParameters() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationFilter.PROP_ENABLED, true);
+        properties.put(ValidationFilter.PROP_STREAMING, true);
+        activate(properties);
+        Resource resource = mock(Resource.class);
+        when(resource.getResourceType()).thenReturn(Resource.RESOURCE_TYPE_NON_EXISTING);
+        when(request.getResource()).thenReturn(resource);
+        mockBody(request, "application/x-www-form-urlencoded", "sling%3AresourceType=" + RESOURCE_TYPE + "&name=JOHN");
+        ValidationResultImpl invalid = new ValidationResultImpl();
+        invalid.addFailureMessage("name", "invalid");
+        when(validationService.validate(parameters, model)).thenReturn(invalid);
+        filter.doFilter(request, response, chain);
+        // the body is not streamed, as the resource type is only sent in the body
+        verify(request, never()).getInputStream();
+        verify(chain, never()).doFilter(any(SlingHttpServletRequest.class), any(SlingHttpServletResponse.class));
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void testStreamedRequestTakesTheResourceTypeFromTheQueryString() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationFilter.PROP_ENABLED, true);
+        properties.put(ValidationFilter.PROP_STREAMING, true);
+        activate(properties);
+        when(model.getResourceProperties()).thenReturn(Collections.<ResourceProperty>singleton(new ResourcePropertyImpl("name",
+                Type.STRING, new HashMap<Validator, Map<String, String>>())));
+        Resource resource = mock(Resource.class);
+        when(resource.getResourceType()).thenReturn(Resource.RESOURCE_TYPE_NON_EXISTING);
+        when(request.getResource()).thenReturn(resource);
+        when(request.getQueryString()).thenReturn("sling%3AresourceType=" + RESOURCE_TYPE.replace("/", "%2F"));
+        mockBody(request, "application/x-www-form-urlencoded", "other=value");
+        filter.doFilter(request, response, chain);
+        verify(validationService, never()).validate(any(ValueMap.class), any(ValidationModel.class));
+        verify(chain, never()).doFilter(any(SlingHttpServletRequest.class), any(SlingHttpServletResponse.class));
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    private static String file(String name, String content) {
+        return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\"" + name + ".bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n" + content + "\r\n";
+    }
+
+    private static void mockBody(SlingHttpServletRequest request, String contentType, String body) throws IOException {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes("UTF-8"));
+        when(request.getContentType()).thenReturn(contentType);
+        when(request.getContentLength()).thenReturn(-1);
+        when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+        });
+    }
+
+    private void activate(boolean enabled) {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ValidationFilter.PROP_ENABLED, enabled);
+        activate(properties);
+    }
+
+    private void activate(Dictionary<String, Object> properties) {
+        ComponentContext componentContext = mock(ComponentContext.class);
+        when(componentContext.getProperties()).thenReturn(properties);
+        filter.activate(componentContext);
+    }
+}
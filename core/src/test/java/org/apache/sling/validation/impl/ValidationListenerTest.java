@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationListener;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationResult;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ValidationListenerTest {
+
+    private ValidationServiceImpl validationService;
+    private ValidationModel model;
+
+    @Before
+    public void setUp() {
+        validationService = new ValidationServiceImpl();
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(new RegexValidator(), Collections.singletonMap(RegexValidator.REGEX_PARAM, "^[a-z]+$"));
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, validators));
+        model = new JCRValidationModel("/apps/validation/model", properties, "validation/test/resourceType", new String[]{"/content"},
+                new ArrayList<ChildResource>());
+    }
+
+    @Test
+    public void testListenersAreNotified() {
+        ValidationListener listener = mock(ValidationListener.class);
+        validationService.bindValidationListener(listener);
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn("/content/resource");
+        when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(Collections.<String, Object>singletonMap("name", "J")));
+        ValidationResult result = validationService.validate(resource, model);
+        assertFalse(result.isValid());
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).validationStarted(model, "/content/resource");
+        inOrder.verify(listener).propertyFailed(model, "/content/resource", "name", result.getFailureMessages().get("name"));
+        inOrder.verify(listener).validationCompleted(eq(model), eq("/content/resource"), eq(result), anyLong());
+
+        validationService.unbindValidationListener(listener);
+        validationService.validate(new ValueMapDecorator(Collections.<String, Object>singletonMap("name", "john")), model);
+        verify(listener, never()).validationStarted(model, null);
+    }
+
+    @Test
+    public void testFailingListenerDoesNotAffectValidation() {
+        ValidationListener failing = mock(ValidationListener.class);
+        doThrow(new IllegalStateException()).when(failing).validationStarted(any(ValidationModel.class), anyString());
+        ValidationListener listener = mock(ValidationListener.class);
+        validationService.bindValidationListener(failing);
+        validationService.bindValidationListener(listener);
+        ValidationResult result = validationService.validate(new ValueMapDecorator(Collections.<String, Object>singletonMap("name",
+                "john")), model);
+        assertTrue(result.isValid());
+        verify(listener).validationStarted(model, null);
+        verify(listener, never()).propertyFailed(any(ValidationModel.class), anyString(), anyString(), any(List.class));
+        verify(listener).validationCompleted(eq(model), eq((String) null), eq(result), anyLong());
+
+        validationService.unbindValidationListener(failing);
+        validationService.unbindValidationListener(listener);
+        ValidationListener unbound = mock(ValidationListener.class);
+        validationService.unbindValidationListener(unbound);
+        validationService.validate(new ValueMapDecorator(Collections.<String, Object>singletonMap("name", "john")), model);
+        verifyZeroInteractions(unbound);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.jcr.resource.JcrResourceConstants;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.setup.MockedResourceResolver;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Looks up validation models from several threads while the models are changed and invalidated, and checks that the lookups are
+ * linearizable: a lookup starting after an invalidation completed never returns a model loaded before it, and a lookup never sees the
+ * models of a resource type partially loaded. The test runs for {@code stress.millis} milliseconds (a system property).
+ */
+public class ValidationModelCacheStressTest {
+
+    private static final long DURATION = Long.getLong("stress.millis", 1000);
+    private static final int READERS = 4;
+
+    private static final String RESOURCE_TYPE = "validation/test/stress";
+    private static final String MODELS_ROOT = "/apps/sling/validation/models";
+    private static final String[] MODELS = {"stressModel", "stressDeepModel"};
+    private static final String CONTENT_PATH = "/content/stress";
+    private static final String DEEP_CONTENT_PATH = CONTENT_PATH + "/deep";
+
+    private ResourceResolverFactory rrf;
+    private ValidationServiceImpl validationService;
+
+    @Before
+    public void setUp() throws Exception {
+        rrf = new ResourceResolverFactory() {
+            @Override
+            public ResourceResolver getResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+                return getAdministrativeResourceResolver(authenticationInfo);
+            }
+
+            @Override
+            public ResourceResolver getAdministrativeResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+                try {
+                    return new MockedResourceResolver();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        createModel(rr, MODELS[0], CONTENT_PATH);
+        createModel(rr, MODELS[1], DEEP_CONTENT_PATH);
+        rr.commit();
+        rr.close();
+        validationService = new ValidationServiceImpl();
+        Whitebox.setInternalState(validationService, "rrf", rrf);
+        final Validator regexValidator = new RegexValidator();
+        Whitebox.setInternalState(validationService, "validatorLookupService", new ValidatorLookupService() {
+            @Override
+            public Validator getValidator(String validatorType) {
+                return regexValidator;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        for (String name : MODELS) {
+            Resource model = rr.getResource(MODELS_ROOT + "/" + name);
+            if (model != null) {
+                rr.delete(model);
+            }
+        }
+        rr.commit();
+        rr.close();
+    }
+
+    @Test
+    public void testInvalidationsAreVisibleToLaterLookups() throws Exception {
+        final AtomicLong published = new AtomicLong();
+        final AtomicLong lookups = new AtomicLong();
+        Stressor stressor = new Stressor() {
+            @Override
+            void read() {
+                long expected = published.get();
+                ValidationModel model = validationService.getValidationModel(RESOURCE_TYPE, CONTENT_PATH + "/page");
+                assertNotNull("No model found.", model);
+                long version = getVersion(model);
+                assertTrue("Found version " + version + " of the model after version " + expected + " was published.",
+                        version >= expected);
+                lookups.incrementAndGet();
+            }
+        };
+        stressor.start();
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        Session session = rr.adaptTo(Session.class);
+        long deadline = System.currentTimeMillis() + DURATION;
+        try {
+            for (long version = 1; System.currentTimeMillis() < deadline && !stressor.failed(); version++) {
+                session.getNode(getValidatorPath(MODELS[0])).setProperty(Constants.VALIDATOR_ARGUMENTS,
+                        new String[]{getRegexArgument(version)});
+                session.save();
+                validationService.evictValidationModels();
+                published.set(version);
+            }
+        } finally {
+            stressor.stop();
+            rr.close();
+        }
+        assertTrue(lookups.get() > 0);
+    }
+
+    @Test
+    public void testModelsAreNeverPartiallyVisible() throws Exception {
+        Stressor stressor = new Stressor() {
+            @Override
+            void read() {
+                ValidationModel deepModel = validationService.getValidationModel(RESOURCE_TYPE, DEEP_CONTENT_PATH + "/page");
+                assertNotNull("No model found.", deepModel);
+                assertEquals(DEEP_CONTENT_PATH, deepModel.getApplicablePaths()[0]);
+                ValidationModel model = validationService.getValidationModel(RESOURCE_TYPE, CONTENT_PATH + "/page");
+                assertNotNull("No model found.", model);
+                assertEquals(CONTENT_PATH, model.getApplicablePaths()[0]);
+            }
+        };
+        stressor.start();
+        long deadline = System.currentTimeMillis() + DURATION;
+        while (System.currentTimeMillis() < deadline && !stressor.failed()) {
+            validationService.evictValidationModels(RESOURCE_TYPE);
+            Thread.yield();
+        }
+        stressor.stop();
+    }
+
+    private static void createModel(ResourceResolver rr, String name, String applicablePath) throws Exception {
+        Map<String, Object> modelProperties = new HashMap<String, Object>();
+        modelProperties.put(Constants.VALIDATED_RESOURCE_TYPE, RESOURCE_TYPE);
+        modelProperties.put(Constants.APPLICABLE_PATHS, new String[]{applicablePath});
+        modelProperties.put(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, Constants.VALIDATION_MODEL_RESOURCE_TYPE);
+        modelProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        Resource model = ResourceUtil.getOrCreateResource(rr, MODELS_ROOT + "/" + name, modelProperties,
+                JcrResourceConstants.NT_SLING_FOLDER, false);
+        Map<String, Object> propertyProperties = new HashMap<String, Object>();
+        propertyProperties.put(Constants.PROPERTY_TYPE, "string");
+        propertyProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        ResourceUtil.getOrCreateResource(rr, model.getPath() + "/" + Constants.PROPERTIES + "/field", propertyProperties,
+                JcrConstants.NT_UNSTRUCTURED, false);
+        Map<String, Object> validatorProperties = new HashMap<String, Object>();
+        validatorProperties.put(Constants.VALIDATOR_ARGUMENTS, new String[]{getRegexArgument(0)});
+        validatorProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        ResourceUtil.getOrCreateResource(rr, getValidatorPath(name), validatorProperties, JcrConstants.NT_UNSTRUCTURED, false);
+    }
+
+    private static String getValidatorPath(String model) {
+        return MODELS_ROOT + "/" + model + "/" + Constants.PROPERTIES + "/field/" + Constants.VALIDATORS + "/" + RegexValidator.class
+                .getName();
+    }
+
+    private static String getRegexArgument(long version) {
+        return RegexValidator.REGEX_PARAM + "=^v" + version + "$";
+    }
+
+    private static long getVersion(ValidationModel model) {
+        ResourceProperty property = model.getResourceProperties().iterator().next();
+        String regex = property.getValidators().values().iterator().next().get(RegexValidator.REGEX_PARAM);
+        return Long.parseLong(regex.substring(2, regex.length() - 1));
+    }
+
+    /**
+     * Runs {@link #read()} in a loop from several threads, recording the first failure.
+     */
+    private abstract static class Stressor {
+
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final List<Thread> threads = new ArrayList<Thread>();
+
+        abstract void read();
+
+        void start() {
+            for (int i = 0; i < READERS; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (running.get()) {
+                                read();
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        boolean failed() {
+            return failure.get() != null;
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.util.Trie;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ValidationModelCacheTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+
+    private ValidationServiceImpl validationService;
+    private ValidationModelCache cache;
+    private JCRValidationModel model;
+
+    @Before
+    public void setUp() throws Exception {
+        ResourceResolverFactory rrf = mock(ResourceResolverFactory.class);
+        when(rrf.getAdministrativeResourceResolver(anyMapOf(String.class, Object.class))).thenThrow(new LoginException());
+        validationService = new ValidationServiceImpl();
+        Whitebox.setInternalState(validationService, "rrf", rrf);
+        cache = validationService.getModelCache();
+
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, new HashMap<Validator, Map<String, String>>()));
+        model = new JCRValidationModel("/apps/validation/model", properties, RESOURCE_TYPE, new String[]{"/content/a", "/content/b"},
+                new ArrayList<ChildResource>());
+        Trie<JCRValidationModel> trie = new Trie<JCRValidationModel>();
+        trie.insert("/content/a", model);
+        trie.insert("/content/b", model);
+        validationService.getValidationModelsCache().put(RESOURCE_TYPE, trie);
+    }
+
+    @Test
+    public void testStatistics() {
+        assertNotNull(validationService.getValidationModel(RESOURCE_TYPE, "/content/a/resource"));
+        assertNotNull(validationService.getValidationModel(RESOURCE_TYPE, "/content/b/resource"));
+        assertNull(validationService.getValidationModel(RESOURCE_TYPE, "/content/c/resource"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRatio(), 0.001);
+        assertEquals(1, cache.getLoads());
+        assertEquals(1, cache.getResourceTypeCount());
+        assertEquals(1, cache.getModelCount());
+        assertTrue(cache.getEstimatedHeapSize() > ValidationModelCache.estimate(model));
+    }
+
+    @Test
+    public void testDumpAndEvict() throws Exception {
+        TabularData dump = cache.dump();
+        assertEquals(2, dump.size());
+        CompositeData row = dump.get(new Object[]{RESOURCE_TYPE, "/content/a"});
+        assertEquals("/apps/validation/model", row.get("modelPath"));
+        assertEquals(1, row.get("properties"));
+
+        long generation = validationService.getModelsGeneration();
+        assertFalse(cache.evict("validation/test/other"));
+        assertTrue(cache.evict(RESOURCE_TYPE));
+        assertEquals(0, cache.getResourceTypeCount());
+        assertEquals(2, cache.getInvalidations());
+        assertTrue(validationService.getModelsGeneration() > generation);
+    }
+}
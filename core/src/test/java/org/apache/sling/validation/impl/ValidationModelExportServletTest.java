@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.service.component.ComponentContext;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ValidationModelExportServletTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+
+    private ValidationModelExportServlet servlet;
+    private ValidationService validationService;
+    private ValidationModel model;
+
+    @Before
+    public void setUp() {
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(new RegexValidator(), Collections.singletonMap(RegexValidator.REGEX_PARAM, "^[a-z]+$"));
+        Set<ResourceProperty> properties = new LinkedHashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("name", Type.STRING, validators));
+        properties.add(new ResourcePropertyImpl("age", Type.INT, new HashMap<Validator, Map<String, String>>()));
+        List<ChildResource> children = new ArrayList<ChildResource>();
+        Set<ResourceProperty> childProperties = new LinkedHashSet<ResourceProperty>();
+        childProperties.add(new ResourcePropertyImpl("tags", Type.STRING, true, new HashMap<Validator, Map<String, String>>()));
+        children.add(new ChildResourceImpl("child", childProperties));
+        model = new JCRValidationModel("/apps/validation/model", properties, RESOURCE_TYPE, new String[]{"/content"}, children);
+
+        validationService = mock(ValidationService.class);
+        when(validationService.getValidationModel(RESOURCE_TYPE, "/content/resource")).thenReturn(model);
+        servlet = new ValidationModelExportServlet();
+        Whitebox.setInternalState(servlet, "validationService", validationService);
+        Dictionary<String, Object> configuration = new Hashtable<String, Object>();
+        configuration.put(ValidationModelExportServlet.PROP_ENABLED, true);
+        servlet.activate(mockComponentContext(configuration));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        SlingHttpServletResponse response = mockResponse(body);
+        servlet.doGet(mockRequest(null), response);
+        assertEquals("{\"resourceType\":\"validation/test/resourceType\",\"portable\":true,\"properties\":[" +
+                "{\"name\":\"age\",\"type\":\"int\",\"multiple\":false,\"validators\":[]}," +
+                "{\"name\":\"name\",\"type\":\"string\",\"multiple\":false,\"validators\":[{\"id\":\"" + RegexValidator.class.getName() +
+                "\",\"portable\":true,\"args\":{\"regex\":\"^[a-z]+$\"}}]}]," +
+                "\"children\":[{\"name\":\"child\",\"properties\":[{\"name\":\"tags\",\"type\":\"string\",\"multiple\":true," +
+                "\"validators\":[]}]}]}", body.toString("UTF-8"));
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+        assertTrue(etag.getValue().matches("\"[0-9a-f]{40}\""));
+        verify(response).setHeader("Cache-Control", ValidationModelExportServlet.DEFAULT_CACHE_CONTROL);
+    }
+
+    @Test
+    public void testPublicCacheControl() throws Exception {
+        Dictionary<String, Object> configuration = new Hashtable<String, Object>();
+        configuration.put(ValidationModelExportServlet.PROP_ENABLED, true);
+        configuration.put(ValidationModelExportServlet.PROP_CACHE_CONTROL, "public, max-age=300");
+        servlet.activate(mockComponentContext(configuration));
+        SlingHttpServletResponse response = mockResponse(new ByteArrayOutputStream());
+        servlet.doGet(mockRequest(null), response);
+        verify(response).setHeader("Cache-Control", "public, max-age=300");
+    }
+
+    @Test
+    public void testConditionalRequest() throws Exception {
+        String etag = servlet.getExport(model).etag;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        SlingHttpServletResponse response = mockResponse(body);
+        servlet.doGet(mockRequest("\"other\", W/" + etag), response);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    public void testETagIsStableAcrossEqualModels() throws Exception {
+        Set<ResourceProperty> reversed = new LinkedHashSet<ResourceProperty>();
+        List<ResourceProperty> properties = new ArrayList<ResourceProperty>(model.getResourceProperties());
+        Collections.reverse(properties);
+        reversed.addAll(properties);
+        ValidationModel equalModel = new JCRValidationModel("/apps/validation/model", reversed, RESOURCE_TYPE, new String[]{"/content"},
+                model.getChildren());
+        assertEquals(servlet.getExport(model).etag, servlet.getExport(equalModel).etag);
+        ValidationModel otherModel = new JCRValidationModel("/apps/validation/model", reversed, "validation/test/other", new
+                String[]{"/content"}, model.getChildren());
+        assertFalse(servlet.getExport(model).etag.equals(servlet.getExport(otherModel).etag));
+    }
+
+    @Test
+    public void testUnknownModel() throws Exception {
+        SlingHttpServletRequest request = mockRequest(null);
+        when(request.getParameter(ValidationModelExportServlet.RESOURCE_TYPE_PARAMETER)).thenReturn("validation/test/unknown");
+        SlingHttpServletResponse response = mockResponse(new ByteArrayOutputStream());
+        servlet.doGet(request, response);
+        verify(response).sendError(eq(HttpServletResponse.SC_NOT_FOUND), anyString());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        servlet.activate(mockComponentContext(new Hashtable<String, Object>()));
+        SlingHttpServletResponse response = mockResponse(new ByteArrayOutputStream());
+        servlet.doGet(mockRequest(null), response);
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND);
+        verify(validationService, never()).getValidationModel(anyString(), anyString());
+    }
+
+    private static ComponentContext mockComponentContext(Dictionary<String, Object> properties) {
+        ComponentContext componentContext = mock(ComponentContext.class);
+        when(componentContext.getProperties()).thenReturn(properties);
+        return componentContext;
+    }
+
+    private static SlingHttpServletRequest mockRequest(String ifNoneMatch) {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getParameter(ValidationModelExportServlet.RESOURCE_TYPE_PARAMETER)).thenReturn(RESOURCE_TYPE);
+        when(request.getParameter(ValidationModelExportServlet.PATH_PARAMETER)).thenReturn("/content/resource");
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        return request;
+    }
+
+    private static SlingHttpServletResponse mockResponse(final ByteArrayOutputStream body) throws IOException {
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                body.write(b);
+            }
+        });
+        return response;
+    }
+}
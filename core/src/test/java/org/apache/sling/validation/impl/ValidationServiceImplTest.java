@@ -27,12 +27,21 @@ import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.apache.sling.jcr.resource.JcrResourceConstants;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.MultiValueValidator;
+import org.apache.sling.validation.api.PureValidator;
+import org.apache.sling.validation.api.ResourceProperty;
 import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.TypedValidator;
 import org.apache.sling.validation.api.ValidationModel;
 import org.apache.sling.validation.api.ValidationResult;
 import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.api.Validator;
 import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.metrics.OperationStatistics;
+import org.apache.sling.validation.impl.metrics.ValidationMetrics;
 import org.apache.sling.validation.impl.setup.MockedResourceResolver;
+import org.apache.sling.validation.impl.util.ValidatorResultCache;
 import org.apache.sling.validation.impl.validators.RegexValidator;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -42,15 +51,27 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.reflect.Whitebox;
 
+import javax.jcr.query.Query;
+
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ValidationServiceImplTest {
@@ -201,6 +222,29 @@ public class ValidationServiceImplTest {
         }
     }
 
+    @Test
+    public void testResourceTypeIsEscapedAndMissingModelsAreCached() throws Exception {
+        ResourceResolver rr = mock(ResourceResolver.class);
+        when(rr.getSearchPath()).thenReturn(new String[]{"/apps/"});
+        when(rr.findResources(anyString(), anyString())).thenReturn(Collections.<Resource>emptyList().iterator());
+        ResourceResolverFactory resolverFactory = mock(ResourceResolverFactory.class);
+        when(resolverFactory.getAdministrativeResourceResolver(null)).thenReturn(rr);
+        Whitebox.setInternalState(validationService, "rrf", resolverFactory);
+
+        String resourceType = "sling/validation/test\"] | //*[@a=\"";
+        for (int i = 0; i < 3; i++) {
+            assertNull(validationService.getValidationModel(resourceType, "/apps/validation/1/resource"));
+        }
+        verify(rr, times(1)).findResources("/jcr:root//apps/" + VALIDATION_MODELS_RELATIVE_PATH + "/*[@sling:resourceType=\"" +
+                Constants.VALIDATION_MODEL_RESOURCE_TYPE + "\" and @" + Constants.VALIDATED_RESOURCE_TYPE +
+                "=\"sling/validation/test\"\"] | //*[@a=\"\"\"]", Query.XPATH);
+
+        // the absence of a model is forgotten together with the cached models
+        ((ValidationServiceImpl) validationService).evictValidationModels();
+        assertNull(validationService.getValidationModel(resourceType, "/apps/validation/1/resource"));
+        verify(rr, times(2)).findResources(anyString(), anyString());
+    }
+
     @Test
     public void testValueMapWithWrongDataType() throws Exception {
         when(validatorLookupService.getValidator("org.apache.sling.validation.impl.validators.RegexValidator")).thenReturn(new
@@ -275,6 +319,143 @@ public class ValidationServiceImplTest {
         }
     }
 
+    @Test
+    public void testValueMapWithNativeTypes() throws Exception {
+        final List<Object> typedValues = new ArrayList<Object>();
+        when(validatorLookupService.getValidator("typedValidator")).thenReturn(new TypedValidator() {
+            @Override
+            public boolean validate(Object value, Type type, Map<String, String> arguments) {
+                typedValues.add(value);
+                return true;
+            }
+
+            @Override
+            public boolean validate(String data, Map<String, String> arguments) {
+                throw new IllegalStateException("The typed validation method should have been used.");
+            }
+        });
+        Whitebox.setInternalState(validationService, "validatorLookupService", validatorLookupService);
+
+        List<TestProperty> properties = new ArrayList<TestProperty>();
+        TestProperty longProperty = new TestProperty();
+        longProperty.name = "longField";
+        longProperty.type = Type.LONG;
+        longProperty.validators.put("typedValidator", null);
+        properties.add(longProperty);
+        TestProperty dateProperty = new TestProperty();
+        dateProperty.name = "dateField";
+        dateProperty.type = Type.DATE;
+        properties.add(dateProperty);
+        TestProperty booleanProperty = new TestProperty();
+        booleanProperty.name = "booleanField";
+        booleanProperty.type = Type.BOOLEAN;
+        properties.add(booleanProperty);
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        Resource model1 = null;
+        try {
+            if (rr != null) {
+                model1 = createValidationModelResource(rr, libsValidatorsRoot.getPath(), "testValidationModel1", "sling/validation/test",
+                        new String[]{"/apps/validation"}, properties);
+            }
+            ValidationModel vm = validationService.getValidationModel("sling/validation/test", "/apps/validation/1/resource");
+            HashMap<String, Object> hashMap = new HashMap<String, Object>() {{
+                put("longField", 42L);
+                put("dateField", Calendar.getInstance());
+                put("booleanField", Boolean.FALSE);
+            }};
+            ValidationResult vr = validationService.validate(new ValueMapDecorator(hashMap), vm);
+            assertTrue(vr.isValid());
+            assertEquals(1, typedValues.size());
+            assertEquals(42L, typedValues.get(0));
+
+            hashMap.put("dateField", Boolean.TRUE);
+            vr = validationService.validate(new ValueMapDecorator(hashMap), vm);
+            assertFalse(vr.isValid());
+            assertTrue(vr.getFailureMessages().containsKey("dateField"));
+            if (model1 != null) {
+                rr.delete(model1);
+            }
+        } finally {
+            if (rr != null) {
+                rr.commit();
+                rr.close();
+            }
+        }
+    }
+
+    @Test
+    public void testResourceWithNativeTypes() throws Exception {
+        Whitebox.setInternalState(validationService, "validatorLookupService", validatorLookupService);
+
+        List<TestProperty> properties = new ArrayList<TestProperty>();
+        TestProperty dateProperty = new TestProperty();
+        dateProperty.name = "dateField";
+        dateProperty.type = Type.DATE;
+        properties.add(dateProperty);
+        TestProperty booleanProperty = new TestProperty();
+        booleanProperty.name = "booleanField";
+        booleanProperty.type = Type.DATE;
+        properties.add(booleanProperty);
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        Resource model1 = null;
+        Resource testResource = null;
+        try {
+            if (rr != null) {
+                model1 = createValidationModelResource(rr, libsValidatorsRoot.getPath(), "testValidationModel1", "sling/validation/test",
+                        new String[]{"/apps/validation"}, properties);
+                testResource = ResourceUtil.getOrCreateResource(rr, "/apps/validation/1/resource", JcrConstants.NT_UNSTRUCTURED,
+                        JcrConstants.NT_UNSTRUCTURED, true);
+                ModifiableValueMap mvm = testResource.adaptTo(ModifiableValueMap.class);
+                mvm.put("dateField", Calendar.getInstance());
+                mvm.put("booleanField", Boolean.TRUE);
+                rr.commit();
+            }
+            ValidationModel vm = validationService.getValidationModel("sling/validation/test", "/apps/validation/1/resource");
+            ValidationResult vr = validationService.validate(testResource, vm);
+            assertFalse(vr.isValid());
+            assertFalse(vr.getFailureMessages().containsKey("dateField"));
+            assertTrue(vr.getFailureMessages().containsKey("booleanField"));
+        } finally {
+            if (rr != null) {
+                if (model1 != null) {
+                    rr.delete(model1);
+                }
+                if (testResource != null) {
+                    rr.delete(testResource);
+                }
+                rr.commit();
+                rr.close();
+            }
+        }
+    }
+
+    @Test
+    public void testValueMapWithNumericFloatingPointValues() throws Exception {
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("price", Type.DOUBLE, new HashMap<Validator, Map<String, String>>()));
+        properties.add(new ResourcePropertyImpl("ratio", Type.FLOAT, new HashMap<Validator, Map<String, String>>()));
+        ValidationModel vm = new JCRValidationModel("/apps/sling/validation/models/model", properties, "sling/validation/test",
+                new String[]{"/apps/validation"}, new ArrayList<ChildResource>());
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (Object number : new Object[]{3, 3L, 1.5d, 1.5f, new BigDecimal("2.25")}) {
+            values.put("price", number);
+            values.put("ratio", number);
+            assertTrue(validationService.validate(new ValueMapDecorator(values), vm).isValid());
+        }
+
+        // a double beyond the float range
+        values.put("ratio", Double.MAX_VALUE);
+        ValidationResult vr = validationService.validate(new ValueMapDecorator(values), vm);
+        assertFalse(vr.isValid());
+        assertTrue(vr.getFailureMessages().containsKey("ratio"));
+
+        values.put("ratio", 1.5d);
+        values.put("price", new BigDecimal("1e400"));
+        vr = validationService.validate(new ValueMapDecorator(values), vm);
+        assertFalse(vr.isValid());
+        assertTrue(vr.getFailureMessages().containsKey("price"));
+    }
+
     @Test
      public void testResourceWithMissingChildProperty() throws Exception {
         when(validatorLookupService.getValidator("org.apache.sling.validation.impl.validators.RegexValidator")).thenReturn(new
@@ -353,6 +534,237 @@ public class ValidationServiceImplTest {
         }
     }
 
+    @Test
+    public void testValueMapWithMultipleValues() throws Exception {
+        when(validatorLookupService.getValidator("org.apache.sling.validation.impl.validators.RegexValidator")).thenReturn(new
+                RegexValidator());
+        Whitebox.setInternalState(validationService, "validatorLookupService", validatorLookupService);
+
+        List<TestProperty> properties = new ArrayList<TestProperty>();
+        TestProperty property = new TestProperty();
+        property.name = "tags";
+        property.type = Type.STRING;
+        property.multiple = true;
+        property.validators.put("org.apache.sling.validation.impl.validators.RegexValidator", new String[] {"regex=^\\p{L}+$"});
+        properties.add(property);
+        ResourceResolver rr = rrf.getAdministrativeResourceResolver(null);
+        Resource model1 = null;
+        try {
+            if (rr != null) {
+                model1 = createValidationModelResource(rr, libsValidatorsRoot.getPath(), "testValidationModel1", "sling/validation/test",
+                        new String[]{"/apps/validation"}, properties);
+            }
+            ValidationModel vm = validationService.getValidationModel("sling/validation/test", "/apps/validation/1/resource");
+            HashMap<String, Object> hashMap = new HashMap<String, Object>() {{
+                put("tags", new String[] {"one", "two", "three"});
+            }};
+            ValidationResult vr = validationService.validate(new ValueMapDecorator(hashMap), vm);
+            assertTrue(vr.isValid());
+
+            hashMap.put("tags", new String[] {"one", "2", "three", "4"});
+            vr = validationService.validate(new ValueMapDecorator(hashMap), vm);
+            assertFalse(vr.isValid());
+            List<String> messages = vr.getFailureMessages().get("tags");
+            assertEquals(1, messages.size());
+            assertTrue(messages.get(0).endsWith("(invalid values at indexes [1, 3])"));
+
+            hashMap.put("tags", "one");
+            vr = validationService.validate(new ValueMapDecorator(hashMap), vm);
+            assertFalse(vr.isValid());
+            if (model1 != null) {
+                rr.delete(model1);
+            }
+        } finally {
+            if (rr != null) {
+                rr.commit();
+                rr.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMultiValueValidatorIndexesAreChecked() throws Exception {
+        final int[][] indexes = new int[1][];
+        class IndexesValidator implements MultiValueValidator, PureValidator {
+            @Override
+            public int[] validate(String[] data, Map<String, String> arguments) {
+                return indexes[0];
+            }
+
+            @Override
+            public boolean validate(String data, Map<String, String> arguments) {
+                return true;
+            }
+        }
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(new IndexesValidator(), new HashMap<String, String>());
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("tags", Type.STRING, true, validators));
+        ValidationModel vm = new JCRValidationModel("/apps/sling/validation/models/model", properties, "sling/validation/test",
+                new String[]{"/apps/validation"}, new ArrayList<ChildResource>());
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("tags", new String[]{"a", "b", "c", "d"});
+
+        // null stands for no invalid values
+        assertTrue(validationService.validate(new ValueMapDecorator(values), vm).isValid());
+
+        // unsorted, duplicate and out of range indexes are sorted out, with and without memoized outcomes
+        for (ValidatorResultCache memoCache : new ValidatorResultCache[]{null, new ValidatorResultCache(100)}) {
+            Whitebox.setInternalState(validationService, "memoCache", memoCache);
+            indexes[0] = new int[]{3, 1, 1, -1, 7};
+            ValidationResult vr = validationService.validate(new ValueMapDecorator(values), vm);
+            assertFalse(vr.isValid());
+            assertTrue(vr.getFailureMessages().get("tags").get(0).endsWith("(invalid values at indexes [1, 3])"));
+        }
+    }
+
+    @Test
+    public void testPureValidatorOutcomeIsMemoized() throws Exception {
+        final int[] calls = new int[1];
+        Validator validator = new PureValidator() {
+            @Override
+            public boolean validate(String data, Map<String, String> arguments) {
+                calls[0]++;
+                return !data.startsWith("invalid");
+            }
+        };
+        ValidatorResultCache memoCache = new ValidatorResultCache(100);
+        Whitebox.setInternalState(validationService, "memoCache", memoCache);
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(validator, new HashMap<String, String>());
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("country", Type.STRING, validators));
+        properties.add(new ResourcePropertyImpl("tags", Type.STRING, true, validators));
+        ValidationModel vm = new JCRValidationModel("/apps/sling/validation/models/model", properties, "sling/validation/test",
+                new String[]{"/apps/validation"}, new ArrayList<ChildResource>());
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("country", "RO");
+        values.put("tags", new String[]{"RO", "DE", "invalid", "DE"});
+        for (int i = 0; i < 10; i++) {
+            ValidationResult vr = validationService.validate(new ValueMapDecorator(values), vm);
+            assertFalse(vr.isValid());
+            assertEquals(1, vr.getFailureMessages().size());
+            assertTrue(vr.getFailureMessages().get("tags").get(0).endsWith("(invalid values at indexes [2])"));
+        }
+        // RO, DE and invalid are validated once; the rest of the lookups are cache hits
+        assertEquals(3, calls[0]);
+
+        ValidationMetrics metrics = ((ValidationServiceImpl) validationService).getMetrics();
+        metrics.setMemoCache(memoCache);
+        assertEquals(3, metrics.getMemoCacheSize());
+        assertEquals(3, metrics.getMemoCacheMisses());
+        assertEquals(47, metrics.getMemoCacheHits());
+
+        // the outcomes reference the validator, so they are discarded when it goes away
+        ((ValidationServiceImpl) validationService).unbindValidator(validator);
+        assertEquals(0, metrics.getMemoCacheSize());
+        validationService.validate(new ValueMapDecorator(values), vm);
+        assertEquals(6, calls[0]);
+    }
+
+    @Test
+    public void testOnlyImmutableValuesAreMemoized() throws Exception {
+        final List<Object> typedValues = new ArrayList<Object>();
+        class RecordingValidator implements TypedValidator, PureValidator {
+            @Override
+            public boolean validate(Object value, Type type, Map<String, String> arguments) {
+                typedValues.add(value);
+                return true;
+            }
+
+            @Override
+            public boolean validate(String data, Map<String, String> arguments) {
+                throw new IllegalStateException("The typed validation method should have been used.");
+            }
+        }
+        ValidatorResultCache memoCache = new ValidatorResultCache(100);
+        Whitebox.setInternalState(validationService, "memoCache", memoCache);
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(new RecordingValidator(), new HashMap<String, String>());
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("date", Type.DATE, validators));
+        properties.add(new ResourcePropertyImpl("amount", Type.DOUBLE, validators));
+        ValidationModel vm = new JCRValidationModel("/apps/sling/validation/models/model", properties, "sling/validation/test",
+                new String[]{"/apps/validation"}, new ArrayList<ChildResource>());
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("date", Calendar.getInstance());
+        values.put("amount", new BigDecimal("12.50"));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(validationService.validate(new ValueMapDecorator(values), vm).isValid());
+        }
+        // the mutable calendar is validated each time, the decimal once
+        assertEquals(4, typedValues.size());
+        assertEquals(1, memoCache.size());
+    }
+
+    @Test
+    public void testMetricsAreRecordedPerResourceTypeAndValidator() throws Exception {
+        Validator validator = new Validator() {
+            @Override
+            public boolean validate(String data, Map<String, String> arguments) {
+                return !data.startsWith("invalid");
+            }
+        };
+        Map<Validator, Map<String, String>> validators = new HashMap<Validator, Map<String, String>>();
+        validators.put(validator, new HashMap<String, String>());
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        properties.add(new ResourcePropertyImpl("country", Type.STRING, validators));
+        ValidationModel vm = new JCRValidationModel("/apps/sling/validation/models/model", properties, "sling/validation/test",
+                new String[]{"/apps/validation"}, new ArrayList<ChildResource>());
+
+        validationService.validate(new ValueMapDecorator(Collections.<String, Object>singletonMap("country", "RO")), vm);
+        validationService.validate(new ValueMapDecorator(Collections.<String, Object>singletonMap("country", "invalid")), vm);
+        ValidationMetrics metrics = ((ValidationServiceImpl) validationService).getMetrics();
+        OperationStatistics resourceType = metrics.getResourceTypeStatistics("sling/validation/test");
+        assertEquals(2, resourceType.getLatencies().getCount());
+        assertEquals(1, resourceType.getFailures());
+        OperationStatistics validatorStatistics = metrics.getValidatorStatistics(validator.getClass());
+        assertEquals(2, validatorStatistics.getLatencies().getCount());
+        assertEquals(1, validatorStatistics.getFailures());
+
+        metrics.setEnabled(false);
+        validationService.validate(new ValueMapDecorator(Collections.<String, Object>singletonMap("country", "RO")), vm);
+        assertEquals(2, resourceType.getLatencies().getCount());
+    }
+
+    @Test
+    public void testResourceValueMapIsAdaptedOncePerResource() throws Exception {
+        Set<ResourceProperty> properties = new HashSet<ResourceProperty>();
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < 50; i++) {
+            properties.add(new ResourcePropertyImpl("property" + i, Type.STRING, new HashMap<Validator, Map<String, String>>()));
+            values.put("property" + i, "value" + i);
+        }
+        List<ChildResource> children = new ArrayList<ChildResource>();
+        Resource resource = mock(Resource.class);
+        when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(values));
+        List<Resource> childResources = new ArrayList<Resource>();
+        for (int i = 0; i < 20; i++) {
+            children.add(new ChildResourceImpl("child" + i, properties));
+            Resource child = mock(Resource.class);
+            when(child.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(values));
+            when(resource.getChild("child" + i)).thenReturn(child);
+            childResources.add(child);
+        }
+        ValidationModel vm = new JCRValidationModel("/apps/sling/validation/models/model", properties, "sling/validation/test",
+                new String[]{"/apps/validation"}, children);
+
+        ValidationResult vr = validationService.validate(resource, vm);
+        assertTrue(vr.isValid());
+        verify(resource, times(1)).adaptTo(ValueMap.class);
+        for (Resource child : childResources) {
+            verify(child, times(1)).adaptTo(ValueMap.class);
+        }
+
+        values.remove("property0");
+        vr = validationService.validate(resource, vm);
+        assertFalse(vr.isValid());
+        assertTrue(vr.getFailureMessages().containsKey("property0"));
+        assertTrue(vr.getFailureMessages().containsKey("child19/property0"));
+    }
+
     private Resource createValidationModelResource(ResourceResolver rr, String root, String name, String validatedResourceType,
                                                String[] applicableResourcePaths, List<TestProperty> properties) throws Exception {
         Map<String, Object> modelProperties = new HashMap<String, Object>();
@@ -368,6 +780,9 @@ public class ValidationServiceImplTest {
                 for (TestProperty property : properties) {
                     Map<String, Object> modelPropertyJCRProperties = new HashMap<String, Object>();
                     modelPropertyJCRProperties.put(Constants.PROPERTY_TYPE, property.type.getName());
+                    if (property.multiple) {
+                        modelPropertyJCRProperties.put(Constants.PROPERTY_MULTIPLE, true);
+                    }
                     modelPropertyJCRProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
                     Resource propertyResource = ResourceUtil.getOrCreateResource(rr, propertiesResource.getPath() + "/" + property.name,
                             modelPropertyJCRProperties, null, true);
@@ -409,6 +824,7 @@ public class ValidationServiceImplTest {
     private class TestProperty {
         String name;
         Type type;
+        boolean multiple;
         Map<String, String[]> validators;
 
         TestProperty() {
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.ValidationModel;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.capture.CaptureRedactor;
+import org.apache.sling.validation.impl.JCRValidationModel;
+import org.apache.sling.validation.impl.ResourcePropertyImpl;
+import org.apache.sling.validation.impl.ValidationServiceImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureWriterTest {
+
+    private static final String RESOURCE_TYPE = "validation/test/resourceType";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "capture.log");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Bucharest"));
+        calendar.setTimeInMillis(1234567890123L);
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("string", "héllo");
+        properties.put("long", 42L);
+        properties.put("int", 7);
+        properties.put("double", 1.5d);
+        properties.put("boolean", true);
+        properties.put("calendar", calendar);
+        properties.put("array", new Object[]{"a", 1L, null});
+        Map<String, Map<String, Object>> children = new LinkedHashMap<String, Map<String, Object>>();
+        children.put("child", Collections.<String, Object>singletonMap("tags", new String[]{"x", "y"}));
+
+        CaptureWriter writer = new CaptureWriter(file, 100, 1024 * 1024, Collections.<String>emptySet());
+        writer.write(new CapturedValidation(1000L, true, RESOURCE_TYPE, "/content/resource", properties, children), null);
+        writer.write(new CapturedValidation(2000L, false, RESOURCE_TYPE, "/content", properties,
+                Collections.<String, Map<String, Object>>emptyMap()), null);
+        writer.close();
+        assertEquals(file.length(), writer.getBytesWritten());
+
+        CaptureReader reader = new CaptureReader(file);
+        CapturedValidation first = reader.next();
+        assertEquals(1000L, first.getTimestamp());
+        assertTrue(first.isResource());
+        assertEquals(RESOURCE_TYPE, first.getResourceType());
+        assertEquals("/content/resource", first.getPath());
+        assertEquals(new ArrayList<String>(properties.keySet()), new ArrayList<String>(first.getProperties().keySet()));
+        assertEquals("héllo", first.getProperties().get("string"));
+        assertEquals(42L, first.getProperties().get("long"));
+        assertEquals(7, first.getProperties().get("int"));
+        assertEquals(1.5d, first.getProperties().get("double"));
+        assertEquals(true, first.getProperties().get("boolean"));
+        Calendar readCalendar = (Calendar) first.getProperties().get("calendar");
+        assertEquals(calendar.getTimeInMillis(), readCalendar.getTimeInMillis());
+        assertEquals("Europe/Bucharest", readCalendar.getTimeZone().getID());
+        assertArrayEquals(new Object[]{"a", 1L, null}, (Object[]) first.getProperties().get("array"));
+        assertArrayEquals(new Object[]{"x", "y"}, (Object[]) first.getChildren().get("child").get("tags"));
+        CapturedValidation second = reader.next();
+        assertFalse(second.isResource());
+        assertTrue(second.getChildren().isEmpty());
+        assertNull(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testRedaction() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("email", "john@example.com");
+        properties.put("secret", "s3cr3t");
+        properties.put("name", "john");
+        Map<String, Map<String, Object>> children = new LinkedHashMap<String, Map<String, Object>>();
+        children.put("child", Collections.<String, Object>singletonMap("email", new String[]{"a@b.c", "de@f.gh"}));
+        final Set<String> seen = new HashSet<String>();
+        CaptureRedactor redactor = new CaptureRedactor() {
+            @Override
+            public Object redact(String resourceType, String path, String property, Object value) {
+                seen.add(property);
+                return "secret".equals(property) ? null : value;
+            }
+        };
+
+        CaptureWriter writer = new CaptureWriter(file, 100, 1024 * 1024, Collections.singleton("email"));
+        writer.write(new CapturedValidation(0L, true, RESOURCE_TYPE, "/content/resource", properties, children), redactor);
+        writer.close();
+
+        CapturedValidation record = new CaptureReader(file).next();
+        assertEquals("xxxxxxxxxxxxxxxx", record.getProperties().get("email"));
+        assertFalse(record.getProperties().containsKey("secret"));
+        assertEquals("john", record.getProperties().get("name"));
+        assertArrayEquals(new Object[]{"xxxxx", "xxxxxxx"}, (Object[]) record.getChildren().get("child").get("email"));
+        assertEquals(new HashSet<String>(Arrays.asList("email", "secret", "name", "child/email")), seen);
+    }
+
+    @Test
+    public void testMaximumSize() throws Exception {
+        CaptureWriter writer = new CaptureWriter(file, 100, 100, Collections.<String>emptySet());
+        Map<String, Object> properties = Collections.<String, Object>singletonMap("name", "0123456789");
+        int records = 0;
+        while (writer.isSampled()) {
+            writer.write(new CapturedValidation(0L, false, RESOURCE_TYPE, "/content", properties,
+                    Collections.<String, Map<String, Object>>emptyMap()), null);
+            records++;
+        }
+        writer.close();
+        assertTrue(file.length() <= 100);
+        assertEquals(count(file), records - 1);
+    }
+
+    @Test
+    public void testAppendAndTruncatedRecord() throws Exception {
+        Map<String, Object> properties = Collections.<String, Object>singletonMap("name", "john");
+        for (int i = 0; i < 2; i++) {
+            CaptureWriter writer = new CaptureWriter(file, 100, 1024 * 1024, Collections.<String>emptySet());
+            writer.write(new CapturedValidation(i, false, RESOURCE_TYPE, "/content", properties,
+                    Collections.<String, Map<String, Object>>emptyMap()), null);
+            writer.close();
+        }
+        assertEquals(2, count(file));
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        truncated.setLength(file.length() - 3);
+        truncated.close();
+        assertEquals(1, count(file));
+    }
+
+    @Test
+    public void testRecordsAreReadableBeforeClose() throws Exception {
+        Map<String, Object> properties = Collections.<String, Object>singletonMap("name", "john");
+        CaptureWriter writer = new CaptureWriter(file, 100, 1024 * 1024, Collections.<String>emptySet());
+        writer.write(new CapturedValidation(0L, false, RESOURCE_TYPE, "/content", properties,
+                Collections.<String, Map<String, Object>>emptyMap()), null);
+        assertEquals(writer.getBytesWritten(), file.length());
+        assertEquals(1, count(file));
+        writer.close();
+    }
+
+    @Test
+    public void testServiceCapturesSampledValidations() throws Exception {
+        Set<ResourceProperty> modelProperties = new HashSet<ResourceProperty>();
+        modelProperties.add(new ResourcePropertyImpl("name", Type.STRING, new HashMap<Validator, Map<String, String>>()));
+        ValidationModel model = new JCRValidationModel("/apps/validation/model", modelProperties, RESOURCE_TYPE,
+                new String[]{"/content"}, new ArrayList<ChildResource>());
+        ValidationServiceImpl validationService = new ValidationServiceImpl();
+        CaptureWriter writer = new CaptureWriter(file, 100, 1024 * 1024, Collections.<String>emptySet());
+        Whitebox.setInternalState(validationService, "capture", writer);
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "john");
+        values.put("unrelated", "not captured");
+        validationService.validate(new ValueMapDecorator(values), model);
+        writer.close();
+
+        CapturedValidation record = new CaptureReader(file).next();
+        assertFalse(record.isResource());
+        assertEquals(RESOURCE_TYPE, record.getResourceType());
+        assertEquals("/content", record.getPath());
+        assertEquals(Collections.<String, Object>singletonMap("name", "john"), record.getProperties());
+    }
+
+    private static int count(File file) throws IOException {
+        CaptureReader reader = new CaptureReader(file);
+        try {
+            int count = 0;
+            while (reader.next() != null) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.JCRValidationModel;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelIndexTest {
+
+    private static final String JSON_TYPE = "validation/test/json";
+    private static final String XML_TYPE = "validation/test/xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ValidatorLookupService validatorLookupService;
+
+    @Before
+    public void setUp() {
+        final Validator regexValidator = new RegexValidator();
+        validatorLookupService = new ValidatorLookupService() {
+            @Override
+            public Validator getValidator(String validatorType) {
+                return RegexValidator.class.getName().equals(validatorType) ? regexValidator : null;
+            }
+        };
+    }
+
+    @Test
+    public void testCompileDirectory() throws Exception {
+        File root = folder.newFolder("jcr_root");
+        write(new File(root, "apps/validation/json.json"), getJsonModel(JSON_TYPE, "string", "regex=^[a-z]+$"));
+        write(new File(root, "apps/validation/xml/.content.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<jcr:root xmlns:sling=\"http://sling.apache.org/jcr/sling/1.0\" xmlns:jcr=\"http://www.jcp.org/jcr/1.0\"\n" +
+                "    jcr:primaryType=\"sling:Folder\">\n" +
+                "    <model jcr:primaryType=\"nt:unstructured\" sling:resourceType=\"sling/validation/model\"\n" +
+                "        validatedResourceType=\"" + XML_TYPE + "\" applicablePaths=\"[/content/a,/content/b]\">\n" +
+                "        <properties jcr:primaryType=\"nt:unstructured\">\n" +
+                "            <count propertyType=\"int\" propertyMultiple=\"{Boolean}true\"/>\n" +
+                "        </properties>\n" +
+                "    </model>\n" +
+                "</jcr:root>\n");
+        // the sub-folders of a folder with a .content.xml file describe child nodes
+        write(new File(root, "apps/validation/xml/model/children/_jcr_content/.content.xml"), "<?xml version=\"1.0\"?>\n" +
+                "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" jcr:primaryType=\"nt:unstructured\">\n" +
+                "    <properties jcr:primaryType=\"nt:unstructured\">\n" +
+                "        <title propertyType=\"string\"/>\n" +
+                "    </properties>\n" +
+                "</jcr:root>\n");
+        ModelCompiler compiler = new ModelCompiler();
+        compiler.addDirectory(root);
+        assertEquals(Arrays.<String>asList(), compiler.getErrors());
+        assertEquals(2, compiler.getModelCount());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiler.write(out);
+        ModelIndex index = new ModelIndex(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(2, index.getResourceTypeCount());
+
+        List<JCRValidationModel> models = index.getValidationModels("bundle://test", JSON_TYPE, validatorLookupService);
+        assertEquals(1, models.size());
+        JCRValidationModel model = models.get(0);
+        assertEquals("bundle://test/apps/validation/json", model.getJcrPath());
+        assertEquals(Arrays.asList("/content"), Arrays.asList(model.getApplicablePaths()));
+        ResourceProperty property = model.getResourceProperties().iterator().next();
+        assertEquals("field", property.getName());
+        assertEquals(Type.STRING, property.getType());
+        Map.Entry<Validator, Map<String, String>> validator = property.getValidators().entrySet().iterator().next();
+        assertTrue(validator.getKey() instanceof RegexValidator);
+        assertEquals("^[a-z]+$", validator.getValue().get(RegexValidator.REGEX_PARAM));
+        assertEquals(Arrays.asList("child", "child/grandchild"), getChildNames(model));
+
+        model = index.getValidationModels("bundle://test", XML_TYPE, validatorLookupService).get(0);
+        assertEquals("bundle://test/apps/validation/xml/model", model.getJcrPath());
+        assertEquals(Arrays.asList("/content/a", "/content/b"), Arrays.asList(model.getApplicablePaths()));
+        property = model.getResourceProperties().iterator().next();
+        assertEquals(Type.INT, property.getType());
+        assertTrue(property.isMultiple());
+        assertEquals(Arrays.asList("jcr:content"), getChildNames(model));
+
+        assertTrue(index.getValidationModels("bundle://test", "validation/test/other", validatorLookupService).isEmpty());
+    }
+
+    @Test
+    public void testMappedIndex() throws Exception {
+        ModelCompiler compiler = new ModelCompiler();
+        for (int i = 0; i < 50; i++) {
+            compiler.addJson("/apps/validation/model" + i, new StringReader(getJsonModel("validation/test/type" + (i % 10), "string",
+                    "regex=^" + i + "$")));
+        }
+        File file = folder.newFile("models.idx");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            compiler.write(out);
+        } finally {
+            out.close();
+        }
+        ModelIndex index = ModelIndex.map(file);
+        assertEquals(10, index.getResourceTypeCount());
+        for (int i = 0; i < 10; i++) {
+            List<JCRValidationModel> models = index.getValidationModels("", "validation/test/type" + i, validatorLookupService);
+            assertEquals(5, models.size());
+            assertEquals("/apps/validation/model" + i, models.get(0).getJcrPath());
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        ModelCompiler compiler = new ModelCompiler();
+        compiler.addJson("/apps/validation/typo", new StringReader(getJsonModel(JSON_TYPE, "strnig", "regex=^[a-z]+$")));
+        compiler.addJson("/apps/validation/arguments", new StringReader(getJsonModel(JSON_TYPE, "string", "regex")));
+        compiler.addJson("/apps/validation/paths", new StringReader("{\"validatedResourceType\":\"" + JSON_TYPE + "\"," +
+                "\"properties\":{\"field\":{\"propertyType\":\"string\"}}}"));
+        compiler.addJson("/apps/validation/malformed", new StringReader("{\"validatedResourceType\":"));
+        compiler.addContentXml("/apps/validation/xml", new ByteArrayInputStream("<jcr:root".getBytes("UTF-8")));
+        List<String> errors = compiler.getErrors();
+        // the properties of the children are checked as well
+        assertEquals(errors.toString(), 9, errors.size());
+        assertEquals("/apps/validation/typo: property properties/field: unknown propertyType 'strnig', expected one of [boolean, " +
+                "date, int, long, double, float, char, string].", errors.get(0));
+        assertTrue(errors.get(2), errors.get(2).startsWith("/apps/validation/typo: property children/child/children/grandchild/" +
+                "properties/field: unknown propertyType 'strnig'"));
+        assertTrue(errors.get(3), errors.get(3).startsWith("/apps/validation/arguments: property properties/field: argument 'regex'"));
+        assertEquals("/apps/validation/paths: missing applicablePaths.", errors.get(6));
+        assertTrue(errors.get(7), errors.get(7).startsWith("/apps/validation/malformed.json: "));
+        assertTrue(errors.get(8), errors.get(8).startsWith("/apps/validation/xml/.content.xml: "));
+        assertEquals(0, compiler.getModelCount());
+        try {
+            compiler.write(new ByteArrayOutputStream());
+            fail("The index must not be written when the models have errors.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInvalidIndex() throws Exception {
+        try {
+            new ModelIndex(ByteBuffer.wrap("{\"validatedResourceType\":\"a\"}".getBytes("UTF-8")));
+            fail("A JSON file is not a model index.");
+        } catch (IOException e) {
+            // expected
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        buffer.putInt(ModelIndex.MAGIC).putInt(ModelIndex.VERSION + 1).putInt(0);
+        try {
+            new ModelIndex(buffer);
+            fail("A newer index version must be rejected.");
+        } catch (IOException e) {
+            assertFalse(e.getMessage().startsWith("Not"));
+        }
+        assertCorrupt(header(Integer.MAX_VALUE), "a string count exceeding the index");
+        assertCorrupt(header(-1), "a negative string count");
+        assertCorrupt(header(1, 16, -1), "a negative resource type count");
+        assertCorrupt(header(1, 24, 1), "a resource type table exceeding the index");
+        assertCorrupt(header(1, 1000, 0), "a string offset exceeding the index");
+        assertCorrupt(header(1, 20, 1, 5, 20), "a resource type referring to a missing string");
+        assertCorrupt(header(1, 20, 1, 0, 1000), "a models offset exceeding the index");
+    }
+
+    /**
+     * Writes the given integers after the magic number and version of an index.
+     */
+    private static ByteBuffer header(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * values.length);
+        buffer.putInt(ModelIndex.MAGIC).putInt(ModelIndex.VERSION);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertCorrupt(ByteBuffer buffer, String problem) {
+        try {
+            new ModelIndex(buffer);
+            fail("An index with " + problem + " must be rejected.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt"));
+        }
+    }
+
+    @Test
+    public void testDocumentViewNames() {
+        assertEquals("jcr:content", ModelCompiler.decodeFileName("_jcr_content"));
+        assertEquals("_x0020_", ModelCompiler.decodeName("_x005f_x0020_"));
+        assertEquals(" a", ModelCompiler.decodeFileName("_x0020_a"));
+        assertEquals(Arrays.asList("a,b", "c"), ModelCompiler.parseValue("{String}[a\\,b,c]"));
+        assertEquals("true", ModelCompiler.parseValue("{Boolean}true"));
+    }
+
+    private static List<String> getChildNames(JCRValidationModel model) {
+        String[] names = new String[model.getChildren().size()];
+        int i = 0;
+        for (ChildResource child : model.getChildren()) {
+            names[i++] = child.getName();
+        }
+        return Arrays.asList(names);
+    }
+
+    private static String getJsonModel(String resourceType, String propertyType, String argument) {
+        String properties = "\"properties\":{\"jcr:primaryType\":\"nt:unstructured\",\"field\":{\"propertyType\":\"" + propertyType +
+                "\",\"validators\":{\"" + RegexValidator.class.getName() + "\":{\"validatorArguments\":[\"" + argument + "\"]}}}}";
+        return "{\"validatedResourceType\":\"" + resourceType + "\",\"applicablePaths\":[\"/content\"],\"sling:resourceType\":" +
+                "\"sling/validation/model\"," + properties + ",\"children\":{\"child\":{" + properties + ",\"children\":{" +
+                "\"grandchild\":{" + properties + "}}}}}";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.metrics;
+
+import java.lang.reflect.Array;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ValidationMetricsTest {
+
+    @Test
+    public void testTablesAreBounded() throws Exception {
+        ValidationMetrics metrics = new ValidationMetrics();
+        for (int i = 0; i < ValidationMetrics.MAX_ENTRIES + 10; i++) {
+            metrics.recordValidation("validation/test/type" + i, 1000, true);
+        }
+        assertEquals(ValidationMetrics.MAX_ENTRIES + 1, metrics.getResourceTypeStatistics().size());
+        assertNull(metrics.getResourceTypeStatistics("validation/test/type" + ValidationMetrics.MAX_ENTRIES));
+        assertEquals(10, metrics.getResourceTypeStatistics(ValidationMetrics.OTHER).getLatencies().getCount());
+        metrics.recordValidation("validation/test/type0", 1000, false);
+        assertEquals(1, metrics.getResourceTypeStatistics("validation/test/type0").getFailures());
+    }
+
+    @Test
+    public void testAllValidatorRowsAreStriped() throws Exception {
+        ValidationMetrics metrics = new ValidationMetrics();
+        for (int i = 0; i <= ValidationMetrics.MAX_STRIPED_ENTRIES; i++) {
+            metrics.recordValidation("validation/test/type" + i, 1000, true);
+        }
+        assertTrue(metrics.getResourceTypeStatistics("validation/test/type0").isStriped());
+        assertFalse(metrics.getResourceTypeStatistics("validation/test/type" + ValidationMetrics.MAX_STRIPED_ENTRIES).isStriped());
+
+        // Object[], Object[][] and so on stand in for distinct validator classes
+        Class<?>[] validatorClasses = new Class<?>[ValidationMetrics.MAX_STRIPED_ENTRIES + 1];
+        Class<?> validatorClass = Object.class;
+        for (int i = 0; i < validatorClasses.length; i++) {
+            validatorClass = Array.newInstance(validatorClass, 0).getClass();
+            validatorClasses[i] = validatorClass;
+            metrics.recordValidator(validatorClass, 1000, true);
+        }
+        for (Class<?> type : validatorClasses) {
+            assertTrue(metrics.getValidatorStatistics(type).isStriped());
+        }
+    }
+
+    @Test
+    public void testModelLoadMissesAreNotRecorded() throws Exception {
+        ValidationMetrics metrics = new ValidationMetrics();
+        metrics.recordModelLoad("validation/test/unknown", 1000, false);
+        assertNull(metrics.getModelLoadStatistics("validation/test/unknown"));
+        metrics.recordModelLoad("validation/test/known", 1000, true);
+        assertEquals(1, metrics.getModelLoadStatistics("validation/test/known").getLatencies().getCount());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.setup;
+
+import java.util.concurrent.ExecutorService;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolConfig;
+
+/**
+ * Runs the model builder tasks of the {@link org.apache.sling.validation.impl.ValidationServiceImpl} on an executor, instead of a pool of
+ * the Sling thread pool manager.
+ */
+public class ExecutorThreadPool implements ThreadPool {
+
+    private final ExecutorService executor;
+
+    public ExecutorThreadPool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        executor.execute(runnable);
+    }
+
+    @Override
+    public String getName() {
+        return "Validation Model Builder";
+    }
+
+    @Override
+    public ThreadPoolConfig getConfiguration() {
+        return null;
+    }
+}
@@ -74,20 +74,10 @@ public class MockedResource extends SyntheticResource {
         }
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        close();
-        super.finalize();
-    }
-
     public void close() {
         synchronized (this) {
-            if (session != null) {
-                if (session.isLive()) {
-                    session.logout();
-                }
-                session = null;
-            }
+            // the session is owned by the resolver, which logs it out when it is closed
+            session = null;
         }
     }
 
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(1, LatencyHistogram.bucket(1));
+        assertEquals(2, LatencyHistogram.bucket(3));
+        assertEquals(11, LatencyHistogram.bucket(1024));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(100000);
+        histogram.record(5000000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(5000000, snapshot.getMax());
+        assertEquals((98 * 1000 + 100000 + 5000000) / 100, snapshot.getMean());
+        // 1000ns fall in [512, 1024), 100000ns in [65536, 131072)
+        assertEquals(1023, snapshot.getPercentile(0.5));
+        assertEquals(131071, snapshot.getPercentile(0.99));
+        assertEquals(5000000, snapshot.getPercentile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentile(0.99));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        testConcurrentRecording(true);
+    }
+
+    @Test
+    public void testConcurrentRecordingWithoutStripes() throws Exception {
+        testConcurrentRecording(false);
+    }
+
+    private void testConcurrentRecording(boolean striped) throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram(striped);
+        final StripedCounter counter = new StripedCounter(striped);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        histogram.record(j);
+                        counter.increment();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, histogram.snapshot().getCount());
+        assertEquals(8L * (9999 * 10000 / 2), histogram.snapshot().getSum());
+        assertEquals(9999, histogram.snapshot().getMax());
+        assertEquals(80000, counter.sum());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.validation.api.ChildResource;
+import org.apache.sling.validation.api.ResourceProperty;
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.api.ValidatorLookupService;
+import org.apache.sling.validation.impl.JCRValidationModel;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ModelFragmentCacheTest {
+
+    private static final String MODELS = "/apps/sling/validation/models";
+    private static final String RESOURCE_TYPE = "validation/test/inherited";
+
+    private final Map<String, Resource> resources = new HashMap<String, Resource>();
+    private ResourceResolver rr;
+    private ValidatorLookupService validatorLookupService;
+    private ModelFragmentCache fragments;
+
+    @Before
+    public void setUp() {
+        rr = mock(ResourceResolver.class);
+        when(rr.getSearchPath()).thenReturn(new String[]{"/apps/", "/libs/"});
+        when(rr.getResource(anyString())).thenAnswer(new Answer<Resource>() {
+            @Override
+            public Resource answer(InvocationOnMock invocation) throws Throwable {
+                String path = (String) invocation.getArguments()[0];
+                if (path.startsWith("/")) {
+                    return resources.get(path);
+                }
+                Resource resource = resources.get("/apps/" + path);
+                return resource != null ? resource : resources.get("/libs/" + path);
+            }
+        });
+        final Validator regexValidator = new RegexValidator();
+        validatorLookupService = new ValidatorLookupService() {
+            @Override
+            public Validator getValidator(String validatorType) {
+                return regexValidator;
+            }
+        };
+        fragments = new ModelFragmentCache();
+    }
+
+    @Test
+    public void testExtendsAndIncludes() throws Exception {
+        // the common properties are kept in /libs and referred to relative to the search paths
+        addResource("/libs/sling/validation/models/common", "{\"properties\":{\"title\":{\"propertyType\":\"string\"}," +
+                "\"description\":{\"propertyType\":\"string\"}},\"children\":{\"jcr:content\":{\"properties\":{\"template\":" +
+                "{\"propertyType\":\"string\"}}}}}");
+        addResource(MODELS + "/dated", "{\"properties\":{\"date\":{\"propertyType\":\"date\"}}}");
+        addResource(MODELS + "/page", "{\"extends\":\"sling/validation/models/common\",\"includes\":[\"" + MODELS + "/dated\"]," +
+                "\"properties\":{\"description\":{\"propertyType\":\"string\",\"validators\":{\"" + RegexValidator.class.getName() +
+                "\":{\"validatorArguments\":[\"regex=^.{0,100}$\"]}}}},\"children\":{\"jcr:content\":{\"properties\":{\"author\":" +
+                "{\"propertyType\":\"string\"}}}}}");
+        addResource(MODELS + "/article", "{\"extends\":\"sling/validation/models/common\"}");
+
+        JCRValidationModel page = buildModel(MODELS + "/page");
+        Map<String, ResourceProperty> properties = getProperties(page.getResourceProperties());
+        assertEquals(3, properties.size());
+        // the referring model replaces the properties it inherits
+        assertEquals(1, properties.get("description").getValidators().size());
+        assertEquals(Type.DATE, properties.get("date").getType());
+        assertEquals(1, page.getChildren().size());
+        ChildResource content = page.getChildren().get(0);
+        assertEquals("jcr:content", content.getName());
+        assertEquals(2, content.getProperties().size());
+
+        // the models without own properties are valid, and share the properties they inherit
+        JCRValidationModel article = buildModel(MODELS + "/article");
+        assertEquals(2, article.getResourceProperties().size());
+        assertSame(properties.get("title"), getProperties(article.getResourceProperties()).get("title"));
+        assertEquals(2, fragments.size());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        addResource(MODELS + "/base", "{\"properties\":{\"title\":{\"propertyType\":\"string\"}}}");
+        addResource(MODELS + "/intermediate", "{\"extends\":\"" + MODELS + "/base\",\"properties\":{\"date\":{\"propertyType\":" +
+                "\"date\"}}}");
+        addResource(MODELS + "/unrelated", "{\"properties\":{\"count\":{\"propertyType\":\"int\"}}}");
+        addResource(MODELS + "/page", "{\"includes\":[\"sling/validation/models/intermediate\",\"" + MODELS + "/unrelated\"]}");
+        assertEquals(3, buildModel(MODELS + "/page").getResourceProperties().size());
+        assertEquals(3, fragments.size());
+
+        assertFalse(fragments.invalidate("/apps/sling/validation/models/other"));
+        // a change of a property of the base model discards the models referring to it, directly or not
+        assertTrue(fragments.invalidate(MODELS + "/base/properties/title"));
+        assertEquals(1, fragments.size());
+        addResource(MODELS + "/base", "{\"properties\":{\"title\":{\"propertyType\":\"int\"}}}");
+        assertEquals(Type.INT, getProperties(buildModel(MODELS + "/page").getResourceProperties()).get("title").getType());
+
+        // an overlay created for a relative reference discards the models resolved through the search paths
+        assertTrue(fragments.invalidate("/libs/sling/validation/models/intermediate"));
+        assertEquals(2, fragments.size());
+        fragments.clear();
+        assertEquals(0, fragments.size());
+    }
+
+    @Test
+    public void testInvalidReferences() throws Exception {
+        addResource(MODELS + "/a", "{\"includes\":[\"" + MODELS + "/b\"],\"properties\":{\"a\":{\"propertyType\":\"string\"}}}");
+        addResource(MODELS + "/b", "{\"includes\":[\"" + MODELS + "/a\",\"" + MODELS + "/missing\"],\"properties\":{\"b\":" +
+                "{\"propertyType\":\"string\"}}}");
+        // the cyclic and the missing references are ignored
+        assertEquals(2, buildModel(MODELS + "/a").getResourceProperties().size());
+        addResource(MODELS + "/empty", "{\"extends\":\"" + MODELS + "/missing\"}");
+        assertNull(buildModel(MODELS + "/empty"));
+        // the models stored outside the models folders are ignored, as their changes are not tracked
+        addResource("/apps/fragments/c", "{\"properties\":{\"c\":{\"propertyType\":\"string\"}}}");
+        addResource(MODELS + "/outside", "{\"includes\":[\"/apps/fragments/c\",\"fragments/c\"],\"properties\":{\"d\":" +
+                "{\"propertyType\":\"string\"}}}");
+        int cached = fragments.size();
+        assertEquals(1, buildModel(MODELS + "/outside").getResourceProperties().size());
+        assertEquals(cached, fragments.size());
+        // without a cache, the references are not resolved
+        assertEquals(1, JCRBuilder.buildValidationModel(validatorLookupService, RESOURCE_TYPE, resources.get(MODELS + "/a"))
+                .getResourceProperties().size());
+    }
+
+    private JCRValidationModel buildModel(String path) {
+        return JCRBuilder.buildValidationModel(validatorLookupService, RESOURCE_TYPE, resources.get(path), fragments);
+    }
+
+    private void addResource(String path, String json) throws Exception {
+        JSONObject model = new JSONObject(json);
+        model.put("applicablePaths", Arrays.asList("/content"));
+        resources.put(path, new JsonResource(path, model) {
+            @Override
+            public ResourceResolver getResourceResolver() {
+                return rr;
+            }
+        });
+    }
+
+    private static Map<String, ResourceProperty> getProperties(Iterable<ResourceProperty> properties) {
+        Map<String, ResourceProperty> map = new HashMap<String, ResourceProperty>();
+        for (ResourceProperty property : properties) {
+            map.put(property.getName(), property);
+        }
+        return map;
+    }
+}
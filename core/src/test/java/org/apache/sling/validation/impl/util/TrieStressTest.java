@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Inserts keys into a {@link Trie} from several threads while other threads look them up. The test runs for {@code stress.millis}
+ * milliseconds (a system property), so that it can be run for longer when changing the Trie.
+ */
+public class TrieStressTest {
+
+    private static final long DURATION = Long.getLong("stress.millis", 1000);
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int KEYS_PER_WRITER = 2000;
+
+    @Test
+    public void testConcurrentInsertsAndLookups() throws Exception {
+        long deadline = System.currentTimeMillis() + DURATION;
+        int rounds = 0;
+        do {
+            runRound();
+            rounds++;
+        } while (System.currentTimeMillis() < deadline);
+        assertTrue(rounds > 0);
+    }
+
+    private void runRound() throws Exception {
+        final Trie<String> trie = new Trie<String>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> writers = new ArrayList<Thread>();
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    // the writers share the prefixes of their keys, so that they add children to the same nodes
+                    for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                        String key = key(i, writer);
+                        trie.insert(key, key);
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    await(start);
+                    try {
+                        while (writing.get()) {
+                            String key = key(random.nextInt(KEYS_PER_WRITER), random.nextInt(WRITERS));
+                            TrieNode<String> node = trie.getElementForLongestMatchingKey(key + "/jcr:content");
+                            if (node != trie.ROOT) {
+                                assertNotNull("Leaf without a value for " + key, node.getValue());
+                                assertTrue(node.getValue() + " is not a prefix of " + key, key.startsWith(node.getValue()));
+                            }
+                            node = trie.getElement(key);
+                            if (node.isLeaf()) {
+                                assertEquals(key, node.getValue());
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writing.set(false);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(WRITERS * KEYS_PER_WRITER, trie.getElements().size());
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                assertEquals(key(i, w), trie.getElement(key(i, w)).getValue());
+            }
+        }
+    }
+
+    private static String key(int index, int writer) {
+        return "/content/site/page" + index + "/w" + writer;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -18,9 +18,13 @@
  */
 package org.apache.sling.validation.impl.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class TrieTest {
@@ -62,4 +66,11 @@ public class TrieTest {
         assertTrue(dictionary.ROOT.equals(node));
     }
 
+    @Test
+    public void testElements() {
+        assertEquals(Arrays.<Object>asList("/apps/example", "/apps/examples/node/jcr:content", "/apps/examples/node/jcr:content/nodes"),
+                new ArrayList<Object>(dictionary.getElements().values()));
+        // the root, "/apps/example" and the remaining characters of "/apps/examples/node/jcr:content/nodes"
+        assertEquals(1 + 13 + 24, dictionary.getNodeCount());
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.impl.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.validation.api.Type;
+import org.apache.sling.validation.api.Validator;
+import org.apache.sling.validation.impl.validators.RegexValidator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ValidatorResultCacheTest {
+
+    private ValidatorResultCache cache;
+    private Validator validator;
+    private Map<String, String> arguments;
+
+    @Before
+    public void setUp() {
+        cache = new ValidatorResultCache(32);
+        validator = new RegexValidator();
+        arguments = new HashMap<String, String>();
+        arguments.put(RegexValidator.REGEX_PARAM, "^[a-z]+$");
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        assertNull(cache.get(validator, arguments, null, "value"));
+        cache.put(validator, arguments, null, "value", true);
+        assertEquals(Boolean.TRUE, cache.get(validator, arguments, null, "value"));
+
+        // equal arguments stored in a different map instance
+        Map<String, String> otherArguments = new HashMap<String, String>(arguments);
+        assertEquals(Boolean.TRUE, cache.get(validator, otherArguments, null, "value"));
+
+        otherArguments.put(RegexValidator.REGEX_PARAM, "^[0-9]+$");
+        assertNull(cache.get(validator, otherArguments, null, "value"));
+        assertNull(cache.get(new RegexValidator(), arguments, null, "value"));
+        assertNull(cache.get(validator, arguments, Type.STRING, "value"));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2.0 / 6, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testEviction() {
+        for (int i = 0; i < 1000; i++) {
+            cache.put(validator, arguments, null, "value" + i, true);
+        }
+        assertTrue(cache.size() <= 32);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
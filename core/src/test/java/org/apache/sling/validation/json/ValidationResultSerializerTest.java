@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.validation.api.ValidationResult;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ValidationResultSerializerTest {
+
+    @Test
+    public void testNestedMessages() throws Exception {
+        ValidationResultSerializer serializer = new ValidationResultSerializer("success", "messages");
+        ValidationResult result = mockResult(false, "name", "Missing required property.", "age", "Property was expected to be of type int");
+        assertEquals("{\"success\":false,\"messages\":{\"name\":[\"Missing required property.\"],\"age\":[\"Property was expected to be " +
+                "of type int\"]}}", write(serializer, result));
+    }
+
+    @Test
+    public void testFlatMessages() throws Exception {
+        ValidationResultSerializer serializer = new ValidationResultSerializer("valid", null);
+        assertEquals("{\"valid\":true}", write(serializer, mockResult(true)));
+        assertEquals("{\"valid\":false,\"name\":[\"invalid\"]}", write(serializer, mockResult(false, "name", "invalid")));
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        ValidationResultSerializer serializer = new ValidationResultSerializer("valid", "messages");
+        ValidationResult result = mockResult(false, "child/\"name\"", "line\nbreak\t\\ </script> \u0001 Jörg € 😀");
+        assertEquals("{\"valid\":false,\"messages\":{\"child/\\\"name\\\"\":[\"line\\nbreak\\t\\\\ <\\/script> \\u0001 Jörg € " +
+                "😀\"]}}", write(serializer, result));
+    }
+
+    /**
+     * Serializes the result with both the {@code Writer} and the {@code OutputStream} variants, checking that they produce the same output.
+     */
+    private static String write(ValidationResultSerializer serializer, ValidationResult result) throws Exception {
+        StringWriter writer = new StringWriter();
+        serializer.write(result, writer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.write(result, out);
+        assertEquals(writer.toString(), out.toString("UTF-8"));
+        return writer.toString();
+    }
+
+    private static ValidationResult mockResult(boolean valid, String... keysAndMessages) {
+        Map<String, List<String>> messages = new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < keysAndMessages.length; i += 2) {
+            messages.put(keysAndMessages[i], Arrays.asList(keysAndMessages[i + 1]));
+        }
+        ValidationResult result = mock(ValidationResult.class);
+        when(result.isValid()).thenReturn(valid);
+        when(result.getFailureMessages()).thenReturn(messages);
+        return result;
+    }
+}
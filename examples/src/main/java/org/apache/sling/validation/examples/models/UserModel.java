@@ -27,11 +27,12 @@ import javax.inject.Inject;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
-import org.apache.sling.validation.api.ValidationModel;
 import org.apache.sling.validation.api.ValidationResult;
-import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.models.ModelValidationService;
+import org.apache.sling.validation.models.ValidatedModel;
 
 @Model(adaptables = Resource.class)
+@ValidatedModel
 public class UserModel {
 
     private static final String INVALID = "INVALID";
@@ -40,7 +41,7 @@ public class UserModel {
     private Map<String, List<String>> errors = new HashMap<String, List<String>>();
 
     @Inject
-    private ValidationService validationService;
+    private ModelValidationService modelValidationService;
 
     @Inject
     private String username;
@@ -80,12 +81,9 @@ public class UserModel {
 
     @PostConstruct
     protected void validate() {
-        ValidationModel model = validationService.getValidationModel(resource);
-        if (model != null) {
-            ValidationResult result = validationService.validate(resource, model);
-            if (!result.isValid()) {
-                errors = result.getFailureMessages();
-            }
+        ValidationResult result = modelValidationService.validate(this, resource);
+        if (!result.isValid()) {
+            errors = result.getFailureMessages();
         }
     }
 }
@@ -19,8 +19,6 @@
 package org.apache.sling.validation.examples.servlets;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
 
 import javax.servlet.ServletException;
 
@@ -31,12 +29,10 @@ import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestDispatcherOptions;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
-import org.apache.sling.commons.json.JSONArray;
-import org.apache.sling.commons.json.JSONException;
-import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.validation.api.ValidationModel;
 import org.apache.sling.validation.api.ValidationResult;
 import org.apache.sling.validation.api.ValidationService;
+import org.apache.sling.validation.json.ValidationResultSerializer;
 
 @SlingServlet(
         resourceTypes = "/apps/validationdemo/components/user",
@@ -45,6 +41,8 @@ import org.apache.sling.validation.api.ValidationService;
 )
 public class ModifyUserServlet extends SlingAllMethodsServlet {
 
+    private static final ValidationResultSerializer SERIALIZER = new ValidationResultSerializer("success", "messages");
+
     @Reference
     private ValidationService validationService;
 
@@ -66,25 +64,10 @@ public class ModifyUserServlet extends SlingAllMethodsServlet {
                     options.setReplaceSelectors(" ");
                     request.getRequestDispatcher(request.getResource(), options).forward(request, response);
                 } else {
+                    response.setStatus(400);
                     response.setContentType("application/json");
-                    JSONObject json = new JSONObject();
-                    try {
-                        json.put("success", false);
-                        JSONObject messages = new JSONObject();
-                        for (Map.Entry<String, List<String>> entry : vr.getFailureMessages().entrySet()) {
-                            String key = entry.getKey();
-                            JSONArray errors = new JSONArray();
-                            for (String message : entry.getValue()) {
-                                errors.put(message);
-                            }
-                            messages.put(key, errors);
-                        }
-                        json.put("messages", messages);
-                        response.getWriter().print(json.toString());
-                        response.setStatus(400);
-                    } catch (JSONException e) {
-                        throw new IOException(e);
-                    }
+                    response.setCharacterEncoding("UTF-8");
+                    SERIALIZER.write(vr, response.getWriter());
                 }
             }
         }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.testservices;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.testing.tools.http.RequestExecutor;
+import org.apache.sling.testing.tools.sling.SlingTestBase;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Drives concurrent POSTs through the {@code validation} post operation and reports the throughput and the latency percentiles, first in a
+ * steady state and then while the validation models are being edited (each edit invalidates the models cached by the validation service).
+ * The test is only run by the {@code load-test} profile, which also configures it:
+ * <ul>
+ *     <li>{@code load.models} - the number of synthetic models installed, each for its own resource type;</li>
+ *     <li>{@code load.threads} - the number of concurrent clients;</li>
+ *     <li>{@code load.warmup.seconds} and {@code load.duration.seconds} - the duration of the warm-up and of each measured phase;</li>
+ *     <li>{@code load.edit.interval.millis} - the interval between two model edits in the second phase;</li>
+ *     <li>{@code load.report} - a file the results are appended to, in addition to the log.</li>
+ * </ul>
+ */
+public class ValidationLoadIT extends SlingTestBase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationLoadIT.class);
+
+    private static final String MODELS_HOME = "/apps/sling/validation/models/";
+    private static final String MODEL_PREFIX = "loadModel";
+    private static final String REGEX_VALIDATOR = "org.apache.sling.validation.impl.validators.RegexValidator";
+    private static final String[] REGEXES = {"^\\p{L}+$", "^[\\p{L}]+$"};
+
+    private static final int MODELS = Integer.getInteger("load.models", 100);
+    private static final int THREADS = Integer.getInteger("load.threads", 16);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup.seconds", 10);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration.seconds", 60);
+    private static final int EDIT_INTERVAL_MILLIS = Integer.getInteger("load.edit.interval.millis", 100);
+    private static final String REPORT = System.getProperty("load.report");
+
+    @Test
+    public void testLoad() throws Exception {
+        for (int i = 0; i < MODELS; i++) {
+            installModel(i, REGEXES[0]);
+        }
+        try {
+            runPhase(WARMUP_SECONDS, false);
+            PhaseResult steadyState = runPhase(DURATION_SECONDS, false);
+            report("steady state", steadyState);
+            PhaseResult modelEdits = runPhase(DURATION_SECONDS, true);
+            report("model edits", modelEdits);
+            assertEquals("Failed requests in the steady state.", 0, steadyState.errors);
+            assertEquals("Failed requests during model edits.", 0, modelEdits.errors);
+        } finally {
+            for (int i = 0; i < MODELS; i++) {
+                removeModel(i);
+            }
+        }
+    }
+
+    private PhaseResult runPhase(int seconds, boolean editModels) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final AtomicLong errors = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+        List<Future<long[]>> latencies = new ArrayList<Future<long[]>>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                final Random random = new Random(i);
+                latencies.add(clients.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        RequestExecutor executor = new RequestExecutor(new DefaultHttpClient());
+                        long[] samples = new long[1024];
+                        int count = 0;
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            boolean valid = validate(executor, random.nextInt(MODELS));
+                            if (count == samples.length) {
+                                samples = Arrays.copyOf(samples, count * 2);
+                            }
+                            samples[count++] = System.nanoTime() - start;
+                            if (!valid) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        return Arrays.copyOf(samples, count);
+                    }
+                }));
+            }
+            long edits = editModels ? editModels(deadline) : 0;
+            long[] samples = new long[0];
+            for (Future<long[]> future : latencies) {
+                long[] clientSamples = future.get();
+                int offset = samples.length;
+                samples = Arrays.copyOf(samples, offset + clientSamples.length);
+                System.arraycopy(clientSamples, 0, samples, offset, clientSamples.length);
+            }
+            Arrays.sort(samples);
+            return new PhaseResult(samples, seconds, errors.get(), edits);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Edits the models in turn until the deadline, alternating between two equivalent regular expressions, so that the validation
+     * results are not affected.
+     */
+    private long editModels(long deadline) throws Exception {
+        long edits = 0;
+        while (System.nanoTime() < deadline) {
+            installModel((int) (edits % MODELS), REGEXES[(int) ((edits / MODELS + 1) % 2)]);
+            edits++;
+            Thread.sleep(EDIT_INTERVAL_MILLIS);
+        }
+        return edits;
+    }
+
+    private boolean validate(RequestExecutor executor, int model) {
+        try {
+            MultipartEntity entity = new MultipartEntity();
+            entity.addPart("sling:resourceType", new StringBody("validation/load/resourceType" + model));
+            entity.addPart("field1", new StringBody("HelloWorld"));
+            entity.addPart("field2", new StringBody("30.01.1988"));
+            entity.addPart(SlingPostConstants.RP_OPERATION, new StringBody("validation"));
+            executor.execute(getRequestBuilder().buildPostRequest("/validation/load/folder" + model + "/resource").withEntity(entity));
+            if (executor.getResponse().getStatusLine().getStatusCode() != 200) {
+                return false;
+            }
+            return new JSONObject(executor.getContent()).optBoolean("valid", false);
+        } catch (Exception e) {
+            LOG.warn("Validation request for model " + model + " failed.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Creates or updates a model equivalent to {@code model1} from the test services, for its own resource type and applicable path.
+     */
+    private void installModel(int model, String regex) throws IOException {
+        MultipartEntity entity = new MultipartEntity();
+        entity.addPart("jcr:primaryType", new StringBody("nt:unstructured"));
+        entity.addPart("sling:resourceType", new StringBody("sling/validation/model"));
+        entity.addPart("validatedResourceType", new StringBody("validation/load/resourceType" + model));
+        entity.addPart("applicablePaths", new StringBody("/validation/load/folder" + model));
+        entity.addPart("applicablePaths@TypeHint", new StringBody("String[]"));
+        entity.addPart("properties/field1/propertyType", new StringBody("string"));
+        entity.addPart("properties/field1/validators/" + REGEX_VALIDATOR + "/validatorArguments", new StringBody("regex=" + regex));
+        entity.addPart("properties/field1/validators/" + REGEX_VALIDATOR + "/validatorArguments@TypeHint", new StringBody("String[]"));
+        entity.addPart("properties/field2/propertyType", new StringBody("date"));
+        getRequestExecutor().execute(getRequestBuilder().buildPostRequest(MODELS_HOME + MODEL_PREFIX + model).withCredentials(
+                getServerUsername(), getServerPassword()).withEntity(entity)).assertStatus(200);
+    }
+
+    private void removeModel(int model) throws IOException {
+        MultipartEntity entity = new MultipartEntity();
+        entity.addPart(SlingPostConstants.RP_OPERATION, new StringBody(SlingPostConstants.OPERATION_DELETE));
+        getRequestExecutor().execute(getRequestBuilder().buildPostRequest(MODELS_HOME + MODEL_PREFIX + model).withCredentials(
+                getServerUsername(), getServerPassword()).withEntity(entity));
+    }
+
+    private static void report(String phase, PhaseResult result) throws IOException {
+        String line = String.format("%s: models=%d threads=%d requests=%d throughput=%.1f/s p50=%.2fms p99=%.2fms p999=%.2fms errors=%d " +
+                "modelEdits=%d", phase, MODELS, THREADS, result.samples.length, result.getThroughput(), result.getPercentile(0.5) / 1e6,
+                result.getPercentile(0.99) / 1e6, result.getPercentile(0.999) / 1e6, result.errors, result.edits);
+        LOG.info(line);
+        if (REPORT != null && !"".equals(REPORT)) {
+            PrintWriter writer = new PrintWriter(new FileWriter(REPORT, true));
+            try {
+                writer.println(line);
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private static final class PhaseResult {
+
+        private final long[] samples;
+        private final int seconds;
+        private final long errors;
+        private final long edits;
+
+        PhaseResult(long[] samples, int seconds, long errors, long edits) {
+            this.samples = samples;
+            this.seconds = seconds;
+            this.errors = errors;
+            this.edits = edits;
+        }
+
+        double getThroughput() {
+            return (double) samples.length / seconds;
+        }
+
+        /**
+         * Returns the latency in nanoseconds below which the fraction {@code q} of the requests completed (nearest rank).
+         */
+        long getPercentile(double q) {
+            if (samples.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(q * samples.length);
+            return samples[Math.max(rank, 1) - 1];
+        }
+    }
+}
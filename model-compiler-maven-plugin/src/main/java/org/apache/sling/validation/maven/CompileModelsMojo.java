@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.validation.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.sling.validation.impl.index.ModelCompiler;
+
+/**
+ * Checks the validation models of a project and compiles them into a model index. The index is meant to be packaged in the project's
+ * bundle and listed in its {@code Sling-Validation-Model-Index} manifest header, e.g. with the {@code maven-bundle-plugin} instruction
+ * <pre>
+ * &lt;Sling-Validation-Model-Index&gt;SLING-INF/validation/models.idx&lt;/Sling-Validation-Model-Index&gt;
+ * </pre>
+ * The build fails if a model is invalid, e.g. if it refers to an unknown property type.
+ *
+ * @goal compile-models
+ * @phase generate-resources
+ * @threadSafe
+ */
+public class CompileModelsMojo extends AbstractMojo {
+
+    /**
+     * The folder holding the model definitions, laid out like a repository: JSON files and FileVault {@code .content.xml} files.
+     *
+     * @parameter expression="${sling.validation.sourceDirectory}" default-value="${basedir}/src/main/validation"
+     */
+    private File sourceDirectory;
+
+    /**
+     * The index file to write.
+     *
+     * @parameter expression="${sling.validation.outputFile}"
+     * default-value="${project.build.outputDirectory}/SLING-INF/validation/models.idx"
+     */
+    private File outputFile;
+
+    /**
+     * Skips the compilation of the models.
+     *
+     * @parameter expression="${sling.validation.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping the compilation of the validation models.");
+            return;
+        }
+        if (!sourceDirectory.isDirectory()) {
+            getLog().info("No validation models to compile in " + sourceDirectory + ".");
+            return;
+        }
+        ModelCompiler compiler = new ModelCompiler();
+        try {
+            compiler.addDirectory(sourceDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot read the validation models in " + sourceDirectory + ".", e);
+        }
+        if (!compiler.getErrors().isEmpty()) {
+            for (String error : compiler.getErrors()) {
+                getLog().error(error);
+            }
+            throw new MojoFailureException(compiler.getErrors().size() + " problems were found in the validation models in " +
+                    sourceDirectory + ".");
+        }
+        File folder = outputFile.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new MojoExecutionException("Cannot create " + folder + ".");
+        }
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+            try {
+                compiler.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write the validation model index " + outputFile + ".", e);
+        }
+        getLog().info("Compiled " + compiler.getModelCount() + " validation models into " + outputFile + ".");
+    }
+}
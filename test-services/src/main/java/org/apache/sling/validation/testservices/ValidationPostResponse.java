@@ -18,23 +18,18 @@
  */
 package org.apache.sling.validation.testservices;
 
-import org.apache.sling.commons.json.JSONException;
-import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.servlets.post.AbstractPostResponse;
 import org.apache.sling.validation.api.ValidationResult;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.sling.validation.json.ValidationResultSerializer;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.List;
-import java.util.Map;
 
 public class ValidationPostResponse extends AbstractPostResponse {
 
+    private static final ValidationResultSerializer SERIALIZER = new ValidationResultSerializer("valid", null);
+
     private ValidationResult validationResult;
-    private static final Logger LOG = LoggerFactory.getLogger(ValidationPostResponse.class);
 
     public void setValidationResult(ValidationResult validationResult) {
         this.validationResult = validationResult;
@@ -43,24 +38,12 @@ public class ValidationPostResponse extends AbstractPostResponse {
     @Override
     protected void doSend(HttpServletResponse response) throws IOException {
         response.setContentType("application/json");
-        PrintWriter printWriter = response.getWriter();
-        JSONObject jsonResponse = new JSONObject();
-        boolean validationError = false;
+        response.setCharacterEncoding("UTF-8");
         if (validationResult != null) {
-            try {
-                jsonResponse.put("valid", validationResult.isValid());
-                for (Map.Entry<String, List<String>> entry : validationResult.getFailureMessages().entrySet()) {
-                    jsonResponse.put(entry.getKey(), entry.getValue());
-                }
-            } catch (JSONException e) {
-                LOG.error("JSON error during response send operation.", e);
-            }
+            SERIALIZER.write(validationResult, response.getWriter());
         } else {
-            validationError = true;
-        }
-        printWriter.write(jsonResponse.toString());
-        if (validationError) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{}");
         }
     }
 